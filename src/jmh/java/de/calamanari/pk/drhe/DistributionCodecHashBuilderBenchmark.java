@@ -0,0 +1,126 @@
+//@formatter:off
+/*
+ * DistributionCodecHashBuilderBenchmark
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.drhe;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the {@link DistributionCodecHashBuilder} (byte-wise updates, bulk update and tree hash mode) compared to SHA-256 from the JDK.
+ * <p>
+ * Each invocation hashes the whole input of {@link #inputSize} bytes, so the throughput in MB/s is <i>inputSize / average time</i>.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DistributionCodecHashBuilderBenchmark {
+
+    /**
+     * number of bytes to be hashed per invocation
+     */
+    @Param({ "1024", "16777216" })
+    public int inputSize;
+
+    /**
+     * random input data
+     */
+    private byte[] input;
+
+    /**
+     * reused digest for SHA-256
+     */
+    private MessageDigest sha256;
+
+    /**
+     * Creates the input and the digest
+     * 
+     * @throws NoSuchAlgorithmException if SHA-256 is not available
+     */
+    @Setup
+    public void setUp() throws NoSuchAlgorithmException {
+        SplittableRandom rand = new SplittableRandom(4711);
+        input = new byte[inputSize];
+        for (int i = 0; i < inputSize; i++) {
+            input[i] = (byte) rand.nextInt();
+        }
+        sha256 = MessageDigest.getInstance("SHA-256");
+    }
+
+    /**
+     * @return hash value
+     */
+    @Benchmark
+    public long byteWiseUpdate() {
+        DistributionCodecHashBuilder builder = new DistributionCodecHashBuilder();
+        for (int i = 0; i < input.length; i++) {
+            builder.update(input[i]);
+        }
+        return builder.getHashValue();
+    }
+
+    /**
+     * @return hash value
+     */
+    @Benchmark
+    public long bulkUpdate() {
+        DistributionCodecHashBuilder builder = new DistributionCodecHashBuilder();
+        builder.update(ByteBuffer.wrap(input));
+        return builder.getHashValue();
+    }
+
+    /**
+     * @return hash value
+     */
+    @Benchmark
+    public long treeHash() {
+        return DistributionCodecHashBuilder.treeHash(input);
+    }
+
+    /**
+     * @return digest
+     */
+    @Benchmark
+    public byte[] sha256() {
+        return sha256.digest(input);
+    }
+
+}
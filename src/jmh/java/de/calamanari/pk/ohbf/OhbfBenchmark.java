@@ -0,0 +1,159 @@
+//@formatter:off
+/*
+ * OhbfBenchmark
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark for put and lookup of the {@link GenericOHBF} and the {@link LwGenericOHBF} for different sizes (number of inserted elements n and
+ * false-positive rate epsilon, which determine the number of hash functions k and the number of bits m).
+ * <p>
+ * Each invocation inserts (resp. looks up) all {@link #numberOfInsertedElements} keys, half of the lookups are misses.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OhbfBenchmark {
+
+    /**
+     * all benchmark methods process this number of keys per invocation
+     */
+    private static final int KEYS_PER_INVOCATION = 1_000;
+
+    /**
+     * number of elements the filter is designed for (n)
+     */
+    @Param({ "20", "1000" })
+    public int numberOfInsertedElements;
+
+    /**
+     * false-positive rate
+     */
+    @Param({ "0.01", "0.00001" })
+    public double falsePositiveRateEpsilon;
+
+    /**
+     * filter for put and lookup
+     */
+    private GenericOHBF genericFilter;
+
+    /**
+     * light-weight filter for put and lookup
+     */
+    private LwGenericOHBF lwFilter;
+
+    /**
+     * keys for inserting
+     */
+    private String[] keys;
+
+    /**
+     * keys for lookup, every second key has been inserted before
+     */
+    private String[] lookupKeys;
+
+    /**
+     * Creates the filters and the keys, all keys get inserted once, so the lookup is performed on a filled filter
+     */
+    @Setup
+    public void setUp() {
+        BloomFilterConfig config = new BloomFilterConfig(numberOfInsertedElements, falsePositiveRateEpsilon);
+        genericFilter = new GenericOHBF(config);
+        lwFilter = new LwGenericOHBF(config);
+        SplittableRandom rand = new SplittableRandom(4711);
+        keys = new String[KEYS_PER_INVOCATION];
+        lookupKeys = new String[KEYS_PER_INVOCATION];
+        for (int i = 0; i < KEYS_PER_INVOCATION; i++) {
+            keys[i] = "k" + rand.nextLong();
+            lookupKeys[i] = (i % 2 == 0) ? keys[i] : ("m" + rand.nextLong());
+        }
+        for (int i = 0; i < numberOfInsertedElements; i++) {
+            genericFilter.put("column", keys[i % KEYS_PER_INVOCATION]);
+            lwFilter.put("column", keys[i % KEYS_PER_INVOCATION]);
+        }
+    }
+
+    /**
+     * @param blackhole sink
+     */
+    @Benchmark
+    @OperationsPerInvocation(KEYS_PER_INVOCATION)
+    public void genericPut(Blackhole blackhole) {
+        for (int i = 0; i < KEYS_PER_INVOCATION; i++) {
+            blackhole.consume(genericFilter.put("column", keys[i]));
+        }
+    }
+
+    /**
+     * @param blackhole sink
+     */
+    @Benchmark
+    @OperationsPerInvocation(KEYS_PER_INVOCATION)
+    public void genericLookup(Blackhole blackhole) {
+        for (int i = 0; i < KEYS_PER_INVOCATION; i++) {
+            blackhole.consume(genericFilter.mightContain("column", lookupKeys[i]));
+        }
+    }
+
+    /**
+     * @param blackhole sink
+     */
+    @Benchmark
+    @OperationsPerInvocation(KEYS_PER_INVOCATION)
+    public void lwPut(Blackhole blackhole) {
+        for (int i = 0; i < KEYS_PER_INVOCATION; i++) {
+            blackhole.consume(lwFilter.put("column", keys[i]));
+        }
+    }
+
+    /**
+     * @param blackhole sink
+     */
+    @Benchmark
+    @OperationsPerInvocation(KEYS_PER_INVOCATION)
+    public void lwLookup(Blackhole blackhole) {
+        for (int i = 0; i < KEYS_PER_INVOCATION; i++) {
+            blackhole.consume(lwFilter.mightContain("column", lookupKeys[i]));
+        }
+    }
+
+}
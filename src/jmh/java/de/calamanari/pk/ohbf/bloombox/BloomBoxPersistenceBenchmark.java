@@ -0,0 +1,125 @@
+//@formatter:off
+/*
+ * BloomBoxPersistenceBenchmark
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for {@link BloomBox#saveToFile(File)} and {@link BloomBox#loadFromFile(File, java.util.Map)} of in-memory boxes with and without
+ * probabilities.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BloomBoxPersistenceBenchmark {
+
+    /**
+     * DEFAULT ({@link DefaultDataStore}) or PB ({@link PbInMemoryDataStore})
+     */
+    @Param({ "DEFAULT", "PB" })
+    public String storeType;
+
+    /**
+     * number of rows in the box
+     */
+    @Param({ "100000" })
+    public int numberOfRows;
+
+    /**
+     * box to be saved
+     */
+    private BloomBox bloomBox;
+
+    /**
+     * destination of the save benchmark
+     */
+    private File saveFile;
+
+    /**
+     * source of the load benchmark
+     */
+    private File loadFile;
+
+    /**
+     * Creates the box and a saved copy for loading
+     * 
+     * @throws IOException if the temporary files could not be created
+     */
+    @Setup
+    public void setUp() throws IOException {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(numberOfRows, 16);
+        bloomBox = "PB".equals(storeType) ? generator.createPbBloomBox(0.00001) : generator.createBloomBox(0.00001);
+        saveFile = Files.createTempFile("bbx-benchmark-save", ".bbx").toFile();
+        loadFile = Files.createTempFile("bbx-benchmark-load", ".bbx").toFile();
+        bloomBox.saveToFile(loadFile);
+    }
+
+    /**
+     * Removes the temporary files
+     * 
+     * @throws IOException if the temporary files could not be deleted
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(saveFile.toPath());
+        Files.deleteIfExists(loadFile.toPath());
+    }
+
+    /**
+     * @return file to be consumed by JMH
+     */
+    @Benchmark
+    public File save() {
+        bloomBox.saveToFile(saveFile);
+        return saveFile;
+    }
+
+    /**
+     * @return box to be consumed by JMH
+     */
+    @Benchmark
+    public BloomBox load() {
+        return BloomBox.loadFromFile(loadFile, null);
+    }
+
+}
@@ -0,0 +1,148 @@
+//@formatter:off
+/*
+ * BloomBoxScanBenchmark
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for executing a representative {@link QueryBundle} (see {@link SyntheticDataGenerator#createQueryBundle()}) against the different store types:
+ * <ul>
+ * <li>DEFAULT: {@link DefaultDataStore} (in-memory, parallel scan)</li>
+ * <li>FILE: {@link FileDataStore} (sequential file scan)</li>
+ * <li>PB: {@link PbInMemoryDataStore} (in-memory with probabilities)</li>
+ * </ul>
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BloomBoxScanBenchmark {
+
+    /**
+     * type of the store to be scanned
+     */
+    @Param({ "DEFAULT", "FILE", "PB" })
+    public String storeType;
+
+    /**
+     * number of rows in the box
+     */
+    @Param({ "100000" })
+    public int numberOfRows;
+
+    /**
+     * number of columns per row
+     */
+    @Param({ "16" })
+    public int numberOfColumns;
+
+    /**
+     * box to be queried
+     */
+    private BloomBox bloomBox;
+
+    /**
+     * runner to be benchmarked
+     */
+    private BloomBoxQueryRunner runner;
+
+    /**
+     * bundle to be executed
+     */
+    private QueryBundle queryBundle;
+
+    /**
+     * temporary file of the FILE store
+     */
+    private File storeFile;
+
+    /**
+     * Creates and feeds the box
+     * 
+     * @throws IOException if the temporary file could not be created
+     */
+    @Setup
+    public void setUp() throws IOException {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(numberOfRows, numberOfColumns);
+        switch (storeType) {
+        case "DEFAULT":
+            bloomBox = generator.createBloomBox(0.00001);
+            break;
+        case "FILE":
+            storeFile = Files.createTempFile("bbx-benchmark", ".bbs").toFile();
+            bloomBox = BloomBox.forNumberOfRows(numberOfRows).withNumberOfColumns(numberOfColumns).withFalsePositiveRateEpsilon(0.00001)
+                    .withDataStore((vSize, numOfRows) -> new FileDataStore(vSize, numOfRows, storeFile, 0)).build();
+            generator.feed(bloomBox.getFeeder());
+            bloomBox.getFeeder().close();
+            break;
+        case "PB":
+            bloomBox = generator.createPbBloomBox(0.00001);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown store type: " + storeType);
+        }
+        runner = new BloomBoxQueryRunner(bloomBox);
+        queryBundle = generator.createQueryBundle();
+    }
+
+    /**
+     * Releases the box and removes the temporary file
+     * 
+     * @throws IOException if the temporary file could not be deleted
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        bloomBox.close();
+        if (storeFile != null) {
+            Files.deleteIfExists(storeFile.toPath());
+        }
+    }
+
+    /**
+     * @return result to be consumed by JMH
+     */
+    @Benchmark
+    public QueryBundleResult executeQueryBundle() {
+        return runner.execute(queryBundle);
+    }
+
+}
@@ -0,0 +1,113 @@
+//@formatter:off
+/*
+ * DataStoreFeederBenchmark
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark for {@link DataStoreFeeder#addRow(String[], Object[])} feeding synthetic rows into a fresh in-memory box.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataStoreFeederBenchmark {
+
+    /**
+     * number of rows fed per invocation
+     */
+    private static final int ROWS_PER_INVOCATION = 10_000;
+
+    /**
+     * number of columns per row
+     */
+    @Param({ "8", "64" })
+    public int numberOfColumns;
+
+    /**
+     * column names
+     */
+    private String[] columnNames;
+
+    /**
+     * pre-generated rows
+     */
+    private List<String[]> rows;
+
+    /**
+     * fresh feeder for each invocation
+     */
+    private DataStoreFeeder feeder;
+
+    /**
+     * Creates the rows once
+     */
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(ROWS_PER_INVOCATION, numberOfColumns);
+        columnNames = generator.getColumnNames();
+        rows = new ArrayList<>(ROWS_PER_INVOCATION);
+        generator.forEachRow(row -> rows.add(row.clone()));
+    }
+
+    /**
+     * Creates an empty box, so the measurement does not include the store allocation
+     */
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        feeder = BloomBox.forNumberOfRows(ROWS_PER_INVOCATION).withNumberOfColumns(numberOfColumns).withFalsePositiveRateEpsilon(0.00001).build()
+                .getFeeder();
+    }
+
+    /**
+     * @param blackhole sink
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS_PER_INVOCATION)
+    public void addRow(Blackhole blackhole) {
+        for (int i = 0; i < ROWS_PER_INVOCATION; i++) {
+            blackhole.consume(feeder.addRow(columnNames, rows.get(i)));
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+//@formatter:off
+/*
+ * QueryPreparationBenchmark
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for the query preparation (parsing, optimization, compilation) of the representative {@link QueryBundle} (see
+ * {@link SyntheticDataGenerator#createQueryBundle()}) with a cold and with a warm {@link QueryPreparationCache}.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryPreparationBenchmark {
+
+    /**
+     * runner with a preparation cache
+     */
+    private BloomBoxQueryRunner runner;
+
+    /**
+     * bundle to be prepared
+     */
+    private QueryBundle queryBundle;
+
+    /**
+     * Creates a tiny box, only the preparation is relevant here
+     */
+    @Setup
+    public void setUp() {
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(1, 16);
+        runner = new BloomBoxQueryRunner(generator.createBloomBox(0.00001));
+        runner.setPreparationCache(new QueryPreparationCache());
+        queryBundle = generator.createQueryBundle();
+    }
+
+    /**
+     * @return cache to be consumed by JMH
+     */
+    @Benchmark
+    public QueryPreparationCache prepareCold() {
+        runner.getPreparationCache().clear();
+        runner.prewarmPreparationCache(queryBundle);
+        return runner.getPreparationCache();
+    }
+
+    /**
+     * @return cache to be consumed by JMH
+     */
+    @Benchmark
+    public QueryPreparationCache prepareCached() {
+        runner.prewarmPreparationCache(queryBundle);
+        return runner.getPreparationCache();
+    }
+
+}
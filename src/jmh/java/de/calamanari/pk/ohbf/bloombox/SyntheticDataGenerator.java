@@ -0,0 +1,262 @@
+//@formatter:off
+/*
+ * SyntheticDataGenerator
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * The {@link SyntheticDataGenerator} creates reproducible test data for the BloomBox benchmarks.
+ * <p>
+ * Every column <code>c<i>nn</i></code> has its own cardinality (number of distinct values <code>v0, v1, ...</code>). The values are not equally
+ * distributed, lower value indices are more likely than higher ones, so that the queries in {@link #createQueryBundle()} show a mix of frequent and rare
+ * matches like real-world data.
+ * <p>
+ * Given the same settings (especially the seed) the generator always produces exactly the same rows, so results of different releases can be compared.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class SyntheticDataGenerator {
+
+    /**
+     * Default seed, do not change, otherwise results of former runs become incomparable
+     */
+    public static final long DEFAULT_SEED = 7_418_277L;
+
+    /**
+     * The representative query bundle references the first 8 columns
+     */
+    public static final int MIN_NUMBER_OF_COLUMNS = 8;
+
+    /**
+     * highest cardinality of any column
+     */
+    private static final int MAX_CARDINALITY = 50;
+
+    /**
+     * number of rows to be generated
+     */
+    private final int numberOfRows;
+
+    /**
+     * column names c00, c01, ...
+     */
+    private final String[] columnNames;
+
+    /**
+     * number of distinct values per column
+     */
+    private final int[] cardinalities;
+
+    /**
+     * seed for the random generator
+     */
+    private final long seed;
+
+    /**
+     * @param numberOfRows number of rows to be generated
+     * @param numberOfColumns number of columns per row, at least {@link #MIN_NUMBER_OF_COLUMNS}
+     * @param seed random seed, see {@link #DEFAULT_SEED}
+     */
+    public SyntheticDataGenerator(int numberOfRows, int numberOfColumns, long seed) {
+        if (numberOfRows <= 0 || numberOfColumns < MIN_NUMBER_OF_COLUMNS) {
+            throw new IllegalArgumentException(String.format("Expecting numberOfRows > 0 and numberOfColumns >= %d, given: numberOfRows=%d, numberOfColumns=%d",
+                    MIN_NUMBER_OF_COLUMNS, numberOfRows, numberOfColumns));
+        }
+        this.numberOfRows = numberOfRows;
+        this.seed = seed;
+        this.columnNames = new String[numberOfColumns];
+        this.cardinalities = new int[numberOfColumns];
+        for (int i = 0; i < numberOfColumns; i++) {
+            columnNames[i] = String.format("c%02d", i);
+            cardinalities[i] = 2 + ((i * 7) % (MAX_CARDINALITY - 1));
+        }
+    }
+
+    /**
+     * @param numberOfRows number of rows to be generated
+     * @param numberOfColumns number of columns per row, at least {@link #MIN_NUMBER_OF_COLUMNS}
+     */
+    public SyntheticDataGenerator(int numberOfRows, int numberOfColumns) {
+        this(numberOfRows, numberOfColumns, DEFAULT_SEED);
+    }
+
+    /**
+     * @return number of rows to be generated
+     */
+    public int getNumberOfRows() {
+        return numberOfRows;
+    }
+
+    /**
+     * @return number of columns
+     */
+    public int getNumberOfColumns() {
+        return columnNames.length;
+    }
+
+    /**
+     * @return copy of the column names
+     */
+    public String[] getColumnNames() {
+        return columnNames.clone();
+    }
+
+    /**
+     * Creates all rows one by one and passes them to the consumer. The array passed to the consumer is reused, so the consumer must not keep it.
+     * 
+     * @param rowConsumer receives the values of each row in column order
+     */
+    public void forEachRow(Consumer<String[]> rowConsumer) {
+        SplittableRandom rand = new SplittableRandom(seed);
+        String[] row = new String[columnNames.length];
+        for (int rowIdx = 0; rowIdx < numberOfRows; rowIdx++) {
+            for (int colIdx = 0; colIdx < columnNames.length; colIdx++) {
+                double d = rand.nextDouble();
+                // squared: low indices are much more likely than high indices
+                row[colIdx] = "v" + (int) (d * d * cardinalities[colIdx]);
+            }
+            rowConsumer.accept(row);
+        }
+    }
+
+    /**
+     * Creates a list of DPAVs with random probabilities for each row and passes it to the consumer
+     * 
+     * @param rowConsumer receives the DPAVs of each row
+     */
+    public void forEachPbRow(Consumer<List<PbDpav>> rowConsumer) {
+        SplittableRandom probRand = new SplittableRandom(seed + 1);
+        forEachRow(row -> {
+            List<PbDpav> pbDpavs = new ArrayList<>(row.length);
+            for (int colIdx = 0; colIdx < row.length; colIdx++) {
+                // probabilities with only 2 decimals limit the size of the DPAV-dictionary
+                pbDpavs.add(new PbDpav(columnNames[colIdx], row[colIdx], (50 + probRand.nextInt(51)) / 100.0d));
+            }
+            rowConsumer.accept(pbDpavs);
+        });
+    }
+
+    /**
+     * Feeds all rows into the given feeder (does not close the feeder)
+     * 
+     * @param feeder destination
+     */
+    public void feed(DataStoreFeeder feeder) {
+        forEachRow(row -> feeder.addRow(columnNames, row));
+    }
+
+    /**
+     * Feeds all rows with random probabilities into the given feeder (does not close the feeder)
+     * 
+     * @param feeder destination
+     */
+    public void feed(PbDataStoreFeeder feeder) {
+        forEachPbRow(feeder::addRow);
+    }
+
+    /**
+     * Creates a new in-memory box ({@link DefaultDataStore}) with all the generated rows
+     * 
+     * @param falsePositiveRateEpsilon bloom filter false-positive rate
+     * @return box, fed and ready to be queried
+     */
+    public BloomBox createBloomBox(double falsePositiveRateEpsilon) {
+        BloomBox bloomBox = BloomBox.forNumberOfRows(numberOfRows).withNumberOfColumns(columnNames.length)
+                .withFalsePositiveRateEpsilon(falsePositiveRateEpsilon).build();
+        feed(bloomBox.getFeeder());
+        bloomBox.getFeeder().close();
+        return bloomBox;
+    }
+
+    /**
+     * Creates a new in-memory box with probabilities ({@link PbInMemoryDataStore}) with all the generated rows
+     * 
+     * @param falsePositiveRateEpsilon bloom filter false-positive rate
+     * @return box, fed and ready to be queried
+     */
+    public BloomBox createPbBloomBox(double falsePositiveRateEpsilon) {
+        // @formatter:off
+        BloomBox bloomBox = BloomBox.forNumberOfRows(numberOfRows)
+                                .withNumberOfColumns(columnNames.length)
+                                .withFalsePositiveRateEpsilon(falsePositiveRateEpsilon)
+                                .withDataStore((vSize, numOfRows) -> new PbInMemoryDataStore(vSize, numOfRows.intValue()))
+                                .withFeeder((config, store) -> new PbDataStoreFeeder(config, store, false))
+                                .build();
+        // @formatter:on
+        PbDataStoreFeeder feeder = (PbDataStoreFeeder) bloomBox.getFeeder();
+        feed(feeder);
+        feeder.close();
+        return bloomBox;
+    }
+
+    /**
+     * Writes all rows to a delimited text file with header line (compatible with {@link DelimitedFileFeeder})
+     * 
+     * @param file destination, will be overwritten
+     * @param delimiter column separator, e.g. ',' or '\t'
+     */
+    public void writeDelimitedFile(File file, char delimiter) {
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(String.join(String.valueOf(delimiter), columnNames));
+            writer.write('\n');
+            forEachRow(row -> {
+                try {
+                    writer.write(String.join(String.valueOf(delimiter), row));
+                    writer.write('\n');
+                }
+                catch (IOException ex) {
+                    throw new BloomBoxException("Error writing synthetic data to " + file, ex);
+                }
+            });
+        }
+        catch (IOException ex) {
+            throw new BloomBoxException("Error writing synthetic data to " + file, ex);
+        }
+    }
+
+    /**
+     * Returns a bundle with a representative mix of basic queries (equals, not-equals, IN, NOT IN, nested AND/OR), sub-queries and a post query.
+     * 
+     * @return new bundle based on the columns of this generator
+     */
+    public QueryBundle createQueryBundle() {
+        String script = """
+                frequent: c00=v0 AND c01!=v1
+                    byC02v0: c02=v0
+                    byC02v1: c02=v1
+                mixed: (c03=v0 OR c04=v1) AND c05 NOT IN (v0, v2, v3)
+                rare: c06 IN (v4, v5, v6) AND c07=v1 AND c01=v0
+                    byC00v0: c00=v0
+                combined: ${frequent} UNION ${rare}
+                """;
+        return QueryBundle.fromEasyScript(script);
+    }
+
+}
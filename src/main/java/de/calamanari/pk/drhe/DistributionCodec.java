@@ -19,6 +19,14 @@
 //@formatter:on
 package de.calamanari.pk.drhe;
 
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.stream.IntStream;
+
 import de.calamanari.pk.drhe.util.BitUtils;
 import de.calamanari.pk.drhe.util.PrimePatterns;
 import de.calamanari.pk.drhe.util.XoRotUtils;
@@ -28,6 +36,10 @@ import de.calamanari.pk.drhe.util.XoRotUtils;
  * <p/>
  * To achieve an even distribution while the mapping does not follow any simple pattern we leverage a combination of XOR operations with selected binary
  * {@link PrimePatterns} and rotations.
+ * <p/>
+ * Besides the single value methods there are bulk methods for encoding/decoding <code>long</code> and <code>int</code> values in place (arrays, buffers and
+ * memory segments). They produce the same results as the single value methods but apply each round to a whole block of values, so the JIT can unroll (and
+ * where supported vectorize) the loops. The <i>parallel</i> variants split large arrays into slices processed by the common fork-join pool.
  * 
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  *
@@ -79,6 +91,11 @@ public class DistributionCodec {
             PrimePatterns.P_LONGM_32_S1_200, PrimePatterns.P_LONGM_32_S0_031X, PrimePatterns.P_LONGM_32_S1_138, PrimePatterns.P_LONGM_32_S1_072X,
             PrimePatterns.P_LONGM_32_S0_077, PrimePatterns.P_LONGM_32_S1_050X };
 
+    /**
+     * Number of elements a parallel bulk operation hands to a single task, smaller arrays are processed by the calling thread
+     */
+    public static final int PARALLEL_SLICE_SIZE = 65_536;
+
     /**
      * Patterns for encoding/decoding long values, only treating the trailing 63 bits to keep the sign-bit unchanged.
      */
@@ -308,6 +325,378 @@ public class DistributionCodec {
         return l;
     }
 
+    /**
+     * Encodes all values of the given array in place, same result as calling {@link #encode(long)} for every element.
+     * 
+     * @param values to be encoded
+     */
+    public static final void encode(long[] values) {
+        encode(values, 0, values.length);
+    }
+
+    /**
+     * Encodes the values in the given range in place, same result as calling {@link #encode(long)} for every element.
+     * 
+     * @param values to be encoded
+     * @param fromIndex first index (inclusive)
+     * @param toIndex last index (exclusive)
+     * @throws ArrayIndexOutOfBoundsException if the range is not within the array
+     */
+    public static final void encode(long[] values, int fromIndex, int toIndex) {
+        checkRange(values.length, fromIndex, toIndex);
+        XoRotUtils.encode(values, fromIndex, toIndex, XOROT_LONG_PATTERNS);
+    }
+
+    /**
+     * Reverse operation of {@link #encode(long[])}
+     * 
+     * @param values to be decoded
+     */
+    public static final void decode(long[] values) {
+        decode(values, 0, values.length);
+    }
+
+    /**
+     * Reverse operation of {@link #encode(long[], int, int)}
+     * 
+     * @param values to be decoded
+     * @param fromIndex first index (inclusive)
+     * @param toIndex last index (exclusive)
+     * @throws ArrayIndexOutOfBoundsException if the range is not within the array
+     */
+    public static final void decode(long[] values, int fromIndex, int toIndex) {
+        checkRange(values.length, fromIndex, toIndex);
+        XoRotUtils.decode(values, fromIndex, toIndex, XOROT_LONG_PATTERNS);
+    }
+
+    /**
+     * Encodes all values of the given array in place, same result as calling {@link #encode(int)} for every element.
+     * 
+     * @param values to be encoded
+     */
+    public static final void encode(int[] values) {
+        encode(values, 0, values.length);
+    }
+
+    /**
+     * Encodes the values in the given range in place, same result as calling {@link #encode(int)} for every element.
+     * 
+     * @param values to be encoded
+     * @param fromIndex first index (inclusive)
+     * @param toIndex last index (exclusive)
+     * @throws ArrayIndexOutOfBoundsException if the range is not within the array
+     */
+    public static final void encode(int[] values, int fromIndex, int toIndex) {
+        checkRange(values.length, fromIndex, toIndex);
+        XoRotUtils.encode(values, fromIndex, toIndex, XOROT_INT_PATTERNS);
+    }
+
+    /**
+     * Reverse operation of {@link #encode(int[])}
+     * 
+     * @param values to be decoded
+     */
+    public static final void decode(int[] values) {
+        decode(values, 0, values.length);
+    }
+
+    /**
+     * Reverse operation of {@link #encode(int[], int, int)}
+     * 
+     * @param values to be decoded
+     * @param fromIndex first index (inclusive)
+     * @param toIndex last index (exclusive)
+     * @throws ArrayIndexOutOfBoundsException if the range is not within the array
+     */
+    public static final void decode(int[] values, int fromIndex, int toIndex) {
+        checkRange(values.length, fromIndex, toIndex);
+        XoRotUtils.decode(values, fromIndex, toIndex, XOROT_INT_PATTERNS);
+    }
+
+    /**
+     * Encodes all values of the given array in place like {@link #encode(long[])}, arrays larger than {@link #PARALLEL_SLICE_SIZE} are split into slices
+     * processed in parallel.
+     * 
+     * @param values to be encoded
+     */
+    public static final void encodeParallel(long[] values) {
+        int numberOfSlices = numberOfSlices(values.length);
+        if (numberOfSlices < 2) {
+            encode(values);
+        }
+        else {
+            IntStream.range(0, numberOfSlices).parallel().forEach(slice -> XoRotUtils.encode(values, slice * PARALLEL_SLICE_SIZE,
+                    Math.min(values.length, (slice + 1) * PARALLEL_SLICE_SIZE), XOROT_LONG_PATTERNS));
+        }
+    }
+
+    /**
+     * Reverse operation of {@link #encodeParallel(long[])}
+     * 
+     * @param values to be decoded
+     */
+    public static final void decodeParallel(long[] values) {
+        int numberOfSlices = numberOfSlices(values.length);
+        if (numberOfSlices < 2) {
+            decode(values);
+        }
+        else {
+            IntStream.range(0, numberOfSlices).parallel().forEach(slice -> XoRotUtils.decode(values, slice * PARALLEL_SLICE_SIZE,
+                    Math.min(values.length, (slice + 1) * PARALLEL_SLICE_SIZE), XOROT_LONG_PATTERNS));
+        }
+    }
+
+    /**
+     * Encodes all values of the given array in place like {@link #encode(int[])}, arrays larger than {@link #PARALLEL_SLICE_SIZE} are split into slices
+     * processed in parallel.
+     * 
+     * @param values to be encoded
+     */
+    public static final void encodeParallel(int[] values) {
+        int numberOfSlices = numberOfSlices(values.length);
+        if (numberOfSlices < 2) {
+            encode(values);
+        }
+        else {
+            IntStream.range(0, numberOfSlices).parallel().forEach(slice -> XoRotUtils.encode(values, slice * PARALLEL_SLICE_SIZE,
+                    Math.min(values.length, (slice + 1) * PARALLEL_SLICE_SIZE), XOROT_INT_PATTERNS));
+        }
+    }
+
+    /**
+     * Reverse operation of {@link #encodeParallel(int[])}
+     * 
+     * @param values to be decoded
+     */
+    public static final void decodeParallel(int[] values) {
+        int numberOfSlices = numberOfSlices(values.length);
+        if (numberOfSlices < 2) {
+            decode(values);
+        }
+        else {
+            IntStream.range(0, numberOfSlices).parallel().forEach(slice -> XoRotUtils.decode(values, slice * PARALLEL_SLICE_SIZE,
+                    Math.min(values.length, (slice + 1) * PARALLEL_SLICE_SIZE), XOROT_INT_PATTERNS));
+        }
+    }
+
+    /**
+     * Encodes the long values between the buffer's position and its limit in place (buffer's byte order), same result as calling {@link #encode(long)} for
+     * every value. Position and limit remain unchanged.
+     * 
+     * @param buffer with a multiple of 8 bytes remaining
+     * @throws IllegalArgumentException if the number of remaining bytes is not a multiple of 8
+     */
+    public static final void encodeLongs(ByteBuffer buffer) {
+        transformLongs(buffer, true);
+    }
+
+    /**
+     * Reverse operation of {@link #encodeLongs(ByteBuffer)}
+     * 
+     * @param buffer with a multiple of 8 bytes remaining
+     * @throws IllegalArgumentException if the number of remaining bytes is not a multiple of 8
+     */
+    public static final void decodeLongs(ByteBuffer buffer) {
+        transformLongs(buffer, false);
+    }
+
+    /**
+     * Encodes the int values between the buffer's position and its limit in place (buffer's byte order), same result as calling {@link #encode(int)} for
+     * every value. Position and limit remain unchanged.
+     * 
+     * @param buffer with a multiple of 4 bytes remaining
+     * @throws IllegalArgumentException if the number of remaining bytes is not a multiple of 4
+     */
+    public static final void encodeInts(ByteBuffer buffer) {
+        transformInts(buffer, true);
+    }
+
+    /**
+     * Reverse operation of {@link #encodeInts(ByteBuffer)}
+     * 
+     * @param buffer with a multiple of 4 bytes remaining
+     * @throws IllegalArgumentException if the number of remaining bytes is not a multiple of 4
+     */
+    public static final void decodeInts(ByteBuffer buffer) {
+        transformInts(buffer, false);
+    }
+
+    /**
+     * Encodes the long values of the given memory segment in place, same result as calling {@link #encode(long)} for every value.
+     * 
+     * @param segment with a size that is a multiple of 8 bytes (no alignment required)
+     * @param order byte order of the values in the segment
+     * @throws IllegalArgumentException if the size of the segment is not a multiple of 8
+     */
+    public static final void encodeLongs(MemorySegment segment, ByteOrder order) {
+        transformLongs(segment, order, true);
+    }
+
+    /**
+     * Reverse operation of {@link #encodeLongs(MemorySegment, ByteOrder)}
+     * 
+     * @param segment with a size that is a multiple of 8 bytes (no alignment required)
+     * @param order byte order of the values in the segment
+     * @throws IllegalArgumentException if the size of the segment is not a multiple of 8
+     */
+    public static final void decodeLongs(MemorySegment segment, ByteOrder order) {
+        transformLongs(segment, order, false);
+    }
+
+    /**
+     * Encodes the int values of the given memory segment in place, same result as calling {@link #encode(int)} for every value.
+     * 
+     * @param segment with a size that is a multiple of 4 bytes (no alignment required)
+     * @param order byte order of the values in the segment
+     * @throws IllegalArgumentException if the size of the segment is not a multiple of 4
+     */
+    public static final void encodeInts(MemorySegment segment, ByteOrder order) {
+        transformInts(segment, order, true);
+    }
+
+    /**
+     * Reverse operation of {@link #encodeInts(MemorySegment, ByteOrder)}
+     * 
+     * @param segment with a size that is a multiple of 4 bytes (no alignment required)
+     * @param order byte order of the values in the segment
+     * @throws IllegalArgumentException if the size of the segment is not a multiple of 4
+     */
+    public static final void decodeInts(MemorySegment segment, ByteOrder order) {
+        transformInts(segment, order, false);
+    }
+
+    /**
+     * Encodes or decodes the remaining longs of the buffer block-wise via a scratch array (bulk get/put)
+     * 
+     * @param buffer source and destination
+     * @param encode true to encode, false to decode
+     */
+    private static void transformLongs(ByteBuffer buffer, boolean encode) {
+        if (buffer.remaining() % Long.BYTES != 0) {
+            throw new IllegalArgumentException(
+                    String.format("The number of remaining bytes must be a multiple of %d, given: %d", Long.BYTES, buffer.remaining()));
+        }
+        LongBuffer view = buffer.slice().order(buffer.order()).asLongBuffer();
+        long[] block = new long[Math.min(view.remaining(), XoRotUtils.BULK_BLOCK_SIZE)];
+        while (view.hasRemaining()) {
+            int len = Math.min(view.remaining(), block.length);
+            int blockStart = view.position();
+            view.get(block, 0, len);
+            if (encode) {
+                XoRotUtils.encode(block, 0, len, XOROT_LONG_PATTERNS);
+            }
+            else {
+                XoRotUtils.decode(block, 0, len, XOROT_LONG_PATTERNS);
+            }
+            view.put(blockStart, block, 0, len);
+        }
+    }
+
+    /**
+     * Encodes or decodes the remaining ints of the buffer block-wise via a scratch array (bulk get/put)
+     * 
+     * @param buffer source and destination
+     * @param encode true to encode, false to decode
+     */
+    private static void transformInts(ByteBuffer buffer, boolean encode) {
+        if (buffer.remaining() % Integer.BYTES != 0) {
+            throw new IllegalArgumentException(
+                    String.format("The number of remaining bytes must be a multiple of %d, given: %d", Integer.BYTES, buffer.remaining()));
+        }
+        IntBuffer view = buffer.slice().order(buffer.order()).asIntBuffer();
+        int[] block = new int[Math.min(view.remaining(), XoRotUtils.BULK_BLOCK_SIZE)];
+        while (view.hasRemaining()) {
+            int len = Math.min(view.remaining(), block.length);
+            int blockStart = view.position();
+            view.get(block, 0, len);
+            if (encode) {
+                XoRotUtils.encode(block, 0, len, XOROT_INT_PATTERNS);
+            }
+            else {
+                XoRotUtils.decode(block, 0, len, XOROT_INT_PATTERNS);
+            }
+            view.put(blockStart, block, 0, len);
+        }
+    }
+
+    /**
+     * Encodes or decodes the longs of the segment block-wise via a scratch array (bulk copy)
+     * 
+     * @param segment source and destination
+     * @param order byte order of the values
+     * @param encode true to encode, false to decode
+     */
+    private static void transformLongs(MemorySegment segment, ByteOrder order, boolean encode) {
+        long size = segment.byteSize();
+        if (size % Long.BYTES != 0) {
+            throw new IllegalArgumentException(String.format("The segment size must be a multiple of %d, given: %d", Long.BYTES, size));
+        }
+        ValueLayout.OfLong layout = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(order);
+        long numberOfValues = size / Long.BYTES;
+        long[] block = new long[(int) Math.min(numberOfValues, XoRotUtils.BULK_BLOCK_SIZE)];
+        for (long idx = 0; idx < numberOfValues; idx = idx + block.length) {
+            int len = (int) Math.min(numberOfValues - idx, block.length);
+            long offset = idx * Long.BYTES;
+            MemorySegment.copy(segment, layout, offset, block, 0, len);
+            if (encode) {
+                XoRotUtils.encode(block, 0, len, XOROT_LONG_PATTERNS);
+            }
+            else {
+                XoRotUtils.decode(block, 0, len, XOROT_LONG_PATTERNS);
+            }
+            MemorySegment.copy(block, 0, segment, layout, offset, len);
+        }
+    }
+
+    /**
+     * Encodes or decodes the ints of the segment block-wise via a scratch array (bulk copy)
+     * 
+     * @param segment source and destination
+     * @param order byte order of the values
+     * @param encode true to encode, false to decode
+     */
+    private static void transformInts(MemorySegment segment, ByteOrder order, boolean encode) {
+        long size = segment.byteSize();
+        if (size % Integer.BYTES != 0) {
+            throw new IllegalArgumentException(String.format("The segment size must be a multiple of %d, given: %d", Integer.BYTES, size));
+        }
+        ValueLayout.OfInt layout = ValueLayout.JAVA_INT_UNALIGNED.withOrder(order);
+        long numberOfValues = size / Integer.BYTES;
+        int[] block = new int[(int) Math.min(numberOfValues, XoRotUtils.BULK_BLOCK_SIZE)];
+        for (long idx = 0; idx < numberOfValues; idx = idx + block.length) {
+            int len = (int) Math.min(numberOfValues - idx, block.length);
+            long offset = idx * Integer.BYTES;
+            MemorySegment.copy(segment, layout, offset, block, 0, len);
+            if (encode) {
+                XoRotUtils.encode(block, 0, len, XOROT_INT_PATTERNS);
+            }
+            else {
+                XoRotUtils.decode(block, 0, len, XOROT_INT_PATTERNS);
+            }
+            MemorySegment.copy(block, 0, segment, layout, offset, len);
+        }
+    }
+
+    /**
+     * @param length array length
+     * @return number of slices of {@link #PARALLEL_SLICE_SIZE} to cover the array
+     */
+    private static int numberOfSlices(int length) {
+        return (int) ((length + (long) PARALLEL_SLICE_SIZE - 1) / PARALLEL_SLICE_SIZE);
+    }
+
+    /**
+     * @param length array length
+     * @param fromIndex first index (inclusive)
+     * @param toIndex last index (exclusive)
+     * @throws ArrayIndexOutOfBoundsException if the range is not within the array
+     */
+    private static void checkRange(int length, int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > length || fromIndex > toIndex) {
+            throw new ArrayIndexOutOfBoundsException(String.format("Invalid range [%d, %d) for array length %d", fromIndex, toIndex, length));
+        }
+    }
+
     private DistributionCodec() {
         // no instances
     }
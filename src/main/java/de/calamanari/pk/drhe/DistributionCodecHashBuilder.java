@@ -19,6 +19,11 @@
 //@formatter:on
 package de.calamanari.pk.drhe;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
 import de.calamanari.pk.drhe.util.BitUtils;
 import de.calamanari.pk.drhe.util.PrimePatterns;
 
@@ -36,6 +41,12 @@ import de.calamanari.pk.drhe.util.PrimePatterns;
  * result look random even if the input is extremely uniform.</li>
  * </ul>
  * <p/>
+ * Full blocks from bulk input ({@link #update(ByteBuffer)}, {@link #update(byte[], int, int)}, {@link #update(long[])}) are taken as two long values without
+ * copying the bytes into the pending input buffer first.
+ * <p/>
+ * The {@link #treeHash(ByteBuffer, int)} methods split large inputs into leaves hashed independently on multiple threads and combine the leaf digests into the
+ * final value. This is a different hash function, the results are not comparable to the ones of {@link #hash(byte[])}.
+ * <p/>
  * Instances are stateful and must not be accessed concurrently by multiple threads.
  * <p/>
  * At <a href="https://mzsoltmolnar.github.io/random-bitstream-tester/">https://mzsoltmolnar.github.io/random-bitstream-tester/</a> you can check generated
@@ -57,6 +68,21 @@ public class DistributionCodecHashBuilder {
      */
     private static final long START_1 = PrimePatterns.P_LONGM_32_S0_004;
 
+    /**
+     * Default number of input bytes per leaf for the tree hash
+     */
+    public static final int DEFAULT_TREE_LEAF_SIZE = 1_048_576;
+
+    /**
+     * Prefix of every leaf in tree hash mode ("treeleaf"), separates the leaf digests from plain hash values
+     */
+    private static final long TREE_LEAF_DOMAIN = 0x747265656C656166L;
+
+    /**
+     * Prefix of the combination step in tree hash mode ("treeroot"), separates the tree hash values from plain hash values
+     */
+    private static final long TREE_ROOT_DOMAIN = 0x74726565726F6F74L;
+
     /**
      * first 64 bits of the block
      */
@@ -90,15 +116,13 @@ public class DistributionCodecHashBuilder {
      */
     private void rotate32() {
 
-        int i00 = BitUtils.getIntAt(hashPart0, 0);
-        int i01 = BitUtils.getIntAt(hashPart0, 1);
-
-        int i10 = BitUtils.getIntAt(hashPart1, 0);
-        int i11 = BitUtils.getIntAt(hashPart1, 1);
+        long part0 = hashPart0;
+        long part1 = hashPart1;
 
-        hashPart0 = BitUtils.composeLong(i11, i00);
+        // (i00, i01, i10, i11) -> (i11, i00, i01, i10)
+        hashPart0 = (part1 << 32) | (part0 >>> 32);
 
-        hashPart1 = BitUtils.composeLong(i01, i10);
+        hashPart1 = (part0 << 32) | (part1 >>> 32);
 
     }
 
@@ -124,6 +148,67 @@ public class DistributionCodecHashBuilder {
         return instance.getHashValue();
     }
 
+    /**
+     * Convenience method, hashes the input in tree hash mode with the {@link #DEFAULT_TREE_LEAF_SIZE}
+     * 
+     * @param input to be hashed
+     * @return 64 bits hash value
+     */
+    public static final long treeHash(byte[] input) {
+        return treeHash(ByteBuffer.wrap(input), DEFAULT_TREE_LEAF_SIZE);
+    }
+
+    /**
+     * Hashes the remaining bytes of the buffer in tree hash mode: the input gets split into leaves of the given size, the leaves get hashed in parallel and the
+     * leaf digests get hashed along with the input length and the leaf size to compute the final value.
+     * <p/>
+     * The result depends on the leaf size but not on the number of threads. It is a different hash function than the one of {@link #hash(byte[])}.
+     * <p/>
+     * The buffer's position remains unchanged.
+     * 
+     * @param input to be hashed
+     * @param leafSize number of input bytes per leaf, at least 16
+     * @return 64 bits hash value
+     */
+    public static final long treeHash(ByteBuffer input, int leafSize) {
+        if (leafSize < 16) {
+            throw new IllegalArgumentException("The leaf size must be at least 16, given: " + leafSize);
+        }
+        ByteBuffer data = input.slice();
+        int length = data.remaining();
+        int numberOfLeaves = (int) Math.max(1, (length + (long) leafSize - 1) / leafSize);
+        long[] leafDigests;
+        if (numberOfLeaves == 1) {
+            leafDigests = new long[] { hashLeaf(data, 0, leafSize) };
+        }
+        else {
+            leafDigests = IntStream.range(0, numberOfLeaves).parallel().mapToLong(leafIndex -> hashLeaf(data, leafIndex, leafSize)).toArray();
+        }
+        DistributionCodecHashBuilder root = new DistributionCodecHashBuilder();
+        root.update(TREE_ROOT_DOMAIN);
+        root.update((long) length);
+        root.update((long) leafSize);
+        root.update(leafDigests);
+        return root.getHashValue();
+    }
+
+    /**
+     * @param data complete input (not modified)
+     * @param leafIndex number of the leaf
+     * @param leafSize number of input bytes per leaf
+     * @return digest of the leaf
+     */
+    private static long hashLeaf(ByteBuffer data, int leafIndex, int leafSize) {
+        int offset = leafIndex * leafSize;
+        int len = Math.min(leafSize, data.limit() - offset);
+        DistributionCodecHashBuilder leaf = new DistributionCodecHashBuilder();
+        // domain and index fill the first block, so the leaf data remains aligned
+        leaf.update(TREE_LEAF_DOMAIN);
+        leaf.update((long) leafIndex);
+        leaf.update(data.slice(offset, len));
+        return leaf.getHashValue();
+    }
+
     /**
      * Finalizes and returns the current hash value.
      * <p/>
@@ -158,7 +243,11 @@ public class DistributionCodecHashBuilder {
         // The slowness results from the fact that it is very hard to induce enough randomness into the block.
         // The biggest problem I found is passing the "Runs Test".
 
-        if (bufferLen > 0) {
+        if (bufferLen == 16) {
+            consumeBlock(BitUtils.readLongAt(buffer, 0), BitUtils.readLongAt(buffer, 8));
+            bufferLen = 0;
+        }
+        else if (bufferLen > 0) {
 
             // Here we do the implicit padding with
             // All bytes to be padded (not from the input) we replace with the encoded bytes of their buffer position
@@ -218,28 +307,108 @@ public class DistributionCodecHashBuilder {
 
     }
 
+    /**
+     * Processes a full block of 16 input bytes (no padding), same as {@link #consumeBuffer()} with 16 bytes in the buffer.
+     * 
+     * @param block0 first 8 bytes
+     * @param block1 second 8 bytes
+     */
+    private void consumeBlock(long block0, long block1) {
+
+        // the bit count of 4 bytes equals the bit count of the composed integer
+        int i00 = (int) (block0 >>> 32);
+        inputBitCount = inputBitCount + Integer.bitCount(i00);
+        i00 = i00 ^ ((int) inputBitCount);
+
+        int i01 = (int) block0;
+        inputBitCount = inputBitCount + Integer.bitCount(i01);
+        i01 = i01 ^ ((int) inputBitCount);
+
+        int i10 = (int) (block1 >>> 32);
+        inputBitCount = inputBitCount + Integer.bitCount(i10);
+        i10 = i10 ^ ((int) inputBitCount);
+
+        int i11 = (int) block1;
+        inputBitCount = inputBitCount + Integer.bitCount(i11);
+        i11 = i11 ^ ((int) inputBitCount);
+
+        long input0 = DistributionCodec.encode((((long) i00) << 32) | Integer.toUnsignedLong(i01));
+        long input1 = DistributionCodec.encode((((long) i10) << 32) | Integer.toUnsignedLong(i11));
+
+        hashPart0 = hashPart0 ^ input0;
+        hashPart1 = hashPart1 ^ input1;
+
+        rotate32();
+    }
+
     /**
      * Updates the internal state with the given bytes
      * 
      * @param bytes input
      */
     public void update(byte[] bytes) {
-        int inputLen = bytes.length;
-        int offset = 0;
-        while (bufferLen + inputLen >= 16) {
-            for (int i = 0; i < 16 - bufferLen; i++) {
-                buffer[bufferLen + i] = bytes[offset + i];
+        update(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Updates the internal state with the given range of bytes
+     * 
+     * @param bytes input
+     * @param offset first byte to be taken
+     * @param length number of bytes to be taken
+     */
+    public void update(byte[] bytes, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        update(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Updates the internal state with the remaining bytes of the given buffer, afterwards the buffer's position equals its limit.
+     * <p/>
+     * The result only depends on the sequence of bytes, not on the buffer's byte order.
+     * 
+     * @param input bytes
+     */
+    public void update(ByteBuffer input) {
+        while (bufferLen > 0 && input.hasRemaining()) {
+            update(input.get());
+        }
+        boolean reverse = (input.order() != ByteOrder.BIG_ENDIAN);
+        while (input.remaining() >= 16) {
+            long block0 = input.getLong();
+            long block1 = input.getLong();
+            if (reverse) {
+                block0 = Long.reverseBytes(block0);
+                block1 = Long.reverseBytes(block1);
             }
-            offset = offset + (16 - bufferLen);
-            inputLen = inputLen - (16 - bufferLen);
-            bufferLen = 16;
-            consumeBuffer();
+            consumeBlock(block0, block1);
+        }
+        int len = input.remaining();
+        if (len > 0) {
+            input.get(buffer, bufferLen, len);
+            bufferLen = bufferLen + len;
         }
-        if (bufferLen + inputLen > 0) {
-            for (int i = 0; i < (bytes.length - offset); i++) {
-                buffer[bufferLen + i] = bytes[i + offset];
+    }
+
+    /**
+     * Updates the internal state with the given values, same result as calling {@link #update(long)} for every value.
+     * 
+     * @param values input
+     */
+    public void update(long[] values) {
+        int idx = 0;
+        if (bufferLen == 8 && values.length > 0) {
+            // completes the pending block
+            update(values[0]);
+            idx = 1;
+        }
+        if (bufferLen == 0) {
+            for (; idx + 1 < values.length; idx = idx + 2) {
+                consumeBlock(values[idx], values[idx + 1]);
             }
-            bufferLen = bufferLen + inputLen;
+        }
+        for (; idx < values.length; idx++) {
+            update(values[idx]);
         }
     }
 
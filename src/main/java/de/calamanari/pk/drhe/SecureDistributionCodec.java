@@ -32,6 +32,8 @@ import de.calamanari.pk.drhe.util.BitUtils;
  * <p/>
  * Instances are stateful and must not be accessed concurrently by multiple threads.
  * <p/>
+ * For data that should not be held in memory see {@link SecureDistributionStreamCodec}.
+ * <p/>
  * At <a href="https://mzsoltmolnar.github.io/random-bitstream-tester/">https://mzsoltmolnar.github.io/random-bitstream-tester/</a> you can check generated
  * output for randomness based on a <a href="https://csrc.nist.gov/Projects/Random-Bit-Generation/Documentation-and-Software">NIST test suite</a>.
  * 
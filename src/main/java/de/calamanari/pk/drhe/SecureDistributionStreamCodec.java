@@ -0,0 +1,893 @@
+//@formatter:off
+/*
+ * SecureDistributionStreamCodec
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.drhe;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import de.calamanari.pk.drhe.SecureDistributionCodec.DecodingException;
+
+/**
+ * Streaming variant of the {@link SecureDistributionCodec} for large data (e.g. files of several GB) that should not be loaded into memory.
+ * <p/>
+ * The {@link SecureDistributionCodec} uses the hash of the whole content as the salt for the one-time-pad, so it needs all the data before it can write the
+ * first byte, and the pad is a single sequence of random values. This codec instead splits the content into <b>frames</b> of fixed size. Each frame gets its
+ * own one-time-pad from a {@link DistributionCodecRandomGenerator} seeded with a value derived from the passcode, a random salt and the frame index. Thus,
+ * frames can be encoded and decoded independently on multiple threads while only a few frames are held in memory at a time.
+ * <p/>
+ * Format:
+ * <ul>
+ * <li>Stream header, 16 bytes: salt (64 bits, not encrypted), followed by a magic number (for validation) and the frame size (encrypted, 32 bits each).</li>
+ * <li>Frames: 8 bytes frame header (frame index and content length, encrypted), followed by the content bytes (each encoded with
+ * {@link DistributionCodec#encode(byte)}, padded to a multiple of 8 and encrypted with the frame's one-time-pad).</li>
+ * <li>All frames but the last one contain exactly <i>frame size</i> content bytes, the last frame contains less (maybe 0). This way a stream truncated at a
+ * frame boundary will be detected.</li>
+ * </ul>
+ * The format is <b>not</b> compatible with the one of the {@link SecureDistributionCodec}.
+ * <p/>
+ * The stream methods read the frames sequentially and write the results in order, the channel methods let every worker read and write its frames at their
+ * positions. Be aware that decoding to a stream cannot undo any output already written when it detects a corrupted frame later on.
+ * <p/>
+ * Like the {@link SecureDistributionCodec} this is solely meant for demonstration purposes.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class SecureDistributionStreamCodec {
+
+    /**
+     * Default number of content bytes per frame
+     */
+    public static final int DEFAULT_FRAME_SIZE = 262_144;
+
+    /**
+     * Maximum number of content bytes per frame
+     */
+    public static final int MAX_FRAME_SIZE = 67_108_864;
+
+    /**
+     * To easily detect that we cannot decode data, we encode a MAGIC number into the stream header. When we don't see this value during decoding we know the
+     * data is either corrupt or the given password is wrong.
+     */
+    private static final int MAGIC = 0xDC5EC;
+
+    /**
+     * Length of the stream header in bytes
+     */
+    private static final int STREAM_HEADER_LENGTH = 16;
+
+    /**
+     * Length of a frame header in bytes
+     */
+    private static final int FRAME_HEADER_LENGTH = 8;
+
+    /**
+     * Frame index used to derive the one-time-pad for the stream header
+     */
+    private static final long STREAM_HEADER_INDEX = -1;
+
+    /**
+     * {@link DistributionCodec#encode(byte)} for all byte values (index: unsigned byte value)
+     */
+    private static final byte[] ENCODED_BYTES = new byte[256];
+
+    /**
+     * {@link DistributionCodec#decode(byte)} for all byte values (index: unsigned byte value)
+     */
+    private static final byte[] DECODED_BYTES = new byte[256];
+    static {
+        for (int i = 0; i < 256; i++) {
+            ENCODED_BYTES[i] = DistributionCodec.encode((byte) i);
+            DECODED_BYTES[i] = DistributionCodec.decode((byte) i);
+        }
+    }
+
+    /**
+     * Source for the salt values
+     */
+    private static final SecureRandom SALT_SOURCE = new SecureRandom();
+
+    /**
+     * Encodes the input stream with the {@link #DEFAULT_FRAME_SIZE} on all available processors. The streams won't be closed.
+     * 
+     * @param input data to be encoded
+     * @param output destination for the encoded data
+     * @param password for encoding
+     * @return number of bytes read from the input
+     * @throws IOException on any problem with the streams
+     */
+    public static long encode(InputStream input, OutputStream output, String password) throws IOException {
+        return encode(input, output, password, DEFAULT_FRAME_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Encodes the input stream. The streams won't be closed.
+     * 
+     * @param input data to be encoded
+     * @param output destination for the encoded data
+     * @param password for encoding
+     * @param frameSize number of content bytes per frame, multiple of 8, max. {@link #MAX_FRAME_SIZE}
+     * @param numberOfThreads number of threads encoding the frames, at most <i>numberOfThreads + 1</i> frames will be held in memory
+     * @return number of bytes read from the input
+     * @throws IOException on any problem with the streams
+     */
+    public static long encode(InputStream input, OutputStream output, String password, int frameSize, int numberOfThreads) throws IOException {
+        validateFrameSize(frameSize, IllegalArgumentException::new);
+        long salt = SALT_SOURCE.nextLong();
+        long streamSeed = createStreamSeed(password, salt);
+        output.write(createStreamHeader(salt, streamSeed, frameSize));
+        return new StreamEncoder(streamSeed, frameSize, numberOfThreads).run(input, output);
+    }
+
+    /**
+     * Decodes the input stream (previously created by any of the encode methods) on all available processors. The streams won't be closed.
+     * 
+     * @param input data to be decoded
+     * @param output destination for the original content
+     * @param password for decoding
+     * @return number of bytes written to the output
+     * @throws IOException on any problem with the streams
+     * @throws DecodingException if the password is wrong or the input is corrupted
+     */
+    public static long decode(InputStream input, OutputStream output, String password) throws IOException {
+        return decode(input, output, password, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Decodes the input stream (previously created by any of the encode methods). The streams won't be closed.
+     * 
+     * @param input data to be decoded
+     * @param output destination for the original content
+     * @param password for decoding
+     * @param numberOfThreads number of threads decoding the frames, at most <i>numberOfThreads + 1</i> frames will be held in memory
+     * @return number of bytes written to the output
+     * @throws IOException on any problem with the streams
+     * @throws DecodingException if the password is wrong or the input is corrupted
+     */
+    public static long decode(InputStream input, OutputStream output, String password, int numberOfThreads) throws IOException {
+        byte[] header = input.readNBytes(STREAM_HEADER_LENGTH);
+        if (header.length < STREAM_HEADER_LENGTH) {
+            throw new DecodingException("Unrecognized input format.");
+        }
+        ByteBuffer bb = ByteBuffer.wrap(header);
+        long streamSeed = createStreamSeed(password, bb.getLong(0));
+        int frameSize = readFrameSize(streamSeed, bb.getLong(8));
+        return new StreamDecoder(streamSeed, frameSize, numberOfThreads).run(input, output);
+    }
+
+    /**
+     * Encodes the content from the source channel's position to its end with the {@link #DEFAULT_FRAME_SIZE} on all available processors and writes the
+     * result at the destination channel's position. Afterwards both positions are behind the processed data. The channels won't be closed.
+     * 
+     * @param source data to be encoded
+     * @param destination for the encoded data
+     * @param password for encoding
+     * @return number of bytes read from the source
+     * @throws IOException on any problem with the channels
+     */
+    public static long encode(FileChannel source, FileChannel destination, String password) throws IOException {
+        return encode(source, destination, password, DEFAULT_FRAME_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Encodes the content from the source channel's position to its end and writes the result at the destination channel's position. Afterwards both
+     * positions are behind the processed data. The channels won't be closed.
+     * 
+     * @param source data to be encoded
+     * @param destination for the encoded data
+     * @param password for encoding
+     * @param frameSize number of content bytes per frame, multiple of 8, max. {@link #MAX_FRAME_SIZE}
+     * @param numberOfThreads number of threads reading, encoding and writing frames (one frame in memory per thread)
+     * @return number of bytes read from the source
+     * @throws IOException on any problem with the channels
+     */
+    public static long encode(FileChannel source, FileChannel destination, String password, int frameSize, int numberOfThreads) throws IOException {
+        validateFrameSize(frameSize, IllegalArgumentException::new);
+        long salt = SALT_SOURCE.nextLong();
+        long streamSeed = createStreamSeed(password, salt);
+        long destinationStart = destination.position();
+        writeFully(destination, ByteBuffer.wrap(createStreamHeader(salt, streamSeed, frameSize)), destinationStart);
+        destination.position(destinationStart + STREAM_HEADER_LENGTH);
+        return new ChannelEncoder(streamSeed, frameSize, numberOfThreads).run(source, destination);
+    }
+
+    /**
+     * Decodes the data from the source channel's position to its end (previously created by any of the encode methods) on all available processors and writes
+     * the original content at the destination channel's position. Afterwards both positions are behind the processed data. The channels won't be closed.
+     * 
+     * @param source data to be decoded
+     * @param destination for the original content
+     * @param password for decoding
+     * @return number of bytes written to the destination
+     * @throws IOException on any problem with the channels
+     * @throws DecodingException if the password is wrong or the input is corrupted
+     */
+    public static long decode(FileChannel source, FileChannel destination, String password) throws IOException {
+        return decode(source, destination, password, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Decodes the data from the source channel's position to its end (previously created by any of the encode methods) and writes the original content at the
+     * destination channel's position. Afterwards both positions are behind the processed data. The channels won't be closed.
+     * 
+     * @param source data to be decoded
+     * @param destination for the original content
+     * @param password for decoding
+     * @param numberOfThreads number of threads reading, decoding and writing frames (one frame in memory per thread)
+     * @return number of bytes written to the destination
+     * @throws IOException on any problem with the channels
+     * @throws DecodingException if the password is wrong or the input is corrupted
+     */
+    public static long decode(FileChannel source, FileChannel destination, String password, int numberOfThreads) throws IOException {
+        long sourceStart = source.position();
+        if (source.size() - sourceStart < STREAM_HEADER_LENGTH) {
+            throw new DecodingException("Unrecognized input format.");
+        }
+        ByteBuffer bb = ByteBuffer.allocate(STREAM_HEADER_LENGTH);
+        readFully(source, bb, sourceStart);
+        long streamSeed = createStreamSeed(password, bb.getLong(0));
+        int frameSize = readFrameSize(streamSeed, bb.getLong(8));
+        source.position(sourceStart + STREAM_HEADER_LENGTH);
+        return new ChannelDecoder(streamSeed, frameSize, numberOfThreads).run(source, destination);
+    }
+
+    /**
+     * @param password for encoding/decoding
+     * @param salt random value from the stream header
+     * @return seed all the frame seeds get derived from
+     */
+    private static long createStreamSeed(String password, long salt) {
+        long passcode = DistributionCodecHashBuilder.hash(password.getBytes(StandardCharsets.UTF_8));
+        DistributionCodecHashBuilder builder = new DistributionCodecHashBuilder();
+        builder.update(passcode);
+        builder.update(salt);
+        return builder.getHashValue();
+    }
+
+    /**
+     * @param streamSeed seed of the stream
+     * @param frameIndex frame number (or {@link #STREAM_HEADER_INDEX})
+     * @return new random generator for the one-time-pad of the given frame
+     */
+    private static DistributionCodecRandomGenerator createFrameRandomGenerator(long streamSeed, long frameIndex) {
+        DistributionCodecHashBuilder builder = new DistributionCodecHashBuilder();
+        builder.update(streamSeed);
+        builder.update(frameIndex);
+        return new DistributionCodecRandomGenerator(builder.getHashValue());
+    }
+
+    /**
+     * @param salt random value, not encrypted
+     * @param streamSeed seed of the stream
+     * @param frameSize number of content bytes per frame
+     * @return stream header
+     */
+    private static byte[] createStreamHeader(long salt, long streamSeed, int frameSize) {
+        long frameSizeInfo = (((long) MAGIC) << 32) | frameSize;
+        ByteBuffer bb = ByteBuffer.allocate(STREAM_HEADER_LENGTH);
+        bb.putLong(0, salt);
+        bb.putLong(8, frameSizeInfo ^ createFrameRandomGenerator(streamSeed, STREAM_HEADER_INDEX).nextValue());
+        return bb.array();
+    }
+
+    /**
+     * @param streamSeed seed of the stream
+     * @param frameSizeInfo encrypted second half of the stream header
+     * @return frame size
+     * @throws DecodingException if the password is wrong or the header is corrupted
+     */
+    private static int readFrameSize(long streamSeed, long frameSizeInfo) {
+        long value = frameSizeInfo ^ createFrameRandomGenerator(streamSeed, STREAM_HEADER_INDEX).nextValue();
+        if ((int) (value >>> 32) != MAGIC) {
+            throw new DecodingException("Wrong password!");
+        }
+        int frameSize = (int) value;
+        validateFrameSize(frameSize, DecodingException::new);
+        return frameSize;
+    }
+
+    /**
+     * @param frameSize to be checked
+     * @param exceptionFactory creates the exception to be thrown if the frame size is invalid
+     */
+    private static void validateFrameSize(int frameSize, Function<String, RuntimeException> exceptionFactory) {
+        if (frameSize < 8 || frameSize > MAX_FRAME_SIZE || frameSize % 8 != 0) {
+            throw exceptionFactory.apply(String.format("The frame size must be a multiple of 8 in range [8, %d], given: %d", MAX_FRAME_SIZE, frameSize));
+        }
+    }
+
+    /**
+     * @param length number of bytes
+     * @return length rounded up to the next multiple of 8
+     */
+    private static int padded(int length) {
+        return (length + 7) & ~7;
+    }
+
+    /**
+     * Reads from the channel at the given position until the buffer is full
+     * 
+     * @param channel source
+     * @param buffer destination (position 0, limit number of bytes to be read)
+     * @param position in the channel
+     * @throws IOException on any problem with the channel or if the channel ends early
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            int len = channel.read(buffer, pos);
+            if (len < 0) {
+                throw new EOFException("Unexpected end of channel at position " + pos);
+            }
+            pos = pos + len;
+        }
+    }
+
+    /**
+     * Writes the buffer's content to the channel at the given position
+     * 
+     * @param channel destination
+     * @param buffer source (position 0, limit number of bytes to be written)
+     * @param position in the channel
+     * @throws IOException on any problem with the channel
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            pos = pos + channel.write(buffer, pos);
+        }
+    }
+
+    /**
+     * @param numberOfThreads number of workers
+     * @return executor with daemon threads
+     */
+    private static ExecutorService createExecutor(int numberOfThreads) {
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be positive, given: " + numberOfThreads);
+        }
+        return Executors.newFixedThreadPool(numberOfThreads, r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            t.setName("SecureDistributionStreamCodec-Worker:@" + Integer.toHexString(t.hashCode()));
+            return t;
+        });
+    }
+
+    /**
+     * Waits for the worker and unwraps any problem
+     * 
+     * @param <T> result type
+     * @param future of the worker
+     * @return result
+     * @throws IOException if the worker failed with an IOException
+     */
+    private static <T> T awaitWorkerResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a worker.", ex);
+        }
+        catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException ioe) {
+                throw ioe;
+            }
+            else if (cause instanceof RuntimeException rte) {
+                throw rte;
+            }
+            throw new IOException("Worker failed.", cause);
+        }
+    }
+
+    private SecureDistributionStreamCodec() {
+        // no instances
+    }
+
+    /**
+     * A {@link Frame} holds the content and the encoded bytes of a single frame, instances get reused for subsequent frames.
+     */
+    private static final class Frame {
+
+        /**
+         * original content
+         */
+        private final byte[] content;
+
+        /**
+         * frame header and encoded content
+         */
+        private final byte[] encoded;
+
+        /**
+         * view on the encoded data to access the 8-byte chunks
+         */
+        private final ByteBuffer encodedBuffer;
+
+        /**
+         * number of content bytes
+         */
+        private int contentLength;
+
+        /**
+         * number of encoded bytes incl. frame header
+         */
+        private int encodedLength;
+
+        /**
+         * number of the frame in the stream
+         */
+        private long frameIndex;
+
+        /**
+         * @param frameSize number of content bytes per frame
+         */
+        private Frame(int frameSize) {
+            this.content = new byte[frameSize];
+            this.encoded = new byte[frameSize + FRAME_HEADER_LENGTH];
+            this.encodedBuffer = ByteBuffer.wrap(encoded);
+        }
+
+        /**
+         * Encodes the {@link #contentLength} bytes of the {@link #content} and updates the {@link #encodedLength}
+         * 
+         * @param streamSeed seed of the stream
+         */
+        private void encode(long streamSeed) {
+            DistributionCodecRandomGenerator rand = createFrameRandomGenerator(streamSeed, frameIndex);
+            long frameHeader = (frameIndex << 32) | contentLength;
+            encodedBuffer.putLong(0, frameHeader ^ rand.nextValue());
+            int paddedLength = padded(contentLength);
+            for (int i = 0; i < contentLength; i++) {
+                encoded[FRAME_HEADER_LENGTH + i] = ENCODED_BYTES[content[i] & 0xFF];
+            }
+            for (int i = contentLength; i < paddedLength; i++) {
+                encoded[FRAME_HEADER_LENGTH + i] = 0;
+            }
+            encodedLength = FRAME_HEADER_LENGTH + paddedLength;
+            for (int offset = FRAME_HEADER_LENGTH; offset < encodedLength; offset = offset + 8) {
+                encodedBuffer.putLong(offset, encodedBuffer.getLong(offset) ^ rand.nextValue());
+            }
+        }
+
+        /**
+         * Decodes the {@link #encodedLength} bytes of the {@link #encoded} data and updates the {@link #contentLength}
+         * 
+         * @param streamSeed seed of the stream
+         * @throws DecodingException if the frame is corrupted
+         */
+        private void decode(long streamSeed) {
+            DistributionCodecRandomGenerator rand = createFrameRandomGenerator(streamSeed, frameIndex);
+            long frameHeader = encodedBuffer.getLong(0) ^ rand.nextValue();
+            int len = (int) frameHeader;
+            if ((int) (frameHeader >>> 32) != (int) frameIndex || len < 0 || len > content.length || encodedLength != FRAME_HEADER_LENGTH + padded(len)) {
+                throw new DecodingException("Input corrupted.");
+            }
+            for (int offset = FRAME_HEADER_LENGTH; offset < encodedLength; offset = offset + 8) {
+                encodedBuffer.putLong(offset, encodedBuffer.getLong(offset) ^ rand.nextValue());
+            }
+            for (int i = 0; i < len; i++) {
+                content[i] = DECODED_BYTES[encoded[FRAME_HEADER_LENGTH + i] & 0xFF];
+            }
+            contentLength = len;
+        }
+
+    }
+
+    /**
+     * Base class for the stream processors: the caller's thread reads the frames in order, the workers transform them, and the caller's thread writes the
+     * results in order. At most <i>numberOfThreads + 1</i> frames are in progress.
+     */
+    private abstract static class AbstractStreamProcessor {
+
+        /**
+         * seed of the stream
+         */
+        protected final long streamSeed;
+
+        /**
+         * number of content bytes per frame
+         */
+        protected final int frameSize;
+
+        /**
+         * number of worker threads
+         */
+        private final int numberOfThreads;
+
+        /**
+         * set by {@link #readFrame(Frame, InputStream)} when no further frames follow
+         */
+        protected boolean endOfInput = false;
+
+        /**
+         * number of content bytes read or written
+         */
+        protected long contentSize = 0;
+
+        /**
+         * @param streamSeed seed of the stream
+         * @param frameSize number of content bytes per frame
+         * @param numberOfThreads number of worker threads
+         */
+        protected AbstractStreamProcessor(long streamSeed, int frameSize, int numberOfThreads) {
+            this.streamSeed = streamSeed;
+            this.frameSize = frameSize;
+            this.numberOfThreads = numberOfThreads;
+        }
+
+        /**
+         * @param input source
+         * @param output destination
+         * @return number of content bytes
+         * @throws IOException on any problem with the streams
+         */
+        long run(InputStream input, OutputStream output) throws IOException {
+            ExecutorService executor = createExecutor(numberOfThreads);
+            try {
+                Frame[] frames = new Frame[numberOfThreads + 1];
+                Deque<Future<Frame>> pending = new ArrayDeque<>(frames.length);
+                long frameIndex = 0;
+                while (!endOfInput) {
+                    if (pending.size() == frames.length) {
+                        writeFrame(awaitWorkerResult(pending.poll()), output);
+                    }
+                    int slot = (int) (frameIndex % frames.length);
+                    if (frames[slot] == null) {
+                        frames[slot] = new Frame(frameSize);
+                    }
+                    Frame frame = frames[slot];
+                    frame.frameIndex = frameIndex;
+                    if (readFrame(frame, input)) {
+                        pending.add(executor.submit(() -> {
+                            transform(frame);
+                            return frame;
+                        }));
+                        frameIndex++;
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    writeFrame(awaitWorkerResult(pending.poll()), output);
+                }
+                complete();
+                return contentSize;
+            }
+            finally {
+                executor.shutdownNow();
+            }
+        }
+
+        /**
+         * Reads the next frame and sets {@link #endOfInput} if no further frames follow
+         * 
+         * @param frame to be filled
+         * @param input source
+         * @return true if the frame must be processed
+         * @throws IOException on any problem with the stream
+         */
+        protected abstract boolean readFrame(Frame frame, InputStream input) throws IOException;
+
+        /**
+         * Encodes or decodes the frame (runs on a worker thread)
+         * 
+         * @param frame to be transformed
+         */
+        protected abstract void transform(Frame frame);
+
+        /**
+         * @param frame transformed frame
+         * @param output destination
+         * @throws IOException on any problem with the stream
+         */
+        protected abstract void writeFrame(Frame frame, OutputStream output) throws IOException;
+
+        /**
+         * Called after the last frame has been written
+         */
+        protected void complete() {
+            // no-op by default
+        }
+
+    }
+
+    /**
+     * Encodes a stream
+     */
+    private static final class StreamEncoder extends AbstractStreamProcessor {
+
+        /**
+         * @param streamSeed seed of the stream
+         * @param frameSize number of content bytes per frame
+         * @param numberOfThreads number of worker threads
+         */
+        private StreamEncoder(long streamSeed, int frameSize, int numberOfThreads) {
+            super(streamSeed, frameSize, numberOfThreads);
+        }
+
+        @Override
+        protected boolean readFrame(Frame frame, InputStream input) throws IOException {
+            frame.contentLength = input.readNBytes(frame.content, 0, frameSize);
+            contentSize = contentSize + frame.contentLength;
+            // the last frame must be shorter than the frame size, so we need it even if it is empty
+            endOfInput = frame.contentLength < frameSize;
+            return true;
+        }
+
+        @Override
+        protected void transform(Frame frame) {
+            frame.encode(streamSeed);
+        }
+
+        @Override
+        protected void writeFrame(Frame frame, OutputStream output) throws IOException {
+            output.write(frame.encoded, 0, frame.encodedLength);
+        }
+
+    }
+
+    /**
+     * Decodes a stream
+     */
+    private static final class StreamDecoder extends AbstractStreamProcessor {
+
+        /**
+         * true after writing a frame shorter than the frame size, which must be the last one
+         */
+        private boolean lastFrameWritten = false;
+
+        /**
+         * @param streamSeed seed of the stream
+         * @param frameSize number of content bytes per frame
+         * @param numberOfThreads number of worker threads
+         */
+        private StreamDecoder(long streamSeed, int frameSize, int numberOfThreads) {
+            super(streamSeed, frameSize, numberOfThreads);
+        }
+
+        @Override
+        protected boolean readFrame(Frame frame, InputStream input) throws IOException {
+            frame.encodedLength = input.readNBytes(frame.encoded, 0, frame.encoded.length);
+            endOfInput = frame.encodedLength < frame.encoded.length;
+            return frame.encodedLength > 0;
+        }
+
+        @Override
+        protected void transform(Frame frame) {
+            frame.decode(streamSeed);
+        }
+
+        @Override
+        protected void writeFrame(Frame frame, OutputStream output) throws IOException {
+            if (lastFrameWritten) {
+                throw new DecodingException("Input corrupted.");
+            }
+            output.write(frame.content, 0, frame.contentLength);
+            contentSize = contentSize + frame.contentLength;
+            lastFrameWritten = frame.contentLength < frameSize;
+        }
+
+        @Override
+        protected void complete() {
+            if (!lastFrameWritten) {
+                // no frames or truncated at a frame boundary
+                throw new DecodingException("Input corrupted.");
+            }
+        }
+
+    }
+
+    /**
+     * Base class for the channel processors: every worker takes the next frame index, reads the frame at its position, transforms it and writes the result at
+     * its position. Each worker holds a single frame in memory.
+     */
+    private abstract static class AbstractChannelProcessor {
+
+        /**
+         * seed of the stream
+         */
+        protected final long streamSeed;
+
+        /**
+         * number of content bytes per frame
+         */
+        protected final int frameSize;
+
+        /**
+         * number of worker threads
+         */
+        private final int numberOfThreads;
+
+        /**
+         * @param streamSeed seed of the stream
+         * @param frameSize number of content bytes per frame
+         * @param numberOfThreads number of worker threads
+         */
+        protected AbstractChannelProcessor(long streamSeed, int frameSize, int numberOfThreads) {
+            this.streamSeed = streamSeed;
+            this.frameSize = frameSize;
+            this.numberOfThreads = numberOfThreads;
+        }
+
+        /**
+         * Processes all frames on the worker threads, after a failure the workers won't start any further frames
+         * 
+         * @param numberOfFrames total number of frames
+         * @param task to be executed for every frame
+         * @throws IOException on any problem with the channels
+         */
+        protected void processFrames(long numberOfFrames, FrameTask task) throws IOException {
+            ExecutorService executor = createExecutor(numberOfThreads);
+            try {
+                AtomicLong nextFrameIndex = new AtomicLong();
+                List<Future<Void>> futures = new ArrayList<>(numberOfThreads);
+                for (int i = 0; i < numberOfThreads; i++) {
+                    futures.add(executor.submit(() -> {
+                        Frame frame = new Frame(frameSize);
+                        for (long idx = nextFrameIndex.getAndIncrement(); idx < numberOfFrames; idx = nextFrameIndex.getAndIncrement()) {
+                            frame.frameIndex = idx;
+                            try {
+                                task.process(frame);
+                            }
+                            catch (IOException | RuntimeException ex) {
+                                nextFrameIndex.set(numberOfFrames);
+                                throw ex;
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<Void> future : futures) {
+                    awaitWorkerResult(future);
+                }
+            }
+            finally {
+                // no interrupts, this would close the channels
+                executor.shutdown();
+            }
+        }
+
+        /**
+         * @param source to read from
+         * @param destination to write to
+         * @return number of content bytes
+         * @throws IOException on any problem with the channels
+         */
+        abstract long run(FileChannel source, FileChannel destination) throws IOException;
+
+    }
+
+    /**
+     * Work to be done for a single frame
+     */
+    @FunctionalInterface
+    private interface FrameTask {
+
+        /**
+         * @param frame with the index set
+         * @throws IOException on any problem with the channels
+         */
+        void process(Frame frame) throws IOException;
+
+    }
+
+    /**
+     * Encodes a channel
+     */
+    private static final class ChannelEncoder extends AbstractChannelProcessor {
+
+        /**
+         * @param streamSeed seed of the stream
+         * @param frameSize number of content bytes per frame
+         * @param numberOfThreads number of worker threads
+         */
+        private ChannelEncoder(long streamSeed, int frameSize, int numberOfThreads) {
+            super(streamSeed, frameSize, numberOfThreads);
+        }
+
+        @Override
+        long run(FileChannel source, FileChannel destination) throws IOException {
+            long sourceStart = source.position();
+            long destinationStart = destination.position();
+            long contentSize = source.size() - sourceStart;
+            // the last frame must be shorter than the frame size, so we need it even if it is empty
+            long numberOfFrames = contentSize / frameSize + 1;
+            int encodedFrameSize = frameSize + FRAME_HEADER_LENGTH;
+            processFrames(numberOfFrames, frame -> {
+                long contentOffset = frame.frameIndex * frameSize;
+                frame.contentLength = (int) Math.min(frameSize, contentSize - contentOffset);
+                readFully(source, ByteBuffer.wrap(frame.content, 0, frame.contentLength), sourceStart + contentOffset);
+                frame.encode(streamSeed);
+                writeFully(destination, ByteBuffer.wrap(frame.encoded, 0, frame.encodedLength), destinationStart + frame.frameIndex * encodedFrameSize);
+            });
+            int lastContentLength = (int) (contentSize % frameSize);
+            source.position(sourceStart + contentSize);
+            destination.position(destinationStart + (numberOfFrames - 1) * encodedFrameSize + FRAME_HEADER_LENGTH + padded(lastContentLength));
+            return contentSize;
+        }
+
+    }
+
+    /**
+     * Decodes a channel
+     */
+    private static final class ChannelDecoder extends AbstractChannelProcessor {
+
+        /**
+         * @param streamSeed seed of the stream
+         * @param frameSize number of content bytes per frame
+         * @param numberOfThreads number of worker threads
+         */
+        private ChannelDecoder(long streamSeed, int frameSize, int numberOfThreads) {
+            super(streamSeed, frameSize, numberOfThreads);
+        }
+
+        @Override
+        long run(FileChannel source, FileChannel destination) throws IOException {
+            long sourceStart = source.position();
+            long destinationStart = destination.position();
+            long encodedSize = source.size() - sourceStart;
+            int encodedFrameSize = frameSize + FRAME_HEADER_LENGTH;
+            if (encodedSize < FRAME_HEADER_LENGTH || encodedSize % 8 != 0) {
+                throw new DecodingException("Input corrupted.");
+            }
+            long numberOfFrames = (encodedSize + encodedFrameSize - 1) / encodedFrameSize;
+            AtomicInteger lastContentLength = new AtomicInteger();
+            processFrames(numberOfFrames, frame -> {
+                long encodedOffset = frame.frameIndex * encodedFrameSize;
+                frame.encodedLength = (int) Math.min(encodedFrameSize, encodedSize - encodedOffset);
+                readFully(source, ByteBuffer.wrap(frame.encoded, 0, frame.encodedLength), sourceStart + encodedOffset);
+                frame.decode(streamSeed);
+                boolean lastFrame = (frame.frameIndex == numberOfFrames - 1);
+                if (lastFrame != (frame.contentLength < frameSize)) {
+                    throw new DecodingException("Input corrupted.");
+                }
+                if (lastFrame) {
+                    lastContentLength.set(frame.contentLength);
+                }
+                writeFully(destination, ByteBuffer.wrap(frame.content, 0, frame.contentLength), destinationStart + frame.frameIndex * frameSize);
+            });
+            long contentSize = (numberOfFrames - 1) * frameSize + lastContentLength.get();
+            source.position(sourceStart + encodedSize);
+            destination.position(destinationStart + contentSize);
+            return contentSize;
+        }
+
+    }
+
+}
@@ -30,7 +30,9 @@ import java.util.Comparator;
  * This implementation avoids {@link BigInteger} during the collection phase for performance reasons.<br/>
  * Nevertheless, it is capable of handling the full Long-range.
  * <p>
- * Due to its comprehensive internal state, an instance of {@link GenStats} must not be accessed concurrently by multiple threads.
+ * Due to its comprehensive internal state, an instance of {@link GenStats} must not be accessed concurrently by multiple threads.<br/>
+ * Instead, every thread can collect the statistics for a range of subsequent values into its own instance, and the partial results can be combined with
+ * {@link #merge(GenStats)} (see {@link GenStatsCollector}).
  * 
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  *
@@ -62,6 +64,11 @@ public class GenStats {
      */
     private long countSuc = 0;
 
+    /**
+     * first computed value, required to compute the successor distance when merging with the statistics of the preceding values
+     */
+    private long firstDestValue = 0;
+
     /**
      * last computed value
      */
@@ -348,7 +355,10 @@ public class GenStats {
         consumeSourceDistance(dist64(destValue, srcValue));
         count++;
 
-        if (count > 1 && (!ignoreSignTransitionSuccessorDistance || (destValue < 0 && prevDestValue < 0) || (destValue >= 0 && prevDestValue >= 0))) {
+        if (count == 1) {
+            firstDestValue = destValue;
+        }
+        else if (isSuccessorDistanceRelevant(prevDestValue, destValue)) {
             consumeSuccessorDistance(dist64(destValue, prevDestValue));
             countSuc++;
         }
@@ -360,6 +370,95 @@ public class GenStats {
         prevDestValue = destValue;
     }
 
+    /**
+     * @param prevValue previously computed value
+     * @param value computed value
+     * @return true if the distance between the two values shall be included in the successor statistics
+     */
+    private boolean isSuccessorDistanceRelevant(long prevValue, long value) {
+        return !ignoreSignTransitionSuccessorDistance || (value < 0 && prevValue < 0) || (value >= 0 && prevValue >= 0);
+    }
+
+    /**
+     * Combines the statistics of the other instance into this instance, the other instance remains unchanged.
+     * <p>
+     * The other instance must have collected the values <b>immediately following</b> the values consumed by this instance (same order as when consuming all
+     * values with a single instance). Then the result is the same as if a single instance had consumed all the values, including the successor distance
+     * between the last value of this instance and the first value of the other instance. The operation is associative, so any number of partial results (e.g.
+     * collected by multiple threads for subsequent ranges) can be combined in order.
+     * 
+     * @param other statistics of the subsequent values
+     * @return this instance
+     * @throws IllegalArgumentException if the other instance was created with a different <code>ignoreSignTransitionSuccessorDistance</code> setting
+     */
+    public GenStats merge(GenStats other) {
+        if (other.ignoreSignTransitionSuccessorDistance != this.ignoreSignTransitionSuccessorDistance) {
+            throw new IllegalArgumentException("Cannot merge statistics with different settings for ignoreSignTransitionSuccessorDistance.");
+        }
+        if (other.count == 0) {
+            return this;
+        }
+        if (this.count == 0) {
+            this.firstDestValue = other.firstDestValue;
+        }
+        else if (isSuccessorDistanceRelevant(this.prevDestValue, other.firstDestValue)) {
+            consumeSuccessorDistance(dist64(other.firstDestValue, this.prevDestValue));
+            countSuc++;
+        }
+
+        count = count + other.count;
+        countSuc = countSuc + other.countSuc;
+        selfMappedCount = selfMappedCount + other.selfMappedCount;
+        prevDestValue = other.prevDestValue;
+
+        srcDistSumOF = srcDistSumOF + other.srcDistSumOF;
+        srcDistSum = srcDistSum + other.srcDistSum;
+        if (srcDistSum < 0) {
+            srcDistSum = srcDistSum - Long.MAX_VALUE;
+            srcDistSumOF++;
+        }
+
+        sucDistSumOF = sucDistSumOF + other.sucDistSumOF;
+        sucDistSum = sucDistSum + other.sucDistSum;
+        if (sucDistSum < 0) {
+            sucDistSum = sucDistSum - Long.MAX_VALUE;
+            sucDistSumOF++;
+        }
+
+        if (other.minSrcDist >= 0 && (minSrcDist < 0 || compareDist(other.minSrcDist, other.minSrcDistOF, minSrcDist, minSrcDistOF) < 0)) {
+            minSrcDist = other.minSrcDist;
+            minSrcDistOF = other.minSrcDistOF;
+        }
+        if (other.maxSrcDist >= 0 && (maxSrcDist < 0 || compareDist(other.maxSrcDist, other.maxSrcDistOF, maxSrcDist, maxSrcDistOF) > 0)) {
+            maxSrcDist = other.maxSrcDist;
+            maxSrcDistOF = other.maxSrcDistOF;
+        }
+        if (other.minSucDist >= 0 && (minSucDist < 0 || compareDist(other.minSucDist, other.minSucDistOF, minSucDist, minSucDistOF) < 0)) {
+            minSucDist = other.minSucDist;
+            minSucDistOF = other.minSucDistOF;
+        }
+        if (other.maxSucDist >= 0 && (maxSucDist < 0 || compareDist(other.maxSucDist, other.maxSucDistOF, maxSucDist, maxSucDistOF) > 0)) {
+            maxSucDist = other.maxSucDist;
+            maxSucDistOF = other.maxSucDistOF;
+        }
+        return this;
+    }
+
+    /**
+     * Compares two stored (non-negative) distances with their overflow flags
+     * @param dist1 first distance
+     * @param dist1OF overflow indicator of the first distance
+     * @param dist2 second distance
+     * @param dist2OF overflow indicator of the second distance
+     * @return see {@link Comparator#compare(Object, Object)} contract
+     */
+    private static int compareDist(long dist1, boolean dist1OF, long dist2, boolean dist2OF) {
+        if (dist1OF != dist2OF) {
+            return dist1OF ? 1 : -1;
+        }
+        return Long.compare(dist1, dist2);
+    }
+
     /**
      * handles the computed source distance
      * @param srcDist current distance
@@ -0,0 +1,137 @@
+//@formatter:off
+/*
+ * GenStatsCollector
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.drhe.util;
+
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.LongStream;
+
+/**
+ * Collects {@link GenStats} for large numbers of values on all available processors.
+ * <p/>
+ * The values get split into slices of {@value #SLICE_SIZE} subsequent values. Every slice is collected into its own {@link GenStats} instance (common
+ * fork-join pool), and the partial statistics get combined in order with {@link GenStats#merge(GenStats)}. Thus the result is the same as if a single
+ * instance had consumed all values one after another, independent of the number of threads.
+ * <p/>
+ * Examples:
+ * 
+ * <pre>
+ * // all int values
+ * GenStats stats = GenStatsCollector.collect(1L &lt;&lt; 32, idx -&gt; (int) idx, src -&gt; DistributionCodec.encode((int) src), false);
+ * 
+ * // 2^32 random values, virtual sources across the long range
+ * GenStats stats = GenStatsCollector.collectGenerated(1L &lt;&lt; 32, idx -&gt; Long.MIN_VALUE + (idx &lt;&lt; 32),
+ *         slice -&gt; new DistributionCodecRandomGenerator(slice)::nextValue, false);
+ * </pre>
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class GenStatsCollector {
+
+    /**
+     * Number of subsequent values collected by a single task
+     */
+    public static final long SLICE_SIZE = 16_777_216;
+
+    /**
+     * Computes the statistics for the values at the positions <code>0 .. numberOfValues-1</code>: for each position <code>idx</code> the source value is
+     * <code>sourceValueAt(idx)</code>, the computed value is <code>function(source value)</code>.
+     * 
+     * @param numberOfValues number of values to be consumed
+     * @param sourceValueAt maps the position to the source value
+     * @param function computes the value from the source value (e.g. encoding), must be thread-safe
+     * @param ignoreSignTransitionSuccessorDistance see {@link GenStats#GenStats(boolean)}
+     * @return statistics of all values
+     */
+    public static GenStats collect(long numberOfValues, LongUnaryOperator sourceValueAt, LongUnaryOperator function,
+            boolean ignoreSignTransitionSuccessorDistance) {
+        return collectSlices(numberOfValues, sourceValueAt, slice -> function, ignoreSignTransitionSuccessorDistance);
+    }
+
+    /**
+     * Computes the statistics for values taken from generators (e.g. random generators whose values depend on the previous ones): every slice gets its own
+     * generator created from the slice number, and the source value for the position <code>idx</code> is <code>sourceValueAt(idx)</code>.
+     * <p/>
+     * The result depends on the generators created for the slices, so it is the same for every run (given the factory creates deterministic generators) but
+     * differs from the result of a single generator producing all the values.
+     * 
+     * @param numberOfValues number of values to be consumed
+     * @param sourceValueAt maps the position to the source value
+     * @param generatorFactory creates the generator for the given slice number, the generator will be called {@value #SLICE_SIZE} times (or less for the
+     *            last slice) on a single thread
+     * @param ignoreSignTransitionSuccessorDistance see {@link GenStats#GenStats(boolean)}
+     * @return statistics of all values
+     */
+    public static GenStats collectGenerated(long numberOfValues, LongUnaryOperator sourceValueAt, LongFunction<LongSupplier> generatorFactory,
+            boolean ignoreSignTransitionSuccessorDistance) {
+        return collectSlices(numberOfValues, sourceValueAt, slice -> {
+            LongSupplier generator = generatorFactory.apply(slice);
+            return src -> generator.getAsLong();
+        }, ignoreSignTransitionSuccessorDistance);
+    }
+
+    /**
+     * @param numberOfValues number of values to be consumed
+     * @param sourceValueAt maps the position to the source value
+     * @param functionFactory creates the function that computes the values from the source values of the given slice (called in order of the positions)
+     * @param ignoreSignTransitionSuccessorDistance see {@link GenStats#GenStats(boolean)}
+     * @return statistics of all values
+     */
+    private static GenStats collectSlices(long numberOfValues, LongUnaryOperator sourceValueAt, LongFunction<LongUnaryOperator> functionFactory,
+            boolean ignoreSignTransitionSuccessorDistance) {
+        if (numberOfValues < 0) {
+            throw new IllegalArgumentException("The number of values must not be negative, given: " + numberOfValues);
+        }
+        long numberOfSlices = (numberOfValues + SLICE_SIZE - 1) / SLICE_SIZE;
+        // ordered stream, reduce combines neighboring partial results only
+        return LongStream.range(0, numberOfSlices)
+                .parallel()
+                .mapToObj(slice -> collectSlice(slice, numberOfValues, sourceValueAt, functionFactory.apply(slice), ignoreSignTransitionSuccessorDistance))
+                .reduce(GenStats::merge)
+                .orElseGet(() -> new GenStats(ignoreSignTransitionSuccessorDistance));
+    }
+
+    /**
+     * @param slice number of the slice
+     * @param numberOfValues total number of values
+     * @param sourceValueAt maps the position to the source value
+     * @param function computes the values of the slice from the source values
+     * @param ignoreSignTransitionSuccessorDistance see {@link GenStats#GenStats(boolean)}
+     * @return statistics of the slice
+     */
+    private static GenStats collectSlice(long slice, long numberOfValues, LongUnaryOperator sourceValueAt, LongUnaryOperator function,
+            boolean ignoreSignTransitionSuccessorDistance) {
+        GenStats stats = new GenStats(ignoreSignTransitionSuccessorDistance);
+        long fromIdx = slice * SLICE_SIZE;
+        long toIdx = Math.min(numberOfValues, fromIdx + SLICE_SIZE);
+        for (long idx = fromIdx; idx < toIdx; idx++) {
+            long src = sourceValueAt.applyAsLong(idx);
+            stats.consume(src, function.applyAsLong(src));
+        }
+        return stats;
+    }
+
+    private GenStatsCollector() {
+        // static utility
+    }
+
+}
@@ -35,6 +35,11 @@ package de.calamanari.pk.drhe.util;
  */
 public class XoRotUtils {
 
+    /**
+     * Number of elements the bulk operations process round by round before moving on to the next block (fits into the L1 cache)
+     */
+    public static final int BULK_BLOCK_SIZE = 1_024;
+
     /**
      * Encodes the value potentially modifying all its bits, so the value may switch from negative to positive or vice-versa.
      * @param source to be encoded
@@ -283,6 +288,89 @@ public class XoRotUtils {
         return res;
     }
 
+    /**
+     * Encodes the values in the given range in place, the result for each element is the same as {@link #encode(long, long...)}.
+     * <p>
+     * The rounds are applied block-wise (one round for all values of a block of {@value #BULK_BLOCK_SIZE} elements before the next round) to give the JIT
+     * simple loops without dependencies between the iterations.
+     * @param values to be encoded
+     * @param fromIndex first index (inclusive)
+     * @param toIndex last index (exclusive)
+     * @param patterns values for XOR
+     */
+    public static final void encode(long[] values, int fromIndex, int toIndex, long... patterns) {
+        for (int blockStart = fromIndex; blockStart < toIndex; blockStart = blockStart + BULK_BLOCK_SIZE) {
+            int blockEnd = Math.min(toIndex, blockStart + BULK_BLOCK_SIZE);
+            for (int i = 0; i < patterns.length; i++) {
+                long pattern = patterns[i];
+                for (int j = blockStart; j < blockEnd; j++) {
+                    long res = values[j] ^ pattern;
+                    values[j] = BitUtils.rotateBitsLeft(res, BitUtils.bitCount(res));
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes the values in the given range in place, the result for each element is the same as {@link #decode(long, long...)}.
+     * @param values to be decoded
+     * @param fromIndex first index (inclusive)
+     * @param toIndex last index (exclusive)
+     * @param patterns values for XOR
+     */
+    public static final void decode(long[] values, int fromIndex, int toIndex, long... patterns) {
+        for (int blockStart = fromIndex; blockStart < toIndex; blockStart = blockStart + BULK_BLOCK_SIZE) {
+            int blockEnd = Math.min(toIndex, blockStart + BULK_BLOCK_SIZE);
+            for (int i = patterns.length - 1; i >= 0; i--) {
+                long pattern = patterns[i];
+                for (int j = blockStart; j < blockEnd; j++) {
+                    long res = values[j];
+                    values[j] = BitUtils.rotateBitsRight(res, BitUtils.bitCount(res)) ^ pattern;
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes the values in the given range in place, the result for each element is the same as {@link #encode(int, int...)}.
+     * @param values to be encoded
+     * @param fromIndex first index (inclusive)
+     * @param toIndex last index (exclusive)
+     * @param patterns values for XOR
+     */
+    public static final void encode(int[] values, int fromIndex, int toIndex, int... patterns) {
+        for (int blockStart = fromIndex; blockStart < toIndex; blockStart = blockStart + BULK_BLOCK_SIZE) {
+            int blockEnd = Math.min(toIndex, blockStart + BULK_BLOCK_SIZE);
+            for (int i = 0; i < patterns.length; i++) {
+                int pattern = patterns[i];
+                for (int j = blockStart; j < blockEnd; j++) {
+                    int res = values[j] ^ pattern;
+                    values[j] = BitUtils.rotateBitsLeft(res, BitUtils.bitCount(res));
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes the values in the given range in place, the result for each element is the same as {@link #decode(int, int...)}.
+     * @param values to be decoded
+     * @param fromIndex first index (inclusive)
+     * @param toIndex last index (exclusive)
+     * @param patterns values for XOR
+     */
+    public static final void decode(int[] values, int fromIndex, int toIndex, int... patterns) {
+        for (int blockStart = fromIndex; blockStart < toIndex; blockStart = blockStart + BULK_BLOCK_SIZE) {
+            int blockEnd = Math.min(toIndex, blockStart + BULK_BLOCK_SIZE);
+            for (int i = patterns.length - 1; i >= 0; i--) {
+                int pattern = patterns[i];
+                for (int j = blockStart; j < blockEnd; j++) {
+                    int res = values[j];
+                    values[j] = BitUtils.rotateBitsRight(res, BitUtils.bitCount(res)) ^ pattern;
+                }
+            }
+        }
+    }
+
     private XoRotUtils() {
         // no instances
     }
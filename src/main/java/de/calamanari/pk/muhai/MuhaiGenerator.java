@@ -21,9 +21,11 @@ package de.calamanari.pk.muhai;
 
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.stream.IntStream;
 
 import de.calamanari.pk.util.JavaWrapperType;
 
@@ -130,6 +132,11 @@ public class MuhaiGenerator implements Serializable {
      */
     public static final byte IND_OTHER_VALUE = 4;
 
+    /**
+     * Number of rows per task of {@link #createKeysParallel(long[], Object[][])}
+     */
+    public static final int PARALLEL_SLICE_SIZE = 4_096;
+
     /**
      * byte array of size 0
      */
@@ -361,7 +368,111 @@ public class MuhaiGenerator implements Serializable {
      * @return key prefixed hash value as a long following the spec of {@link MuhaiGenerator}
      */
     public long createKey(Object... attributes) {
-        byte[] hashBytes = computeHashBytes(attributes);
+        return hashBytesToKey(computeHashBytes(attributes));
+    }
+
+    /**
+     * Computes the keys for a batch of rows given as columns, the key of row <code>i</code> is the same as
+     * <code>createKey(columns[0][i], columns[1][i], ..., columns[n-1][i])</code>.
+     * <p>
+     * The batch reuses the digest and its output buffer for all rows and does not create any varargs arrays. Strings with only ASCII characters and integral
+     * numbers (Long, Integer, Short, Byte) get encoded into a reused buffer instead of creating new byte arrays (only for the {@link MuhaiGenerator} itself,
+     * sub-classes always use the TEMPLATE METHODS {@link #initDigest()} and {@link #addToDigest(MessageDigest, Object)}).
+     * 
+     * @param result destination of the keys, result[i] for row i, length &gt;= number of rows
+     * @param columns attribute values by column (NOT EMPTY, NOT NULL), each column must have the same number of rows, each value can be null
+     * @throws MuhaiException if the columns were empty/null or the hashing failed for any reason
+     */
+    public void createKeys(long[] result, Object[]... columns) {
+        createKeys(0, numberOfRows(columns), result, columns);
+    }
+
+    /**
+     * Computes the keys for the given range of rows, see {@link #createKeys(long[], Object[][])}
+     * 
+     * @param fromRow first row (inclusive)
+     * @param toRow last row (exclusive)
+     * @param result destination of the keys, result[i] for row i, length &gt;= toRow
+     * @param columns attribute values by column (NOT EMPTY, NOT NULL), each column must have at least toRow rows, each value can be null
+     * @throws MuhaiException if the columns were empty/null or the hashing failed for any reason
+     */
+    public void createKeys(int fromRow, int toRow, long[] result, Object[]... columns) {
+        validateBatch(fromRow, toRow, result, columns);
+        BatchHasher hasher = new BatchHasher(initDigest(), this.getClass() == MuhaiGenerator.class);
+        try {
+            for (int row = fromRow; row < toRow; row++) {
+                result[row] = hashBytesToKey(hasher.computeHashBytes(columns, row));
+            }
+        }
+        catch (RuntimeException ex) {
+            throw new MuhaiException("Unexpected error during attribute hashing.", ex);
+        }
+    }
+
+    /**
+     * Parallel variant of {@link #createKeys(long[], Object[][])}: the rows get split into slices of {@value #PARALLEL_SLICE_SIZE} rows processed by the
+     * common fork-join pool. The keys are the same as computed sequentially.
+     * 
+     * @param result destination of the keys, result[i] for row i, length &gt;= number of rows
+     * @param columns attribute values by column (NOT EMPTY, NOT NULL), each column must have the same number of rows, each value can be null
+     * @throws MuhaiException if the columns were empty/null or the hashing failed for any reason
+     */
+    public void createKeysParallel(long[] result, Object[]... columns) {
+        int numberOfRows = numberOfRows(columns);
+        validateBatch(0, numberOfRows, result, columns);
+        int numberOfSlices = (numberOfRows + PARALLEL_SLICE_SIZE - 1) / PARALLEL_SLICE_SIZE;
+        IntStream.range(0, numberOfSlices).parallel().forEach(slice -> {
+            int fromRow = slice * PARALLEL_SLICE_SIZE;
+            createKeys(fromRow, Math.min(numberOfRows, fromRow + PARALLEL_SLICE_SIZE), result, columns);
+        });
+    }
+
+    /**
+     * @param columns attribute values by column
+     * @return number of rows of the first column
+     * @throws MuhaiException if the columns were empty/null
+     */
+    private static int numberOfRows(Object[]... columns) {
+        if (columns == null || columns.length == 0 || columns[0] == null) {
+            throw new MuhaiException("The columns must not be null or empty (cannot hash \"nothing\"), found: " + Arrays.toString(columns));
+        }
+        return columns[0].length;
+    }
+
+    /**
+     * Checks the arguments of a batch
+     * 
+     * @param fromRow first row (inclusive)
+     * @param toRow last row (exclusive)
+     * @param result destination of the keys
+     * @param columns attribute values by column
+     * @throws MuhaiException if the columns were empty/null or too short
+     * @throws IllegalArgumentException if the range was invalid or the result too short
+     */
+    private static void validateBatch(int fromRow, int toRow, long[] result, Object[]... columns) {
+        numberOfRows(columns);
+        if (fromRow < 0 || fromRow > toRow) {
+            throw new IllegalArgumentException(String.format("Invalid range of rows, given: fromRow=%d, toRow=%d", fromRow, toRow));
+        }
+        if (result == null || result.length < toRow) {
+            throw new IllegalArgumentException(String.format("The result array must have at least %d elements, given: %s", toRow,
+                    (result == null ? "null" : String.valueOf(result.length))));
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] == null || columns[i].length < toRow) {
+                throw new MuhaiException(String.format("Column %d must have at least %d rows, given: %s", i, toRow,
+                        (columns[i] == null ? "null" : String.valueOf(columns[i].length))));
+            }
+        }
+    }
+
+    /**
+     * Turns the hash into a key, see {@link MuhaiGenerator} spec
+     * 
+     * @param hashBytes at least 8 bytes
+     * @return key
+     */
+    private long hashBytesToKey(byte[] hashBytes) {
         // we fill the bit-sequence (8 bytes, 64 bits) subsequently from the left
         long res = 0;
         for (int i = 0; i < 7; i++) {
@@ -390,6 +501,156 @@ public class MuhaiGenerator implements Serializable {
                 + (hashPepper.length == 0 ? "<NONE>" : Arrays.toString(hashPepper)) + ", size of keyspace: " + this.prefix.getSizeOfKeyspace() + ")";
     }
 
+    /**
+     * Holds the digest and the reused buffers while hashing the rows of a batch (one instance per batch and thread)
+     */
+    private class BatchHasher {
+
+        /**
+         * digest for all rows
+         */
+        private final MessageDigest md;
+
+        /**
+         * true if Strings and integral numbers can be encoded directly (not for sub-classes)
+         */
+        private final boolean directEncodingEnabled;
+
+        /**
+         * output buffer of the digest, null if the digest length is unknown
+         */
+        private final byte[] hashBuffer;
+
+        /**
+         * reused buffer for encoding attributes
+         */
+        private byte[] encodingBuffer = new byte[256];
+
+        /**
+         * number of valid bytes in {@link #encodingBuffer}
+         */
+        private int encodedLength = 0;
+
+        /**
+         * @param md digest
+         * @param directEncodingEnabled true if Strings and integral numbers can be encoded directly
+         */
+        BatchHasher(MessageDigest md, boolean directEncodingEnabled) {
+            this.md = md;
+            this.directEncodingEnabled = directEncodingEnabled;
+            int digestLength = md.getDigestLength();
+            this.hashBuffer = digestLength > 0 ? new byte[digestLength] : null;
+        }
+
+        /**
+         * @param columns attribute values by column
+         * @param row index
+         * @return hash of the attributes of the row, may be the reused buffer
+         */
+        byte[] computeHashBytes(Object[][] columns, int row) {
+            if (hashPepper.length > 0) {
+                md.update(hashPepper);
+            }
+            for (int i = 0; i < columns.length; i++) {
+                md.update(IND_SPACER);
+                Object srcValue = columns[i][row];
+                if (!directEncodingEnabled || !addToDigestDirect(srcValue)) {
+                    addToDigest(md, srcValue);
+                }
+            }
+            if (hashBuffer == null) {
+                return md.digest();
+            }
+            try {
+                md.digest(hashBuffer, 0, hashBuffer.length);
+            }
+            catch (DigestException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return hashBuffer;
+        }
+
+        /**
+         * Adds the value the same way as {@link MuhaiGenerator#addToDigest(MessageDigest, Object)}, but without creating byte arrays
+         * 
+         * @param srcValue value to be added
+         * @return true if the value was added, false if the value must be added the regular way
+         */
+        private boolean addToDigestDirect(Object srcValue) {
+            if (srcValue instanceof String str && encodeAscii(str)) {
+                md.update(IND_STRING_VALUE);
+            }
+            else if ((srcValue instanceof Long || srcValue instanceof Integer || srcValue instanceof Short || srcValue instanceof Byte)
+                    && encodeDecimal(((Number) srcValue).longValue())) {
+                md.update(IND_OTHER_VALUE);
+            }
+            else {
+                return false;
+            }
+            if (encodedLength > 0) {
+                md.update(encodingBuffer, 0, encodedLength);
+            }
+            return true;
+        }
+
+        /**
+         * Encodes the string into the buffer (UTF-8 is identical to ASCII for these characters) with escaped spacers
+         * 
+         * @param str source
+         * @return true on success, false if the string contains any non-ASCII characters
+         */
+        private boolean encodeAscii(String str) {
+            int len = str.length();
+            if (encodingBuffer.length < len * 2) {
+                encodingBuffer = new byte[len * 2];
+            }
+            int pos = 0;
+            for (int i = 0; i < len; i++) {
+                char ch = str.charAt(i);
+                if (ch >= 0x80) {
+                    return false;
+                }
+                encodingBuffer[pos] = (byte) ch;
+                pos++;
+                if (ch == IND_SPACER) {
+                    encodingBuffer[pos] = IND_SPACER;
+                    pos++;
+                }
+            }
+            encodedLength = pos;
+            return true;
+        }
+
+        /**
+         * Encodes the value like {@link Long#toString(long)}
+         * 
+         * @param value source
+         * @return true on success, false for {@link Long#MIN_VALUE}
+         */
+        private boolean encodeDecimal(long value) {
+            if (value == Long.MIN_VALUE) {
+                return false;
+            }
+            long remaining = Math.abs(value);
+            int numberOfDigits = 1;
+            for (long limit = 10; numberOfDigits < 19 && remaining >= limit; limit = limit * 10) {
+                numberOfDigits++;
+            }
+            int pos = (value < 0 ? 1 : 0) + numberOfDigits;
+            encodedLength = pos;
+            do {
+                pos--;
+                encodingBuffer[pos] = (byte) ('0' + (remaining % 10));
+                remaining = remaining / 10;
+            } while (remaining > 0);
+            if (value < 0) {
+                encodingBuffer[0] = '-';
+            }
+            return true;
+        }
+
+    }
+
     /**
      * The {@link MuhaiGenerator} has minimal thread-local state.
      * <p>
@@ -19,6 +19,9 @@
 //@formatter:on
 package de.calamanari.pk.muhai.collider;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -63,7 +66,7 @@ public class AnonymousCountingKeyCollision implements KeyCollision<AnonymousCoun
             try {
                 long firstCollisionPositionParsed = Long.parseUnsignedLong(line.substring(0, delimPos));
                 long numberOfKeyOccurrencesParsed = Long.parseUnsignedLong(line.substring(delimPos + 1));
-                res = new AnonymousCountingKeyCollision(0L, firstCollisionPositionParsed, numberOfKeyOccurrencesParsed);
+                res = new AnonymousCountingKeyCollision(firstCollisionPositionParsed, numberOfKeyOccurrencesParsed);
             }
             catch (RuntimeException ex) {
                 throw new ItemConversionException(String.format("Line corrupted, expected <unsigned long>#<unsigned long>, given: %s", line), ex);
@@ -73,6 +76,39 @@ public class AnonymousCountingKeyCollision implements KeyCollision<AnonymousCoun
 
     };
 
+    /**
+     * Codec for writing {@link AnonymousCountingKeyCollision}s as fixed-length binary records to a file and read it back
+     */
+    public static final ItemBinaryCodec<AnonymousCountingKeyCollision> BINARY_CODEC = new ItemBinaryCodec<>() {
+
+        @Override
+        public int getRecordLength() {
+            return 16;
+        }
+
+        @Override
+        public void writeItem(AnonymousCountingKeyCollision item, DataOutput out) throws IOException {
+            if (item == null) {
+                throw new ItemConversionException("Cannot encode null");
+            }
+            out.writeLong(item.firstCollisionPosition);
+            out.writeLong(item.numberOfKeyOccurrences);
+        }
+
+        @Override
+        public AnonymousCountingKeyCollision readItem(DataInput in) throws IOException {
+            long firstCollisionPositionRead = in.readLong();
+            long numberOfKeyOccurrencesRead = in.readLong();
+            try {
+                return new AnonymousCountingKeyCollision(firstCollisionPositionRead, numberOfKeyOccurrencesRead);
+            }
+            catch (RuntimeException ex) {
+                throw new ItemConversionException("Record corrupted", ex);
+            }
+        }
+
+    };
+
     /**
      * position of the second occurrence of the key
      */
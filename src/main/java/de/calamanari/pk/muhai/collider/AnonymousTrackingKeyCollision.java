@@ -19,6 +19,9 @@
 //@formatter:on
 package de.calamanari.pk.muhai.collider;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -86,6 +89,37 @@ public class AnonymousTrackingKeyCollision implements KeyCollision<AnonymousTrac
 
     };
 
+    /**
+     * Codec for writing {@link AnonymousTrackingKeyCollision}s as binary records (number of positions, positions) to a file and read it back
+     */
+    public static final ItemBinaryCodec<AnonymousTrackingKeyCollision> BINARY_CODEC = new ItemBinaryCodec<>() {
+
+        @Override
+        public int getRecordLength() {
+            return ItemBinaryCodec.VARIABLE_LENGTH;
+        }
+
+        @Override
+        public void writeItem(AnonymousTrackingKeyCollision item, DataOutput out) throws IOException {
+            if (item == null) {
+                throw new ItemConversionException("Cannot encode null");
+            }
+            TrackingKeyCollision.writePositions(item.positions, out);
+        }
+
+        @Override
+        public AnonymousTrackingKeyCollision readItem(DataInput in) throws IOException {
+            long[] positionsRead = TrackingKeyCollision.readPositions(in);
+            try {
+                return new AnonymousTrackingKeyCollision(positionsRead);
+            }
+            catch (RuntimeException ex) {
+                throw new ItemConversionException("Record corrupted", ex);
+            }
+        }
+
+    };
+
     /**
      * positions the key was found in ascending order
      */
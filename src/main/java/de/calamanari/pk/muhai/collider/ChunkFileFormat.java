@@ -0,0 +1,44 @@
+//@formatter:off
+/*
+ * ChunkFileFormat
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.muhai.collider;
+
+/**
+ * Format of the intermediate chunk files written and read by the {@link KeyCollisionProcessor}
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public enum ChunkFileFormat {
+
+    /**
+     * g-zipped text lines using the {@link ItemStringCodec}s, human-readable but formatting, parsing and compression dominate the processing time
+     */
+    GZIP_TEXT,
+
+    /**
+     * uncompressed binary records using the {@link ItemBinaryCodec}s, fastest option if there is enough disk space
+     */
+    BINARY,
+
+    /**
+     * binary records using the {@link ItemBinaryCodec}s compressed with the fastest deflate level
+     */
+    BINARY_COMPRESSED;
+
+}
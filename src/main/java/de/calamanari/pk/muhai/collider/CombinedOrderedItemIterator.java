@@ -1,14 +1,19 @@
 package de.calamanari.pk.muhai.collider;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.PriorityQueue;
 
 /**
  * The {@link CombinedOrderedItemIterator} iterates over all the given input iterators and creates an ordered squence. Therefore we assume that the input
  * iterators return the elements of their sources sorted according to the natural order of the elements. <br />
  * If so, this iterator returns the total sequence of elements in their natural order.
+ * <p>
+ * The sources are merged with a tournament tree (loser tree): every inner node remembers the loser of the match between its subtrees, the overall winner is
+ * the next element. After taking the winner only the path from its source to the root must be replayed (log2(k) comparisons for k sources), and no wrapper
+ * objects are required.
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  *
  * @param <E> elements taken from the sources and returned by this iterator
@@ -18,114 +23,122 @@ public class CombinedOrderedItemIterator<E extends Comparable<E>> implements Ite
     /**
      * A given number of sources we want to read while ordering the inputs
      */
-    private final Collection<Iterator<E>> sourceIterators;
+    private final List<Iterator<E>> sourceIterators;
 
     /**
-     * Tracks the one element per input source and implicitly orders the elements
+     * current element per source, null if the source is exhausted
      */
-    private final PriorityQueue<CandidateWithOrigin> candidates;
+    private final Object[] candidates;
 
     /**
-     * Indicates that there are no more elements available
+     * tree[0] is the index of the source with the smallest element, tree[1..k-1] are the losers of the inner nodes
      */
-    private boolean done;
+    private final int[] tree;
+
+    /**
+     * Indicates that the tree has been built
+     */
+    private boolean initialized;
 
     /**
      * Creates a combined iterator
      * @param sourceIterators assumed to return ordered elements
      */
     public CombinedOrderedItemIterator(Collection<Iterator<E>> sourceIterators) {
-        this.sourceIterators = sourceIterators;
-        this.candidates = new PriorityQueue<>(Math.max(1, this.sourceIterators.size()));
+        this.sourceIterators = new ArrayList<>(sourceIterators);
+        this.candidates = new Object[this.sourceIterators.size()];
+        this.tree = new int[Math.max(1, this.sourceIterators.size())];
     }
 
     @Override
     public boolean hasNext() {
-        boolean res = !candidates.isEmpty();
-        if (!res && !done) {
-            if (candidates.isEmpty()) {
-                // initialize
-                for (Iterator<E> it : sourceIterators) {
-                    if (it.hasNext()) {
-                        candidates.add(new CandidateWithOrigin(it.next(), it));
-                    }
-                }
-            }
-            if (candidates.isEmpty()) {
-                done = true;
-            }
-            else {
-                res = true;
-            }
+        if (!initialized) {
+            initialize();
         }
-        return res;
+        return candidates.length > 0 && candidates[tree[0]] != null;
     }
 
     @Override
     public E next() {
-        E res = null;
-        if (this.hasNext()) {
-            // take the head, which is the smallest element (natural order according to the elements compareTo)
-            CandidateWithOrigin cwo = candidates.poll();
-            res = cwo.getItem();
-
-            // refill queue from same origin if possible
-            Iterator<E> origin = cwo.getOrigin();
-            if (origin.hasNext()) {
-                candidates.add(new CandidateWithOrigin(origin.next(), origin));
-            }
-        }
-        else {
+        if (!this.hasNext()) {
             throw new NoSuchElementException("End Of Input");
         }
+        // take the winner, which is the smallest element (natural order according to the elements compareTo)
+        int winner = tree[0];
+        @SuppressWarnings("unchecked")
+        E res = (E) candidates[winner];
+
+        // refill from same origin if possible and replay the matches on the path to the root
+        Iterator<E> origin = sourceIterators.get(winner);
+        candidates[winner] = origin.hasNext() ? origin.next() : null;
+        replay(winner);
         return res;
     }
 
     /**
-     * For taking the next element from the same source iterator (next()), we need to track the origin, this class keeps the tuple. This is a utility object
-     * that ignores {@link #origin} when computing equality, hashcode and comparing elements. We can do that here because elements never leave the context of
-     * this class.
+     * Takes the first element from each source and builds the tree bottom-up (inner nodes 1..k-1, leaves k..2k-1)
      */
-    private class CandidateWithOrigin implements Comparable<CandidateWithOrigin> {
-
-        private final E item;
-
-        private final Iterator<E> origin;
-
-        CandidateWithOrigin(E item, Iterator<E> origin) {
-            this.item = item;
-            this.origin = origin;
-        }
-
-        public E getItem() {
-            return item;
+    private void initialize() {
+        int k = candidates.length;
+        for (int i = 0; i < k; i++) {
+            Iterator<E> it = sourceIterators.get(i);
+            candidates[i] = it.hasNext() ? it.next() : null;
         }
-
-        public Iterator<E> getOrigin() {
-            return origin;
-        }
-
-        @Override
-        public int hashCode() {
-            return item.hashCode();
+        if (k > 1) {
+            int[] winners = new int[2 * k];
+            for (int i = 0; i < k; i++) {
+                winners[k + i] = i;
+            }
+            for (int node = k - 1; node > 0; node--) {
+                int left = winners[2 * node];
+                int right = winners[2 * node + 1];
+                if (isLess(right, left)) {
+                    winners[node] = right;
+                    tree[node] = left;
+                }
+                else {
+                    winners[node] = left;
+                    tree[node] = right;
+                }
+            }
+            tree[0] = winners[1];
         }
+        initialized = true;
+    }
 
-        @Override
-        public boolean equals(Object obj) {
-            boolean res = false;
-            if (obj != null && this.getClass() == obj.getClass()) {
-                @SuppressWarnings("unchecked")
-                CandidateWithOrigin other = (CandidateWithOrigin) obj;
-                res = this.item.equals(other.item);
+    /**
+     * Replays the matches from the leaf of the given source up to the root
+     * @param source index of the source with a new candidate
+     */
+    private void replay(int source) {
+        int winner = source;
+        for (int node = (source + candidates.length) >>> 1; node > 0; node = node >>> 1) {
+            int loser = tree[node];
+            if (isLess(loser, winner)) {
+                tree[node] = winner;
+                winner = loser;
             }
-            return res;
         }
+        tree[0] = winner;
+    }
 
-        @Override
-        public int compareTo(CandidateWithOrigin o) {
-            return this.item.compareTo(o.item);
+    /**
+     * @param a source index
+     * @param b source index
+     * @return true if the candidate of a is smaller than the one of b (exhausted sources are greater than any element, ties by source index)
+     */
+    @SuppressWarnings("unchecked")
+    private boolean isLess(int a, int b) {
+        E itemA = (E) candidates[a];
+        E itemB = (E) candidates[b];
+        if (itemA == null) {
+            return false;
         }
-
+        else if (itemB == null) {
+            return true;
+        }
+        int res = itemA.compareTo(itemB);
+        return res < 0 || (res == 0 && a < b);
     }
 
 }
@@ -19,6 +19,9 @@
 //@formatter:on
 package de.calamanari.pk.muhai.collider;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -76,6 +79,41 @@ public class CountingKeyCollision implements KeyCollision<CountingKeyCollision>
 
     };
 
+    /**
+     * Codec for writing {@link CountingKeyCollision}s as fixed-length binary records to a file and read it back
+     */
+    public static final ItemBinaryCodec<CountingKeyCollision> BINARY_CODEC = new ItemBinaryCodec<>() {
+
+        @Override
+        public int getRecordLength() {
+            return 24;
+        }
+
+        @Override
+        public void writeItem(CountingKeyCollision item, DataOutput out) throws IOException {
+            if (item == null) {
+                throw new ItemConversionException("Cannot encode null");
+            }
+            out.writeLong(item.key);
+            out.writeLong(item.firstCollisionPosition);
+            out.writeLong(item.numberOfKeyOccurrences);
+        }
+
+        @Override
+        public CountingKeyCollision readItem(DataInput in) throws IOException {
+            long keyRead = in.readLong();
+            long firstCollisionPositionRead = in.readLong();
+            long numberOfKeyOccurrencesRead = in.readLong();
+            try {
+                return new CountingKeyCollision(keyRead, firstCollisionPositionRead, numberOfKeyOccurrencesRead);
+            }
+            catch (RuntimeException ex) {
+                throw new ItemConversionException("Record corrupted", ex);
+            }
+        }
+
+    };
+
     /**
      * generated key
      */
@@ -0,0 +1,63 @@
+//@formatter:off
+/*
+ * ItemBinaryCodec
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.muhai.collider;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The {@link ItemBinaryCodec} is an interface for a POLICY to write an element as a binary record and read it back.<br />
+ * Compared to the {@link ItemStringCodec} there is no formatting or parsing involved, which matters when processing billions of items.
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ * @param <E> type of the elements
+ */
+public interface ItemBinaryCodec<E> {
+
+    /**
+     * Return value of {@link #getRecordLength()} if the records do not have a fixed length
+     */
+    public static final int VARIABLE_LENGTH = -1;
+
+    /**
+     * @return number of bytes of every record or {@link #VARIABLE_LENGTH}
+     */
+    public int getRecordLength();
+
+    /**
+     * Writes the given item as a single record
+     * @param item element to be written
+     * @param out destination
+     * @throws IOException on any problem with the destination
+     * @throws ItemConversionException on any conversion error
+     */
+    public void writeItem(E item, DataOutput out) throws IOException;
+
+    /**
+     * Reads a single record
+     * @param in source
+     * @return converted item
+     * @throws IOException on any problem with the source (e.g. unexpected end of input)
+     * @throws ItemConversionException on any conversion error
+     */
+    public E readItem(DataInput in) throws IOException;
+
+}
@@ -0,0 +1,94 @@
+//@formatter:off
+/*
+ * ItemBinaryIterator
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.muhai.collider;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Binary counterpart of the {@link ItemConversionIterator}: this ITERATOR returns the elements read by an {@link ItemBinaryCodec} from a stream that contains a
+ * known number of records.
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ * @param <E> element
+ */
+public class ItemBinaryIterator<E> implements Iterator<E>, Closeable {
+
+    /**
+     * Wrapped stream
+     */
+    private final DataInputStream sourceStream;
+
+    /**
+     * converter
+     */
+    private final ItemBinaryCodec<E> codec;
+
+    /**
+     * number of records not yet read (treat as unsigned)
+     */
+    private long numberOfRemainingItems;
+
+    /**
+     * Creates the iterator as a decorator for given stream
+     * @param sourceStream the wrapped stream
+     * @param codec for item conversion
+     * @param numberOfItems number of records in the stream (treat as unsigned)
+     */
+    public ItemBinaryIterator(DataInputStream sourceStream, ItemBinaryCodec<E> codec, long numberOfItems) {
+        this.sourceStream = sourceStream;
+        this.codec = codec;
+        this.numberOfRemainingItems = numberOfItems;
+    }
+
+    /**
+     * Closes the underlying resources
+     * @throws IOException in case of problems with the underyling stream
+     */
+    @Override
+    public void close() throws IOException {
+        sourceStream.close();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return numberOfRemainingItems != 0;
+    }
+
+    @Override
+    public E next() {
+        if (numberOfRemainingItems == 0) {
+            throw new NoSuchElementException("End of input");
+        }
+        E res = null;
+        try {
+            res = codec.readItem(sourceStream);
+        }
+        catch (IOException ex) {
+            throw new ItemConversionException("Error converting items from stream", ex);
+        }
+        numberOfRemainingItems--;
+        return res;
+    }
+
+}
@@ -19,6 +19,10 @@
 //@formatter:on
 package de.calamanari.pk.muhai.collider;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * {@link KeyAtPos} is a VALUE OBJECT that represents a key at a certain position.<br />
  * When comparing keys to bring them in an order, the {@link #getKey()} takes <b>precendence</b> over {@link #getPos()}. So, sorting elements of this type
@@ -66,6 +70,34 @@ public class KeyAtPos implements Comparable<KeyAtPos> {
 
     };
 
+    /**
+     * Codec for writing {@link KeyAtPos}s as fixed-length binary records (key, position) to a file and read it back
+     */
+    public static final ItemBinaryCodec<KeyAtPos> BINARY_CODEC = new ItemBinaryCodec<>() {
+
+        @Override
+        public int getRecordLength() {
+            return 16;
+        }
+
+        @Override
+        public void writeItem(KeyAtPos item, DataOutput out) throws IOException {
+            if (item == null) {
+                throw new ItemConversionException("Cannot encode null");
+            }
+            out.writeLong(item.key);
+            out.writeLong(item.pos);
+        }
+
+        @Override
+        public KeyAtPos readItem(DataInput in) throws IOException {
+            long keyRead = in.readLong();
+            long posRead = in.readLong();
+            return new KeyAtPos(keyRead, posRead);
+        }
+
+    };
+
     /**
      * generated key
      */
@@ -0,0 +1,163 @@
+//@formatter:off
+/*
+ * KeyAtPosChunkReader
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.muhai.collider;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * The {@link KeyAtPosChunkReader} reads a binary key chunk file written with {@link KeyAtPos#BINARY_CODEC} block-wise into a primitive buffer.
+ * <p>
+ * Instead of decoding every record with a separate call to the stream, a whole block of records is read at once and converted to longs in a single bulk
+ * operation. No {@link KeyAtPos} objects will be created.
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class KeyAtPosChunkReader implements KeyAtPosCursor, Closeable {
+
+    /**
+     * Number of records read at once
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 8_192;
+
+    /**
+     * Size of a record (key and position) in bytes
+     */
+    private static final int RECORD_LENGTH = 16;
+
+    /**
+     * Wrapped stream
+     */
+    private final DataInputStream sourceStream;
+
+    /**
+     * raw bytes of the current block
+     */
+    private final byte[] blockBytes;
+
+    /**
+     * view on {@link #blockBytes}
+     */
+    private final LongBuffer blockView;
+
+    /**
+     * current block, key and position alternating
+     */
+    private final long[] block;
+
+    /**
+     * number of records not yet read from the stream (treat as unsigned)
+     */
+    private long numberOfRemainingItems;
+
+    /**
+     * number of records in the current block
+     */
+    private int blockLength = 0;
+
+    /**
+     * index of the current record in the block
+     */
+    private int blockIdx = 0;
+
+    /**
+     * Opens a binary key chunk file
+     * @param chunkFile file written by an {@link OrderedChunkFilewriter} with {@link KeyAtPos#BINARY_CODEC}
+     * @param readAhead if true, the file will be read ahead by a separate thread
+     * @return reader, to be closed by the caller
+     * @throws IOException if the file could not be opened or is not a binary chunk file
+     */
+    public static KeyAtPosChunkReader open(File chunkFile, boolean readAhead) throws IOException {
+        return OrderedChunkFilewriter.openBinaryChunk(chunkFile, readAhead,
+                (source, numberOfItems) -> new KeyAtPosChunkReader(source, numberOfItems, DEFAULT_BLOCK_SIZE));
+    }
+
+    /**
+     * @param sourceStream stream positioned at the first record
+     * @param numberOfItems number of records in the stream (treat as unsigned)
+     * @param blockSize number of records to be read at once
+     */
+    public KeyAtPosChunkReader(DataInputStream sourceStream, long numberOfItems, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("The block size must be positive, given: " + blockSize);
+        }
+        this.sourceStream = sourceStream;
+        this.numberOfRemainingItems = numberOfItems;
+        this.blockBytes = new byte[blockSize * RECORD_LENGTH];
+        this.blockView = ByteBuffer.wrap(blockBytes).asLongBuffer();
+        this.block = new long[blockSize * 2];
+    }
+
+    @Override
+    public boolean moveNext() {
+        blockIdx++;
+        if (blockIdx >= blockLength) {
+            if (numberOfRemainingItems == 0) {
+                blockLength = 0;
+                return false;
+            }
+            readBlock();
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next block of records from the stream
+     */
+    private void readBlock() {
+        int maxRecords = blockBytes.length / RECORD_LENGTH;
+        int numberOfRecords = Long.compareUnsigned(numberOfRemainingItems, maxRecords) < 0 ? (int) numberOfRemainingItems : maxRecords;
+        try {
+            sourceStream.readFully(blockBytes, 0, numberOfRecords * RECORD_LENGTH);
+        }
+        catch (IOException ex) {
+            throw new ItemConversionException("Error converting items from stream", ex);
+        }
+        blockView.clear();
+        blockView.get(block, 0, numberOfRecords * 2);
+        numberOfRemainingItems = numberOfRemainingItems - numberOfRecords;
+        blockLength = numberOfRecords;
+        blockIdx = 0;
+    }
+
+    @Override
+    public long getKey() {
+        return block[blockIdx * 2];
+    }
+
+    @Override
+    public long getPos() {
+        return block[blockIdx * 2 + 1];
+    }
+
+    /**
+     * Closes the underlying resources
+     * @throws IOException in case of problems with the underyling stream
+     */
+    @Override
+    public void close() throws IOException {
+        sourceStream.close();
+    }
+
+}
@@ -0,0 +1,80 @@
+//@formatter:off
+/*
+ * KeyAtPosCursor
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.muhai.collider;
+
+import java.util.Iterator;
+
+/**
+ * A {@link KeyAtPosCursor} is a primitive variant of an {@link Iterator} over {@link KeyAtPos} tuples: key and position of the current element can be read
+ * without creating any objects.
+ * <p>
+ * The values of {@link #getKey()} and {@link #getPos()} are only defined after a call to {@link #moveNext()} returned true.
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public interface KeyAtPosCursor {
+
+    /**
+     * Moves the cursor to the next element
+     * @return true if there was a next element, false at the end of the input
+     */
+    public boolean moveNext();
+
+    /**
+     * @return key of the current element
+     */
+    public long getKey();
+
+    /**
+     * @return position of the current element
+     */
+    public long getPos();
+
+    /**
+     * @param sourceIterator iterator to be adapted
+     * @return cursor over the elements returned by the given iterator
+     */
+    public static KeyAtPosCursor of(Iterator<KeyAtPos> sourceIterator) {
+        return new KeyAtPosCursor() {
+
+            /**
+             * current element
+             */
+            private KeyAtPos current = null;
+
+            @Override
+            public boolean moveNext() {
+                current = sourceIterator.hasNext() ? sourceIterator.next() : null;
+                return current != null;
+            }
+
+            @Override
+            public long getKey() {
+                return current.getKey();
+            }
+
+            @Override
+            public long getPos() {
+                return current.getPos();
+            }
+        };
+    }
+
+}
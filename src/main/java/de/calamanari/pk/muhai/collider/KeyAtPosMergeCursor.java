@@ -0,0 +1,181 @@
+//@formatter:off
+/*
+ * KeyAtPosMergeCursor
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.muhai.collider;
+
+import java.util.Collection;
+
+/**
+ * The {@link KeyAtPosMergeCursor} is the primitive counterpart of the {@link CombinedOrderedItemIterator} for merging sorted {@link KeyAtPosCursor}s.
+ * <p>
+ * The current key and position of every source are kept in arrays and the sources are merged with a tournament tree (loser tree) comparing the unsigned
+ * longs directly (key first, then position, see {@link KeyAtPos#compareTo(KeyAtPos)}). No objects are created per element.
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class KeyAtPosMergeCursor implements KeyAtPosCursor {
+
+    /**
+     * sources, each returning its elements in order
+     */
+    private final KeyAtPosCursor[] sources;
+
+    /**
+     * current key per source
+     */
+    private final long[] keys;
+
+    /**
+     * current position per source
+     */
+    private final long[] positions;
+
+    /**
+     * marks the sources without any further elements
+     */
+    private final boolean[] exhausted;
+
+    /**
+     * tree[0] is the index of the source with the smallest element, tree[1..k-1] are the losers of the inner nodes
+     */
+    private final int[] tree;
+
+    /**
+     * Indicates that the tree has been built
+     */
+    private boolean initialized;
+
+    /**
+     * @param sources assumed to return ordered elements
+     */
+    public KeyAtPosMergeCursor(Collection<KeyAtPosCursor> sources) {
+        this.sources = sources.toArray(new KeyAtPosCursor[sources.size()]);
+        int k = this.sources.length;
+        this.keys = new long[k];
+        this.positions = new long[k];
+        this.exhausted = new boolean[k];
+        this.tree = new int[Math.max(1, k)];
+    }
+
+    @Override
+    public boolean moveNext() {
+        if (!initialized) {
+            initialize();
+        }
+        else if (sources.length > 0) {
+            int winner = tree[0];
+            if (!exhausted[winner]) {
+                load(winner);
+                replay(winner);
+            }
+        }
+        return sources.length > 0 && !exhausted[tree[0]];
+    }
+
+    @Override
+    public long getKey() {
+        return keys[tree[0]];
+    }
+
+    @Override
+    public long getPos() {
+        return positions[tree[0]];
+    }
+
+    /**
+     * Moves the given source to its next element
+     * @param source index
+     */
+    private void load(int source) {
+        KeyAtPosCursor cursor = sources[source];
+        if (cursor.moveNext()) {
+            keys[source] = cursor.getKey();
+            positions[source] = cursor.getPos();
+        }
+        else {
+            exhausted[source] = true;
+        }
+    }
+
+    /**
+     * Loads the first element of each source and builds the tree bottom-up (inner nodes 1..k-1, leaves k..2k-1)
+     */
+    private void initialize() {
+        int k = sources.length;
+        for (int i = 0; i < k; i++) {
+            load(i);
+        }
+        if (k > 1) {
+            int[] winners = new int[2 * k];
+            for (int i = 0; i < k; i++) {
+                winners[k + i] = i;
+            }
+            for (int node = k - 1; node > 0; node--) {
+                int left = winners[2 * node];
+                int right = winners[2 * node + 1];
+                if (isLess(right, left)) {
+                    winners[node] = right;
+                    tree[node] = left;
+                }
+                else {
+                    winners[node] = left;
+                    tree[node] = right;
+                }
+            }
+            tree[0] = winners[1];
+        }
+        initialized = true;
+    }
+
+    /**
+     * Replays the matches from the leaf of the given source up to the root
+     * @param source index of the source with a new element
+     */
+    private void replay(int source) {
+        int winner = source;
+        for (int node = (source + sources.length) >>> 1; node > 0; node = node >>> 1) {
+            int loser = tree[node];
+            if (isLess(loser, winner)) {
+                tree[node] = winner;
+                winner = loser;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    /**
+     * @param a source index
+     * @param b source index
+     * @return true if the element of a is smaller than the one of b (exhausted sources are greater than any element, ties by source index)
+     */
+    private boolean isLess(int a, int b) {
+        if (exhausted[a]) {
+            return false;
+        }
+        else if (exhausted[b]) {
+            return true;
+        }
+        int res = Long.compareUnsigned(keys[a], keys[b]);
+        if (res == 0) {
+            res = Long.compareUnsigned(positions[a], positions[b]);
+        }
+        return res < 0 || (res == 0 && a < b);
+    }
+
+}
@@ -0,0 +1,306 @@
+//@formatter:off
+/*
+ * KeyAtPosSortBuffer
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.muhai.collider;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
+
+/**
+ * The {@link KeyAtPosSortBuffer} is a memory-efficient replacement for a list of {@link KeyAtPos} items to be used as the sort buffer of an
+ * {@link OrderedChunkFilewriter}.
+ * <p>
+ * Keys and positions are stored in two parallel <code>long[]</code> arrays (16 bytes per item instead of an object and a reference per item), so for the
+ * same heap the buffer can hold more than twice as many items. The {@link KeyAtPos} objects returned by {@link #get(int)} are created on the fly.
+ * <p>
+ * {@link #sort(Comparator)} with the natural order (<code>null</code>, this is what {@link java.util.Collections#sort(java.util.List)} does) runs an
+ * in-place MSD radix sort (American flag sort) on the unsigned keys followed by the unsigned positions, no comparison sort and no scratch copy of the data.
+ * Large buffers get partitioned by the most significant byte first, then the partitions are sorted in parallel.
+ * <p>
+ * Instances are NOT safe to be accessed by multiple threads concurrently.
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class KeyAtPosSortBuffer extends AbstractList<KeyAtPos> implements RandomAccess {
+
+    /**
+     * partitions smaller than this get sorted by insertion sort
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 48;
+
+    /**
+     * buffers with at least this number of items get their top-level partitions sorted in parallel
+     */
+    static final int PARALLEL_SORT_THRESHOLD = 100_000;
+
+    /**
+     * 8 levels (bytes) for the key followed by 8 levels for the position
+     */
+    private static final int NUMBER_OF_LEVELS = 16;
+
+    /**
+     * keys of the items
+     */
+    private long[] keys;
+
+    /**
+     * positions of the items
+     */
+    private long[] positions;
+
+    /**
+     * number of items in the buffer
+     */
+    private int size = 0;
+
+    /**
+     * @param initialCapacity number of items to be stored without resizing the arrays
+     */
+    public KeyAtPosSortBuffer(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative, given: " + initialCapacity);
+        }
+        this.keys = new long[initialCapacity];
+        this.positions = new long[initialCapacity];
+    }
+
+    /**
+     * Adds an item without creating any object
+     * @param key treated as unsigned long
+     * @param pos treated as unsigned long
+     */
+    public void add(long key, long pos) {
+        if (size == keys.length) {
+            int newCapacity = Math.max(16, keys.length + (keys.length >> 1));
+            keys = Arrays.copyOf(keys, newCapacity);
+            positions = Arrays.copyOf(positions, newCapacity);
+        }
+        keys[size] = key;
+        positions[size] = pos;
+        size++;
+    }
+
+    @Override
+    public boolean add(KeyAtPos item) {
+        if (item == null) {
+            throw new IllegalArgumentException("null is not a valid item");
+        }
+        add(item.getKey(), item.getPos());
+        return true;
+    }
+
+    @Override
+    public KeyAtPos get(int index) {
+        checkIndex(index);
+        return new KeyAtPos(keys[index], positions[index]);
+    }
+
+    @Override
+    public KeyAtPos set(int index, KeyAtPos item) {
+        checkIndex(index);
+        if (item == null) {
+            throw new IllegalArgumentException("null is not a valid item");
+        }
+        KeyAtPos res = new KeyAtPos(keys[index], positions[index]);
+        keys[index] = item.getKey();
+        positions[index] = item.getPos();
+        return res;
+    }
+
+    /**
+     * @param index to be checked
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all items but keeps the allocated memory
+     */
+    @Override
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Sorts the buffer, with comparator <code>null</code> (natural order) by radix sort
+     */
+    @Override
+    public void sort(Comparator<? super KeyAtPos> comparator) {
+        if (comparator == null) {
+            sort(true);
+        }
+        else {
+            super.sort(comparator);
+        }
+    }
+
+    /**
+     * Sorts the buffer in natural order by radix sort
+     * @param allowParallel if false, the sort runs entirely on the current thread (e.g. if the caller is already one of multiple workers)
+     */
+    public void sort(boolean allowParallel) {
+        sort(keys, positions, size, allowParallel);
+    }
+
+    /**
+     * Sorts the first n items of the given arrays by unsigned key, then unsigned position
+     * @param keys
+     * @param positions
+     * @param n number of items
+     * @param allowParallel if true, large arrays get sorted in parallel
+     */
+    static void sort(long[] keys, long[] positions, int n, boolean allowParallel) {
+        if (allowParallel && n >= PARALLEL_SORT_THRESHOLD) {
+            int[] bucketStarts = partition(keys, positions, 0, n, 0);
+            IntStream.range(0, 256).parallel().forEach(bucket -> sort(keys, positions, bucketStarts[bucket], bucketStarts[bucket + 1], 1));
+        }
+        else {
+            sort(keys, positions, 0, n, 0);
+        }
+    }
+
+    /**
+     * Recursive MSD radix sort of the range
+     * @param keys
+     * @param positions
+     * @param from inclusive
+     * @param to exclusive
+     * @param level 0-7 key bytes, 8-15 position bytes (most significant first)
+     */
+    private static void sort(long[] keys, long[] positions, int from, int to, int level) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(keys, positions, from, to);
+        }
+        else if (level < NUMBER_OF_LEVELS) {
+            int[] bucketStarts = partition(keys, positions, from, to, level);
+            for (int bucket = 0; bucket < 256; bucket++) {
+                if (bucketStarts[bucket + 1] - bucketStarts[bucket] > 1) {
+                    sort(keys, positions, bucketStarts[bucket], bucketStarts[bucket + 1], level + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Distributes the items of the range in place into 256 buckets according to the byte of the given level (American flag sort)
+     * @param keys
+     * @param positions
+     * @param from inclusive
+     * @param to exclusive
+     * @param level 0-7 key bytes, 8-15 position bytes (most significant first)
+     * @return 257 bucket boundaries (start of bucket i at index i, the last element is the end of the range)
+     */
+    private static int[] partition(long[] keys, long[] positions, int from, int to, int level) {
+        long[] source = level < 8 ? keys : positions;
+        int shift = 56 - ((level & 7) << 3);
+        int[] bucketStarts = new int[257];
+        for (int i = from; i < to; i++) {
+            bucketStarts[((int) (source[i] >>> shift) & 0xFF) + 1]++;
+        }
+        bucketStarts[0] = from;
+        for (int bucket = 0; bucket < 256; bucket++) {
+            if (bucketStarts[bucket + 1] == to - from) {
+                // all items in the same bucket, nothing to move
+                Arrays.fill(bucketStarts, 0, bucket + 1, from);
+                Arrays.fill(bucketStarts, bucket + 1, 257, to);
+                return bucketStarts;
+            }
+            bucketStarts[bucket + 1] += bucketStarts[bucket];
+        }
+        int[] next = Arrays.copyOf(bucketStarts, 256);
+        for (int bucket = 0; bucket < 256; bucket++) {
+            int end = bucketStarts[bucket + 1];
+            while (next[bucket] < end) {
+                int i = next[bucket];
+                int target = (int) (source[i] >>> shift) & 0xFF;
+                while (target != bucket) {
+                    int j = next[target]++;
+                    swap(keys, positions, i, j);
+                    target = (int) (source[i] >>> shift) & 0xFF;
+                }
+                next[bucket]++;
+            }
+        }
+        return bucketStarts;
+    }
+
+    /**
+     * @param keys
+     * @param positions
+     * @param from inclusive
+     * @param to exclusive
+     */
+    private static void insertionSort(long[] keys, long[] positions, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            long key = keys[i];
+            long pos = positions[i];
+            int j = i - 1;
+            while (j >= from && compare(keys[j], positions[j], key, pos) > 0) {
+                keys[j + 1] = keys[j];
+                positions[j + 1] = positions[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            positions[j + 1] = pos;
+        }
+    }
+
+    /**
+     * Same order as {@link KeyAtPos#compareTo(KeyAtPos)}
+     * @param key1
+     * @param pos1
+     * @param key2
+     * @param pos2
+     * @return comparison result
+     */
+    private static int compare(long key1, long pos1, long key2, long pos2) {
+        int res = Long.compareUnsigned(key1, key2);
+        if (res == 0) {
+            res = Long.compareUnsigned(pos1, pos2);
+        }
+        return res;
+    }
+
+    /**
+     * @param keys
+     * @param positions
+     * @param i
+     * @param j
+     */
+    private static void swap(long[] keys, long[] positions, int i, int j) {
+        long tmp = keys[i];
+        keys[i] = keys[j];
+        keys[j] = tmp;
+        tmp = positions[i];
+        positions[i] = positions[j];
+        positions[j] = tmp;
+    }
+
+}
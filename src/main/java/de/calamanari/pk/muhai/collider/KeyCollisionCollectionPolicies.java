@@ -43,6 +43,11 @@ public class KeyCollisionCollectionPolicies {
             return CountingKeyCollision.LINE_CODEC;
         }
 
+        @Override
+        public ItemBinaryCodec<CountingKeyCollision> getBinaryCodec() {
+            return CountingKeyCollision.BINARY_CODEC;
+        }
+
     };
 
     /**
@@ -61,6 +66,11 @@ public class KeyCollisionCollectionPolicies {
             return AnonymousCountingKeyCollision.LINE_CODEC;
         }
 
+        @Override
+        public ItemBinaryCodec<AnonymousCountingKeyCollision> getBinaryCodec() {
+            return AnonymousCountingKeyCollision.BINARY_CODEC;
+        }
+
     };
 
     /**
@@ -78,6 +88,11 @@ public class KeyCollisionCollectionPolicies {
             return TrackingKeyCollision.LINE_CODEC;
         }
 
+        @Override
+        public ItemBinaryCodec<TrackingKeyCollision> getBinaryCodec() {
+            return TrackingKeyCollision.BINARY_CODEC;
+        }
+
     };
 
     /**
@@ -98,6 +113,11 @@ public class KeyCollisionCollectionPolicies {
             return AnonymousTrackingKeyCollision.LINE_CODEC;
         }
 
+        @Override
+        public ItemBinaryCodec<AnonymousTrackingKeyCollision> getBinaryCodec() {
+            return AnonymousTrackingKeyCollision.BINARY_CODEC;
+        }
+
     };
 
     /**
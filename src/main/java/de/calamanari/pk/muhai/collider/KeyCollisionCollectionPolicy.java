@@ -40,4 +40,9 @@ public interface KeyCollisionCollectionPolicy<T extends KeyCollision<T>> {
      */
     public ItemStringCodec<T> getLineCodec();
 
+    /**
+     * @return the codec to transform items for storing in binary files
+     */
+    public ItemBinaryCodec<T> getBinaryCodec();
+
 }
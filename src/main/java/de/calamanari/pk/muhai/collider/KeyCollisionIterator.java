@@ -19,14 +19,11 @@
 //@formatter:on
 package de.calamanari.pk.muhai.collider;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.function.BiConsumer;
 
-import de.calamanari.pk.util.BoxingUtils;
-
 /**
  * The {@link KeyCollisionIterator} is a DECORATOR for a {@link KeyAtPos}-ITERATOR. Assuming all source items occur in their natural order, we aggregate
  * subsequent positions for the same key and drop any keys that only occur at a single position.
@@ -39,14 +36,9 @@ import de.calamanari.pk.util.BoxingUtils;
 public class KeyCollisionIterator<K extends KeyCollision<K>> implements Iterator<K> {
 
     /**
-     * Type indicator
+     * The wrapped source
      */
-    private static final Long[] EMPTY_LONG_ARRAY = new Long[0];
-
-    /**
-     * The wrapped iterator
-     */
-    private final Iterator<KeyAtPos> sourceIterator;
+    private final KeyAtPosCursor source;
 
     /**
      * for creating collision items
@@ -64,15 +56,25 @@ public class KeyCollisionIterator<K extends KeyCollision<K>> implements Iterator
     private K bufferedItem = null;
 
     /**
-     * single element prefetched from the underlying iterator
+     * true if the source points to an element not yet consumed
+     */
+    private boolean readAhead = false;
+
+    /**
+     * true after the first element has been taken from the source
      */
-    private KeyAtPos readAhead = null;
+    private boolean started = false;
 
     /**
      * marks the end of the iteration
      */
     private boolean done;
 
+    /**
+     * positions of the current key (re-used)
+     */
+    private long[] positionBuffer = new long[16];
+
     /**
      * number of items consumed from the source
      */
@@ -90,7 +92,17 @@ public class KeyCollisionIterator<K extends KeyCollision<K>> implements Iterator
      */
     public KeyCollisionIterator(Iterator<KeyAtPos> sourceIterator, KeyCollisionCollectionPolicy<K> keyCollisionCollectionPolicy,
             BiConsumer<Long, Long> progressObserver) {
-        this.sourceIterator = sourceIterator;
+        this(KeyAtPosCursor.of(sourceIterator), keyCollisionCollectionPolicy, progressObserver);
+    }
+
+    /**
+     * @param source cursor returning elements in key-order, see {@link KeyAtPosMergeCursor}
+     * @param keyCollisionCollectionPolicy policy for creating collision items
+     * @param progressObserver hook for reporting on every consumed source element
+     */
+    public KeyCollisionIterator(KeyAtPosCursor source, KeyCollisionCollectionPolicy<K> keyCollisionCollectionPolicy,
+            BiConsumer<Long, Long> progressObserver) {
+        this.source = source;
         this.keyCollisionCollectionPolicy = keyCollisionCollectionPolicy;
         this.progressObserver = progressObserver;
     }
@@ -101,28 +113,32 @@ public class KeyCollisionIterator<K extends KeyCollision<K>> implements Iterator
      */
     private K findNextCollision() {
         K res = null;
-        while (!done && res == null && sourceIterator.hasNext()) {
-            KeyAtPos base = readAhead;
-            List<Long> rawPositions = new ArrayList<>();
-            if (base == null) {
-                base = sourceIterator.next();
-            }
-            rawPositions.add(base.getPos());
-
-            while (sourceIterator.hasNext()) {
-                readAhead = sourceIterator.next();
+        if (!started) {
+            readAhead = source.moveNext();
+            started = true;
+        }
+        while (!done && res == null && readAhead) {
+            long baseKey = source.getKey();
+            positionBuffer[0] = source.getPos();
+            int numberOfPositions = 1;
+            readAhead = false;
+            while (source.moveNext()) {
                 consumedItems++;
                 progressObserver.accept(consumedItems, returnedItems);
-                if (readAhead.getKey() == base.getKey()) {
-                    rawPositions.add(readAhead.getPos());
+                if (source.getKey() == baseKey) {
+                    if (numberOfPositions == positionBuffer.length) {
+                        positionBuffer = Arrays.copyOf(positionBuffer, numberOfPositions * 2);
+                    }
+                    positionBuffer[numberOfPositions] = source.getPos();
+                    numberOfPositions++;
                 }
                 else {
+                    readAhead = true;
                     break;
                 }
             }
-            if (rawPositions.size() > 1) {
-                long[] positions = BoxingUtils.unboxArray(rawPositions.toArray(EMPTY_LONG_ARRAY));
-                res = keyCollisionCollectionPolicy.createKeyCollision(base.getKey(), positions);
+            if (numberOfPositions > 1) {
+                res = keyCollisionCollectionPolicy.createKeyCollision(baseKey, Arrays.copyOf(positionBuffer, numberOfPositions));
             }
         }
         return res;
@@ -0,0 +1,162 @@
+//@formatter:off
+/*
+ * KeyCollisionPreFilter
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.muhai.collider;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The {@link KeyCollisionPreFilter} is a thread-safe register-blocked bloom filter for long keys: all the bits of a key are located in the same 64-bit word,
+ * so a key can be inserted with a single atomic operation.
+ * <p>
+ * Because of this, {@link #put(long)} can tell exactly (even with concurrent inserts) whether all bits of a key had been set before. For two occurrences of
+ * the same key at least the later one will be reported, so the filter never misses a collision. Keys reported by mistake (false positives) must be verified
+ * (see {@link KeyCollisionProcessor#processWithPreFilter(SplittableKeySupplier, long, long, int)}).
+ * <p>
+ * The keys get mixed before use, so the filter also works for keys from small keyspaces (e.g. only the lower 32 bits in use). No cryptographic hash is
+ * involved, as it would dominate the run time.
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class KeyCollisionPreFilter {
+
+    /**
+     * Number of bits per expected key used to size the filter, leads to a false-positive rate of about 0.4%
+     */
+    public static final int BITS_PER_KEY = 16;
+
+    /**
+     * Number of bits set per key
+     */
+    private static final int NUMBER_OF_BITS_PER_KEY = 5;
+
+    /**
+     * Upper limit for the number of words (8 GB)
+     */
+    private static final int MAX_NUMBER_OF_WORDS = 1 << 30;
+
+    /**
+     * The bit vector
+     */
+    private final AtomicLongArray words;
+
+    /**
+     * number of words - 1 (number of words is a power of two)
+     */
+    private final int indexMask;
+
+    /**
+     * Creates a filter for the given number of keys
+     * @param expectedNumberOfKeys number of distinct keys to be inserted (treat as unsigned)
+     * @param maxBytes limits the size of the filter, a smaller filter leads to a higher false-positive rate
+     * @return new empty filter
+     */
+    public static KeyCollisionPreFilter forExpectedNumberOfKeys(long expectedNumberOfKeys, long maxBytes) {
+        double requiredWords = (Long.compareUnsigned(expectedNumberOfKeys, Long.MAX_VALUE) > 0 ? (double) Long.MAX_VALUE : (double) expectedNumberOfKeys)
+                * BITS_PER_KEY / 64;
+        double maxWords = Math.min(MAX_NUMBER_OF_WORDS, Math.max(1L, maxBytes / 8));
+        int numberOfWords = 1;
+        while (numberOfWords < requiredWords && numberOfWords * 2.0 <= maxWords) {
+            numberOfWords = numberOfWords * 2;
+        }
+        return new KeyCollisionPreFilter(numberOfWords);
+    }
+
+    /**
+     * @param numberOfWords size of the filter in 64-bit words, must be a power of two
+     */
+    public KeyCollisionPreFilter(int numberOfWords) {
+        if (numberOfWords < 1 || Integer.bitCount(numberOfWords) != 1 || numberOfWords > MAX_NUMBER_OF_WORDS) {
+            throw new IllegalArgumentException(String.format("The number of words must be a power of 2 in range [1 .. %d], given: %d", MAX_NUMBER_OF_WORDS,
+                    numberOfWords));
+        }
+        this.words = new AtomicLongArray(numberOfWords);
+        this.indexMask = numberOfWords - 1;
+    }
+
+    /**
+     * Inserts the key into the filter
+     * @param key to be inserted
+     * @return true if the key was probably inserted before (all its bits were set), false if the key was definitely not inserted before
+     */
+    public boolean put(long key) {
+        long hash = mix(key);
+        int idx = wordIndex(hash);
+        long bits = bitMask(hash);
+        long word = words.get(idx);
+        while ((word & bits) != bits) {
+            long witness = words.compareAndExchange(idx, word, word | bits);
+            if (witness == word) {
+                return false;
+            }
+            word = witness;
+        }
+        return true;
+    }
+
+    /**
+     * @param key to be checked
+     * @return true if the key was probably inserted before, false if the key was definitely not inserted before
+     */
+    public boolean mightContain(long key) {
+        long hash = mix(key);
+        long bits = bitMask(hash);
+        return (words.get(wordIndex(hash)) & bits) == bits;
+    }
+
+    /**
+     * @return size of the bit vector in bytes
+     */
+    public long getSizeInBytes() {
+        return words.length() * 8L;
+    }
+
+    /**
+     * @param hash mixed key
+     * @return index of the word for the key, taken from the upper bits
+     */
+    private int wordIndex(long hash) {
+        return (int) (hash >>> 34) & indexMask;
+    }
+
+    /**
+     * @param hash mixed key
+     * @return bits to be set in the word, taken from the lower bits (6 bits each)
+     */
+    private static long bitMask(long hash) {
+        long res = 0;
+        for (int i = 0; i < NUMBER_OF_BITS_PER_KEY; i++) {
+            res = res | (1L << (hash >>> (i * 6)));
+        }
+        return res;
+    }
+
+    /**
+     * Finalizer of MurmurHash3 (64 bit) to spread the bits of the key
+     * @param key source
+     * @return mixed key
+     */
+    private static long mix(long key) {
+        long h = key;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+}
@@ -23,6 +23,7 @@ import static de.calamanari.pk.util.LambdaSupportLoggerProxy.defer;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -31,12 +32,23 @@ import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.text.NumberFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
 import java.util.function.LongSupplier;
 import java.util.zip.GZIPInputStream;
 
@@ -47,6 +59,7 @@ import org.slf4j.LoggerFactory;
 
 import de.calamanari.pk.util.CloseUtils;
 import de.calamanari.pk.util.LambdaSupportLoggerProxy;
+import de.calamanari.pk.util.pfis.ParallelFileInputStream;
 
 /**
  * A {@link KeyCollisionProcessor} generates a specified number of keys provided by a supplier in a keyspace and analyzes key collisions.
@@ -70,6 +83,11 @@ public class KeyCollisionProcessor<K extends KeyCollision<K>> {
      */
     private static final int MAX_DATA_POINTS = 500;
 
+    /**
+     * Default memory limit for the {@link KeyCollisionPreFilter}: {@value} bytes
+     */
+    public static final long DEFAULT_PRE_FILTER_MAX_BYTES = 536_870_912L;
+
     /**
      * for writing temp files (large data)
      */
@@ -95,6 +113,21 @@ public class KeyCollisionProcessor<K extends KeyCollision<K>> {
      */
     private final boolean keepFiles;
 
+    /**
+     * Format of the key and collision chunk files
+     */
+    private final ChunkFileFormat chunkFileFormat;
+
+    /**
+     * If true, binary chunk files will be read ahead by separate threads during the merge phases
+     */
+    private boolean chunkReadAheadEnabled = false;
+
+    /**
+     * Memory limit for the {@link KeyCollisionPreFilter}, see {@link #processWithPreFilter(SplittableKeySupplier, long, long, int)}
+     */
+    private long preFilterMaxBytes = DEFAULT_PRE_FILTER_MAX_BYTES;
+
     /**
      * Builder for the result report data
      */
@@ -103,7 +136,7 @@ public class KeyCollisionProcessor<K extends KeyCollision<K>> {
     /**
      * Currently open files
      */
-    private List<BufferedReader> openChunkReaders = new ArrayList<>();
+    private List<Closeable> openChunkReaders = new ArrayList<>();
 
     /**
      * The limit in the current run
@@ -127,13 +160,15 @@ public class KeyCollisionProcessor<K extends KeyCollision<K>> {
      * <li>25M items per chunk</li>
      * <li>{@link KeyCollisionCollectionPolicies#TRACK_POSITIONS_AND_DISCARD_KEYS}</li>
      * <li>keepFiles=false (cleanup after successful processing)</li>
+     * <li>{@link ChunkFileFormat#BINARY}</li>
      * </ul>
      * 
      * @param outputDir storage location
      * @return default processor instance
      */
     public static KeyCollisionProcessor<AnonymousTrackingKeyCollision> createDefaultProcessor(File outputDir) {
-        return new KeyCollisionProcessor<>(outputDir, 5_000_000, 25_000_000, KeyCollisionCollectionPolicies.TRACK_POSITIONS_AND_DISCARD_KEYS, false);
+        return new KeyCollisionProcessor<>(outputDir, 5_000_000, 25_000_000, KeyCollisionCollectionPolicies.TRACK_POSITIONS_AND_DISCARD_KEYS, false,
+                ChunkFileFormat.BINARY);
     }
 
     /**
@@ -147,11 +182,62 @@ public class KeyCollisionProcessor<K extends KeyCollision<K>> {
      */
     public KeyCollisionProcessor(File outputDir, int maxKeysInMemory, int maxKeysInChunk, KeyCollisionCollectionPolicy<K> keyCollisionCollectionPolicy,
             boolean keepFiles) {
+        this(outputDir, maxKeysInMemory, maxKeysInChunk, keyCollisionCollectionPolicy, keepFiles, ChunkFileFormat.GZIP_TEXT);
+    }
+
+    /**
+     * Creates a new processor with the given environment settings
+     * 
+     * @param outputDir storage location
+     * @param maxKeysInMemory defines how many keys we want to store in memory before writing to disk
+     * @param maxKeysInChunk size (number of items) of a single file on the disk, it should be a multiple of maxKeysInMemory
+     * @param keyCollisionCollectionPolicy policy for storing/handling key collections
+     * @param keepFiles leave all temporary processing files in place for further analysis
+     * @param chunkFileFormat format of the key and collision chunk files
+     */
+    public KeyCollisionProcessor(File outputDir, int maxKeysInMemory, int maxKeysInChunk, KeyCollisionCollectionPolicy<K> keyCollisionCollectionPolicy,
+            boolean keepFiles, ChunkFileFormat chunkFileFormat) {
         this.outputDir = outputDir;
         this.maxKeysInMemory = maxKeysInMemory;
         this.maxKeysInChunk = maxKeysInChunk;
         this.keyCollisionCollectionPolicy = keyCollisionCollectionPolicy;
         this.keepFiles = keepFiles;
+        this.chunkFileFormat = chunkFileFormat;
+    }
+
+    /**
+     * Enables reading ahead the binary chunk files (one thread per file, see {@link ParallelFileInputStream}) while merging them in phase II and III. This
+     * can help if the merge waits for the disk, but it requires additional memory and threads for every chunk file. Default: false
+     * 
+     * @param chunkReadAheadEnabled true to read ahead the binary chunk files, ignored for {@link ChunkFileFormat#GZIP_TEXT}
+     */
+    public void setChunkReadAheadEnabled(boolean chunkReadAheadEnabled) {
+        this.chunkReadAheadEnabled = chunkReadAheadEnabled;
+    }
+
+    /**
+     * @return true if the binary chunk files will be read ahead by separate threads
+     */
+    public boolean isChunkReadAheadEnabled() {
+        return chunkReadAheadEnabled;
+    }
+
+    /**
+     * Limits the size of the {@link KeyCollisionPreFilter} used by {@link #processWithPreFilter(SplittableKeySupplier, long, long, int)}. The filter needs
+     * {@value KeyCollisionPreFilter#BITS_PER_KEY} bits per key for a low false-positive rate, a smaller filter leads to more keys to be verified on disk.
+     * Default: {@link #DEFAULT_PRE_FILTER_MAX_BYTES}
+     * 
+     * @param preFilterMaxBytes memory limit for the filter in bytes
+     */
+    public void setPreFilterMaxBytes(long preFilterMaxBytes) {
+        this.preFilterMaxBytes = preFilterMaxBytes;
+    }
+
+    /**
+     * @return memory limit for the filter in bytes
+     */
+    public long getPreFilterMaxBytes() {
+        return preFilterMaxBytes;
     }
 
     /**
@@ -164,13 +250,184 @@ public class KeyCollisionProcessor<K extends KeyCollision<K>> {
      * @throws IOException on any problem with the file system
      */
     public KeyCollisionSummary process(LongSupplier keySupplier, long limit, long sizeOfKeyspace) throws IOException {
+        prepareRun(limit, sizeOfKeyspace);
+        List<File> chunkFiles = generateKeys(keySupplier);
+        return completeRun(chunkFiles);
+    }
+
+    /**
+     * This method generates the specified number of keys on multiple threads and reports occurrences of the same key.
+     * <p>
+     * Every worker generates and sorts a range of {@link #maxKeysInMemory} positions while the current thread writes the sorted ranges in order to the chunk
+     * files. The number of ranges in memory is limited to the number of threads + 1. For a deterministic key supplier the result is the same as the result
+     * of {@link #process(LongSupplier, long, long)} with a supplier starting at position 0.
+     * 
+     * @param keySupplier splittable key generator
+     * @param limit keys to be generated
+     * @param sizeOfKeyspace the total size of the keyspace (for computing the expected collions)
+     * @param numberOfThreads number of workers for generating and sorting the keys, &gt;=1
+     * @return collision summary
+     * @throws IOException on any problem with the file system
+     */
+    public KeyCollisionSummary process(SplittableKeySupplier keySupplier, long limit, long sizeOfKeyspace, int numberOfThreads) throws IOException {
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be >= 1, given: " + numberOfThreads);
+        }
+        prepareRun(limit, sizeOfKeyspace);
+        List<File> chunkFiles = generateKeysInParallel(keySupplier, numberOfThreads, null);
+        return completeRun(chunkFiles);
+    }
+
+    /**
+     * This method generates the specified number of keys and reports occurrences of the same key like
+     * {@link #process(SplittableKeySupplier, long, long, int)}, but it avoids writing all the keys to disk.
+     * <p>
+     * In a first pass all keys get inserted into a {@link KeyCollisionPreFilter} in memory, which reports every key that might have occurred before. In a
+     * second pass the keys get generated again, and only the reported candidates (actual collisions plus a few false positives) go through the disk-based
+     * phases. Because all occurrences of the candidate keys are processed, the summary is exact.
+     * <p>
+     * If there are more than {@link #maxKeysInMemory} candidates (filter too small for the number of keys) the processor falls back to processing all keys.
+     * 
+     * @param keySupplier splittable key generator, must be deterministic because the keys get generated twice
+     * @param limit keys to be generated
+     * @param sizeOfKeyspace the total size of the keyspace (for computing the expected collions)
+     * @param numberOfThreads number of workers for generating the keys, &gt;=1
+     * @return collision summary
+     * @throws IOException on any problem with the file system
+     */
+    public KeyCollisionSummary processWithPreFilter(SplittableKeySupplier keySupplier, long limit, long sizeOfKeyspace, int numberOfThreads)
+            throws IOException {
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be >= 1, given: " + numberOfThreads);
+        }
+        prepareRun(limit, sizeOfKeyspace);
+        long[] candidateKeys = findCollisionCandidates(keySupplier, sizeOfKeyspace, numberOfThreads);
+        LongPredicate keyFilter = null;
+        if (candidateKeys == null) {
+            LOGGER.warn("Pre-filter: More than {} collision candidates, falling back to processing all keys.", maxKeysInMemory);
+        }
+        else {
+            KeyCollisionPreFilter candidateFilter = KeyCollisionPreFilter.forExpectedNumberOfKeys(candidateKeys.length, preFilterMaxBytes);
+            for (long candidateKey : candidateKeys) {
+                candidateFilter.put(candidateKey);
+            }
+            keyFilter = key -> candidateFilter.mightContain(key) && Arrays.binarySearch(candidateKeys, key) >= 0;
+        }
+        List<File> chunkFiles = generateKeysInParallel(keySupplier, numberOfThreads, keyFilter);
+        return completeRun(chunkFiles);
+    }
+
+    /**
+     * Pre-filter pass: inserts all keys into a {@link KeyCollisionPreFilter} and collects the keys that might have occurred before
+     * 
+     * @param keySupplier splittable key generator
+     * @param sizeOfKeyspace the total size of the keyspace (limits the number of distinct keys)
+     * @param numberOfThreads number of workers
+     * @return sorted distinct candidate keys or null if there were more than {@link #maxKeysInMemory} candidates
+     */
+    private long[] findCollisionCandidates(SplittableKeySupplier keySupplier, long sizeOfKeyspace, int numberOfThreads) {
+        long expectedNumberOfKeys = (sizeOfKeyspace > 0 && Long.compareUnsigned(sizeOfKeyspace, numberOfKeysToBeGenerated) < 0) ? sizeOfKeyspace
+                : numberOfKeysToBeGenerated;
+        KeyCollisionPreFilter preFilter = KeyCollisionPreFilter.forExpectedNumberOfKeys(expectedNumberOfKeys, preFilterMaxBytes);
+        LOGGER.info("Pre-filter: Inserting {} keys into a filter of {} bytes on {} threads ...", defer(() -> Long.toUnsignedString(numberOfKeysToBeGenerated)),
+                preFilter.getSizeInBytes(), numberOfThreads);
+        long numberOfRanges = Long.divideUnsigned(numberOfKeysToBeGenerated, maxKeysInMemory)
+                + (Long.remainderUnsigned(numberOfKeysToBeGenerated, maxKeysInMemory) > 0 ? 1 : 0);
+        AtomicLong nextRange = new AtomicLong();
+        AtomicLong numberOfCandidates = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads, r -> {
+            Thread t = new Thread(r);
+            t.setName("Collider-PreFilter:@" + Integer.toHexString(t.hashCode()));
+            t.setDaemon(true);
+            return t;
+        });
+        List<Future<long[]>> futures = new ArrayList<>(numberOfThreads);
+        try {
+            for (int i = 0; i < numberOfThreads; i++) {
+                futures.add(executor.submit(() -> collectCollisionCandidates(keySupplier, preFilter, nextRange, numberOfRanges, numberOfCandidates)));
+            }
+            long[] res = new long[0];
+            for (Future<long[]> future : futures) {
+                long[] workerCandidates = awaitWorkerResult(future);
+                if (workerCandidates == null) {
+                    return null;
+                }
+                int offset = res.length;
+                res = Arrays.copyOf(res, offset + workerCandidates.length);
+                System.arraycopy(workerCandidates, 0, res, offset, workerCandidates.length);
+            }
+            Arrays.sort(res);
+            res = Arrays.stream(res).distinct().toArray();
+            LOGGER.info("Pre-filter: {} keys are collision candidates.", res.length);
+            return res;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Worker of the pre-filter pass: takes ranges of {@link #maxKeysInMemory} positions until all ranges are processed
+     * 
+     * @param keySupplier splittable key generator
+     * @param preFilter shared filter
+     * @param nextRange shared counter of the next range to be processed
+     * @param numberOfRanges total number of ranges (treat as unsigned)
+     * @param numberOfCandidates shared counter to stop when there are too many candidates
+     * @return candidate keys found by this worker or null if the total number of candidates exceeded {@link #maxKeysInMemory}
+     */
+    private long[] collectCollisionCandidates(SplittableKeySupplier keySupplier, KeyCollisionPreFilter preFilter, AtomicLong nextRange, long numberOfRanges,
+            AtomicLong numberOfCandidates) {
+        long[] candidates = new long[16];
+        int size = 0;
+        long rangeIdx = nextRange.getAndIncrement();
+        while (Long.compareUnsigned(rangeIdx, numberOfRanges) < 0) {
+            if (numberOfCandidates.get() > maxKeysInMemory) {
+                // another worker has already given up
+                return null;
+            }
+            int numberOfKeys = rangeSize(rangeIdx);
+            LongSupplier rangeKeySupplier = keySupplier.createKeySupplier(rangeIdx * maxKeysInMemory);
+            for (int i = 0; i < numberOfKeys; i++) {
+                long key = rangeKeySupplier.getAsLong();
+                if (preFilter.put(key)) {
+                    if (numberOfCandidates.incrementAndGet() > maxKeysInMemory) {
+                        return null;
+                    }
+                    if (size == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, size * 2);
+                    }
+                    candidates[size] = key;
+                    size++;
+                }
+            }
+            rangeIdx = nextRange.getAndIncrement();
+        }
+        return Arrays.copyOf(candidates, size);
+    }
 
+    /**
+     * Resets the state for a new run
+     * 
+     * @param limit keys to be generated
+     * @param sizeOfKeyspace the total size of the keyspace
+     */
+    private void prepareRun(long limit, long sizeOfKeyspace) {
         summaryBuilder = SummaryBuilder.forKeyspaceSizeAndNumberOfKeysGenerated(sizeOfKeyspace, limit);
         this.numberOfKeysToBeGenerated = limit;
+        this.numberOfKeysInCollision = 0;
 
         this.reportingThreshold = Math.max(1L, (limit / MAX_PROGRESS_MESSAGES));
+    }
 
-        List<File> chunkFiles = generateKeys(keySupplier);
+    /**
+     * Runs phase II and III
+     * 
+     * @param chunkFiles key chunk files from phase I
+     * @return collision summary
+     * @throws IOException on any problem with the file system
+     */
+    private KeyCollisionSummary completeRun(List<File> chunkFiles) throws IOException {
         List<File> collisionKeyFiles = detectCollisions(chunkFiles);
         computeCollisionStats(collisionKeyFiles);
 
@@ -189,7 +446,8 @@ public class KeyCollisionProcessor<K extends KeyCollision<K>> {
         LOGGER.info("Phase I: Key generation and chunked storage");
         LOGGER.info("Phase I: Processing run with {} keys to chunk files at {} ...", numberOfKeysToBeGenerated, outputDir);
         long lastReportedPos = 0;
-        try (OrderedChunkFilewriter<KeyAtPos> ocfw = new OrderedChunkFilewriter<>(KeyAtPos.LINE_CODEC, outputDir, "keys-", maxKeysInMemory, maxKeysInChunk)) {
+        try (OrderedChunkFilewriter<KeyAtPos> ocfw = createChunkFilewriter(KeyAtPos.LINE_CODEC, KeyAtPos.BINARY_CODEC, new KeyAtPosSortBuffer(maxKeysInMemory),
+                "keys-")) {
 
             for (long pos = 0; Long.compareUnsigned(pos, numberOfKeysToBeGenerated) < 0; pos++) {
                 ocfw.writeItem(new KeyAtPos(keySupplier.getAsLong(), pos));
@@ -208,6 +466,139 @@ public class KeyCollisionProcessor<K extends KeyCollision<K>> {
         return chunkFiles;
     }
 
+    /**
+     * Phase I (parallel): workers create and sort the keys of position ranges, the current thread stores them in chunk files
+     * 
+     * @param keySupplier splittable key generator
+     * @param numberOfThreads number of workers
+     * @param keyFilter if not null, only the keys matching the filter will be stored
+     * @return list of created chunk files
+     * @throws IOException on any problem with the file system
+     */
+    private List<File> generateKeysInParallel(SplittableKeySupplier keySupplier, int numberOfThreads, LongPredicate keyFilter) throws IOException {
+        List<File> chunkFiles = null;
+        LOGGER.info("Phase I: Key generation and chunked storage");
+        LOGGER.info("Phase I: Processing run with {} keys on {} threads to chunk files at {} ...", defer(() -> Long.toUnsignedString(numberOfKeysToBeGenerated)),
+                numberOfThreads, outputDir);
+        long numberOfRanges = Long.divideUnsigned(numberOfKeysToBeGenerated, maxKeysInMemory)
+                + (Long.remainderUnsigned(numberOfKeysToBeGenerated, maxKeysInMemory) > 0 ? 1 : 0);
+        int numberOfBuffers = Long.compareUnsigned(numberOfRanges, numberOfThreads + 1L) < 0 ? (int) numberOfRanges : numberOfThreads + 1;
+        int bufferCapacity = Long.compareUnsigned(numberOfKeysToBeGenerated, maxKeysInMemory) < 0 ? (int) numberOfKeysToBeGenerated : maxKeysInMemory;
+        if (keyFilter != null) {
+            // only a few keys will pass the filter, the buffers grow on demand
+            bufferCapacity = 0;
+        }
+        BlockingQueue<KeyAtPosSortBuffer> freeBuffers = new ArrayBlockingQueue<>(Math.max(1, numberOfBuffers));
+        for (int i = 0; i < numberOfBuffers; i++) {
+            freeBuffers.add(new KeyAtPosSortBuffer(bufferCapacity));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads, r -> {
+            Thread t = new Thread(r);
+            t.setName("Collider-KeyGenerator:@" + Integer.toHexString(t.hashCode()));
+            t.setDaemon(true);
+            return t;
+        });
+        Deque<Future<KeyAtPosSortBuffer>> pendingRanges = new ArrayDeque<>();
+        long lastReportedPos = 0;
+        long numberOfKeysProcessed = 0;
+        long completedRanges = 0;
+        try (OrderedChunkFilewriter<KeyAtPos> ocfw = createChunkFilewriter(KeyAtPos.LINE_CODEC, KeyAtPos.BINARY_CODEC, null, "keys-")) {
+            long nextRange = 0;
+            for (; nextRange < numberOfThreads && Long.compareUnsigned(nextRange, numberOfRanges) < 0; nextRange++) {
+                pendingRanges.add(submitKeyRange(executor, keySupplier, keyFilter, nextRange, freeBuffers));
+            }
+            while (!pendingRanges.isEmpty()) {
+                KeyAtPosSortBuffer buffer = awaitWorkerResult(pendingRanges.poll());
+                if (Long.compareUnsigned(nextRange, numberOfRanges) < 0) {
+                    pendingRanges.add(submitKeyRange(executor, keySupplier, keyFilter, nextRange, freeBuffers));
+                    nextRange++;
+                }
+                if (keyFilter == null) {
+                    ocfw.writeSortedItems(buffer);
+                }
+                else {
+                    // few items, let the writer collect them instead of creating a chunk per range
+                    for (KeyAtPos item : buffer) {
+                        ocfw.writeItem(item);
+                    }
+                }
+                numberOfKeysProcessed = numberOfKeysProcessed + rangeSize(completedRanges);
+                completedRanges++;
+                buffer.clear();
+                freeBuffers.add(buffer);
+                if (Long.compareUnsigned(numberOfKeysProcessed, lastReportedPos + reportingThreshold) >= 0) {
+                    final long posF = numberOfKeysProcessed;
+                    LOGGER.info("Phase I: {} / {} keys generated ({} %) ...", defer(() -> Long.toUnsignedString(posF)),
+                            defer(() -> Long.toUnsignedString(numberOfKeysToBeGenerated)),
+                            defer(() -> formatPercentage(computePercentage(posF, numberOfKeysToBeGenerated))));
+                    lastReportedPos = numberOfKeysProcessed;
+                }
+            }
+            ocfw.flush();
+            chunkFiles = ocfw.getChunkFiles();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        LOGGER.info("Phase I: {} keys generated into {} chunk files", defer(() -> Long.toUnsignedString(numberOfKeysToBeGenerated)), chunkFiles.size());
+        return chunkFiles;
+    }
+
+    /**
+     * @param rangeIdx number of the range, the range starts at position <code>rangeIdx * maxKeysInMemory</code>
+     * @return number of keys in the given range, {@link #maxKeysInMemory} except for the last range
+     */
+    private int rangeSize(long rangeIdx) {
+        long remaining = numberOfKeysToBeGenerated - rangeIdx * maxKeysInMemory;
+        return Long.compareUnsigned(remaining, maxKeysInMemory) < 0 ? (int) remaining : maxKeysInMemory;
+    }
+
+    /**
+     * Submits a task that fills a free buffer with the keys of the given range and sorts it
+     * 
+     * @param executor worker pool
+     * @param keySupplier splittable key generator
+     * @param keyFilter if not null, only the keys matching the filter will be put into the buffer
+     * @param rangeIdx number of the range, the range starts at position <code>rangeIdx * maxKeysInMemory</code>
+     * @param freeBuffers pool of buffers, the task waits for a buffer if none is available
+     * @return future to obtain the sorted buffer
+     */
+    private Future<KeyAtPosSortBuffer> submitKeyRange(ExecutorService executor, SplittableKeySupplier keySupplier, LongPredicate keyFilter, long rangeIdx,
+            BlockingQueue<KeyAtPosSortBuffer> freeBuffers) {
+        final long fromPosition = rangeIdx * maxKeysInMemory;
+        final int numberOfKeys = rangeSize(rangeIdx);
+        return executor.submit(() -> {
+            KeyAtPosSortBuffer buffer = freeBuffers.take();
+            LongSupplier rangeKeySupplier = keySupplier.createKeySupplier(fromPosition);
+            for (int i = 0; i < numberOfKeys; i++) {
+                long key = rangeKeySupplier.getAsLong();
+                if (keyFilter == null || keyFilter.test(key)) {
+                    buffer.add(key, fromPosition + i);
+                }
+            }
+            buffer.sort(false);
+            return buffer;
+        });
+    }
+
+    /**
+     * @param <T> result type
+     * @param future result of a worker task
+     * @return result
+     */
+    private static <T> T awaitWorkerResult(Future<T> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new KeyCollisionProcessException("Unexpected interruption during parallel key generation.", ex);
+        }
+        catch (ExecutionException ex) {
+            throw new KeyCollisionProcessException("Error during parallel key generation.", ex.getCause());
+        }
+    }
+
     /**
      * Phase II: Iterate over all keys in key-order and group occurrences
      * 
@@ -219,16 +610,15 @@ public class KeyCollisionProcessor<K extends KeyCollision<K>> {
         LOGGER.info("Phase II: Collision detection");
         LOGGER.info("Phase II: Merging and iterating over {} chunk files ...", keyChunkFiles.size());
         List<File> collisionKeyFiles = Collections.emptyList();
-        try (OrderedChunkFilewriter<K> ocfw = new OrderedChunkFilewriter<>(keyCollisionCollectionPolicy.getLineCodec(), outputDir, "collisions-",
-                maxKeysInMemory, maxKeysInChunk)) {
+        try (OrderedChunkFilewriter<K> ocfw = createChunkFilewriter(keyCollisionCollectionPolicy.getLineCodec(),
+                keyCollisionCollectionPolicy.getBinaryCodec(), null, "collisions-")) {
 
             CollisionAggregationProgressObserver observer = new CollisionAggregationProgressObserver();
 
-            keyChunkFiles.forEach(this::openAndRegisterChunkReader);
-            Collection<Iterator<KeyAtPos>> chunkIterators = openChunkReaders.stream().map(this::toKeyIterator).toList();
-            CombinedOrderedItemIterator<KeyAtPos> allKeysOrderedIterator = new CombinedOrderedItemIterator<>(chunkIterators);
+            Collection<KeyAtPosCursor> chunkCursors = keyChunkFiles.stream().map(this::openAndRegisterKeyChunkReader).toList();
+            KeyAtPosMergeCursor allKeysOrderedCursor = new KeyAtPosMergeCursor(chunkCursors);
 
-            KeyCollisionIterator<K> collisionIterator = new KeyCollisionIterator<>(allKeysOrderedIterator, keyCollisionCollectionPolicy,
+            KeyCollisionIterator<K> collisionIterator = new KeyCollisionIterator<>(allKeysOrderedCursor, keyCollisionCollectionPolicy,
                     observer::reportCollisionAggregationProgress);
 
             while (collisionIterator.hasNext()) {
@@ -266,8 +656,8 @@ public class KeyCollisionProcessor<K extends KeyCollision<K>> {
         boolean firstCollision = true;
 
         try {
-            keyCollisionChunkFiles.forEach(this::openAndRegisterChunkReader);
-            Collection<Iterator<K>> chunkIterators = openChunkReaders.stream().map(this::toCollisionIterator).toList();
+            Collection<Iterator<K>> chunkIterators = keyCollisionChunkFiles.stream().map(chunkFile -> openAndRegisterChunkReader(chunkFile,
+                    keyCollisionCollectionPolicy.getLineCodec(), keyCollisionCollectionPolicy.getBinaryCodec())).toList();
             CombinedOrderedItemIterator<K> allCollisionsOrderedIterator = new CombinedOrderedItemIterator<>(chunkIterators);
             long lastCollisionReportedAt = 0;
             long collidedKeysProcessed = 0;
@@ -315,29 +705,78 @@ public class KeyCollisionProcessor<K extends KeyCollision<K>> {
     }
 
     /**
-     * @param br buffered reader for a chunk file (collisions)
-     * @return iterator
+     * @param <E> type of the items
+     * @param lineCodec codec for {@link ChunkFileFormat#GZIP_TEXT}
+     * @param binaryCodec codec for the binary formats
+     * @param sortBuffer custom sort buffer or null for the default
+     * @param fileNamePrefix to distinguish the files
+     * @return writer for the configured {@link #chunkFileFormat}
      */
-    private Iterator<K> toCollisionIterator(BufferedReader br) {
-        return new ItemConversionIterator<>(br, keyCollisionCollectionPolicy.getLineCodec());
+    private <E extends Comparable<E>> OrderedChunkFilewriter<E> createChunkFilewriter(ItemStringCodec<E> lineCodec, ItemBinaryCodec<E> binaryCodec,
+            List<E> sortBuffer, String fileNamePrefix) {
+        switch (chunkFileFormat) {
+        case BINARY:
+            return new OrderedChunkFilewriter<>(binaryCodec, false, sortBuffer, outputDir, fileNamePrefix, maxKeysInMemory, maxKeysInChunk);
+        case BINARY_COMPRESSED:
+            return new OrderedChunkFilewriter<>(binaryCodec, true, sortBuffer, outputDir, fileNamePrefix, maxKeysInMemory, maxKeysInChunk);
+        default:
+            return new OrderedChunkFilewriter<>(lineCodec, sortBuffer, outputDir, fileNamePrefix, maxKeysInMemory, maxKeysInChunk);
+        }
     }
 
     /**
-     * @param br buffered reader for a chunk file (keys)
-     * @return iterator
+     * Opens the given chunk file, puts the reader into the list and returns the items
+     * 
+     * @param <E> type of the items
+     * @param chunkFile file to be read
+     * @param lineCodec codec for {@link ChunkFileFormat#GZIP_TEXT}
+     * @param binaryCodec codec for the binary formats
+     * @return iterator over the items of the chunk file
      */
-    private Iterator<KeyAtPos> toKeyIterator(BufferedReader br) {
-        return new ItemConversionIterator<>(br, KeyAtPos.LINE_CODEC);
+    private <E> Iterator<E> openAndRegisterChunkReader(File chunkFile, ItemStringCodec<E> lineCodec, ItemBinaryCodec<E> binaryCodec) {
+        if (chunkFileFormat == ChunkFileFormat.GZIP_TEXT) {
+            BufferedReader br = openAndRegisterChunkReader(chunkFile);
+            return new ItemConversionIterator<>(br, lineCodec);
+        }
+        try {
+            ItemBinaryIterator<E> res = OrderedChunkFilewriter.openBinaryChunk(chunkFile, binaryCodec, chunkReadAheadEnabled);
+            this.openChunkReaders.add(res);
+            return res;
+        }
+        catch (IOException ex) {
+            throw new KeyCollisionProcessException("Error opening chunk file reader for " + chunkFile, ex);
+        }
+    }
+
+    /**
+     * Opens the given key chunk file, puts the reader into the list and returns a cursor over the keys
+     * 
+     * @param chunkFile file to be read
+     * @return cursor over the keys and positions of the chunk file
+     */
+    private KeyAtPosCursor openAndRegisterKeyChunkReader(File chunkFile) {
+        if (chunkFileFormat == ChunkFileFormat.GZIP_TEXT) {
+            return KeyAtPosCursor.of(openAndRegisterChunkReader(chunkFile, KeyAtPos.LINE_CODEC, KeyAtPos.BINARY_CODEC));
+        }
+        try {
+            KeyAtPosChunkReader res = KeyAtPosChunkReader.open(chunkFile, chunkReadAheadEnabled);
+            this.openChunkReaders.add(res);
+            return res;
+        }
+        catch (IOException ex) {
+            throw new KeyCollisionProcessException("Error opening chunk file reader for " + chunkFile, ex);
+        }
     }
 
     /**
-     * Creates a reader for the given chunk and puts it into the list
+     * Creates a reader for the given text chunk and puts it into the list
      * 
      * @param chunkFile file, a buffered reader shall be created for
+     * @return reader
      */
     // suppressing this try-with-resource sonar rule because this method is intended to supply open resources
     @SuppressWarnings({ "java:S2093", "resource" })
-    private void openAndRegisterChunkReader(File chunkFile) {
+    private BufferedReader openAndRegisterChunkReader(File chunkFile) {
         FileInputStream fis = null;
         BufferedReader res = null;
         try {
@@ -356,6 +795,7 @@ public class KeyCollisionProcessor<K extends KeyCollision<K>> {
             }
         }
         this.openChunkReaders.add(res);
+        return res;
     }
 
     /**
@@ -372,7 +812,8 @@ public class KeyCollisionProcessor<K extends KeyCollision<K>> {
         var n = val(numberOfKeysGenerated);
 
         var q = one.subtract(one.divide(m));
-        var qPowN = ApfloatMath.pow(q, n);
+        // an integer exponent allows exponentiation by squaring, much faster than the general power via exp() and log()
+        var qPowN = (numberOfKeysGenerated >= 0) ? ApfloatMath.pow(q, numberOfKeysGenerated) : ApfloatMath.pow(q, n);
 
         // See formula c(m, n) depicted in the book
         var c = m.multiply(qPowN.subtract(q)).add(n.subtract(one));
@@ -441,6 +882,16 @@ public class KeyCollisionProcessor<K extends KeyCollision<K>> {
          */
         private double lastPercReported = 0;
 
+        /**
+         * number of consumed items (1%) between two percentage computations, checking a long is much cheaper than computing the percentage for every item
+         */
+        private final long checkInterval = Math.max(1L, Long.divideUnsigned(numberOfKeysToBeGenerated, 100));
+
+        /**
+         * number of consumed items when to compute the percentage next time
+         */
+        private long nextCheckAt = 0;
+
         /**
          * logs the progress information
          * 
@@ -448,6 +899,10 @@ public class KeyCollisionProcessor<K extends KeyCollision<K>> {
          * @param returned number of aggregated items returned
          */
         private void reportCollisionAggregationProgress(long consumed, long returned) {
+            if (Long.compareUnsigned(consumed, nextCheckAt) < 0) {
+                return;
+            }
+            nextCheckAt = consumed + checkInterval;
             double perc = computePercentage(consumed, numberOfKeysToBeGenerated);
             if (perc >= lastPercReported + 1) {
                 LOGGER.info("Phase II: {} collided keys detected, {} / {} keys processed ({} %) ...", defer(() -> Long.toUnsignedString(returned)),
@@ -24,10 +24,13 @@ import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
@@ -37,17 +40,25 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.BiFunction;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.calamanari.pk.util.CloseUtils;
+import de.calamanari.pk.util.pfis.ParallelFileInputStream;
+
 /**
  * The {@link OrderedChunkFilewriter} writes items to files, so that a single file will not contain more that a specified number of items.<br />
  * The items will be written according to their natural order, so that a single chunk file will appear sorted.
  * <p>
- * The chunks will be g-zipped to lower disk space consumption. As a <b>safety mechanism</b>, to prevent running out of disk space, an
+ * The chunks will be g-zipped to lower disk space consumption. Alternatively, items can be written as binary records using an {@link ItemBinaryCodec} (no
+ * formatting/parsing, optionally compressed with the fastest deflate level), see {@link #openBinaryChunk(File, ItemBinaryCodec)}. As a <b>safety mechanism</b>, to prevent running out of disk space, an
  * {@link OrderedChunkFilewriter} will <b>abort operation</b> and throw an {@link IOException} should the available space in the file system go below
  * {@value #LOW_DISK_SPACE_LIMIT_GB} GB.
  * <p>
@@ -65,6 +76,26 @@ public class OrderedChunkFilewriter<E extends Comparable<E>> implements Closeabl
      */
     private static final int IO_BUFFER_BYTES = 5_000_000;
 
+    /**
+     * Buffer for reading binary chunk files, there can be many open at the same time
+     */
+    private static final int READ_BUFFER_BYTES = 500_000;
+
+    /**
+     * Maximum buffer of a binary chunk file read ahead by a separate thread
+     */
+    private static final int READ_AHEAD_BUFFER_BYTES = 4_194_304;
+
+    /**
+     * Buffer between the binary records and the compression
+     */
+    private static final int COMPRESSION_BUFFER_BYTES = 65_536;
+
+    /**
+     * Every binary chunk file starts with this number, followed by the compression flag and the number of items
+     */
+    private static final int BINARY_CHUNK_MAGIC = 0x4F43_4642;
+
     /**
      * Emergency stop at 5GB, it can create a big mess if the disk runs out of space ;)
      */
@@ -100,6 +131,16 @@ public class OrderedChunkFilewriter<E extends Comparable<E>> implements Closeabl
      */
     private final ItemStringCodec<E> codec;
 
+    /**
+     * Converter to write/read binary items, if set, {@link #codec} is null
+     */
+    private final ItemBinaryCodec<E> binaryCodec;
+
+    /**
+     * binary records shall be compressed
+     */
+    private final boolean compressed;
+
     /**
      * file name prefix to identify the process and to distinguish files
      */
@@ -129,11 +170,76 @@ public class OrderedChunkFilewriter<E extends Comparable<E>> implements Closeabl
      * @param maxKeysInChunk this should be a multiple of maxKeysInMemory
      */
     public OrderedChunkFilewriter(ItemStringCodec<E> codec, File outputDir, String fileNamePrefix, int maxKeysInMemory, int maxKeysInChunk) {
+        this(codec, null, false, null, outputDir, fileNamePrefix, maxKeysInMemory, maxKeysInChunk);
+    }
+
+    /**
+     * Creates a new writer with a custom sort buffer, all parameters are mandatory, not null
+     * @param codec
+     * @param sortBuffer empty list to buffer the items in memory, its {@link List#sort(java.util.Comparator)} with the natural order defines the sort
+     *            algorithm (e.g. {@link KeyAtPosSortBuffer})
+     * @param outputDir
+     * @param fileNamePrefix
+     * @param maxKeysInMemory
+     * @param maxKeysInChunk this should be a multiple of maxKeysInMemory
+     */
+    public OrderedChunkFilewriter(ItemStringCodec<E> codec, List<E> sortBuffer, File outputDir, String fileNamePrefix, int maxKeysInMemory,
+            int maxKeysInChunk) {
+        this(codec, null, false, sortBuffer, outputDir, fileNamePrefix, maxKeysInMemory, maxKeysInChunk);
+    }
+
+    /**
+     * Creates a new writer for binary chunk files, all parameters are mandatory, not null
+     * @param binaryCodec
+     * @param compressed if true the records will be compressed (fastest deflate level)
+     * @param outputDir
+     * @param fileNamePrefix
+     * @param maxKeysInMemory
+     * @param maxKeysInChunk this should be a multiple of maxKeysInMemory
+     */
+    public OrderedChunkFilewriter(ItemBinaryCodec<E> binaryCodec, boolean compressed, File outputDir, String fileNamePrefix, int maxKeysInMemory,
+            int maxKeysInChunk) {
+        this(null, binaryCodec, compressed, null, outputDir, fileNamePrefix, maxKeysInMemory, maxKeysInChunk);
+    }
+
+    /**
+     * Creates a new writer for binary chunk files with a custom sort buffer, all parameters are mandatory, not null
+     * @param binaryCodec
+     * @param compressed if true the records will be compressed (fastest deflate level)
+     * @param sortBuffer empty list to buffer the items in memory, its {@link List#sort(java.util.Comparator)} with the natural order defines the sort
+     *            algorithm (e.g. {@link KeyAtPosSortBuffer})
+     * @param outputDir
+     * @param fileNamePrefix
+     * @param maxKeysInMemory
+     * @param maxKeysInChunk this should be a multiple of maxKeysInMemory
+     */
+    public OrderedChunkFilewriter(ItemBinaryCodec<E> binaryCodec, boolean compressed, List<E> sortBuffer, File outputDir, String fileNamePrefix,
+            int maxKeysInMemory, int maxKeysInChunk) {
+        this(null, binaryCodec, compressed, sortBuffer, outputDir, fileNamePrefix, maxKeysInMemory, maxKeysInChunk);
+    }
+
+    /**
+     * @param codec either codec or binaryCodec
+     * @param binaryCodec either codec or binaryCodec
+     * @param compressed compression flag for binary records
+     * @param sortBuffer custom buffer or null to use an {@link ArrayList}
+     * @param outputDir
+     * @param fileNamePrefix
+     * @param maxKeysInMemory
+     * @param maxKeysInChunk
+     */
+    private OrderedChunkFilewriter(ItemStringCodec<E> codec, ItemBinaryCodec<E> binaryCodec, boolean compressed, List<E> sortBuffer, File outputDir,
+            String fileNamePrefix, int maxKeysInMemory, int maxKeysInChunk) {
         this.codec = codec;
+        this.binaryCodec = binaryCodec;
+        this.compressed = compressed;
         this.maxItemsInChunk = maxKeysInChunk;
         this.maxItemsInMemory = maxKeysInMemory;
         this.outputDir = outputDir;
-        this.buffer = new ArrayList<>(maxKeysInMemory);
+        if (sortBuffer != null && !sortBuffer.isEmpty()) {
+            throw new IllegalArgumentException("The sort buffer must be empty.");
+        }
+        this.buffer = sortBuffer == null ? new ArrayList<>(maxKeysInMemory) : sortBuffer;
         this.fileNamePrefix = fileNamePrefix;
         if (maxKeysInMemory > maxKeysInChunk) {
             throw new IllegalArgumentException(String.format("Chunk size must be larger than memory buffer size, given: maxKeysInMemory=%d, maxKeysInChunk=%d",
@@ -142,48 +248,178 @@ public class OrderedChunkFilewriter<E extends Comparable<E>> implements Closeabl
     }
 
     /**
-     * Creates a new chunk file and drains the buffer
+     * Creates a new chunk file with the given sorted items
+     * @param items sorted items
      * @throws IOException
      */
-    private void writeBufferedItemsToNewChunkFile() throws IOException {
+    private void writeItemsToNewChunkFile(List<E> items) throws IOException {
         ensureEnoughDiskSpace();
         chunkNumber++;
         String chunkId = "00000" + chunkNumber;
         chunkId = chunkId.substring(chunkId.length() - 5);
 
-        File chunkFile = new File(outputDir, String.join("", fileNamePrefix, "chunk-", chunkId, ".gz"));
-        LOGGER.debug("Creating new chunk file: {} with {} items ...", chunkFile, buffer.size());
+        File chunkFile = new File(outputDir, String.join("", fileNamePrefix, "chunk-", chunkId, binaryCodec == null ? ".gz" : ".bin"));
+        LOGGER.debug("Creating new chunk file: {} with {} items ...", chunkFile, items.size());
+        if (binaryCodec != null) {
+            writeBinaryChunk(chunkFile, items.iterator(), items.size());
+        }
+        else {
+            writeTextChunk(chunkFile, items);
+        }
+        chunkFiles.add(chunkFile);
+        numberOfItemsInCurrentChunk = items.size();
+        numberOfItemsWritten = numberOfItemsWritten + items.size();
+        LOGGER.debug("New chunk file created, {} items written in total.", numberOfItemsWritten);
+    }
+
+    /**
+     * Writes the items as a g-zipped text file
+     * @param chunkFile destination
+     * @param items sorted items
+     * @throws IOException
+     */
+    private void writeTextChunk(File chunkFile, List<E> items) throws IOException {
         try (FileOutputStream fos = new FileOutputStream(chunkFile);
                 BufferedOutputStream bos = new BufferedOutputStream(fos, IO_BUFFER_BYTES);
                 GZIPOutputStream gos = new GZIPOutputStream(bos);
                 OutputStreamWriter osw = new OutputStreamWriter(gos, StandardCharsets.UTF_8);
                 BufferedWriter destWriter = new BufferedWriter(osw)) {
-            for (int i = 0; i < buffer.size(); i++) {
+            for (int i = 0; i < items.size(); i++) {
                 if (i > 0) {
                     destWriter.newLine();
                 }
-                destWriter.write(codec.itemToString(buffer.get(i)));
+                destWriter.write(codec.itemToString(items.get(i)));
             }
         }
-        chunkFiles.add(chunkFile);
-        numberOfItemsInCurrentChunk = buffer.size();
-        numberOfItemsWritten = numberOfItemsWritten + buffer.size();
-        buffer.clear();
-        LOGGER.debug("New chunk file created, {} items written in total.", numberOfItemsWritten);
     }
 
     /**
-     * Merges the current buffer into the latest chunk in the list
+     * Writes a binary chunk file (header and records)
+     * @param chunkFile destination
+     * @param items to be written
+     * @param numberOfItems number of items the iterator returns
+     * @throws IOException
+     */
+    private void writeBinaryChunk(File chunkFile, Iterator<E> items, long numberOfItems) throws IOException {
+        Deflater deflater = compressed ? new Deflater(Deflater.BEST_SPEED) : null;
+        try (FileOutputStream fos = new FileOutputStream(chunkFile); BufferedOutputStream bos = new BufferedOutputStream(fos, IO_BUFFER_BYTES)) {
+            DataOutputStream headerStream = new DataOutputStream(bos);
+            headerStream.writeInt(BINARY_CHUNK_MAGIC);
+            headerStream.writeBoolean(compressed);
+            headerStream.writeLong(numberOfItems);
+            DeflaterOutputStream deflaterStream = compressed ? new DeflaterOutputStream(bos, deflater, COMPRESSION_BUFFER_BYTES) : null;
+            DataOutputStream dest = compressed ? new DataOutputStream(new BufferedOutputStream(deflaterStream, COMPRESSION_BUFFER_BYTES)) : headerStream;
+            while (items.hasNext()) {
+                binaryCodec.writeItem(items.next(), dest);
+            }
+            dest.flush();
+            if (deflaterStream != null) {
+                deflaterStream.finish();
+            }
+        }
+        finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Opens a binary chunk file created by an {@link OrderedChunkFilewriter} for reading the items in order.
+     * @param <E> type of the items
+     * @param chunkFile to be read
+     * @param binaryCodec must be the same as used for writing
+     * @return iterator, to be closed by the caller
+     * @throws IOException if the file could not be opened or is not a binary chunk file
+     */
+    public static <E> ItemBinaryIterator<E> openBinaryChunk(File chunkFile, ItemBinaryCodec<E> binaryCodec) throws IOException {
+        return openBinaryChunk(chunkFile, binaryCodec, false);
+    }
+
+    /**
+     * Opens a binary chunk file created by an {@link OrderedChunkFilewriter} for reading the items in order.
+     * @param <E> type of the items
+     * @param chunkFile to be read
+     * @param binaryCodec must be the same as used for writing
+     * @param readAhead if true, the file will be read ahead by a separate thread (see {@link ParallelFileInputStream})
+     * @return iterator, to be closed by the caller
+     * @throws IOException if the file could not be opened or is not a binary chunk file
+     */
+    public static <E> ItemBinaryIterator<E> openBinaryChunk(File chunkFile, ItemBinaryCodec<E> binaryCodec, boolean readAhead) throws IOException {
+        return openBinaryChunk(chunkFile, readAhead, (source, numberOfItems) -> new ItemBinaryIterator<>(source, binaryCodec, numberOfItems));
+    }
+
+    /**
+     * Opens a binary chunk file created by an {@link OrderedChunkFilewriter}, reads the header and creates a reader for the records.
+     * @param <T> type of the reader
+     * @param chunkFile to be read
+     * @param readAhead if true, the file will be read ahead by a separate thread (see {@link ParallelFileInputStream})
+     * @param readerFactory creates the reader from the (decompressed) stream positioned at the first record and the number of records
+     * @return reader, to be closed by the caller
+     * @throws IOException if the file could not be opened or is not a binary chunk file
+     */
+    // suppressing this try-with-resource sonar rule because this method is intended to supply open resources
+    @SuppressWarnings({ "java:S2095", "resource" })
+    static <T> T openBinaryChunk(File chunkFile, boolean readAhead, BiFunction<DataInputStream, Long, T> readerFactory) throws IOException {
+        InputStream fis = readAhead ? ParallelFileInputStream.createInputStream(chunkFile, READ_AHEAD_BUFFER_BYTES) : new FileInputStream(chunkFile);
+        T res = null;
+        try {
+            InputStream bis = readAhead ? fis : new BufferedInputStream(fis, READ_BUFFER_BYTES);
+            DataInputStream headerStream = new DataInputStream(bis);
+            if (headerStream.readInt() != BINARY_CHUNK_MAGIC) {
+                throw new IOException("Not a binary chunk file: " + chunkFile);
+            }
+            boolean compressedChunk = headerStream.readBoolean();
+            long numberOfItems = headerStream.readLong();
+            DataInputStream source = compressedChunk
+                    ? new DataInputStream(new BufferedInputStream(new InflaterInputStream(bis), COMPRESSION_BUFFER_BYTES))
+                    : headerStream;
+            res = readerFactory.apply(source, numberOfItems);
+        }
+        finally {
+            if (res == null) {
+                CloseUtils.closeResourceCatch(fis);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Merges the given sorted items into the latest chunk in the list
+     * @param items sorted items
      * @throws IOException
      */
-    private void mergeBufferedItemsIntoCurrentChunkFile() throws IOException {
+    private void mergeItemsIntoCurrentChunkFile(List<E> items) throws IOException {
         ensureEnoughDiskSpace();
         File chunkFile = chunkFiles.get(chunkNumber - 1);
         File tmpFile = new File(outputDir, chunkFile.getName() + "-merge");
         if (!chunkFile.renameTo(tmpFile)) {
             throw new IOException(String.format("Unable to prepare merge, could not rename %s to %s", chunkFile.getAbsolutePath(), tmpFile.toString()));
         }
-        LOGGER.debug("Merging {} buffered items into chunk file {} containing already {} items ...", buffer.size(), chunkFile, numberOfItemsInCurrentChunk);
+        LOGGER.debug("Merging {} items into chunk file {} containing already {} items ...", items.size(), chunkFile, numberOfItemsInCurrentChunk);
+        if (binaryCodec != null) {
+            try (ItemBinaryIterator<E> tempFileIterator = openBinaryChunk(tmpFile, binaryCodec)) {
+                Iterator<E> combinedIterator = new CombinedOrderedItemIterator<>(Arrays.asList(items.iterator(), tempFileIterator));
+                writeBinaryChunk(chunkFile, combinedIterator, numberOfItemsInCurrentChunk + items.size());
+            }
+        }
+        else {
+            mergeItemsIntoTextChunk(chunkFile, tmpFile, items);
+        }
+        Files.delete(tmpFile.toPath());
+        numberOfItemsInCurrentChunk = numberOfItemsInCurrentChunk + items.size();
+        numberOfItemsWritten = numberOfItemsWritten + items.size();
+        LOGGER.debug("Merge complete, {} items written in total.", numberOfItemsWritten);
+    }
+
+    /**
+     * Merges the given sorted items and the g-zipped text items of the temp file into the chunk file
+     * @param chunkFile destination
+     * @param tmpFile previous content of the chunk file
+     * @param items sorted items
+     * @throws IOException
+     */
+    private void mergeItemsIntoTextChunk(File chunkFile, File tmpFile, List<E> items) throws IOException {
         try (FileOutputStream fos = new FileOutputStream(chunkFile);
                 BufferedOutputStream bos = new BufferedOutputStream(fos, IO_BUFFER_BYTES);
                 GZIPOutputStream gos = new GZIPOutputStream(bos);
@@ -194,7 +430,7 @@ public class OrderedChunkFilewriter<E extends Comparable<E>> implements Closeabl
                 GZIPInputStream gis = new GZIPInputStream(bis);
                 InputStreamReader isr = new InputStreamReader(gis, StandardCharsets.UTF_8);
                 BufferedReader sourceReader = new BufferedReader(isr)) {
-            Iterator<E> bufferIterator = buffer.iterator();
+            Iterator<E> bufferIterator = items.iterator();
             Iterator<E> tempFileIterator = new ItemConversionIterator<>(sourceReader, codec);
             Iterator<E> combinedIterator = new CombinedOrderedItemIterator<>(Arrays.asList(bufferIterator, tempFileIterator));
             boolean subsequent = false;
@@ -206,11 +442,6 @@ public class OrderedChunkFilewriter<E extends Comparable<E>> implements Closeabl
                 subsequent = true;
             }
         }
-        Files.delete(tmpFile.toPath());
-        numberOfItemsInCurrentChunk = numberOfItemsInCurrentChunk + buffer.size();
-        numberOfItemsWritten = numberOfItemsWritten + buffer.size();
-        buffer.clear();
-        LOGGER.debug("Merge complete, {} items written in total.", numberOfItemsWritten);
     }
 
     /**
@@ -230,12 +461,39 @@ public class OrderedChunkFilewriter<E extends Comparable<E>> implements Closeabl
     public synchronized void flush() throws IOException {
         if (!buffer.isEmpty()) {
             Collections.sort(buffer);
-            if (numberOfItemsInCurrentChunk > 0 && buffer.size() + numberOfItemsInCurrentChunk <= maxItemsInChunk) {
-                mergeBufferedItemsIntoCurrentChunkFile();
-            }
-            else {
-                writeBufferedItemsToNewChunkFile();
-            }
+            writeSortedItemsToChunkFile(buffer);
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Writes a batch of items that has already been sorted (e.g. by another thread) without copying it into the buffer.<br />
+     * Pending items processed by {@link #writeItem(Comparable)} get flushed first. The given list remains unchanged.
+     * @param sortedItems items in their natural order, at most the configured maximum number of items in memory
+     * @throws IOException
+     */
+    public synchronized void writeSortedItems(List<E> sortedItems) throws IOException {
+        if (sortedItems.size() > maxItemsInMemory) {
+            throw new IllegalArgumentException(
+                    String.format("Too many items, given: %d, expected: <= maxKeysInMemory=%d", sortedItems.size(), maxItemsInMemory));
+        }
+        this.flush();
+        if (!sortedItems.isEmpty()) {
+            writeSortedItemsToChunkFile(sortedItems);
+        }
+    }
+
+    /**
+     * Merges the items into the current chunk file if the chunk size permits, otherwise creates a new chunk file
+     * @param sortedItems items in their natural order, not empty
+     * @throws IOException
+     */
+    private void writeSortedItemsToChunkFile(List<E> sortedItems) throws IOException {
+        if (numberOfItemsInCurrentChunk > 0 && sortedItems.size() + numberOfItemsInCurrentChunk <= maxItemsInChunk) {
+            mergeItemsIntoCurrentChunkFile(sortedItems);
+        }
+        else {
+            writeItemsToNewChunkFile(sortedItems);
         }
     }
 
@@ -0,0 +1,65 @@
+//@formatter:off
+/*
+ * SplittableKeySupplier
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.muhai.collider;
+
+import java.util.function.LongSupplier;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * A {@link SplittableKeySupplier} is a key source for the parallel key generation of the {@link KeyCollisionProcessor}: every worker gets its own
+ * {@link LongSupplier} starting at the first position of the range it is responsible for.
+ * <p>
+ * Implementations must be deterministic: the supplier created for a position must return the same keys a supplier created for an earlier position returns
+ * after reaching that position. This way a parallel run reports the same collisions as a sequential run.
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+@FunctionalInterface
+public interface SplittableKeySupplier {
+
+    /**
+     * FACTORY METHOD for the key supplier of a range
+     * @param fromPosition first position (treat as unsigned), the supplier returns the key for this position followed by the keys of the subsequent positions
+     * @return supplier to be used by a single thread
+     */
+    public LongSupplier createKeySupplier(long fromPosition);
+
+    /**
+     * @param keyAtPosition thread-safe function that computes the key for a position (e.g. <code>pos -&gt; generator.createKey(pos)</code>)
+     * @return splittable supplier based on the given function
+     */
+    public static SplittableKeySupplier ofPositionFunction(LongUnaryOperator keyAtPosition) {
+        return fromPosition -> new LongSupplier() {
+
+            /**
+             * next position to be returned
+             */
+            private long position = fromPosition;
+
+            @Override
+            public long getAsLong() {
+                long res = keyAtPosition.applyAsLong(position);
+                position++;
+                return res;
+            }
+        };
+    }
+
+}
@@ -19,6 +19,9 @@
 //@formatter:on
 package de.calamanari.pk.muhai.collider;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -91,6 +94,39 @@ public class TrackingKeyCollision implements KeyCollision<TrackingKeyCollision>
 
     };
 
+    /**
+     * Codec for writing {@link TrackingKeyCollision}s as binary records (key, number of positions, positions) to a file and read it back
+     */
+    public static final ItemBinaryCodec<TrackingKeyCollision> BINARY_CODEC = new ItemBinaryCodec<>() {
+
+        @Override
+        public int getRecordLength() {
+            return ItemBinaryCodec.VARIABLE_LENGTH;
+        }
+
+        @Override
+        public void writeItem(TrackingKeyCollision item, DataOutput out) throws IOException {
+            if (item == null) {
+                throw new ItemConversionException("Cannot encode null");
+            }
+            out.writeLong(item.key);
+            writePositions(item.positions, out);
+        }
+
+        @Override
+        public TrackingKeyCollision readItem(DataInput in) throws IOException {
+            long keyRead = in.readLong();
+            long[] positionsRead = readPositions(in);
+            try {
+                return new TrackingKeyCollision(keyRead, positionsRead);
+            }
+            catch (RuntimeException ex) {
+                throw new ItemConversionException("Record corrupted", ex);
+            }
+        }
+
+    };
+
     /**
      * generated key
      */
@@ -175,6 +211,37 @@ public class TrackingKeyCollision implements KeyCollision<TrackingKeyCollision>
         return res;
     }
 
+    /**
+     * helper method to write the positions as part of a binary record (number of positions followed by the positions)
+     * @param positions
+     * @param out destination
+     * @throws IOException on any problem with the destination
+     */
+    static final void writePositions(long[] positions, DataOutput out) throws IOException {
+        out.writeInt(positions.length);
+        for (long position : positions) {
+            out.writeLong(position);
+        }
+    }
+
+    /**
+     * helper method to read the positions written by {@link #writePositions(long[], DataOutput)}
+     * @param in source
+     * @return positions
+     * @throws IOException on any problem with the source
+     */
+    static final long[] readPositions(DataInput in) throws IOException {
+        int numberOfPositions = in.readInt();
+        if (numberOfPositions < 2) {
+            throw new ItemConversionException("Record corrupted, expected at least 2 positions, given: " + numberOfPositions);
+        }
+        long[] res = new long[numberOfPositions];
+        for (int i = 0; i < numberOfPositions; i++) {
+            res[i] = in.readLong();
+        }
+        return res;
+    }
+
     @Override
     public int compareTo(TrackingKeyCollision o) {
         int res = Long.compareUnsigned(this.positions[1], o.positions[1]);
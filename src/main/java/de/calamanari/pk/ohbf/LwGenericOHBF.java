@@ -136,6 +136,25 @@ public class LwGenericOHBF implements BloomFilter {
         return res;
     }
 
+    /**
+     * Puts the given key into an external vector instead of this filter's own vector, e.g. into a row slot of a large array. This allows writing filter
+     * vectors stored elsewhere without any intermediate copy. The state of this filter remains unchanged.
+     * <p>
+     * Please refer to the documentation of {@link MuhaiGenerator} to understand how the attributes are handled.
+     * 
+     * @param target destination array, the vector occupies the same number of longs as {@link #getBitVectorAsLongArray()}
+     * @param offset position of the vector's first long in the target array
+     * @param attributes key, optionally composed of multiple values
+     */
+    public void putInto(long[] target, int offset, Object... attributes) {
+        byte[] hashBytes = hasher.computeHashBytes(attributes);
+        for (int i = 0; i < config.getNumberOfHashesK(); i++) {
+            long position = GenericOHBF.fetchBitPosition(hashBytes, i, partitionSize);
+            int longIdx = offset + (int) (position >>> 6L);
+            target[longIdx] = target[longIdx] | (1L << position);
+        }
+    }
+
     /**
      * Checks whether the key is in the bloom filter, with a certain probability of false-positive results and no false-negatives.
      * <p>
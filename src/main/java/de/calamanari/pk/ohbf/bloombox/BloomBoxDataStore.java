@@ -81,6 +81,27 @@ public interface BloomBoxDataStore extends Serializable {
      */
     public <Q extends QueryDelegate<Q>> void dispatch(Q queryDelegate);
 
+    /**
+     * Passes a query to the store expecting the query to be executed on the records of the blocks provided by the sampler (random order) until the sampler
+     * stops, see {@link RowSampler#processBlocks(java.util.List, RowSampler.BlockProcessor)}. Spawned delegates (parallel execution) must be merged into the
+     * given delegate before the method returns.
+     * 
+     * @param queryDelegate query to be matched against the sampled records
+     * @param sampler controls the order of the blocks and when to stop
+     * @param <Q> the delegate type
+     * @throws UnsupportedOperationException (default behavior) if this data store cannot sample (see {@link #isSamplingCapable()}).
+     */
+    default <Q extends QueryDelegate<Q>> void dispatchSample(Q queryDelegate, RowSampler sampler) {
+        throw new UnsupportedOperationException(this.getClass().getSimpleName() + " does not support sampling.");
+    }
+
+    /**
+     * @return true if the method {@link #dispatchSample(QueryDelegate, RowSampler)} is implemented, false by default
+     */
+    default boolean isSamplingCapable() {
+        return false;
+    }
+
     /**
      * Feeds a single row (bloom filter vector per record) into the the store
      * 
@@ -89,6 +110,18 @@ public interface BloomBoxDataStore extends Serializable {
      */
     public void feedRow(long[] rowVector, long rowIdx);
 
+    /**
+     * Zero-copy feeding: stores keeping all vectors in a single array can expose this array, so that feeders write the bits of a row directly into its slot
+     * instead of calling {@link #feedRow(long[], long)}. The vector of row <i>i</i> occupies the positions <code>[i * vectorSize, (i+1) * vectorSize)</code>.
+     * <p>
+     * Stores that need to process every fed row (e.g. to record additional information) must not expose the array.
+     * 
+     * @return the array with all row vectors for direct feeding or null if not supported (default)
+     */
+    default long[] getDirectFeedingTarget() {
+        return null;
+    }
+
     /**
      * This method assumes that the give row exists in the box and merges (logical OR) the given filter vector into the existing row vector in the box.
      * 
@@ -107,6 +140,24 @@ public interface BloomBoxDataStore extends Serializable {
         return false;
     }
 
+    /**
+     * Tells whether {@link #feedRow(long[], long)} may be called concurrently from multiple threads for <i>different</i> rows in any order.
+     * 
+     * @return true if the store supports concurrent feeding with random row indexes, false by default
+     */
+    default boolean isConcurrentFeedingCapable() {
+        return false;
+    }
+
+    /**
+     * Tells whether {@link #mergeRow(long[], long)} may be called concurrently from multiple threads for <i>different</i> rows in any order.
+     * 
+     * @return true if the store supports concurrent row merging, false by default
+     */
+    default boolean isConcurrentMergeCapable() {
+        return false;
+    }
+
     /**
      * Writes the store to the given stream, individual implementations may decide only to store the header with metadata.
      * <p>
@@ -37,7 +37,31 @@ public enum BloomBoxOption {
     /**
      * boolean option, if true and supported by the underlying data store query will be executed with multiple threads
      */
-    PARALLEL_QUERY("parallel");
+    PARALLEL_QUERY("parallel"),
+
+    /**
+     * boolean option, if true the execution collects expression-level metrics (result cache hits, match and short-circuit rates per expression node), see
+     * {@link QueryBundleMetrics}
+     */
+    METRICS("metrics"),
+
+    /**
+     * boolean option, if true and supported by the underlying data store the rows get scanned in random block order and the scan stops as soon as the match
+     * rates of all queries are known with the requested precision (see {@link #SAMPLING_CONFIDENCE} and {@link #SAMPLING_MARGIN_OF_ERROR}), the counts are
+     * estimates then, see {@link SampledBloomBoxQueryResult}
+     */
+    SAMPLING("sampling"),
+
+    /**
+     * decimal option, confidence level of the sampling error bounds, default {@value RowSampler#DEFAULT_CONFIDENCE_LEVEL}
+     */
+    SAMPLING_CONFIDENCE("samplingConfidence"),
+
+    /**
+     * decimal option, maximum half-width of the confidence interval of each match rate (e.g. 0.005 means +/- 0.5%), default
+     * {@value RowSampler#DEFAULT_MARGIN_OF_ERROR}
+     */
+    SAMPLING_MARGIN_OF_ERROR("samplingMarginOfError");
 
     /**
      * name in map for this option
@@ -72,6 +72,11 @@ public class BloomBoxQueryResult implements Serializable {
      */
     private PbBloomBoxQueryResult probabilityResult = null;
 
+    /**
+     * Optional error bounds if the counts are estimates (sampling mode)
+     */
+    private SampledBloomBoxQueryResult sampleResult = null;
+
     /**
      * Optional protocol data, see {@link #logProtocolMessage(String)}
      */
@@ -128,6 +133,15 @@ public class BloomBoxQueryResult implements Serializable {
         baseQueryCount++;
     }
 
+    /**
+     * Adds the number of matching records of a block of rows
+     * 
+     * @param count number of matching records
+     */
+    void addToBaseQueryCount(long count) {
+        baseQueryCount = baseQueryCount + count;
+    }
+
     /**
      * @param baseQueryCount number of records that matched the main query
      */
@@ -144,6 +158,16 @@ public class BloomBoxQueryResult implements Serializable {
         subQueryCounts[idx]++;
     }
 
+    /**
+     * Adds the number of matching records of a block of rows to a sub query count
+     * 
+     * @param idx index of the sub query
+     * @param count number of matching records
+     */
+    void addToSubQueryCount(int idx, long count) {
+        subQueryCounts[idx] = subQueryCounts[idx] + count;
+    }
+
     /**
      * @return array with the sub query counts (reference to the internal array)
      */
@@ -254,6 +278,35 @@ public class BloomBoxQueryResult implements Serializable {
         this.probabilityResult = probabilityResult;
     }
 
+    /**
+     * @return error bounds if the counts are estimates (sampling mode), otherwise null
+     */
+    public SampledBloomBoxQueryResult getSampleResult() {
+        return sampleResult;
+    }
+
+    /**
+     * @param sampleResult optional error bounds if the counts are estimates (sampling mode)
+     */
+    public void setSampleResult(SampledBloomBoxQueryResult sampleResult) {
+        this.sampleResult = sampleResult;
+    }
+
+    /**
+     * Multiplies all counts (and probability sums) with the given factor, used to extrapolate the counts of a sample
+     * 
+     * @param scaleFactor factor to be applied
+     */
+    void scaleCounts(double scaleFactor) {
+        baseQueryCount = Math.round(baseQueryCount * scaleFactor);
+        for (int i = 0; subQueryCounts != null && i < subQueryCounts.length; i++) {
+            subQueryCounts[i] = Math.round(subQueryCounts[i] * scaleFactor);
+        }
+        if (probabilityResult != null) {
+            probabilityResult.scaleSums(scaleFactor);
+        }
+    }
+
     /**
      * @return optional protocol or null
      */
@@ -389,6 +442,10 @@ public class BloomBoxQueryResult implements Serializable {
             sb.append(", subQuerySums=");
             sb.append(buildSubQuerySumMap().toString());
         }
+        if (this.sampleResult != null) {
+            sb.append(", sampleResult=");
+            sb.append(sampleResult);
+        }
         if (this.protocol != null) {
             sb.append(this.protocol.toString());
         }
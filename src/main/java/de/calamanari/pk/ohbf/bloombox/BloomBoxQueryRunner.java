@@ -20,10 +20,16 @@
 
 package de.calamanari.pk.ohbf.bloombox;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.UUID;
@@ -36,6 +42,9 @@ import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+
 import de.calamanari.pk.ohbf.BloomFilterConfig;
 import de.calamanari.pk.ohbf.LwGenericOHBF;
 import de.calamanari.pk.ohbf.bloombox.bbq.AndExpression;
@@ -54,6 +63,7 @@ import de.calamanari.pk.ohbf.bloombox.bbq.PostBbqLexer;
 import de.calamanari.pk.ohbf.bloombox.bbq.PostBbqParser;
 import de.calamanari.pk.ohbf.bloombox.bbq.QuantumOptimizer;
 import de.calamanari.pk.util.LambdaSupportLoggerProxy;
+import de.calamanari.pk.util.TimeUtils;
 
 /**
  * The {@link BloomBoxQueryRunner} prepares and executes queries on a {@link BloomBoxDataStore}.
@@ -82,6 +92,16 @@ public class BloomBoxQueryRunner {
      */
     private UpScalerFactory upScalerFactory = DefaultUpScaler.FACTORY;
 
+    /**
+     * Optional cache for prepared queries, null by default (no caching)
+     */
+    private QueryPreparationCache preparationCache = null;
+
+    /**
+     * Aggregated metrics of all bundle executions of this runner
+     */
+    private final BloomBoxQueryStatistics statistics = new BloomBoxQueryStatistics();
+
     /**
      * Creates a runner on the given box
      * 
@@ -176,48 +196,77 @@ public class BloomBoxQueryRunner {
 
     /**
      * Parses BBQ expressions from {@link BloomBoxQuery}s and converts them into {@link InternalQuery}s.
+     * <p>
+     * If a {@link QueryPreparationCache} is configured, previously prepared queries will be taken from the cache.
      * 
      * @param queries raw queries
      * @param nameReferenceMap maps query and sub query names to the corresponding expression ids
      * @param warnings collection of all warnings picked up during processing, one entry per query, empty string for no warning
+     * @param cacheHits collection of flags, one entry per query, true if the prepared query was taken from the cache
+     * @param metrics to collect the preparation timings
      * @return array with the internal queries to be executed
      */
-    private InternalQuery[] prepareInternalQueries(List<BloomBoxQuery> queries, Map<String, Long> nameReferenceMap, List<String> warnings) {
+    private InternalQuery[] prepareInternalQueries(List<BloomBoxQuery> queries, Map<String, Long> nameReferenceMap, List<String> warnings,
+            List<Boolean> cacheHits, QueryBundleMetrics metrics) {
+        long preparationStartTimeNanos = System.nanoTime();
         InternalQuery[] res = new InternalQuery[queries.size()];
         IntermediateExpressionBuilder basicExpressionBuilder = new IntermediateExpressionBuilder();
         IntermediatePostExpressionBuilder postExpressionBuilder = new IntermediatePostExpressionBuilder(nameReferenceMap);
         IntermediateExpressionOptimizer optimizer = new IntermediateExpressionOptimizer();
         StringBuilder warningBuilder = new StringBuilder();
         LwGenericOHBF bloomFilter = new LwGenericOHBF(config);
+        QueryPreparationCache cache = this.preparationCache;
 
         Map<Long, BbqExpression> expressionCache = new HashMap<>();
 
         for (int i = 0; i < queries.size(); i++) {
             BloomBoxQuery query = queries.get(i);
+            boolean cacheHit = false;
             try {
-                warningBuilder.setLength(0);
-                BloomFilterQuery baseQuery = null;
-                if (query.getType() == QueryType.POST_QUERY) {
-                    baseQuery = createPostQuery(bloomFilter, query.getName(), query.getQuery(), postExpressionBuilder, optimizer, expressionCache,
-                            warningBuilder);
+                String cacheKey = (cache == null) ? null : QueryPreparationCache.createCacheKey(query, nameReferenceMap);
+                QueryPreparationCache.PreparedQuery preparedQuery = (cache == null) ? null : cache.lookup(cacheKey);
+                if (preparedQuery != null) {
+                    registerPreparedQuery(preparedQuery, nameReferenceMap, expressionCache);
+                    res[i] = preparedQuery.getInternalQuery();
+                    warnings.add(preparedQuery.getWarning());
+                    cacheHit = true;
                 }
                 else {
-                    baseQuery = createBasicQuery(bloomFilter, query.getName(), query.getQuery(), basicExpressionBuilder, optimizer, expressionCache,
-                            warningBuilder);
-                }
-                registerQueryByName(query.getName(), baseQuery, nameReferenceMap);
-
-                Map<String, BloomFilterQuery> subQueries = new HashMap<>();
-                for (Map.Entry<String, String> entry : query.getSubQueryMap().entrySet()) {
-                    String subQueryName = query.getName() + "." + entry.getKey();
-                    BloomFilterQuery subQuery = createBasicQuery(bloomFilter, subQueryName, entry.getValue(), basicExpressionBuilder, optimizer,
-                            expressionCache, warningBuilder);
-                    registerQueryByName(subQueryName, subQuery, nameReferenceMap);
-                    subQueries.put(entry.getKey(), subQuery);
-                }
+                    long startTimeNanos = System.nanoTime();
+                    Map<String, Long> registeredNames = new LinkedHashMap<>();
+                    List<BbqExpression> referenceableExpressions = new ArrayList<>();
+                    warningBuilder.setLength(0);
+                    BloomFilterQuery baseQuery = null;
+                    if (query.getType() == QueryType.POST_QUERY) {
+                        baseQuery = createPostQuery(bloomFilter, query.getName(), query.getQuery(), postExpressionBuilder, optimizer, expressionCache,
+                                warningBuilder, metrics);
+                    }
+                    else {
+                        baseQuery = createBasicQuery(bloomFilter, query.getName(), query.getQuery(), basicExpressionBuilder, optimizer, expressionCache,
+                                warningBuilder, metrics);
+                    }
+                    registerQueryByName(query.getName(), baseQuery, nameReferenceMap);
+                    registeredNames.put(query.getName(), baseQuery.getId());
+                    referenceableExpressions.add(baseQuery.getExpression());
+
+                    Map<String, BloomFilterQuery> subQueries = new HashMap<>();
+                    for (Map.Entry<String, String> entry : query.getSubQueryMap().entrySet()) {
+                        String subQueryName = query.getName() + "." + entry.getKey();
+                        BloomFilterQuery subQuery = createBasicQuery(bloomFilter, subQueryName, entry.getValue(), basicExpressionBuilder, optimizer,
+                                expressionCache, warningBuilder, metrics);
+                        registerQueryByName(subQueryName, subQuery, nameReferenceMap);
+                        registeredNames.put(subQueryName, subQuery.getId());
+                        referenceableExpressions.add(subQuery.getExpression());
+                        subQueries.put(entry.getKey(), subQuery);
+                    }
 
-                res[i] = createInternalQuery(query.getName(), baseQuery, subQueries, query.getOptions());
-                warnings.add(warningBuilder.toString());
+                    res[i] = createInternalQuery(query.getName(), baseQuery, subQueries, query.getOptions(), metrics);
+                    warnings.add(warningBuilder.toString());
+                    if (cache != null) {
+                        cache.put(cacheKey, new QueryPreparationCache.PreparedQuery(res[i], registeredNames, referenceableExpressions, warningBuilder.toString(),
+                                System.nanoTime() - startTimeNanos));
+                    }
+                }
             }
             catch (IndexOutOfBoundsException ex) {
                 String errorMessage = BbxMessage.ERR_CREATE_QUERY.format(String.format("Failed to create query '%s' from %s%ncause: %s", query.getName(),
@@ -233,11 +282,86 @@ public class BloomBoxQueryRunner {
                 res[i] = new ErrorPlaceholderQuery(query.getName(), errorMessage);
                 warnings.add("");
             }
+            cacheHits.add(cacheHit);
         }
+        metrics.setNumberOfPreparationCacheHits((int) cacheHits.stream().filter(Boolean::booleanValue).count());
+        metrics.setPreparationNanos(System.nanoTime() - preparationStartTimeNanos);
         logPreparedInternalQueries(res, nameReferenceMap, warnings, "Prepared internal queries:");
         return res;
     }
 
+    /**
+     * Makes a query taken from the {@link QueryPreparationCache} known to the current bundle preparation, so that later post queries can refer to it.
+     * 
+     * @param preparedQuery cached query
+     * @param nameReferenceMap maps query and sub query names to the corresponding expression ids
+     * @param expressionCache expression cache of the current preparation
+     * @throws QueryPreparationException if there was already another query mapped to any of the query's names
+     */
+    private void registerPreparedQuery(QueryPreparationCache.PreparedQuery preparedQuery, Map<String, Long> nameReferenceMap,
+            Map<Long, BbqExpression> expressionCache) {
+        for (Map.Entry<String, Long> entry : preparedQuery.getNameReferences().entrySet()) {
+            if (nameReferenceMap.get(entry.getKey()) != null) {
+                throw new QueryPreparationException(BbxMessage.ERR_DUPLICATE_QUERY
+                        .format(String.format("Duplicate query name detected: '%s' (query names in a bundle must be unique)", entry.getKey())));
+            }
+            nameReferenceMap.put(entry.getKey(), entry.getValue());
+        }
+        for (BbqExpression expression : preparedQuery.getReferenceableExpressions()) {
+            expression.collectUniqueDepthFirst().forEach(e -> expressionCache.putIfAbsent(e.getExpressionId(), e));
+        }
+    }
+
+    /**
+     * Prepares the queries of the given bundle file and puts them into the configured {@link QueryPreparationCache} without executing them. This way a runner
+     * can be <i>warmed up</i> for a set of queries expected to be executed frequently.
+     * <p>
+     * The file can either contain a bundle in JSON format (snake case) or an EasyScript (see {@link QueryBundle#fromEasyScript(String)}).
+     * 
+     * @param bundleFile file with a saved query bundle (UTF-8)
+     * @return number of queries in the cache after warm-up
+     * @throws BloomBoxException if no cache is configured or the file could not be read
+     */
+    public int prewarmPreparationCache(File bundleFile) {
+        if (preparationCache == null) {
+            throw new BloomBoxException("Unable to pre-warm, no preparation cache configured.");
+        }
+        try {
+            String content = Files.readString(bundleFile.toPath(), StandardCharsets.UTF_8).trim();
+            QueryBundle bundle = null;
+            if (content.startsWith("{")) {
+                ObjectMapper objectMapper = new ObjectMapper();
+                objectMapper.setPropertyNamingStrategy(new PropertyNamingStrategies.SnakeCaseStrategy());
+                bundle = objectMapper.readValue(content, QueryBundle.class);
+            }
+            else {
+                bundle = QueryBundle.fromEasyScript(content);
+            }
+            prewarmPreparationCache(bundle);
+            return preparationCache.size();
+        }
+        catch (IOException | RuntimeException ex) {
+            throw new BloomBoxException("Unable to pre-warm preparation cache from file " + bundleFile, ex);
+        }
+    }
+
+    /**
+     * Prepares the queries of the given bundle and puts them into the configured {@link QueryPreparationCache} without executing them.
+     * 
+     * @param queryBundle queries expected to be executed frequently
+     * @throws BloomBoxException if no cache is configured
+     */
+    public void prewarmPreparationCache(QueryBundle queryBundle) {
+        if (preparationCache == null) {
+            throw new BloomBoxException("Unable to pre-warm, no preparation cache configured.");
+        }
+        queryBundle.validateShallow();
+        List<BloomBoxQuery> allQueries = new ArrayList<>();
+        allQueries.addAll(queryBundle.getBaseQueries());
+        allQueries.addAll(queryBundle.getPostQueries());
+        prepareInternalQueries(allQueries, new HashMap<>(), new ArrayList<>(), new ArrayList<>(), new QueryBundleMetrics());
+    }
+
     /**
      * Creates an internal query after applying the QuantumOptimizer to reduce complexity.
      * <p>
@@ -247,8 +371,11 @@ public class BloomBoxQueryRunner {
      * @param baseQuery main query
      * @param subQueries sub query
      * @param options query settings
+     * @param metrics to collect the optimization time
      */
-    private InternalQuery createInternalQuery(String name, BloomFilterQuery baseQuery, Map<String, BloomFilterQuery> subQueries, Map<String, String> options) {
+    private InternalQuery createInternalQuery(String name, BloomFilterQuery baseQuery, Map<String, BloomFilterQuery> subQueries, Map<String, String> options,
+            QueryBundleMetrics metrics) {
+        long startTimeNanos = System.nanoTime();
         QuantumOptimizer quantumOptimizer = new QuantumOptimizer();
         BloomFilterQuery optimizedBaseQuery = quantumOptimizer.optimize(baseQuery);
         Map<String, BloomFilterQuery> optimizedCombinedSubQueries = new HashMap<>();
@@ -256,6 +383,7 @@ public class BloomBoxQueryRunner {
             BloomFilterQuery combinedFilterQuery = quantumOptimizer.optimize(optimizedBaseQuery.combinedWith(entry.getValue()));
             optimizedCombinedSubQueries.put(entry.getKey(), combinedFilterQuery);
         }
+        metrics.addOptimizeNanos(System.nanoTime() - startTimeNanos);
         return new InternalQuery(name, optimizedBaseQuery, optimizedCombinedSubQueries, options);
     }
 
@@ -286,14 +414,19 @@ public class BloomBoxQueryRunner {
      * @param optimizer query optimizer
      * @param expressionCache expression cache (avoids duplication)
      * @param warningBuilder for adding warnings
+     * @param metrics to collect the parse and optimization times
      * @return new filter query
      */
     private BloomFilterQuery createBasicQuery(LwGenericOHBF bloomFilter, String queryName, String queryString, IntermediateExpressionBuilder builder,
-            IntermediateExpressionOptimizer optimizer, Map<Long, BbqExpression> expressionCache, StringBuilder warningBuilder) {
+            IntermediateExpressionOptimizer optimizer, Map<Long, BbqExpression> expressionCache, StringBuilder warningBuilder, QueryBundleMetrics metrics) {
         LOGGER.trace("Parsing basic query '{}' from queryString= {} ...", queryName, queryString);
+        long startTimeNanos = System.nanoTime();
         parseBbqQuery(queryString, builder);
+        long parsedTimeNanos = System.nanoTime();
+        metrics.addParseNanos(parsedTimeNanos - startTimeNanos);
         IntermediateExpression expression = optimizer.process(builder.getResult());
         BbqExpression bbqe = expression.createBbqEquivalent(bloomFilter, expressionCache);
+        metrics.addOptimizeNanos(System.nanoTime() - parsedTimeNanos);
         validateQuery(queryName, warningBuilder, expression, bbqe);
         return new BloomFilterQuery(queryString, bbqe);
     }
@@ -308,11 +441,13 @@ public class BloomBoxQueryRunner {
      * @param optimizer query optimizer
      * @param expressionCache expression cache (avoids duplication)
      * @param warningBuilder for adding warnings
+     * @param metrics to collect the parse and optimization times
      * @return new filter query
      */
     private BloomFilterQuery createPostQuery(LwGenericOHBF bloomFilter, String queryName, String queryString, IntermediatePostExpressionBuilder builder,
-            IntermediateExpressionOptimizer optimizer, Map<Long, BbqExpression> expressionCache, StringBuilder warningBuilder) {
+            IntermediateExpressionOptimizer optimizer, Map<Long, BbqExpression> expressionCache, StringBuilder warningBuilder, QueryBundleMetrics metrics) {
         LOGGER.trace("Parsing post query '{}' from queryString= {} ...", queryName, queryString);
+        long startTimeNanos = System.nanoTime();
         CharStream codePointCharStream = CharStreams.fromString(queryString + "\n");
         PostBbqLexer lexer = new PostBbqLexer(codePointCharStream);
         lexer.removeErrorListeners();
@@ -324,8 +459,11 @@ public class BloomBoxQueryRunner {
         PostBbqParser.QueryContext queryContext = parser.query();
         ParseTreeWalker walker = new ParseTreeWalker();
         walker.walk(builder, queryContext);
+        long parsedTimeNanos = System.nanoTime();
+        metrics.addParseNanos(parsedTimeNanos - startTimeNanos);
         IntermediateExpression expression = optimizer.process(builder.getResult());
         BbqExpression bbqe = expression.createBbqEquivalent(bloomFilter, expressionCache);
+        metrics.addOptimizeNanos(System.nanoTime() - parsedTimeNanos);
         validateQuery(queryName, warningBuilder, expression, bbqe);
         return new BloomFilterQuery(queryString, bbqe);
     }
@@ -424,28 +562,57 @@ public class BloomBoxQueryRunner {
 
     /**
      * This method performs the bloom filter queries to prepare scaling. Therefore it determines some additional counts.
+     * <p>
+     * All expressions (the user queries' expressions, their sub-expressions and any auxiliary expressions contributed by the {@link UpScaler}) get counted
+     * in a <i>single</i> pass over the data store. Because the count queries share the per-row result cache, every distinct (sub-)expression is only
+     * evaluated once per row. Constant expressions (always TRUE/FALSE) don't need any evaluation at all.
      * 
      * @param executionId id of execution
      * @param baseExpressions all expressions to be counted
      * @param stats preparation count statistics
+     * @param countQueryOptions options for the count queries, may be null
+     * @param metrics to collect the scan figures
      * @return stats (pass-through)
      */
-    private PreparationQueryStats executePreparationQuery(long executionId, List<? extends BbqExpression> baseExpressions, PreparationQueryStats stats) {
-        InternalQuery[] countQueries = new InternalQuery[baseExpressions.size()];
+    private PreparationQueryStats executePreparationQuery(long executionId, List<? extends BbqExpression> baseExpressions, PreparationQueryStats stats,
+            Map<String, String> countQueryOptions, QueryBundleMetrics metrics) {
 
-        for (int i = 0; i < baseExpressions.size(); i++) {
-            BloomFilterQuery query = new BloomFilterQuery("", baseExpressions.get(i));
-            countQueries[i] = new InternalQuery(baseExpressions.get(i).toString(), query, null, null);
+        stats.setNumberOfRows(dataStore.getNumberOfRows());
+
+        List<BbqExpression> scanExpressions = new ArrayList<>(baseExpressions.size());
+        for (BbqExpression expression : baseExpressions) {
+            if (expression == BbqBooleanLiteral.TRUE) {
+                stats.getExpressionLevelCounts().put(expression.getExpressionId(), stats.getNumberOfRows());
+            }
+            else if (expression == BbqBooleanLiteral.FALSE) {
+                stats.getExpressionLevelCounts().put(expression.getExpressionId(), 0L);
+            }
+            else {
+                scanExpressions.add(expression);
+            }
         }
-        List<BloomBoxQueryResult> countQueryResults = execute(executionId, countQueries);
 
-        stats.setNumberOfRows(dataStore.getNumberOfRows());
-        for (int i = 0; i < baseExpressions.size(); i++) {
-            BloomBoxQueryResult countQueryResult = countQueryResults.get(i);
+        InternalQuery[] countQueries = new InternalQuery[scanExpressions.size()];
 
-            stats.getExpressionLevelCounts().put(baseExpressions.get(i).getExpressionId(), countQueryResult.getBaseQueryCount());
+        for (int i = 0; i < scanExpressions.size(); i++) {
+            BloomFilterQuery query = new BloomFilterQuery("", scanExpressions.get(i));
+            countQueries[i] = new InternalQuery(scanExpressions.get(i).toString(), query, null, countQueryOptions);
+        }
+        List<BloomBoxQueryResult> countQueryResults = countQueries.length == 0 ? new ArrayList<>() : execute(executionId, metrics, countQueries);
+
+        for (int i = 0; i < scanExpressions.size(); i++) {
+            BloomBoxQueryResult countQueryResult = countQueryResults.get(i);
+            long expressionId = scanExpressions.get(i).getExpressionId();
+
+            stats.getExpressionLevelCounts().put(expressionId, countQueryResult.getBaseQueryCount());
+            SampledBloomBoxQueryResult sampleResult = countQueryResult.getSampleResult();
+            if (sampleResult != null) {
+                stats.getExpressionLevelMarginsOfError().put(expressionId, sampleResult.getBaseQueryMarginOfError());
+                stats.setNumberOfRowsSampled(sampleResult.getNumberOfRowsSampled());
+                stats.setSamplingConfidenceLevel(sampleResult.getConfidenceLevel());
+            }
 
-            BloomBoxQueryResult queryResult = stats.getMainQueryResultMap().get(baseExpressions.get(i).getExpressionId());
+            BloomBoxQueryResult queryResult = stats.getMainQueryResultMap().get(expressionId);
             if (queryResult != null && countQueryResult.getErrorMessage() != null) {
                 queryResult.setErrorMessage(queryResult.getErrorMessage() == null ? countQueryResult.getErrorMessage()
                         : queryResult.getErrorMessage() + "\n" + countQueryResult.getErrorMessage());
@@ -465,13 +632,15 @@ public class BloomBoxQueryRunner {
      * @param executionId context id
      * @param allQueriesInBundle ist of all queries in the bundle
      * @param results list of query results, to be filled with raw counts
+     * @param metrics to collect the scan figures
      * @return stats
      */
     private PreparationQueryStats collectPreparationStats(long executionId, InternalQuery[] allQueriesInBundle, List<BloomBoxQueryResult> results,
-            UpScaler upScaler) {
+            UpScaler upScaler, QueryBundleMetrics metrics) {
         PreparationQueryStats res = upScaler.createNewStatsInstance();
 
-        Map<Long, BbqExpression> allExpressions = new HashMap<>();
+        // insertion order (depth-first) keeps the count query order stable across executions
+        Map<Long, BbqExpression> allExpressions = new LinkedHashMap<>();
 
         for (int i = 0; i < allQueriesInBundle.length; i++) {
             InternalQuery query = allQueriesInBundle[i];
@@ -493,12 +662,12 @@ public class BloomBoxQueryRunner {
                         subExpressionList.stream().map(subExpression -> new AndExpression(Arrays.asList(expression, subExpression)))
                                 .forEach(e -> allExpressions.put(e.getExpressionId(), e));
 
-                        upScaler.handleQueryExpressionsPrepared(query, allExpressions, res);
-
                         final BloomBoxQueryResult queryResult = results.get(i);
                         subExpressionList.forEach(subExpression -> res.getMainQueryResultMap().put(subExpression.getExpressionId(), queryResult));
                     }
 
+                    upScaler.handleQueryExpressionsPrepared(query, allExpressions, res);
+
                 }
                 catch (RuntimeException ex) {
                     results.get(i).setErrorMessage(
@@ -507,7 +676,12 @@ public class BloomBoxQueryRunner {
             }
         }
         List<BbqExpression> allExpressionsList = new ArrayList<>(allExpressions.values());
-        return executePreparationQuery(executionId, allExpressionsList, res);
+        Map<String, String> countQueryOptions = new HashMap<>();
+        if (Arrays.stream(allQueriesInBundle).map(InternalQuery::getQueryOptions).anyMatch(BloomBoxOption.METRICS::isEnabled)) {
+            countQueryOptions.put(BloomBoxOption.METRICS.optionName, "true");
+        }
+        RowSampler.collectSamplingOptions(allQueriesInBundle, countQueryOptions);
+        return executePreparationQuery(executionId, allExpressionsList, res, countQueryOptions, metrics);
     }
 
     /**
@@ -517,12 +691,17 @@ public class BloomBoxQueryRunner {
      * @return result of the bundle
      */
     public QueryBundleResult execute(QueryBundle queryBundle) {
+        QueryBundleExecutionEvent event = new QueryBundleExecutionEvent();
+        event.begin();
+        long startTimeNanos = System.nanoTime();
         QueryBundleResult res = new QueryBundleResult();
+        QueryBundleMetrics metrics = new QueryBundleMetrics();
         try {
             long executionId = queryBundle.getExecutionId();
             if (executionId <= 0) {
                 executionId = ExpressionIdUtil.createExpressionId(UUID.randomUUID().toString());
             }
+            metrics.setExecutionId(executionId);
             queryBundle.validateShallow();
             Map<String, Long> nameReferenceMap = new HashMap<>();
 
@@ -531,9 +710,13 @@ public class BloomBoxQueryRunner {
             allQueries.addAll(queryBundle.getPostQueries());
 
             List<String> warnings = new ArrayList<>();
-            InternalQuery[] allInternalQueries = prepareInternalQueries(allQueries, nameReferenceMap, warnings);
+            List<Boolean> cacheHits = new ArrayList<>();
+            metrics.setNumberOfQueries(allQueries.size());
+            InternalQuery[] allInternalQueries = prepareInternalQueries(allQueries, nameReferenceMap, warnings, cacheHits, metrics);
 
-            List<BloomBoxQueryResult> allResults = execute(executionId, queryBundle.getUpScalingConfig(), allInternalQueries);
+            List<BloomBoxQueryResult> allResults = execute(executionId, queryBundle.getUpScalingConfig(), metrics, allInternalQueries);
+            logPreparationCacheUsageIfRequired(allInternalQueries, allResults, cacheHits);
+            collectQueryMatchRates(queryBundle.getUpScalingConfig(), allResults, metrics);
 
             for (int i = 0; i < queryBundle.getBaseQueries().size(); i++) {
                 BloomBoxQueryResult queryResult = allResults.get(i);
@@ -554,10 +737,69 @@ public class BloomBoxQueryRunner {
         catch (RuntimeException ex) {
             res.setMasterError(BbxMessage.ERR_COMMON.format(ex));
         }
+        metrics.setTotalNanos(System.nanoTime() - startTimeNanos);
+        res.setMetrics(metrics);
+        publishMetrics(metrics, res.checkIfAnyError(), event);
         return res;
 
     }
 
+    /**
+     * Puts the match rate of each query (base query count related to the population) into the metrics
+     * 
+     * @param config upscaling config, may be null
+     * @param results query results
+     * @param metrics destination
+     */
+    private void collectQueryMatchRates(UpScalingConfig config, List<BloomBoxQueryResult> results, QueryBundleMetrics metrics) {
+        long population = (config == null || config.getTargetPopulationSize() <= 0) ? dataStore.getNumberOfRows() : config.getTargetPopulationSize();
+        for (BloomBoxQueryResult result : results) {
+            if (!result.checkIfError() && population > 0) {
+                metrics.getQueryMatchRates().put(result.getName(), ((double) result.getBaseQueryCount()) / population);
+            }
+        }
+    }
+
+    /**
+     * Adds the metrics of a bundle execution to this runner's {@link BloomBoxQueryStatistics} and publishes them as a JFR event
+     * 
+     * @param metrics figures of the execution
+     * @param error true if the bundle had any error
+     * @param event the JFR event started at the beginning of the execution
+     */
+    private void publishMetrics(QueryBundleMetrics metrics, boolean error, QueryBundleExecutionEvent event) {
+        statistics.record(metrics, error);
+        event.end();
+        if (event.shouldCommit()) {
+            event.setMetrics(metrics, error);
+            event.commit();
+        }
+        LOGGER.debug("{}", metrics);
+    }
+
+    /**
+     * Writes the usage of the {@link QueryPreparationCache} to the protocol of each query with protocol enabled
+     * 
+     * @param queries the prepared queries
+     * @param results the query results, same order as queries
+     * @param cacheHits flag per query, true if the query was taken from the cache
+     */
+    private void logPreparationCacheUsageIfRequired(InternalQuery[] queries, List<BloomBoxQueryResult> results, List<Boolean> cacheHits) {
+        QueryPreparationCache cache = this.preparationCache;
+        if (cache == null) {
+            return;
+        }
+        for (int i = 0; i < queries.length; i++) {
+            if (queries[i].isProtocolEnabled()) {
+                results.get(i)
+                        .logProtocolMessage(String.format(Locale.US,
+                                "Preparation cache %s for query '%s' (cache size=%d, hits=%d, misses=%d, hit rate=%.2f%%, preparation time saved=%s s)",
+                                Boolean.TRUE.equals(cacheHits.get(i)) ? "hit" : "miss", queries[i].getName(), cache.size(), cache.getNumberOfHits(),
+                                cache.getNumberOfMisses(), cache.getHitRatePercent(), TimeUtils.formatNanosAsSeconds(cache.getPreparationNanosSaved())));
+            }
+        }
+    }
+
     /**
      * Convenience method to execute some queries (auto-creates a bundle)
      * 
@@ -596,10 +838,11 @@ public class BloomBoxQueryRunner {
      * Executes a list of internal queries
      * 
      * @param executionId context id of the execution, usually the bundle
+     * @param metrics to collect the scan figures
      * @param queries internal queries
      * @return result list
      */
-    List<BloomBoxQueryResult> execute(long executionId, InternalQuery... queries) {
+    List<BloomBoxQueryResult> execute(long executionId, QueryBundleMetrics metrics, InternalQuery... queries) {
 
         logExecutionPlan(queries);
         List<BloomBoxQueryResult> results = new ArrayList<>(queries.length);
@@ -607,8 +850,27 @@ public class BloomBoxQueryRunner {
         Arrays.stream(queries).forEach(query -> results.add(new BloomBoxQueryResult(executionId, query.getName(), query.subQueryLabels)));
 
         SimpleQueryDelegate queryDelegate = new SimpleQueryDelegate(queries, results);
-
-        dataStore.dispatch(queryDelegate);
+        RowSampler sampler = RowSampler.createIfRequested(queries, results, dataStore.getNumberOfRows(), executionId);
+
+        long startTimeNanos = System.nanoTime();
+        long numberOfRowsScanned = dataStore.getNumberOfRows();
+        if (sampler != null && dataStore.isSamplingCapable()) {
+            dataStore.dispatchSample(queryDelegate, sampler);
+            sampler.applyEstimates(results);
+            numberOfRowsScanned = sampler.getNumberOfRowsSampled();
+            logSamplingToProtocolIfRequired(sampler, queries, results);
+        }
+        else {
+            if (sampler != null) {
+                LOGGER.debug("Sampling requested but not supported by {}, executing full scan.", dataStore);
+            }
+            dataStore.dispatch(queryDelegate);
+        }
+        long numberOfBytesScanned = dataStore.getNumberOfRows() > 0
+                ? (long) (((double) dataStore.getTotalSizeInBytes()) * numberOfRowsScanned / dataStore.getNumberOfRows())
+                : 0;
+        metrics.addScan(numberOfRowsScanned, numberOfBytesScanned, System.nanoTime() - startTimeNanos, queryDelegate.getNumberOfThreads());
+        queryDelegate.transferExpressionMetrics(metrics);
 
         queryDelegate.finish();
         logExecutionResults(results);
@@ -617,6 +879,25 @@ public class BloomBoxQueryRunner {
 
     }
 
+    /**
+     * Writes the sampling figures to the protocol of each query with protocol enabled
+     * 
+     * @param sampler the sampler after execution
+     * @param queries the executed queries
+     * @param results the query results, same order as queries
+     */
+    private void logSamplingToProtocolIfRequired(RowSampler sampler, InternalQuery[] queries, List<BloomBoxQueryResult> results) {
+        for (int i = 0; i < queries.length; i++) {
+            if (queries[i].isProtocolEnabled()) {
+                results.get(i)
+                        .logProtocolMessage(String.format(Locale.US,
+                                "Sampling: %d of %d rows evaluated in blocks of %d rows (confidence level=%.4f, margin of error=%.6f, precision reached: %s)",
+                                sampler.getNumberOfRowsSampled(), dataStore.getNumberOfRows(), sampler.getBlockSize(), sampler.getConfidenceLevel(),
+                                sampler.getMarginOfError(), sampler.isPrecisionReached()));
+            }
+        }
+    }
+
     /**
      * @param queries to be logged
      */
@@ -735,14 +1016,15 @@ public class BloomBoxQueryRunner {
      * 
      * @param executionId identifies execution, usually the bundle execution
      * @param config upscaling config, null disables scaling
+     * @param metrics to collect the scan figures
      * @param queries internal queries to be executed
      * @return result list
      */
-    List<BloomBoxQueryResult> execute(long executionId, UpScalingConfig config, InternalQuery... queries) {
+    List<BloomBoxQueryResult> execute(long executionId, UpScalingConfig config, QueryBundleMetrics metrics, InternalQuery... queries) {
 
         List<BloomBoxQueryResult> res = null;
         if (config == null || config.getAttributeScalingFactors() == null || config.getAttributeScalingFactors().isEmpty()) {
-            res = execute(executionId, queries);
+            res = execute(executionId, metrics, queries);
             if (config != null) {
                 applyLinearScaleFactor(config.getBaseScalingFactor(), config.getTargetPopulationSize(), res);
                 updateOversizeWarnings(res, config.getTargetPopulationSize(), true);
@@ -752,9 +1034,11 @@ public class BloomBoxQueryRunner {
             }
         }
         else {
-            res = executeWithUpScaling(executionId, config, queries);
+            res = executeWithUpScaling(executionId, config, metrics, queries);
             updateOversizeWarnings(res, config.getTargetPopulationSize(), true);
         }
+        long population = config == null ? dataStore.getNumberOfRows() : config.getTargetPopulationSize();
+        res.stream().filter(result -> result.getSampleResult() != null).forEach(result -> result.getSampleResult().updateCountBounds(result, population));
         return res;
     }
 
@@ -809,10 +1093,11 @@ public class BloomBoxQueryRunner {
      * 
      * @param executionId identifies usually the bundle execution
      * @param config scaling config
+     * @param metrics to collect the scan figures
      * @param queries internal queries to be executed
      * @return result list (after scaling)
      */
-    private List<BloomBoxQueryResult> executeWithUpScaling(long executionId, UpScalingConfig config, InternalQuery... queries) {
+    private List<BloomBoxQueryResult> executeWithUpScaling(long executionId, UpScalingConfig config, QueryBundleMetrics metrics, InternalQuery... queries) {
         config.validateSettings(this.dataStore.getNumberOfRows());
 
         List<BloomBoxQueryResult> results = new ArrayList<>(queries.length);
@@ -824,7 +1109,7 @@ public class BloomBoxQueryRunner {
 
         try {
             upScaler = upScalerFactory.createUpScaler(this, config);
-            stats = collectPreparationStats(executionId, queries, results, upScaler);
+            stats = collectPreparationStats(executionId, queries, results, upScaler, metrics);
             upScaler.handleQueryBundleResults(stats);
         }
         catch (RuntimeException ex) {
@@ -833,6 +1118,7 @@ public class BloomBoxQueryRunner {
 
         if (upScaler != null) {
             applyUpScaler(stats, results, upScaler, queries);
+            attachSampleResults(stats, results, queries);
         }
         else {
             for (int i = 0; i < queries.length; i++) {
@@ -845,6 +1131,47 @@ public class BloomBoxQueryRunner {
         return results;
     }
 
+    /**
+     * If the count queries for upscaling were executed in sampling mode, the scaled results are estimates, too. This method attaches the match rates and
+     * margins of error of the underlying expressions to the results.
+     * 
+     * @param stats preparation query results
+     * @param results list of scaled results
+     * @param queries internal queries that were executed, same order as results
+     */
+    private void attachSampleResults(PreparationQueryStats stats, List<BloomBoxQueryResult> results, InternalQuery... queries) {
+        Map<Long, Double> margins = stats.getExpressionLevelMarginsOfError();
+        if (margins.isEmpty() || stats.getNumberOfRows() <= 0) {
+            return;
+        }
+        for (int i = 0; i < queries.length; i++) {
+            BloomBoxQueryResult result = results.get(i);
+            if (!result.checkIfError() && !(queries[i] instanceof ErrorPlaceholderQuery)) {
+                BbqExpression expression = queries[i].getBaseQuery().getExpression();
+                SampledBloomBoxQueryResult sampleResult = new SampledBloomBoxQueryResult(stats.getNumberOfRowsSampled(), stats.getNumberOfRows(),
+                        stats.getSamplingConfidenceLevel(), queries[i].getNumberOfSubQueries());
+                sampleResult.setBaseQueryMatchRate(computeExpressionMatchRate(stats, expression.getExpressionId()));
+                sampleResult.setBaseQueryMarginOfError(margins.getOrDefault(expression.getExpressionId(), 0.0));
+                for (int k = 0; k < queries[i].getNumberOfSubQueries(); k++) {
+                    long id = new AndExpression(Arrays.asList(expression, queries[i].subQueries[k].getExpression())).getExpressionId();
+                    sampleResult.getSubQueryMatchRates()[k] = computeExpressionMatchRate(stats, id);
+                    sampleResult.getSubQueryMarginsOfError()[k] = margins.getOrDefault(id, 0.0);
+                }
+                result.setSampleResult(sampleResult);
+            }
+        }
+    }
+
+    /**
+     * @param stats preparation query results
+     * @param expressionId expression
+     * @return match rate of the expression related to the rows in the box
+     */
+    private static double computeExpressionMatchRate(PreparationQueryStats stats, long expressionId) {
+        Long count = stats.getExpressionLevelCounts().get(expressionId);
+        return count == null ? 0.0 : ((double) count) / stats.getNumberOfRows();
+    }
+
     /**
      * Runs the upscaler on the given results
      * 
@@ -866,6 +1193,28 @@ public class BloomBoxQueryRunner {
         }
     }
 
+    /**
+     * @return configured preparation cache or null (default) if prepared queries are not cached
+     */
+    public QueryPreparationCache getPreparationCache() {
+        return preparationCache;
+    }
+
+    /**
+     * @param preparationCache cache for prepared queries, exclusively used by this runner (must not be shared with runners of other boxes), null disables
+     *            caching (default)
+     */
+    public void setPreparationCache(QueryPreparationCache preparationCache) {
+        this.preparationCache = preparationCache;
+    }
+
+    /**
+     * @return aggregated metrics of all bundle executions of this runner, see {@link BloomBoxQueryStatistics#registerMBean(String)} to expose them via JMX
+     */
+    public BloomBoxQueryStatistics getStatistics() {
+        return statistics;
+    }
+
     /**
      * @return configured {@link UpScalerFactory}, by default this is {@link DefaultUpScaler#FACTORY}
      */
@@ -0,0 +1,490 @@
+//@formatter:off
+/*
+ * BloomBoxQueryServer
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+
+import de.calamanari.pk.util.AbstractThreadedSocketServer;
+import de.calamanari.pk.util.CloseUtils;
+import de.calamanari.pk.util.SocketCommunicationException;
+
+/**
+ * The {@link BloomBoxQueryServer} loads one or multiple bloom boxes (BBX-files) once at startup and lets many clients query them over TCP.
+ * <p>
+ * The protocol is line-based (UTF-8):
+ * <ul>
+ * <li>A request starts with a header line <code>json [box]</code> or <code>script [box]</code> followed by the {@link QueryBundle} as JSON resp. the
+ * EasyScript (see {@link QueryBundle#fromEasyScript(String)}), terminated by a line only containing {@value #END_OF_REQUEST}. Without a box name the request
+ * goes to the first box.</li>
+ * <li>The response is a {@link QueryBundleResult} as JSON written in a single line. Any problem with the request is reported as the result's master
+ * error. This includes bodies longer than {@link #MAX_REQUEST_BODY_LENGTH} characters, the remainder of such a request gets skipped.</li>
+ * <li><code>{@value #CMD_LIST}</code> returns the names of the boxes as a JSON array, <code>{@value #CMD_EXIT}</code> ends the communication. Any other
+ * header line is answered with an error result right away, no body gets read.</li>
+ * </ul>
+ * Clients may send further requests without waiting for the response (pipelining), the responses come in request order. Each connection is handled by a
+ * virtual thread, the bundles get executed by a fixed number of scan threads, so that many connections cannot overload the box. Up to
+ * {@link #MAX_PIPELINED_REQUESTS} requests per connection can be in progress, then the server stops reading from the connection until responses have been
+ * written.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class BloomBoxQueryServer extends AbstractThreadedSocketServer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BloomBoxQueryServer.class);
+
+    /**
+     * request format JSON
+     */
+    public static final String FORMAT_JSON = "json";
+
+    /**
+     * request format EasyScript
+     */
+    public static final String FORMAT_SCRIPT = "script";
+
+    /**
+     * command to list the available boxes
+     */
+    public static final String CMD_LIST = "list";
+
+    /**
+     * command to end communication
+     */
+    public static final String CMD_EXIT = "exit";
+
+    /**
+     * line that terminates the body of a request
+     */
+    public static final String END_OF_REQUEST = ".";
+
+    /**
+     * default port
+     */
+    public static final int DEFAULT_PORT = 4712;
+
+    /**
+     * maximum number of requests per connection in progress (submitted but response not written, yet)
+     */
+    public static final int MAX_PIPELINED_REQUESTS = 32;
+
+    /**
+     * maximum number of characters of a request body (and of any line), longer requests get rejected with an error result
+     */
+    public static final int MAX_REQUEST_BODY_LENGTH = 1 << 20;
+
+    /**
+     * marks the end of the responses of a connection
+     */
+    private static final Future<Object> END_OF_RESPONSES = CompletableFuture.completedFuture(null);
+
+    /**
+     * query runners by box name (insertion order), the first is the default
+     */
+    private volatile Map<String, BloomBoxQueryRunner> runners = Collections.emptyMap();
+
+    /**
+     * number of threads executing query bundles concurrently
+     */
+    private final int numberOfScanThreads;
+
+    /**
+     * executes the query bundles, limited to {@link #numberOfScanThreads}
+     */
+    private volatile ExecutorService scanExecutor;
+
+    /**
+     * for reading requests and writing results
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Creates new instance with one scan thread per core
+     */
+    public BloomBoxQueryServer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param numberOfScanThreads number of query bundles to be executed concurrently
+     */
+    public BloomBoxQueryServer(int numberOfScanThreads) {
+        super("BloomBox Query Server");
+        if (numberOfScanThreads < 1) {
+            throw new IllegalArgumentException("numberOfScanThreads must be positive, given: " + numberOfScanThreads);
+        }
+        this.numberOfScanThreads = numberOfScanThreads;
+        this.objectMapper = new ObjectMapper();
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, true);
+        objectMapper.setPropertyNamingStrategy(new PropertyNamingStrategies.SnakeCaseStrategy());
+        // we write multiple responses to the same connection
+        objectMapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+    }
+
+    /**
+     * Starts a query server in the current JVM (returns immediately after startup, see {@link #start()})
+     * 
+     * @param port listening port
+     * @param numberOfScanThreads number of query bundles to be executed concurrently
+     * @param boxSpecs <code>name=path</code> or just the path of a BBX-file (name is the file name without extension)
+     * @return server (online), call {@link #stop()} to shut it down
+     */
+    public static BloomBoxQueryServer startInProcess(int port, int numberOfScanThreads, String... boxSpecs) {
+        BloomBoxQueryServer server = new BloomBoxQueryServer(numberOfScanThreads);
+        String[] args = new String[boxSpecs.length + 1];
+        args[0] = String.valueOf(port);
+        System.arraycopy(boxSpecs, 0, args, 1, boxSpecs.length);
+        server.configureInstance(args);
+        server.start();
+        return server;
+    }
+
+    /**
+     * @param cmdLineArgs arg[0]=port, arg[1..n]=<code>name=path</code> or just the path of a BBX-file (name is the file name without extension)
+     */
+    @Override
+    protected void configureInstance(String[] cmdLineArgs) {
+        super.configureInstance(cmdLineArgs);
+        if (cmdLineArgs == null || cmdLineArgs.length < 2) {
+            throw new IllegalArgumentException("Usage: BloomBoxQueryServer <port> [<name>=]<bbx-file> ...");
+        }
+        Map<String, BloomBoxQueryRunner> loadedRunners = new LinkedHashMap<>();
+        for (int i = 1; i < cmdLineArgs.length; i++) {
+            String spec = cmdLineArgs[i];
+            int eqIdx = spec.indexOf('=');
+            File bbxFile = new File(eqIdx < 0 ? spec : spec.substring(eqIdx + 1));
+            String name = eqIdx < 0 ? bbxFile.getName().replaceFirst("\\.[^.]*$", "") : spec.substring(0, eqIdx);
+            if (loadedRunners.containsKey(name)) {
+                throw new IllegalArgumentException(String.format("Duplicate box name '%s', given: %s", name, spec));
+            }
+            BloomBoxQueryRunner runner = new BloomBoxQueryRunner(BloomBox.loadFromFile(bbxFile, null));
+            runner.setPreparationCache(new QueryPreparationCache());
+            loadedRunners.put(name, runner);
+            LOGGER.info("Serving box '{}' from {}", name, bbxFile);
+        }
+        this.runners = Collections.unmodifiableMap(loadedRunners);
+    }
+
+    @Override
+    protected void prepare() {
+        this.scanExecutor = Executors.newFixedThreadPool(numberOfScanThreads, r -> {
+            Thread t = new Thread(r);
+            t.setName("BBX-Scan:@" + Integer.toHexString(t.hashCode()));
+            t.setDaemon(true);
+            return t;
+        });
+        super.prepare();
+    }
+
+    @Override
+    protected void cleanUp() {
+        super.cleanUp();
+        scanExecutor.shutdown();
+    }
+
+    /**
+     * One virtual thread per connection, the threads mainly wait for requests and query results.
+     */
+    @Override
+    protected ExecutorService createExecutorService() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @Override
+    protected void handleSocketCommunication(Socket socket) throws SocketCommunicationException {
+        BlockingQueue<Future<Object>> responseQueue = new ArrayBlockingQueue<>(MAX_PIPELINED_REQUESTS);
+        Thread responseWriter = null;
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            responseWriter = Thread.ofVirtual().name(Thread.currentThread().getName() + "-writer").start(() -> writeResponses(socket, bw, responseQueue));
+            readRequests(br, responseQueue);
+            responseQueue.put(END_OF_RESPONSES);
+            responseWriter.join();
+        }
+        catch (InterruptedException ex) {
+            stopResponseWriter(responseWriter, responseQueue);
+            Thread.currentThread().interrupt();
+            throw new SocketCommunicationException(ex);
+        }
+        catch (IOException | RuntimeException ex) {
+            stopResponseWriter(responseWriter, responseQueue);
+            throw new SocketCommunicationException(ex);
+        }
+    }
+
+    /**
+     * Stops the response writer after a communication error and cancels all pending requests, nobody is waiting for the responses anymore.
+     * 
+     * @param responseWriter writer thread or null if not yet started
+     * @param responseQueue pending responses
+     */
+    private static void stopResponseWriter(Thread responseWriter, BlockingQueue<Future<Object>> responseQueue) {
+        if (responseWriter != null) {
+            responseWriter.interrupt();
+            try {
+                responseWriter.join();
+            }
+            catch (InterruptedException _) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Future<Object> pendingResponse = null;
+        while ((pendingResponse = responseQueue.poll()) != null) {
+            pendingResponse.cancel(true);
+        }
+    }
+
+    /**
+     * Reads the requests from the connection and submits them for execution until the client exits or closes the connection
+     * 
+     * @param br source
+     * @param responseQueue destination for the pending responses (request order)
+     * @throws IOException on communication error
+     * @throws InterruptedException if interrupted while waiting for space in the queue
+     */
+    private void readRequests(BufferedReader br, BlockingQueue<Future<Object>> responseQueue) throws IOException, InterruptedException {
+        String headerLine = null;
+        while ((headerLine = readLine(br, MAX_REQUEST_BODY_LENGTH)) != null) {
+            String[] header = headerLine.trim().split("\\s+");
+            String command = header[0].toLowerCase(Locale.ROOT);
+            if (command.isEmpty()) {
+                continue;
+            }
+            else if (CMD_EXIT.equals(command)) {
+                break;
+            }
+            else if (CMD_LIST.equals(command)) {
+                responseQueue.put(CompletableFuture.completedFuture(new ArrayList<>(runners.keySet())));
+                continue;
+            }
+            else if (!FORMAT_JSON.equals(command) && !FORMAT_SCRIPT.equals(command)) {
+                // no body to be read, otherwise a typo would swallow the client's next request
+                responseQueue.put(CompletableFuture.completedFuture(createErrorResult(String.format("Unknown command '%s', expected: %s, %s, %s or %s",
+                        header[0], FORMAT_JSON, FORMAT_SCRIPT, CMD_LIST, CMD_EXIT))));
+                continue;
+            }
+            StringBuilder sb = new StringBuilder();
+            if (!readRequestBody(br, sb)) {
+                // connection closed within a request
+                break;
+            }
+            if (sb.length() > MAX_REQUEST_BODY_LENGTH) {
+                responseQueue.put(CompletableFuture.completedFuture(
+                        createErrorResult(String.format("Request body too large, maximum length: %d characters", MAX_REQUEST_BODY_LENGTH))));
+                continue;
+            }
+            String body = sb.toString();
+            String boxName = header.length > 1 ? header[1] : null;
+            responseQueue.put(scanExecutor.submit(() -> executeRequest(command, boxName, body)));
+        }
+    }
+
+    /**
+     * Reads the body of a request line by line up to the terminating line {@link #END_OF_REQUEST}.
+     * <p>
+     * Once the body exceeds {@link #MAX_REQUEST_BODY_LENGTH} characters, the remaining lines get skipped (read but not kept), so the client cannot make the
+     * server buffer an arbitrary amount of data. The caller detects this case by the length of the body.
+     * 
+     * @param br source
+     * @param sb destination for the body (lines terminated by <code>\n</code>), longer than {@link #MAX_REQUEST_BODY_LENGTH} if the body was too large
+     * @return true if the body was terminated by {@link #END_OF_REQUEST}, false if the stream ended before
+     * @throws IOException on communication error
+     */
+    private static boolean readRequestBody(BufferedReader br, StringBuilder sb) throws IOException {
+        String line = null;
+        while ((line = readLine(br, MAX_REQUEST_BODY_LENGTH + 1)) != null) {
+            if (END_OF_REQUEST.equals(line.trim())) {
+                return true;
+            }
+            if (sb.length() <= MAX_REQUEST_BODY_LENGTH) {
+                sb.append(line).append('\n');
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads a line like {@link BufferedReader#readLine()} (terminated by <code>\n</code> or <code>\r\n</code>), but keeps at most the given number of
+     * characters. The remainder of a longer line gets skipped.
+     * 
+     * @param br source
+     * @param maxLength maximum number of characters to be returned
+     * @return line without terminator (possibly truncated) or null if the stream has ended
+     * @throws IOException on communication error
+     */
+    private static String readLine(BufferedReader br, int maxLength) throws IOException {
+        int ch = br.read();
+        if (ch == -1) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        while (ch != -1 && ch != '\n') {
+            if (sb.length() < maxLength) {
+                sb.append((char) ch);
+            }
+            ch = br.read();
+        }
+        int length = sb.length();
+        if (length > 0 && sb.charAt(length - 1) == '\r') {
+            sb.setLength(length - 1);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parses and executes a single request (runs in a scan thread)
+     * 
+     * @param format {@link #FORMAT_JSON} or {@link #FORMAT_SCRIPT}
+     * @param boxName name of the box to be queried or null for the default box
+     * @param body the query bundle
+     * @return result, never null
+     */
+    private QueryBundleResult executeRequest(String format, String boxName, String body) {
+        BloomBoxQueryRunner runner = boxName == null ? runners.values().iterator().next() : runners.get(boxName);
+        if (runner == null) {
+            return createErrorResult(String.format("Unknown box '%s', available: %s", boxName, runners.keySet()));
+        }
+        try {
+            QueryBundle bundle = null;
+            switch (format) {
+            case FORMAT_JSON:
+                bundle = objectMapper.readValue(body, QueryBundle.class);
+                break;
+            case FORMAT_SCRIPT:
+                bundle = QueryBundle.fromEasyScript(body);
+                break;
+            default:
+                return createErrorResult(String.format("Unknown request format '%s', expected: %s or %s", format, FORMAT_JSON, FORMAT_SCRIPT));
+            }
+            return runner.execute(bundle);
+        }
+        catch (JsonProcessingException | RuntimeException ex) {
+            LOGGER.debug("Error processing request for box '{}'.", boxName, ex);
+            return createErrorResult(ex.getMessage());
+        }
+    }
+
+    /**
+     * @param message error message
+     * @return result with the given message as master error
+     */
+    private static QueryBundleResult createErrorResult(String message) {
+        QueryBundleResult res = new QueryBundleResult();
+        res.setMasterError(message);
+        return res;
+    }
+
+    /**
+     * Writes the responses in request order, each as soon as available. If the client is gone, the remaining responses are discarded. On interruption the
+     * writer cancels the response it was waiting for and ends.
+     * 
+     * @param socket connection, closed on write error to stop the reader
+     * @param bw destination
+     * @param responseQueue pending responses
+     */
+    private void writeResponses(Socket socket, BufferedWriter bw, BlockingQueue<Future<Object>> responseQueue) {
+        boolean connectionBroken = false;
+        Future<Object> response = null;
+        try {
+            while ((response = responseQueue.take()) != END_OF_RESPONSES) {
+                Object responseObject = awaitResponse(response);
+                if (!connectionBroken) {
+                    try {
+                        objectMapper.writeValue(bw, responseObject);
+                        bw.write('\n');
+                        bw.flush();
+                    }
+                    catch (IOException ex) {
+                        LOGGER.debug("Unable to write response, closing connection.", ex);
+                        connectionBroken = true;
+                        CloseUtils.closeResourceCatch(Level.DEBUG, socket);
+                    }
+                }
+            }
+        }
+        catch (InterruptedException _) {
+            // communication error, the response we were waiting for won't be written anymore
+            if (response != null) {
+                response.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param response pending response
+     * @return response object (error result in case of an unexpected execution error)
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static Object awaitResponse(Future<Object> response) throws InterruptedException {
+        try {
+            return response.get();
+        }
+        catch (ExecutionException ex) {
+            LOGGER.error("Unexpected error during query execution.", ex);
+            return createErrorResult(String.valueOf(ex.getCause()));
+        }
+    }
+
+    @Override
+    protected int getDefaultPort() {
+        return DEFAULT_PORT;
+    }
+
+    /**
+     * Starts a query server
+     * 
+     * @param args command line arguments, arg[0]=port, arg[1..n]=<code>name=path</code> or just the path of a BBX-file (name is the file name without
+     *            extension)
+     */
+    public static void main(String[] args) {
+        (new BloomBoxQueryServer()).setupAndStart(args);
+    }
+
+}
@@ -0,0 +1,254 @@
+//@formatter:off
+/*
+ * BloomBoxQueryStatistics
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link BloomBoxQueryStatistics} aggregate the {@link QueryBundleMetrics} of all query bundle executions of a single {@link BloomBoxQueryRunner} (see
+ * {@link BloomBoxQueryRunner#getStatistics()}), so the figures of runners on different boxes don't get mixed.
+ * <p>
+ * To make the statistics visible via JMX they must be registered explicitly with a name unique in this VM, see {@link #registerMBean(String)}. The object name
+ * is {@value #OBJECT_NAME_PREFIX} followed by the quoted name. If the registration fails (e.g., security restrictions), the statistics are still collected but
+ * not visible via JMX.
+ * <p>
+ * Instances are safe to be accessed by multiple threads concurrently.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public final class BloomBoxQueryStatistics implements BloomBoxQueryStatisticsMXBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BloomBoxQueryStatistics.class);
+
+    /**
+     * JMX object name prefix: {@value}
+     */
+    public static final String OBJECT_NAME_PREFIX = "de.calamanari.pk.ohbf.bloombox:type=BloomBoxQueryStatistics,name=";
+
+    /**
+     * name this instance has been registered with or null if not registered
+     */
+    private ObjectName objectName = null;
+
+    /**
+     * number of query bundles executed
+     */
+    private long numberOfBundlesExecuted = 0;
+
+    /**
+     * number of query bundles with errors
+     */
+    private long numberOfBundlesWithErrors = 0;
+
+    /**
+     * sum of all execution times
+     */
+    private long totalExecutionNanos = 0;
+
+    /**
+     * slowest execution
+     */
+    private long maxExecutionNanos = 0;
+
+    /**
+     * id of the slowest execution
+     */
+    private long slowestExecutionId = 0;
+
+    /**
+     * id of the last execution
+     */
+    private long lastExecutionId = 0;
+
+    /**
+     * sum of all preparation times
+     */
+    private long totalPreparationNanos = 0;
+
+    /**
+     * sum of all scan times
+     */
+    private long totalScanNanos = 0;
+
+    /**
+     * rows visited by all scans
+     */
+    private long totalRowsScanned = 0;
+
+    /**
+     * bytes visited by all scans
+     */
+    private long totalBytesScanned = 0;
+
+    /**
+     * Registers this instance with the platform MBean server, a previous registration of this instance will be replaced.
+     * 
+     * @param name identifies the statistics (e.g., the box), must be unique among the registered statistics in this VM
+     * @return true if the registration was successful, false if the name is already taken or the registration failed
+     */
+    public synchronized boolean registerMBean(String name) {
+        unregisterMBean();
+        String fullName = OBJECT_NAME_PREFIX + ObjectName.quote(name);
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName newObjectName = new ObjectName(fullName);
+            if (mBeanServer.isRegistered(newObjectName)) {
+                LOGGER.warn("Unable to register {} with the platform MBean server, the name is already taken.", fullName);
+                return false;
+            }
+            mBeanServer.registerMBean(this, newObjectName);
+            this.objectName = newObjectName;
+            return true;
+        }
+        catch (JMException | RuntimeException ex) {
+            LOGGER.warn("Unable to register {} with the platform MBean server.", fullName, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Removes this instance from the platform MBean server, no-op if it is not registered
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            }
+            catch (JMException | RuntimeException ex) {
+                LOGGER.warn("Unable to unregister {} from the platform MBean server.", objectName, ex);
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * Adds the figures of a finished bundle execution
+     * 
+     * @param metrics figures of the execution
+     * @param error true if the bundle had any error
+     */
+    public synchronized void record(QueryBundleMetrics metrics, boolean error) {
+        numberOfBundlesExecuted++;
+        if (error) {
+            numberOfBundlesWithErrors++;
+        }
+        totalExecutionNanos += metrics.getTotalNanos();
+        if (metrics.getTotalNanos() >= maxExecutionNanos) {
+            maxExecutionNanos = metrics.getTotalNanos();
+            slowestExecutionId = metrics.getExecutionId();
+        }
+        lastExecutionId = metrics.getExecutionId();
+        totalPreparationNanos += metrics.getPreparationNanos();
+        totalScanNanos += metrics.getScanNanos();
+        totalRowsScanned += metrics.getNumberOfRowsScanned();
+        totalBytesScanned += metrics.getNumberOfBytesScanned();
+    }
+
+    @Override
+    public synchronized long getNumberOfBundlesExecuted() {
+        return numberOfBundlesExecuted;
+    }
+
+    @Override
+    public synchronized long getNumberOfBundlesWithErrors() {
+        return numberOfBundlesWithErrors;
+    }
+
+    @Override
+    public synchronized long getTotalExecutionMillis() {
+        return totalExecutionNanos / 1_000_000;
+    }
+
+    @Override
+    public synchronized double getAverageExecutionMillis() {
+        return numberOfBundlesExecuted == 0 ? 0.0 : (totalExecutionNanos / 1_000_000d) / numberOfBundlesExecuted;
+    }
+
+    @Override
+    public synchronized long getMaxExecutionMillis() {
+        return maxExecutionNanos / 1_000_000;
+    }
+
+    @Override
+    public synchronized long getSlowestExecutionId() {
+        return slowestExecutionId;
+    }
+
+    @Override
+    public synchronized long getLastExecutionId() {
+        return lastExecutionId;
+    }
+
+    @Override
+    public synchronized long getTotalPreparationMillis() {
+        return totalPreparationNanos / 1_000_000;
+    }
+
+    @Override
+    public synchronized long getTotalScanMillis() {
+        return totalScanNanos / 1_000_000;
+    }
+
+    @Override
+    public synchronized long getTotalRowsScanned() {
+        return totalRowsScanned;
+    }
+
+    @Override
+    public synchronized long getTotalBytesScanned() {
+        return totalBytesScanned;
+    }
+
+    @Override
+    public synchronized double getRowsScannedPerSecond() {
+        return totalScanNanos == 0 ? 0.0 : (totalRowsScanned * 1_000_000_000d) / totalScanNanos;
+    }
+
+    @Override
+    public synchronized void reset() {
+        numberOfBundlesExecuted = 0;
+        numberOfBundlesWithErrors = 0;
+        totalExecutionNanos = 0;
+        maxExecutionNanos = 0;
+        slowestExecutionId = 0;
+        lastExecutionId = 0;
+        totalPreparationNanos = 0;
+        totalScanNanos = 0;
+        totalRowsScanned = 0;
+        totalBytesScanned = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return this.getClass().getSimpleName() + " [numberOfBundlesExecuted=" + numberOfBundlesExecuted + ", numberOfBundlesWithErrors="
+                + numberOfBundlesWithErrors + ", totalExecutionNanos=" + totalExecutionNanos + ", maxExecutionNanos=" + maxExecutionNanos
+                + ", slowestExecutionId=" + slowestExecutionId + ", totalRowsScanned=" + totalRowsScanned + ", totalBytesScanned=" + totalBytesScanned + "]";
+    }
+
+}
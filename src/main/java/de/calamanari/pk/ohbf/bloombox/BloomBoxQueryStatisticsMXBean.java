@@ -0,0 +1,96 @@
+//@formatter:off
+/*
+ * BloomBoxQueryStatisticsMXBean
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox;
+
+/**
+ * Management interface of the {@link BloomBoxQueryStatistics}, aggregated figures of all query bundle executions of a runner.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public interface BloomBoxQueryStatisticsMXBean {
+
+    /**
+     * @return number of query bundles executed since start or last reset
+     */
+    public long getNumberOfBundlesExecuted();
+
+    /**
+     * @return number of query bundles with any error
+     */
+    public long getNumberOfBundlesWithErrors();
+
+    /**
+     * @return sum of all bundle execution times in milliseconds
+     */
+    public long getTotalExecutionMillis();
+
+    /**
+     * @return average bundle execution time in milliseconds
+     */
+    public double getAverageExecutionMillis();
+
+    /**
+     * @return execution time of the slowest bundle in milliseconds
+     */
+    public long getMaxExecutionMillis();
+
+    /**
+     * @return execution id of the slowest bundle
+     */
+    public long getSlowestExecutionId();
+
+    /**
+     * @return execution id of the last bundle
+     */
+    public long getLastExecutionId();
+
+    /**
+     * @return sum of the preparation times (parsing, optimization) in milliseconds
+     */
+    public long getTotalPreparationMillis();
+
+    /**
+     * @return sum of the scan times in milliseconds
+     */
+    public long getTotalScanMillis();
+
+    /**
+     * @return number of rows visited by all scans
+     */
+    public long getTotalRowsScanned();
+
+    /**
+     * @return number of bytes visited by all scans
+     */
+    public long getTotalBytesScanned();
+
+    /**
+     * @return overall scan throughput
+     */
+    public double getRowsScannedPerSecond();
+
+    /**
+     * Resets all counters
+     */
+    public void reset();
+
+}
@@ -0,0 +1,159 @@
+//@formatter:off
+/*
+ * BloomBoxShardCluster
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.calamanari.pk.util.ExternalProcessManagementException;
+import de.calamanari.pk.util.ExternalProcessManager;
+
+/**
+ * The {@link BloomBoxShardCluster} is a convenience to run a sharded box on the local machine: it starts one {@link BloomBoxShardServer} process per shard
+ * (BBX-file) using the {@link ExternalProcessManager} and provides a bloom box on top of a {@link ShardedDataStore} connected to these processes.
+ * <p>
+ * Each shard process only needs the heap for its own shard, so the total size of the box is not limited by the heap of a single JVM anymore.
+ * <p>
+ * <b>Note:</b> All shards must have been created with the same configuration (number of columns, false-positive rate epsilon) to be compatible.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class BloomBoxShardCluster implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BloomBoxShardCluster.class);
+
+    /**
+     * maximum time to wait for a shard server to accept connections (loading the box takes time)
+     */
+    private static final long MAX_STARTUP_WAIT_TIME_MILLIS = 60_000;
+
+    /**
+     * maximum time to wait for a shard server to shut down before killing it
+     */
+    private static final long MAX_SHUTDOWN_WAIT_TIME_MILLIS = 5_000;
+
+    /**
+     * keys of the started processes, see {@link ExternalProcessManager#startExternal(String, Class, List, org.slf4j.Logger, String...)}
+     */
+    private final List<String> processKeys = new ArrayList<>();
+
+    /**
+     * box on top of all shards
+     */
+    private final BloomBox bloomBox;
+
+    /**
+     * Starts a shard server process for each of the given files and connects to them
+     * 
+     * @param bbxFiles one BBX-file per shard, NOT NULL, NOT EMPTY
+     * @param firstPort port of the first shard server, the following servers use the subsequent ports
+     * @param jvmArgs optional arguments for the shard server JVMs (e.g. heap settings), may be null
+     */
+    public BloomBoxShardCluster(List<File> bbxFiles, int firstPort, List<String> jvmArgs) {
+        if (bbxFiles == null || bbxFiles.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard file required, given: " + bbxFiles);
+        }
+        List<String> shardAddresses = new ArrayList<>(bbxFiles.size());
+        try {
+            for (int i = 0; i < bbxFiles.size(); i++) {
+                int port = firstPort + i;
+                String processKey = BloomBoxShardServer.class.getName() + ":" + port;
+                ExternalProcessManager.getInstance().startExternal(processKey, BloomBoxShardServer.class, jvmArgs, LOGGER, String.valueOf(port),
+                        bbxFiles.get(i).getAbsolutePath());
+                processKeys.add(processKey);
+                shardAddresses.add(InetAddress.getLoopbackAddress().getHostAddress() + ":" + port);
+            }
+            for (int i = 0; i < bbxFiles.size(); i++) {
+                awaitShardServer(firstPort + i);
+            }
+            this.bloomBox = ShardedDataStore.createBloomBox(shardAddresses);
+        }
+        catch (ExternalProcessManagementException | RuntimeException ex) {
+            stopShardServers();
+            throw new BloomBoxException(String.format("Unable to start shard cluster for %s.", bbxFiles), ex);
+        }
+    }
+
+    /**
+     * Waits until the server on the given port accepts connections
+     * 
+     * @param port local port
+     */
+    private static void awaitShardServer(int port) {
+        long deadline = System.currentTimeMillis() + MAX_STARTUP_WAIT_TIME_MILLIS;
+        while (true) {
+            try (Socket _ = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                return;
+            }
+            catch (IOException ex) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new BloomBoxException(String.format("Shard server on port %d not reachable.", port), ex);
+                }
+            }
+            try {
+                Thread.sleep(100);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new BloomBoxException(String.format("Unexpected interruption waiting for shard server on port %d.", port), ex);
+            }
+        }
+    }
+
+    /**
+     * @return box on top of all shards (read-only), use a {@link BloomBoxQueryRunner} to query it
+     */
+    public BloomBox getBloomBox() {
+        return bloomBox;
+    }
+
+    /**
+     * Stops all shard processes, errors are logged
+     */
+    private void stopShardServers() {
+        for (String processKey : processKeys) {
+            try {
+                ExternalProcessManager.getInstance().stopExternal(processKey, "q", MAX_SHUTDOWN_WAIT_TIME_MILLIS);
+            }
+            catch (ExternalProcessManagementException ex) {
+                LOGGER.warn("Error stopping shard server {}.", processKey, ex);
+            }
+        }
+        processKeys.clear();
+    }
+
+    /**
+     * Closes the connections and stops all shard server processes
+     */
+    @Override
+    public void close() {
+        bloomBox.close();
+        stopShardServers();
+    }
+
+}
@@ -0,0 +1,231 @@
+//@formatter:off
+/*
+ * BloomBoxShardServer
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.calamanari.pk.util.AbstractThreadedSocketServer;
+import de.calamanari.pk.util.SocketCommunicationException;
+
+/**
+ * The {@link BloomBoxShardServer} serves a single bloom box (one shard of a {@link ShardedDataStore}) to a coordinator.
+ * <p>
+ * The coordinator talks to the server using java object serialization over a persistent socket connection:
+ * <ul>
+ * <li>{@link #CMD_HEADER} returns the {@link BloomBoxHeader} followed by the {@link DataStoreHeader} of the served box.</li>
+ * <li>A {@link QueryDelegate} gets executed against the served box's data store, the response is a spawn of the delegate with the counts of this shard. Any
+ * error is reported back as the response object (exception).</li>
+ * </ul>
+ * The delegate's {@link QueryDelegate#finish()} is <i>not</i> called on the shard, this is the job of the coordinator after merging the results of all
+ * shards.
+ * <p>
+ * The protocol has no authentication. Thus, the server only listens on the loopback address unless a bind address is explicitly specified, and it only
+ * accepts the classes of the shard protocol (see {@link ShardStreamFilter}).
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class BloomBoxShardServer extends AbstractThreadedSocketServer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BloomBoxShardServer.class);
+
+    /**
+     * command to request the headers of the served box
+     */
+    public static final String CMD_HEADER = "header";
+
+    /**
+     * default port
+     */
+    public static final int DEFAULT_PORT = 4711;
+
+    /**
+     * the box served by this server
+     */
+    private volatile BloomBox bloomBox;
+
+    /**
+     * address the server socket gets bound to, loopback by default
+     */
+    private volatile InetAddress bindAddress = InetAddress.getLoopbackAddress();
+
+    /**
+     * Creates new instance
+     */
+    public BloomBoxShardServer() {
+        super("BloomBox Shard Server");
+    }
+
+    /**
+     * Starts a shard server in the current JVM (returns immediately after startup, see {@link #start()})
+     * 
+     * @param port listening port
+     * @param bbxFile box to be served
+     * @return server (online), call {@link #stop()} to shut it down
+     */
+    public static BloomBoxShardServer startInProcess(int port, File bbxFile) {
+        BloomBoxShardServer server = new BloomBoxShardServer();
+        server.configureInstance(new String[] { String.valueOf(port), bbxFile.getAbsolutePath() });
+        server.start();
+        return server;
+    }
+
+    /**
+     * @param cmdLineArgs arg[0]=port, arg[1]=path of the BBX-file to be served, optional arg[2]=bind address (default: loopback)
+     */
+    @Override
+    protected void configureInstance(String[] cmdLineArgs) {
+        super.configureInstance(cmdLineArgs);
+        if (cmdLineArgs == null || cmdLineArgs.length < 2) {
+            throw new IllegalArgumentException("Usage: BloomBoxShardServer <port> <bbx-file> [<bind-address>]");
+        }
+        if (cmdLineArgs.length > 2) {
+            try {
+                this.bindAddress = InetAddress.getByName(cmdLineArgs[2]);
+            }
+            catch (IOException ex) {
+                throw new IllegalArgumentException("Invalid bind address: " + cmdLineArgs[2], ex);
+            }
+            LOGGER.warn("Binding to {}, the shard protocol has no authentication!", bindAddress);
+        }
+        File bbxFile = new File(cmdLineArgs[1]);
+        this.bloomBox = BloomBox.loadFromFile(bbxFile, null);
+        LOGGER.info("Serving {} ({} rows)", bbxFile, bloomBox.getDataStore().getNumberOfRows());
+    }
+
+    @Override
+    @SuppressWarnings("resource")
+    protected void handleSocketCommunication(Socket socket) throws SocketCommunicationException {
+        try {
+            // the streams will be closed along with the socket by the caller
+            ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            oos.flush();
+            ObjectInputStream ois = createObjectInputStream(socket);
+            while (ois != null && !socket.isClosed()) {
+                Object request = null;
+                try {
+                    request = ois.readObject();
+                }
+                catch (EOFException _) {
+                    // coordinator closed the connection
+                    break;
+                }
+                handleRequest(request, oos);
+                oos.flush();
+                oos.reset();
+            }
+        }
+        catch (IOException | ClassNotFoundException | RuntimeException ex) {
+            throw new SocketCommunicationException(ex);
+        }
+    }
+
+    /**
+     * @param socket accepted socket
+     * @return object input stream (filtered, see {@link ShardStreamFilter}) or null if the client closed the connection immediately (e.g. availability probe)
+     * @throws IOException on communication error
+     */
+    private static ObjectInputStream createObjectInputStream(Socket socket) throws IOException {
+        try {
+            ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            ois.setObjectInputFilter(ShardStreamFilter.INSTANCE);
+            return ois;
+        }
+        catch (EOFException _) {
+            return null;
+        }
+    }
+
+    /**
+     * Executes a single request and writes the response to the stream
+     * 
+     * @param request command or delegate
+     * @param oos destination
+     * @throws IOException on communication error
+     */
+    private void handleRequest(Object request, ObjectOutputStream oos) throws IOException {
+        if (CMD_HEADER.equals(request)) {
+            oos.writeObject(new BloomBoxHeader(BloomBox.VERSION, bloomBox.getConfig(), bloomBox.getDateCreated(), bloomBox.getDescription()));
+            BloomBoxDataStore dataStore = bloomBox.getDataStore();
+            oos.writeObject(new DataStoreHeader(BloomBox.VERSION, dataStore.getNumberOfRows(), dataStore.getVectorSize(), dataStore.getClass().getName()));
+        }
+        else if (request instanceof QueryDelegate<?> delegate) {
+            Object response = null;
+            try {
+                response = dispatch(delegate);
+            }
+            catch (RuntimeException ex) {
+                LOGGER.error("Error executing query delegate.", ex);
+                // no cause, the coordinator only accepts the classes of the shard protocol
+                response = new BloomBoxException("Error executing query delegate on shard " + getServerName() + ": " + ex);
+            }
+            oos.writeObject(response);
+        }
+        else {
+            oos.writeObject(new BloomBoxException("Unsupported request: " + request));
+        }
+    }
+
+    /**
+     * Executes the given (de-serialized) delegate against the store. We create a spawn for execution to obtain a fully initialized delegate (no transient
+     * fields lost during de-serialization).
+     * 
+     * @param <Q> delegate type
+     * @param delegate from the coordinator
+     * @return spawn with this shard's results
+     */
+    private <Q extends QueryDelegate<Q>> Q dispatch(QueryDelegate<Q> delegate) {
+        Q spawn = delegate.createSpawn();
+        bloomBox.getDataStore().dispatch(spawn);
+        return spawn;
+    }
+
+    @Override
+    protected ServerSocket createServerSocket(int port) throws IOException {
+        return new ServerSocket(port, 0, bindAddress);
+    }
+
+    @Override
+    protected int getDefaultPort() {
+        return DEFAULT_PORT;
+    }
+
+    /**
+     * Starts a shard server
+     * 
+     * @param args command line arguments, arg[0]=port, arg[1]=path of the BBX-file to be served, optional arg[2]=bind address (default: loopback)
+     */
+    public static void main(String[] args) {
+        (new BloomBoxShardServer()).setupAndStart(args);
+    }
+
+}
@@ -20,8 +20,14 @@
 
 package de.calamanari.pk.ohbf.bloombox;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import de.calamanari.pk.muhai.MuhaiGenerator;
 import de.calamanari.pk.ohbf.BloomFilterConfig;
@@ -35,6 +41,10 @@ import de.calamanari.pk.ohbf.LwGenericOHBF;
  * {@link BloomBoxDataStore#isRowMergeCapable()}).<br>
  * Therefore the enhanced data has to be provided row by row in the exact same order as the box has been fed in the first place.
  * <p>
+ * Alternatively, {@link #enhanceRows(long[], String[], Object[][])} takes a batch of rows with explicit row indexes (any order). The batch gets split into
+ * disjoint row ranges, and worker threads hash the values and merge the vectors concurrently (see {@link BloomBoxDataStore#isConcurrentMergeCapable()},
+ * otherwise only the hashing runs in parallel).
+ * <p>
  * <b>Note:</b> {@link DataStoreEnhancer}s are stateful and <i>NOT</i> safe to be accessed by multiple threads concurrently.
  * 
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
@@ -42,6 +52,11 @@ import de.calamanari.pk.ohbf.LwGenericOHBF;
  */
 public class DataStoreEnhancer {
 
+    /**
+     * minimum number of rows per worker in bulk mode, smaller batches use fewer threads
+     */
+    private static final int MIN_ROWS_PER_WORKER = 1_000;
+
     /**
      * the data store of the bloom box
      */
@@ -67,6 +82,11 @@ public class DataStoreEnhancer {
      */
     protected long currentRowIndex = -1;
 
+    /**
+     * number of threads for hashing and merging in bulk mode
+     */
+    private int numberOfThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+
     /**
      * @param config bloom filter config (for creating the vector to be merged)
      * @param dataStore destination store we want to merge data into
@@ -149,7 +169,7 @@ public class DataStoreEnhancer {
                 Object columnValue = columnValues.get(i);
                 bloomFilter.put(columnId, columnValue);
             }
-            dataStore.feedRow(bloomFilter.getBitVectorAsLongArray(), currentRowIndex);
+            dataStore.mergeRow(bloomFilter.getBitVectorAsLongArray(), currentRowIndex);
             return true;
         }
         else {
@@ -157,6 +177,155 @@ public class DataStoreEnhancer {
         }
     }
 
+    /**
+     * Adds the given key-value pairs to the bloom filters of the specified rows and merges them with the existing row entries in the store. The rows can be
+     * given in any order, this method does not affect the cursor of the row-by-row methods.
+     * <p>
+     * Hashing and merging runs on {@link #getNumberOfThreads()} threads, each working on a disjoint range of rows. If you specify other values than strings,
+     * you can find the conversion rules here: {@link MuhaiGenerator}.
+     * 
+     * @param rowIndexes indexes of the rows to be enhanced, same length as columnValues
+     * @param columnIds the column names
+     * @param columnValues one array per row, each with the same length as columnIds
+     * @return number of rows enhanced
+     */
+    public int enhanceRows(long[] rowIndexes, String[] columnIds, Object[][] columnValues) {
+        if (rowIndexes.length != columnValues.length) {
+            throw new IllegalArgumentException(
+                    String.format("Number of row indexes (%d) does not match number of value rows (%d).", rowIndexes.length, columnValues.length));
+        }
+        int numberOfWorkers = Math.max(1, Math.min(numberOfThreads, rowIndexes.length / MIN_ROWS_PER_WORKER));
+        int[] order = new int[rowIndexes.length];
+        int[] rangeStarts = partitionByRowRange(rowIndexes, numberOfWorkers, order);
+        List<Callable<Void>> workers = new ArrayList<>(numberOfWorkers);
+        for (int w = 0; w < numberOfWorkers; w++) {
+            int from = rangeStarts[w];
+            int to = rangeStarts[w + 1];
+            if (from < to) {
+                workers.add(() -> {
+                    enhanceRows(rowIndexes, columnIds, columnValues, order, from, to);
+                    return null;
+                });
+            }
+        }
+        if (workers.size() == 1) {
+            enhanceRows(rowIndexes, columnIds, columnValues, order, 0, order.length);
+        }
+        else if (!workers.isEmpty()) {
+            executeWorkers(workers);
+        }
+        return rowIndexes.length;
+    }
+
+    /**
+     * Computes the processing order of the given batch so that each worker gets the rows of a disjoint range of the store (counting sort by range)
+     * 
+     * @param rowIndexes batch rows
+     * @param numberOfRanges number of workers
+     * @param order destination, positions in the batch ordered by range
+     * @return start positions of the ranges in the order array, length numberOfRanges + 1
+     */
+    private int[] partitionByRowRange(long[] rowIndexes, int numberOfRanges, int[] order) {
+        long rangeSize = (numberOfRows + numberOfRanges - 1) / numberOfRanges;
+        int[] rangeStarts = new int[numberOfRanges + 1];
+        for (long rowIdx : rowIndexes) {
+            if (rowIdx < 0 || rowIdx >= numberOfRows) {
+                throw new IllegalArgumentException(String.format("Row index %d out of range [0, %d).", rowIdx, numberOfRows));
+            }
+            rangeStarts[(int) (rowIdx / rangeSize) + 1]++;
+        }
+        for (int r = 0; r < numberOfRanges; r++) {
+            rangeStarts[r + 1] = rangeStarts[r + 1] + rangeStarts[r];
+        }
+        int[] nextPositions = rangeStarts.clone();
+        for (int i = 0; i < rowIndexes.length; i++) {
+            int range = (int) (rowIndexes[i] / rangeSize);
+            order[nextPositions[range]] = i;
+            nextPositions[range]++;
+        }
+        return rangeStarts;
+    }
+
+    /**
+     * Hashes and merges a part of the batch (one worker)
+     * 
+     * @param rowIndexes batch rows
+     * @param columnIds the column names
+     * @param columnValues batch values
+     * @param order positions in the batch ordered by range
+     * @param from start in the order array (incl.)
+     * @param to end in the order array (excl.)
+     */
+    private void enhanceRows(long[] rowIndexes, String[] columnIds, Object[][] columnValues, int[] order, int from, int to) {
+        LwGenericOHBF workerFilter = new LwGenericOHBF(config);
+        boolean concurrentMerge = dataStore.isConcurrentMergeCapable();
+        for (int i = from; i < to; i++) {
+            int pos = order[i];
+            Object[] rowValues = columnValues[pos];
+            workerFilter.clear();
+            for (int c = 0; c < columnIds.length; c++) {
+                workerFilter.put(columnIds[c], rowValues[c]);
+            }
+            if (concurrentMerge) {
+                dataStore.mergeRow(workerFilter.getBitVectorAsLongArray(), rowIndexes[pos]);
+            }
+            else {
+                synchronized (dataStore) {
+                    dataStore.mergeRow(workerFilter.getBitVectorAsLongArray(), rowIndexes[pos]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the given workers on a temporary thread pool and waits for their completion
+     * 
+     * @param workers tasks
+     */
+    private void executeWorkers(List<Callable<Void>> workers) {
+        ExecutorService executor = Executors.newFixedThreadPool(workers.size(), r -> {
+            Thread t = new Thread(r);
+            t.setName("BBX-Enhancer:@" + Integer.toHexString(t.hashCode()));
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            for (Future<Void> future : executor.invokeAll(workers)) {
+                future.get();
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BloomBoxException("Unexpected interruption during bulk enhancement.", ex);
+        }
+        catch (ExecutionException ex) {
+            if (ex.getCause() instanceof BloomBoxException bbe) {
+                throw bbe;
+            }
+            throw new BloomBoxException("Error during bulk enhancement.", ex.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return number of threads for hashing and merging in bulk mode, default is the number of available processors
+     */
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    /**
+     * @param numberOfThreads number of threads for hashing and merging in bulk mode, default is the number of available processors
+     */
+    public void setNumberOfThreads(int numberOfThreads) {
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be positive, given: " + numberOfThreads);
+        }
+        this.numberOfThreads = numberOfThreads;
+    }
+
     /**
      * Attempts to move the cursor for the next ingestion
      * 
@@ -20,6 +20,7 @@
 
 package de.calamanari.pk.ohbf.bloombox;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -66,6 +67,16 @@ public class DataStoreFeeder {
      */
     protected long currentRowIndex = -1;
 
+    /**
+     * array of the store for zero-copy feeding (see {@link BloomBoxDataStore#getDirectFeedingTarget()}) or null to feed via the filter's vector
+     */
+    private final long[] directFeedingTarget;
+
+    /**
+     * position of the current row's vector in the {@link #directFeedingTarget}
+     */
+    private int directFeedingOffset = 0;
+
     /**
      * @param config filter configuration
      * @param dataStore store
@@ -79,6 +90,7 @@ public class DataStoreFeeder {
         if (markSealed) {
             this.currentRowIndex = numberOfRows;
         }
+        this.directFeedingTarget = markSealed ? null : dataStore.getDirectFeedingTarget();
     }
 
     /**
@@ -97,11 +109,11 @@ public class DataStoreFeeder {
      */
     public boolean addRow(Map<String, ?> columnMap) {
         if (moveToNextRow()) {
-            bloomFilter.clear();
+            beginRow();
             for (Map.Entry<String, ?> entry : columnMap.entrySet()) {
-                bloomFilter.put(entry.getKey(), entry.getValue());
+                putIntoRow(entry.getKey(), entry.getValue());
             }
-            dataStore.feedRow(bloomFilter.getBitVectorAsLongArray(), currentRowIndex);
+            completeRow();
             return true;
         }
         else {
@@ -119,13 +131,11 @@ public class DataStoreFeeder {
      */
     public boolean addRow(String[] columnIds, Object[] columnValues) {
         if (moveToNextRow()) {
-            bloomFilter.clear();
+            beginRow();
             for (int i = 0; i < columnIds.length; i++) {
-                String columnId = columnIds[i];
-                Object columnValue = columnValues[i];
-                bloomFilter.put(columnId, columnValue);
+                putIntoRow(columnIds[i], columnValues[i]);
             }
-            dataStore.feedRow(bloomFilter.getBitVectorAsLongArray(), currentRowIndex);
+            completeRow();
             return true;
         }
         else {
@@ -143,13 +153,11 @@ public class DataStoreFeeder {
      */
     public boolean addRow(List<String> columnIds, List<?> columnValues) {
         if (moveToNextRow()) {
-            bloomFilter.clear();
+            beginRow();
             for (int i = 0; i < columnIds.size(); i++) {
-                String columnId = columnIds.get(i);
-                Object columnValue = columnValues.get(i);
-                bloomFilter.put(columnId, columnValue);
+                putIntoRow(columnIds.get(i), columnValues.get(i));
             }
-            dataStore.feedRow(bloomFilter.getBitVectorAsLongArray(), currentRowIndex);
+            completeRow();
             return true;
         }
         else {
@@ -157,6 +165,44 @@ public class DataStoreFeeder {
         }
     }
 
+    /**
+     * Prepares the vector of the current row (after {@link #moveToNextRow()}), either the row's slot in the store (zero-copy) or the filter's vector.
+     */
+    protected void beginRow() {
+        if (directFeedingTarget != null) {
+            int vectorSize = dataStore.getVectorSize();
+            directFeedingOffset = (int) (currentRowIndex * vectorSize);
+            Arrays.fill(directFeedingTarget, directFeedingOffset, directFeedingOffset + vectorSize, 0L);
+        }
+        else {
+            bloomFilter.clear();
+        }
+    }
+
+    /**
+     * Puts the given key-value pair into the vector of the current row
+     * 
+     * @param columnId column name
+     * @param columnValue column value
+     */
+    protected void putIntoRow(String columnId, Object columnValue) {
+        if (directFeedingTarget != null) {
+            bloomFilter.putInto(directFeedingTarget, directFeedingOffset, columnId, columnValue);
+        }
+        else {
+            bloomFilter.put(columnId, columnValue);
+        }
+    }
+
+    /**
+     * Hands the vector of the current row over to the store unless it has been written directly into the store
+     */
+    protected void completeRow() {
+        if (directFeedingTarget == null) {
+            dataStore.feedRow(bloomFilter.getBitVectorAsLongArray(), currentRowIndex);
+        }
+    }
+
     /**
      * Attempts to move the cursor for the next ingestion
      * 
@@ -36,6 +36,8 @@ import java.util.concurrent.Executors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.calamanari.pk.ohbf.bloombox.bbq.RowBlock;
+
 /**
  * The {@link DefaultDataStore} is an in-memory implementation of a {@link BloomBoxDataStore} that uses a large array of longs to represent the records' bloom
  * filter vectors.
@@ -187,6 +189,8 @@ public class DefaultDataStore implements BloomBoxDataStore {
 
     /**
      * TEMPLATE METHOD to dispatch the query to an area of rows
+     * <p>
+     * The rows are passed in blocks of {@value RowBlock#MAX_NUMBER_OF_ROWS}, see {@link QueryDelegate#executeBlock(long[], int, int, int)}.
      * 
      * @param <Q> delegate type
      * @param queryDelegate the delegate
@@ -194,16 +198,58 @@ public class DefaultDataStore implements BloomBoxDataStore {
      * @param endRowIdx excl.
      */
     protected <Q extends QueryDelegate<Q>> void dispatchPartition(Q queryDelegate, int startRowIdx, int endRowIdx) {
-        for (int rowIdx = startRowIdx; rowIdx < endRowIdx; rowIdx++) {
-            queryDelegate.execute(vector, (rowIdx * vectorSize));
+        for (int rowIdx = startRowIdx; rowIdx < endRowIdx; rowIdx = rowIdx + RowBlock.MAX_NUMBER_OF_ROWS) {
+            queryDelegate.executeBlock(vector, (rowIdx * vectorSize), vectorSize, Math.min(RowBlock.MAX_NUMBER_OF_ROWS, endRowIdx - rowIdx));
         }
     }
 
+    @Override
+    @SuppressWarnings("resource")
+    public <Q extends QueryDelegate<Q>> void dispatchSample(Q queryDelegate, RowSampler sampler) {
+        if (checkParallelQueryRequest(queryDelegate) && NUMBER_OF_CORES > 1 && sampler.getNumberOfBlocks() > NUMBER_OF_CORES) {
+            LOGGER.debug("Executing query delegate {} in sampling mode with {} threads ...", queryDelegate, NUMBER_OF_CORES);
+            List<DispatchJob<Q>> dispatchJobs = new ArrayList<>(NUMBER_OF_CORES);
+            CountDownLatch completionLatch = new CountDownLatch(NUMBER_OF_CORES);
+            ExecutorService executorServiceRef = getExecutorService();
+            for (int i = 0; i < NUMBER_OF_CORES; i++) {
+                DispatchJob<Q> job = new DispatchJob<>(queryDelegate, sampler, completionLatch);
+                dispatchJobs.add(job);
+                executorServiceRef.execute(job);
+            }
+            awaitDispatchJobs(queryDelegate, dispatchJobs, completionLatch);
+            LOGGER.debug("Parallel execution of query delegate {} in sampling mode with {} threads completed.", queryDelegate, NUMBER_OF_CORES);
+        }
+        else {
+            dispatchSampleBlocks(queryDelegate, sampler);
+        }
+    }
+
+    /**
+     * TEMPLATE METHOD to dispatch the query to the blocks provided by the sampler
+     * 
+     * @param <Q> delegate type
+     * @param queryDelegate the delegate
+     * @param sampler provides the blocks
+     */
+    protected <Q extends QueryDelegate<Q>> void dispatchSampleBlocks(Q queryDelegate, RowSampler sampler) {
+        sampler.processBlocks(queryDelegate.getResults(), (startRowIdx, endRowIdx) -> dispatchPartition(queryDelegate, (int) startRowIdx, (int) endRowIdx));
+    }
+
+    @Override
+    public boolean isSamplingCapable() {
+        return true;
+    }
+
     @Override
     public void feedRow(long[] rowVector, long rowIdx) {
         System.arraycopy(rowVector, 0, vector, (int) (rowIdx * vectorSize), vectorSize);
     }
 
+    @Override
+    public long[] getDirectFeedingTarget() {
+        return vector;
+    }
+
     @Override
     public void mergeRow(long[] rowVector, long rowIdx) {
         int offset = (int) (rowIdx * vectorSize);
@@ -217,6 +263,22 @@ public class DefaultDataStore implements BloomBoxDataStore {
         return true;
     }
 
+    /**
+     * Rows are disjoint areas of the in-memory array, so feeding different rows concurrently is safe.
+     */
+    @Override
+    public boolean isConcurrentFeedingCapable() {
+        return true;
+    }
+
+    /**
+     * Rows are disjoint areas of the in-memory array, so merging different rows concurrently is safe.
+     */
+    @Override
+    public boolean isConcurrentMergeCapable() {
+        return true;
+    }
+
     @Override
     public int getVectorSize() {
         return vectorSize;
@@ -307,23 +369,33 @@ public class DefaultDataStore implements BloomBoxDataStore {
                 executorServiceRef.execute(job);
                 startRowIdx = endRowIdx;
             }
-            try {
-                completionLatch.await();
-            }
-            catch (InterruptedException ex) {
-                Thread.currentThread().interrupt();
-                throw new BloomBoxException("Unexpected interruption processing query delegate " + queryDelegate.toString(), ex);
-            }
-            dispatchJobs.stream().forEach(job -> job.transferSpawnResults(queryDelegate));
+            awaitDispatchJobs(queryDelegate, dispatchJobs, completionLatch);
             LOGGER.debug("Parallel execution of query delegate {} with {} threads completed.", queryDelegate, NUMBER_OF_CORES);
         }
         else {
             LOGGER.debug("Executing query delegate {} single-threaded (not enough cores or more cores {} than rows {}) ...", queryDelegate, NUMBER_OF_CORES,
                     numberOfRows);
-            for (long rowIdx = 0; rowIdx < numberOfRows; rowIdx++) {
-                queryDelegate.execute(vector, (int) (rowIdx * vectorSize));
-            }
+            dispatchPartition(queryDelegate, 0, (int) numberOfRows);
+        }
+    }
+
+    /**
+     * Waits for the given jobs to complete and merges their results into the given delegate
+     * 
+     * @param <Q> delegate type
+     * @param queryDelegate the original delegate (destination)
+     * @param dispatchJobs running jobs
+     * @param completionLatch latch counted down by the jobs
+     */
+    private <Q extends QueryDelegate<Q>> void awaitDispatchJobs(Q queryDelegate, List<DispatchJob<Q>> dispatchJobs, CountDownLatch completionLatch) {
+        try {
+            completionLatch.await();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BloomBoxException("Unexpected interruption processing query delegate " + queryDelegate.toString(), ex);
         }
+        dispatchJobs.stream().forEach(job -> job.transferSpawnResults(queryDelegate));
     }
 
     /**
@@ -352,7 +424,7 @@ public class DefaultDataStore implements BloomBoxDataStore {
     }
 
     /**
-     * Encapsulates a partial execution on a partition
+     * Encapsulates a partial execution on a partition or on the blocks provided by a sampler
      *
      * @param <Q> the concrete delegate type
      */
@@ -373,6 +445,11 @@ public class DefaultDataStore implements BloomBoxDataStore {
          */
         private final int endRowIdx;
 
+        /**
+         * sampler providing the blocks to work on, null if the job works on a partition
+         */
+        private final RowSampler sampler;
+
         /**
          * latch to wait for completion of all jobs of a query
          */
@@ -391,13 +468,32 @@ public class DefaultDataStore implements BloomBoxDataStore {
             this.queryDelegate = queryDelegate.createSpawn();
             this.startRowIdx = startRowIdx;
             this.endRowIdx = endRowIdx;
+            this.sampler = null;
+            this.completionLatch = completionLatch;
+        }
+
+        /**
+         * @param queryDelegate delegate (to be spawned)
+         * @param sampler provides the blocks to work on
+         * @param completionLatch latch to wait for completion of all jobs of a query
+         */
+        DispatchJob(Q queryDelegate, RowSampler sampler, CountDownLatch completionLatch) {
+            this.queryDelegate = queryDelegate.createSpawn();
+            this.startRowIdx = 0;
+            this.endRowIdx = 0;
+            this.sampler = sampler;
             this.completionLatch = completionLatch;
         }
 
         @Override
         public void run() {
             try {
-                dispatchPartition(queryDelegate, startRowIdx, endRowIdx);
+                if (sampler == null) {
+                    dispatchPartition(queryDelegate, startRowIdx, endRowIdx);
+                }
+                else {
+                    dispatchSampleBlocks(queryDelegate, sampler);
+                }
             }
             catch (RuntimeException ex) {
                 this.error = ex;
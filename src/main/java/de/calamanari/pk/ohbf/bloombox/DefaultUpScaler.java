@@ -23,8 +23,10 @@ package de.calamanari.pk.ohbf.bloombox;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +35,7 @@ import de.calamanari.pk.ohbf.bloombox.bbq.AndExpression;
 import de.calamanari.pk.ohbf.bloombox.bbq.BbqBooleanLiteral;
 import de.calamanari.pk.ohbf.bloombox.bbq.BbqExpression;
 import de.calamanari.pk.ohbf.bloombox.bbq.BinaryMatchExpression;
+import de.calamanari.pk.ohbf.bloombox.bbq.MinMaxExpression;
 import de.calamanari.pk.ohbf.bloombox.bbq.NegationExpression;
 import de.calamanari.pk.ohbf.bloombox.bbq.OrExpression;
 
@@ -115,6 +118,11 @@ public class DefaultUpScaler implements UpScaler {
      */
     private final Map<Long, Leverage> leverageCache = new HashMap<>();
 
+    /**
+     * AND-expressions we already created the correction expressions for (the runner calls us per query, but the map covers the whole bundle)
+     */
+    private final Set<Long> correctedAndExpressionIds = new HashSet<>();
+
     /**
      * If we do not know the leverage we take this one which would scale FALSE to the max and also TRUE.<br>
      * This leverage is defined as sizeOf(targetPopulation)/sizeOf(sourcePopulation).
@@ -205,6 +213,9 @@ public class DefaultUpScaler implements UpScaler {
             case OrExpression orExpression:
                 leverage = computeLeverage(orExpression);
                 break;
+            case MinMaxExpression minMaxExpression:
+                leverage = computeLeverage(minMaxExpression);
+                break;
             case BbqBooleanLiteral booleanLiteral:
                 leverage = computeLeverage(booleanLiteral);
                 break;
@@ -237,6 +248,17 @@ public class DefaultUpScaler implements UpScaler {
                 _ -> computeWeightedLeverageForOR(getSourceCount(expression), expression.getChildExpressions()));
     }
 
+    /**
+     * Computes the combined leverage for a MINMAX-expression, like for an OR the leverage is weighted by the contribution of the members
+     * 
+     * @param expression key
+     * @return combined leverage
+     */
+    private Leverage computeLeverage(MinMaxExpression expression) {
+        return leverageCache.computeIfAbsent(expression.getExpressionId(),
+                _ -> computeWeightedLeverageForOR(getSourceCount(expression), expression.getChildExpressions()));
+    }
+
     /**
      * @param expression key
      * @return substitute average leverage (extrapolatesource matches to population)
@@ -527,7 +549,7 @@ public class DefaultUpScaler implements UpScaler {
     protected void addAndCorrectionExpressions(Map<Long, BbqExpression> allExpressions, PreparationQueryStats res) {
         List<BbqExpression> candidates = new ArrayList<>(allExpressions.values());
         for (BbqExpression expression : candidates) {
-            if (expression instanceof AndExpression andExpression) {
+            if (expression instanceof AndExpression andExpression && correctedAndExpressionIds.add(andExpression.getExpressionId())) {
                 addAndCorrectionExpressions(andExpression, allExpressions, res);
             }
         }
@@ -0,0 +1,1069 @@
+//@formatter:off
+/*
+ * DelimitedFileFeeder
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.calamanari.pk.ohbf.BloomFilterConfig;
+import de.calamanari.pk.ohbf.LwGenericOHBF;
+import de.calamanari.pk.util.TimeUtils;
+import de.calamanari.pk.util.pfis.BufferType;
+import de.calamanari.pk.util.pfis.ParallelFileInputStream;
+
+/**
+ * The {@link DelimitedFileFeeder} is a {@link DataStoreFeeder} for bulk ingestion of large delimited text files (CSV, TSV) into a bloom box.
+ * <p>
+ * Instead of calling {@link #addRow(java.util.Map)} per record from client code, the file gets streamed in chunks cut at line boundaries. Parsing and hashing
+ * of the chunks happens concurrently on worker threads directly on the UTF-8 bytes (no line strings, no split arrays, no maps). Only the cell values themselves
+ * must be converted into strings, because the bloom filter's hash encoding of string values must match the encoding of the query values.
+ * <p>
+ * If the data store supports concurrent feeding (see {@link BloomBoxDataStore#isConcurrentFeedingCapable()}) the workers write the row vectors directly into
+ * the store, otherwise the vectors of a chunk are collected and fed in order by the reading thread (e.g., for a {@link FileDataStore}).
+ * <p>
+ * Every run returns {@link FeedStatistics} with the throughput and memory metrics. To support resuming a failed run, a checkpoint listener gets notified
+ * regularly with the number of rows that have been fed completely (all rows before this index are in the store). Calling
+ * {@link #setResumeFromRow(long)} with this value before the next run skips the corresponding records (without parsing them) and continues at the same row
+ * index in the store.
+ * <p>
+ * Usage:
+ * 
+ * <pre>
+ * BloomBox bloomBox = BloomBox.forNumberOfRows(numberOfRows).withNumberOfColumns(numberOfColumns).withFeeder(DelimitedFileFeeder::new).build();
+ * DelimitedFileFeeder feeder = (DelimitedFileFeeder) bloomBox.getFeeder();
+ * FeedStatistics stats = feeder.feed(new File("data.csv"));
+ * feeder.close();
+ * </pre>
+ * 
+ * <b>Format:</b> By default the first line is the header with the column names. Values can be enclosed in quotes (a quote inside a quoted value must be
+ * doubled). Line breaks inside values are not supported, blank lines will be ignored, missing trailing values will be fed as empty strings.
+ * <p>
+ * Instances are <i>not</i> safe to be used concurrently, only one feed can run at a time.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class DelimitedFileFeeder extends DataStoreFeeder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DelimitedFileFeeder.class);
+
+    /**
+     * Default size of a chunk read from the input and processed by a single worker: {@value} bytes
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Default number of rows between two checkpoint notifications: {@value}
+     */
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 1_000_000L;
+
+    /**
+     * Maximum number of chunks per worker waiting for processing or completion, limits the memory consumption
+     */
+    private static final int MAX_PENDING_CHUNKS_PER_THREAD = 2;
+
+    /**
+     * line feed
+     */
+    private static final byte LF = '\n';
+
+    /**
+     * carriage return
+     */
+    private static final byte CR = '\r';
+
+    /**
+     * column delimiter
+     */
+    private byte delimiter = ';';
+
+    /**
+     * quote character for values
+     */
+    private byte quoteChar = '"';
+
+    /**
+     * true if the first line contains the column names
+     */
+    private boolean headerLinePresent = true;
+
+    /**
+     * optional explicit column names (take precedence over the header line)
+     */
+    private String[] columnNames = null;
+
+    /**
+     * number of parser threads
+     */
+    private int numberOfThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * size of the chunks in bytes
+     */
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * rows between two checkpoint notifications
+     */
+    private long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+    /**
+     * optional listener for checkpoints
+     */
+    private LongConsumer checkpointListener = null;
+
+    /**
+     * number of records to be skipped (already in the store)
+     */
+    private long resumeFromRow = 0L;
+
+    /**
+     * @param config filter configuration
+     * @param dataStore store
+     * @param markSealed if true feeding will be disabled
+     */
+    public DelimitedFileFeeder(BloomFilterConfig config, BloomBoxDataStore dataStore, boolean markSealed) {
+        super(config, dataStore, markSealed);
+    }
+
+    /**
+     * Creates an open feeder, so this constructor can be passed to {@link BloomBox.Builder#withFeeder(java.util.function.BiFunction)}
+     * 
+     * @param config filter configuration
+     * @param dataStore store
+     */
+    public DelimitedFileFeeder(BloomFilterConfig config, BloomBoxDataStore dataStore) {
+        this(config, dataStore, false);
+    }
+
+    /**
+     * Feeds all records of the given file into the store, the file will be read using a {@link ParallelFileInputStream} (memory-mapped).
+     * 
+     * @param file delimited source file
+     * @return metrics of this run
+     */
+    public FeedStatistics feed(File file) {
+        try (ParallelFileInputStream is = ParallelFileInputStream.createInputStream(file, BufferType.MEMORY_MAPPED)) {
+            return feed(is);
+        }
+        catch (IOException ex) {
+            throw new BloomBoxException(String.format("Error reading delimited file '%s'.", file), ex);
+        }
+    }
+
+    /**
+     * Feeds all records of the given stream into the store. The stream will be read until its end or until the store is full, but not closed.
+     * 
+     * @param is source stream with UTF-8 encoded delimited records
+     * @return metrics of this run
+     */
+    public FeedStatistics feed(InputStream is) {
+        FeedRun run = new FeedRun();
+        if (currentRowIndex + 1 >= numberOfRows || !dataStore.ensureIsOpenForFeeding()) {
+            LOGGER.warn("Unable to feed into {}, the store is full or sealed.", dataStore);
+            return run.stats;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads, r -> {
+            Thread t = new Thread(r);
+            t.setName("BBX-Feeder:@" + Integer.toHexString(t.hashCode()));
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            run.execute(is, executor);
+        }
+        catch (IOException ex) {
+            throw new BloomBoxException(String.format("Error reading delimited input after %d fed row(s).", run.nextRowIdx - resumeFromRow), ex);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        LOGGER.debug("Feeding complete: {}", run.stats);
+        return run.stats;
+    }
+
+    /**
+     * Parses a single line into the column values (UTF-8 decoded) and puts the key-value pairs into the target vector
+     * 
+     * @param data chunk bytes
+     * @param lineStart start of line (incl.)
+     * @param lineEnd end of line (excl., no line-end characters)
+     * @param filter for hashing, see {@link LwGenericOHBF#putInto(long[], int, Object...)}
+     * @param target destination array (vector cleared before)
+     * @param offset position of the vector in the target array
+     * @param names column names
+     * @param rowIdx for error reporting
+     */
+    private void putLine(byte[] data, int lineStart, int lineEnd, LwGenericOHBF filter, long[] target, int offset, String[] names, long rowIdx) {
+        int pos = lineStart;
+        int columnIdx = 0;
+        while (true) {
+            if (columnIdx >= names.length) {
+                throw new BloomBoxException(String.format("Too many values at row index %d, expected %d column(s): %s", rowIdx, names.length,
+                        new String(data, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8)));
+            }
+            int valueEnd;
+            String value;
+            if (pos < lineEnd && data[pos] == quoteChar) {
+                valueEnd = findQuotedValueEnd(data, pos + 1, lineEnd, rowIdx);
+                value = decodeQuotedValue(data, pos + 1, valueEnd - 1);
+            }
+            else {
+                valueEnd = indexOf(data, delimiter, pos, lineEnd);
+                value = new String(data, pos, valueEnd - pos, StandardCharsets.UTF_8);
+            }
+            filter.putInto(target, offset, names[columnIdx], value);
+            columnIdx++;
+            if (valueEnd >= lineEnd) {
+                break;
+            }
+            pos = valueEnd + 1;
+        }
+        for (; columnIdx < names.length; columnIdx++) {
+            filter.putInto(target, offset, names[columnIdx], "");
+        }
+    }
+
+    /**
+     * @param data chunk bytes
+     * @param from position after the opening quote
+     * @param lineEnd end of line (excl.)
+     * @param rowIdx for error reporting
+     * @return position after the closing quote (delimiter or line end)
+     */
+    private int findQuotedValueEnd(byte[] data, int from, int lineEnd, long rowIdx) {
+        for (int i = from; i < lineEnd; i++) {
+            if (data[i] == quoteChar) {
+                if (i + 1 < lineEnd && data[i + 1] == quoteChar) {
+                    i++;
+                }
+                else if (i + 1 == lineEnd || data[i + 1] == delimiter) {
+                    return i + 1;
+                }
+                else {
+                    throw new BloomBoxException(String.format("Unexpected character after closing quote at row index %d.", rowIdx));
+                }
+            }
+        }
+        throw new BloomBoxException(String.format("Unterminated quoted value at row index %d.", rowIdx));
+    }
+
+    /**
+     * @param data chunk bytes
+     * @param from start of the value (incl.)
+     * @param to end of the value (excl., position of the closing quote)
+     * @return decoded value with doubled quotes reduced
+     */
+    private String decodeQuotedValue(byte[] data, int from, int to) {
+        int firstQuote = indexOf(data, quoteChar, from, to);
+        if (firstQuote == to) {
+            return new String(data, from, to - from, StandardCharsets.UTF_8);
+        }
+        byte[] buffer = new byte[to - from];
+        int len = 0;
+        for (int i = from; i < to; i++) {
+            buffer[len] = data[i];
+            len++;
+            if (data[i] == quoteChar) {
+                i++;
+            }
+        }
+        return new String(buffer, 0, len, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param data chunk bytes
+     * @param b byte to find
+     * @param from start position (incl.)
+     * @param to end position (excl.)
+     * @return first position of b in the given range or <code>to</code> if not found
+     */
+    private static int indexOf(byte[] data, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * @param data chunk bytes
+     * @param lineStart start of line (incl.)
+     * @param to end of the valid chunk data (excl.)
+     * @return end of line (excl. line-end characters)
+     */
+    private static int findLineEnd(byte[] data, int lineStart, int to) {
+        int lineEnd = indexOf(data, LF, lineStart, to);
+        if (lineEnd > lineStart && data[lineEnd - 1] == CR) {
+            lineEnd--;
+        }
+        return lineEnd;
+    }
+
+    /**
+     * @param data chunk bytes
+     * @param lineEnd position returned by {@link #findLineEnd(byte[], int, int)}
+     * @param to end of the valid chunk data (excl.)
+     * @return start of the next line
+     */
+    private static int skipLineEnd(byte[] data, int lineEnd, int to) {
+        int pos = lineEnd;
+        if (pos < to && data[pos] == CR) {
+            pos++;
+        }
+        if (pos < to && data[pos] == LF) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * @param data chunk bytes
+     * @param from start of the line (incl.)
+     * @param lineEnd end of the line (excl.)
+     * @return true if the line is empty or only consists of whitespace
+     */
+    private static boolean isBlank(byte[] data, int from, int lineEnd) {
+        for (int i = from; i < lineEnd; i++) {
+            if (data[i] != ' ' && data[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads from the stream until the buffer is full or the stream ends
+     * 
+     * @param is source
+     * @param buffer destination
+     * @param offset start position
+     * @return number of bytes read
+     * @throws IOException on read error
+     */
+    private static int readFully(InputStream is, byte[] buffer, int offset) throws IOException {
+        int pos = offset;
+        while (pos < buffer.length) {
+            int bytesRead = is.read(buffer, pos, buffer.length - pos);
+            if (bytesRead < 0) {
+                break;
+            }
+            pos = pos + bytesRead;
+        }
+        return pos - offset;
+    }
+
+    /**
+     * @return column delimiter, default is ';'
+     */
+    public char getDelimiter() {
+        return (char) delimiter;
+    }
+
+    /**
+     * @param delimiter column delimiter (ASCII), e.g. ',' for CSV or '\t' for TSV, default is ';'
+     */
+    public void setDelimiter(char delimiter) {
+        this.delimiter = toAsciiByte(delimiter, "delimiter");
+    }
+
+    /**
+     * @return quote character, default is '"'
+     */
+    public char getQuoteChar() {
+        return (char) quoteChar;
+    }
+
+    /**
+     * @param quoteChar quote character (ASCII) to enclose values containing the delimiter, default is '"'
+     */
+    public void setQuoteChar(char quoteChar) {
+        this.quoteChar = toAsciiByte(quoteChar, "quoteChar");
+    }
+
+    /**
+     * @param ch character
+     * @param name of the setting for error reporting
+     * @return single byte
+     */
+    private static byte toAsciiByte(char ch, String name) {
+        if (ch > 127 || ch == LF || ch == CR) {
+            throw new IllegalArgumentException(String.format("The %s must be a single ASCII character (except line-end characters), given: '%s'", name, ch));
+        }
+        return (byte) ch;
+    }
+
+    /**
+     * @return true if the first line of the input contains the column names (default)
+     */
+    public boolean isHeaderLinePresent() {
+        return headerLinePresent;
+    }
+
+    /**
+     * @param headerLinePresent true if the first line of the input contains the column names (default)
+     */
+    public void setHeaderLinePresent(boolean headerLinePresent) {
+        this.headerLinePresent = headerLinePresent;
+    }
+
+    /**
+     * @return explicitly configured column names or null (use header line)
+     */
+    public List<String> getColumnNames() {
+        return columnNames == null ? null : List.of(columnNames);
+    }
+
+    /**
+     * @param columnNames column names to be used instead of the names from the header line (a present header line will be skipped), null to read the names
+     *            from the header line
+     */
+    public void setColumnNames(List<String> columnNames) {
+        this.columnNames = columnNames == null ? null : columnNames.toArray(new String[0]);
+    }
+
+    /**
+     * @return number of threads for parsing and hashing
+     */
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    /**
+     * @param numberOfThreads number of threads for parsing and hashing, default is the number of available processors
+     */
+    public void setNumberOfThreads(int numberOfThreads) {
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be positive, given: " + numberOfThreads);
+        }
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    /**
+     * @return size of the chunks in bytes
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @param chunkSize size of the chunks in bytes processed by a single worker, default is {@link #DEFAULT_CHUNK_SIZE}, longer lines extend the chunk
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be positive, given: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return number of rows between two checkpoint notifications
+     */
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * @param checkpointInterval number of rows between two checkpoint notifications, default is {@link #DEFAULT_CHECKPOINT_INTERVAL}
+     */
+    public void setCheckpointInterval(long checkpointInterval) {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("The checkpoint interval must be positive, given: " + checkpointInterval);
+        }
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * @return checkpoint listener or null
+     */
+    public LongConsumer getCheckpointListener() {
+        return checkpointListener;
+    }
+
+    /**
+     * @param checkpointListener called on the reading thread with the number of records (counted from the start of the input) completely fed into the store,
+     *            the value can later be passed to {@link #setResumeFromRow(long)}, null to disable notifications
+     */
+    public void setCheckpointListener(LongConsumer checkpointListener) {
+        this.checkpointListener = checkpointListener;
+    }
+
+    /**
+     * @return number of records to be skipped at the beginning of the input
+     */
+    public long getResumeFromRow() {
+        return resumeFromRow;
+    }
+
+    /**
+     * Configures the next run to continue after a checkpoint. The given number of records will be skipped without parsing and the first fed record lands in
+     * the store at this row index. This requires that the store still holds the rows fed before (e.g., the same in-memory store after an error).
+     * 
+     * @param resumeFromRow number of records to be skipped (last checkpoint), default is 0
+     */
+    public void setResumeFromRow(long resumeFromRow) {
+        if (resumeFromRow < 0 || resumeFromRow > numberOfRows) {
+            throw new IllegalArgumentException(String.format("The resume row must be in range [0, %d], given: %d", numberOfRows, resumeFromRow));
+        }
+        this.resumeFromRow = resumeFromRow;
+    }
+
+    /**
+     * Holds the metrics of a single run
+     */
+    public static final class FeedStatistics {
+
+        /**
+         * number of rows fed in this run
+         */
+        private long numberOfRowsFed = 0;
+
+        /**
+         * number of records skipped due to {@link DelimitedFileFeeder#setResumeFromRow(long)}
+         */
+        private long numberOfRowsSkipped = 0;
+
+        /**
+         * number of bytes read from the input
+         */
+        private long numberOfBytesRead = 0;
+
+        /**
+         * time of the run
+         */
+        private long elapsedNanos = 0;
+
+        /**
+         * number of parser threads
+         */
+        private int numberOfThreads = 0;
+
+        /**
+         * maximum used heap memory observed during the run
+         */
+        private long peakUsedHeapBytes = 0;
+
+        /**
+         * true if the input had more records than the store could take
+         */
+        private boolean truncated = false;
+
+        /**
+         * @return number of rows fed in this run
+         */
+        public long getNumberOfRowsFed() {
+            return numberOfRowsFed;
+        }
+
+        /**
+         * @return number of records skipped at the beginning of the input (resume)
+         */
+        public long getNumberOfRowsSkipped() {
+            return numberOfRowsSkipped;
+        }
+
+        /**
+         * @return number of bytes read from the input
+         */
+        public long getNumberOfBytesRead() {
+            return numberOfBytesRead;
+        }
+
+        /**
+         * @return time of the run in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return number of threads used for parsing and hashing
+         */
+        public int getNumberOfThreads() {
+            return numberOfThreads;
+        }
+
+        /**
+         * @return maximum used heap memory in bytes observed during the run (sampled per chunk)
+         */
+        public long getPeakUsedHeapBytes() {
+            return peakUsedHeapBytes;
+        }
+
+        /**
+         * @return true if the input had more records than the store could take, the remaining records were ignored
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        /**
+         * @return fed rows per second
+         */
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : (numberOfRowsFed * 1_000_000_000d) / elapsedNanos;
+        }
+
+        /**
+         * @return megabytes (2^20) read per second
+         */
+        public double getMegaBytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : ((numberOfBytesRead / 1_048_576d) * 1_000_000_000d) / elapsedNanos;
+        }
+
+        /**
+         * Samples the current heap usage
+         */
+        private void sampleHeap() {
+            Runtime runtime = Runtime.getRuntime();
+            peakUsedHeapBytes = Math.max(peakUsedHeapBytes, runtime.totalMemory() - runtime.freeMemory());
+        }
+
+        @Override
+        public String toString() {
+            return this.getClass().getSimpleName() + " [numberOfRowsFed=" + numberOfRowsFed + ", numberOfRowsSkipped=" + numberOfRowsSkipped
+                    + ", numberOfBytesRead=" + numberOfBytesRead + ", elapsedSeconds=" + TimeUtils.formatNanosAsSeconds(elapsedNanos) + ", rowsPerSecond="
+                    + String.format(Locale.US, "%.1f", getRowsPerSecond()) + ", megaBytesPerSecond=" + String.format(Locale.US, "%.2f", getMegaBytesPerSecond())
+                    + ", numberOfThreads=" + numberOfThreads + ", peakUsedHeapBytes=" + peakUsedHeapBytes + ", truncated=" + truncated + "]";
+        }
+
+    }
+
+    /**
+     * Result of a processed chunk
+     */
+    private static final class ChunkResult {
+
+        /**
+         * number of rows in the chunk
+         */
+        private final int numberOfRows;
+
+        /**
+         * row vectors to be fed in order or null if the rows have been written directly
+         */
+        private final long[] rowVectors;
+
+        /**
+         * @param numberOfRows number of rows in the chunk
+         * @param rowVectors row vectors to be fed in order or null if the rows have been written directly
+         */
+        ChunkResult(int numberOfRows, long[] rowVectors) {
+            this.numberOfRows = numberOfRows;
+            this.rowVectors = rowVectors;
+        }
+    }
+
+    /**
+     * State of a single run of {@link DelimitedFileFeeder#feed(InputStream)}, executed by the reading thread
+     */
+    private final class FeedRun {
+
+        /**
+         * metrics
+         */
+        private final FeedStatistics stats = new FeedStatistics();
+
+        /**
+         * chunks in progress (in input order)
+         */
+        private final Deque<Future<ChunkResult>> pendingChunks = new ArrayDeque<>();
+
+        /**
+         * row index for the next chunk to be submitted
+         */
+        private long nextRowIdx = resumeFromRow;
+
+        /**
+         * number of rows completely fed (in input order), counted from the start of the input
+         */
+        private long completedRowIdx = resumeFromRow;
+
+        /**
+         * number of records still to be skipped
+         */
+        private long remainingRowsToSkip = resumeFromRow;
+
+        /**
+         * column names for this run
+         */
+        private String[] names = columnNames;
+
+        /**
+         * true if the header line still needs to be consumed
+         */
+        private boolean headerPending = headerLinePresent;
+
+        /**
+         * true if a record could not be fed because the store was full
+         */
+        private boolean capacityExceeded = false;
+
+        /**
+         * row index reported with the last checkpoint notification
+         */
+        private long lastCheckpointRowIdx = -1;
+
+        /**
+         * start time
+         */
+        private final long startTimeNanos = System.nanoTime();
+
+        /**
+         * Reads the stream in chunks cut at line boundaries and processes them concurrently
+         * 
+         * @param is source
+         * @param executor for the workers
+         * @throws IOException on read error
+         */
+        void execute(InputStream is, ExecutorService executor) throws IOException {
+            stats.numberOfThreads = numberOfThreads;
+            byte[] buffer = new byte[chunkSize];
+            int filled = 0;
+            boolean eof = false;
+            boolean full = false;
+            while (!eof && !full) {
+                int bytesRead = readFully(is, buffer, filled);
+                stats.numberOfBytesRead += bytesRead;
+                filled = filled + bytesRead;
+                eof = filled < buffer.length;
+                int end = eof ? filled : lastLineEnd(buffer, filled);
+                if (end == 0) {
+                    // a single line longer than the buffer
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    continue;
+                }
+                byte[] nextBuffer = new byte[Math.max(chunkSize, filled - end + 1)];
+                System.arraycopy(buffer, end, nextBuffer, 0, filled - end);
+                full = submitChunk(buffer, end, executor);
+                filled = filled - end;
+                buffer = nextBuffer;
+            }
+            while (!pendingChunks.isEmpty()) {
+                completeOldestChunk();
+            }
+            if (full && !capacityExceeded) {
+                // store is full exactly at a chunk boundary, check whether there is more to come
+                capacityExceeded = containsRecord(buffer, filled) || readFully(is, new byte[1], 0) > 0;
+            }
+            stats.truncated = capacityExceeded;
+            stats.elapsedNanos = System.nanoTime() - startTimeNanos;
+            stats.sampleHeap();
+            currentRowIndex = nextRowIdx - 1;
+            notifyCheckpoint();
+        }
+
+        /**
+         * @param data buffer
+         * @param filled number of valid bytes
+         * @return true if there is at least one non-blank line in the given data
+         */
+        private boolean containsRecord(byte[] data, int filled) {
+            int pos = 0;
+            while (pos < filled) {
+                int lineEnd = findLineEnd(data, pos, filled);
+                if (!isBlank(data, pos, lineEnd)) {
+                    return true;
+                }
+                pos = skipLineEnd(data, lineEnd, filled);
+            }
+            return false;
+        }
+
+        /**
+         * @param data chunk bytes
+         * @param filled number of valid bytes
+         * @return position after the last line feed or 0 if there is none
+         */
+        private int lastLineEnd(byte[] data, int filled) {
+            for (int i = filled - 1; i >= 0; i--) {
+                if (data[i] == LF) {
+                    return i + 1;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Consumes header and skipped lines, then submits the remaining rows of the chunk to a worker
+         * 
+         * @param data chunk bytes
+         * @param to end of the valid data (excl.)
+         * @param executor for the workers
+         * @return true if the store is full
+         */
+        private boolean submitChunk(byte[] data, int to, ExecutorService executor) {
+            int from = consumeLeadingLines(data, to);
+            long capacity = numberOfRows - nextRowIdx;
+            int rowCount = 0;
+            int pos = from;
+            boolean full = false;
+            while (pos < to) {
+                int lineEnd = findLineEnd(data, pos, to);
+                if (!isBlank(data, pos, lineEnd)) {
+                    if (rowCount == capacity) {
+                        capacityExceeded = true;
+                        full = true;
+                        break;
+                    }
+                    rowCount++;
+                }
+                pos = skipLineEnd(data, lineEnd, to);
+            }
+            if (rowCount > 0) {
+                if (names == null) {
+                    throw new BloomBoxException("No column names available: neither configured nor provided by a header line.");
+                }
+                ParseJob job = new ParseJob(data, from, pos, nextRowIdx, rowCount, names);
+                pendingChunks.add(executor.submit(job));
+                nextRowIdx = nextRowIdx + rowCount;
+                while (pendingChunks.size() >= numberOfThreads * MAX_PENDING_CHUNKS_PER_THREAD) {
+                    completeOldestChunk();
+                }
+            }
+            return full || nextRowIdx >= numberOfRows;
+        }
+
+        /**
+         * Consumes the header line and the records to be skipped
+         * 
+         * @param data chunk bytes
+         * @param to end of the valid data (excl.)
+         * @return position of the first record to be fed
+         */
+        private int consumeLeadingLines(byte[] data, int to) {
+            int pos = 0;
+            while (pos < to && (headerPending || remainingRowsToSkip > 0)) {
+                int lineEnd = findLineEnd(data, pos, to);
+                if (!isBlank(data, pos, lineEnd)) {
+                    if (headerPending) {
+                        if (names == null) {
+                            names = parseHeader(data, pos, lineEnd);
+                        }
+                        headerPending = false;
+                    }
+                    else {
+                        remainingRowsToSkip--;
+                        stats.numberOfRowsSkipped++;
+                    }
+                }
+                pos = skipLineEnd(data, lineEnd, to);
+            }
+            return pos;
+        }
+
+        /**
+         * @param data chunk bytes
+         * @param lineStart start of the header line
+         * @param lineEnd end of the header line
+         * @return column names
+         */
+        private String[] parseHeader(byte[] data, int lineStart, int lineEnd) {
+            String header = new String(data, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+            if (!header.isEmpty() && header.charAt(0) == '\uFEFF') {
+                header = header.substring(1);
+            }
+            String[] res = header.split(Pattern.quote(String.valueOf((char) delimiter)), -1);
+            for (int i = 0; i < res.length; i++) {
+                String name = res[i].trim();
+                if (name.length() > 1 && name.charAt(0) == quoteChar && name.charAt(name.length() - 1) == quoteChar) {
+                    name = name.substring(1, name.length() - 1);
+                }
+                res[i] = name;
+            }
+            LOGGER.debug("Column names from header: {}", Arrays.asList(res));
+            return res;
+        }
+
+        /**
+         * Waits for the oldest chunk, feeds its rows (if not written directly) and reports checkpoints
+         */
+        private void completeOldestChunk() {
+            Future<ChunkResult> future = pendingChunks.poll();
+            ChunkResult result;
+            try {
+                result = future.get();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                cancelPendingChunks();
+                throw new BloomBoxException("Unexpected interruption while feeding delimited input.", ex);
+            }
+            catch (ExecutionException ex) {
+                cancelPendingChunks();
+                Throwable cause = ex.getCause();
+                if (cause instanceof BloomBoxException bbe) {
+                    throw bbe;
+                }
+                throw new BloomBoxException(String.format("Error feeding delimited input after row index %d.", completedRowIdx), cause);
+            }
+            if (result.rowVectors != null) {
+                int vectorSize = dataStore.getVectorSize();
+                long[] rowVector = new long[vectorSize];
+                for (int i = 0; i < result.numberOfRows; i++) {
+                    System.arraycopy(result.rowVectors, i * vectorSize, rowVector, 0, vectorSize);
+                    dataStore.feedRow(rowVector, completedRowIdx + i);
+                }
+            }
+            long previousCheckpoint = completedRowIdx / checkpointInterval;
+            completedRowIdx = completedRowIdx + result.numberOfRows;
+            stats.numberOfRowsFed = stats.numberOfRowsFed + result.numberOfRows;
+            stats.sampleHeap();
+            if (completedRowIdx / checkpointInterval > previousCheckpoint) {
+                notifyCheckpoint();
+            }
+        }
+
+        /**
+         * Informs the listener (if any) about the number of records completely fed
+         */
+        private void notifyCheckpoint() {
+            if (completedRowIdx == lastCheckpointRowIdx) {
+                return;
+            }
+            lastCheckpointRowIdx = completedRowIdx;
+            if (LOGGER.isDebugEnabled()) {
+                long elapsedNanos = System.nanoTime() - startTimeNanos;
+                LOGGER.debug("Checkpoint: {} row(s) fed, {} byte(s) read in {} second(s).", completedRowIdx, stats.numberOfBytesRead,
+                        TimeUtils.formatNanosAsSeconds(elapsedNanos));
+            }
+            if (checkpointListener != null) {
+                checkpointListener.accept(completedRowIdx);
+            }
+        }
+
+        /**
+         * Cancels all remaining chunks after an error
+         */
+        private void cancelPendingChunks() {
+            pendingChunks.forEach(f -> f.cancel(true));
+            pendingChunks.clear();
+        }
+
+    }
+
+    /**
+     * Parses and hashes the rows of a chunk on a worker thread
+     */
+    private final class ParseJob implements Callable<ChunkResult> {
+
+        /**
+         * chunk bytes
+         */
+        private final byte[] data;
+
+        /**
+         * start of the first record (incl.)
+         */
+        private final int from;
+
+        /**
+         * end of the last record (excl.)
+         */
+        private final int to;
+
+        /**
+         * row index of the first record in the store
+         */
+        private final long startRowIdx;
+
+        /**
+         * number of (non-blank) records in the chunk
+         */
+        private final int rowCount;
+
+        /**
+         * column names
+         */
+        private final String[] names;
+
+        /**
+         * @param data chunk bytes
+         * @param from start of the first record (incl.)
+         * @param to end of the last record (excl.)
+         * @param startRowIdx row index of the first record in the store
+         * @param rowCount number of (non-blank) records in the chunk
+         * @param names column names
+         */
+        ParseJob(byte[] data, int from, int to, long startRowIdx, int rowCount, String[] names) {
+            this.data = data;
+            this.from = from;
+            this.to = to;
+            this.startRowIdx = startRowIdx;
+            this.rowCount = rowCount;
+            this.names = names;
+        }
+
+        @Override
+        public ChunkResult call() {
+            boolean direct = dataStore.isConcurrentFeedingCapable();
+            long[] directFeedingTarget = direct ? dataStore.getDirectFeedingTarget() : null;
+            int vectorSize = dataStore.getVectorSize();
+            long[] rowVectors = direct ? null : new long[rowCount * vectorSize];
+            LwGenericOHBF filter = new LwGenericOHBF(config);
+            int pos = from;
+            int rowNumber = 0;
+            while (pos < to && rowNumber < rowCount) {
+                int lineEnd = findLineEnd(data, pos, to);
+                if (!isBlank(data, pos, lineEnd)) {
+                    long rowIdx = startRowIdx + rowNumber;
+                    if (directFeedingTarget != null) {
+                        // zero-copy, the bits go straight into the row's slot in the store
+                        int offset = (int) (rowIdx * vectorSize);
+                        Arrays.fill(directFeedingTarget, offset, offset + vectorSize, 0L);
+                        putLine(data, pos, lineEnd, filter, directFeedingTarget, offset, names, rowIdx);
+                    }
+                    else if (direct) {
+                        filter.clear();
+                        putLine(data, pos, lineEnd, filter, filter.getBitVectorAsLongArray(), 0, names, rowIdx);
+                        dataStore.feedRow(filter.getBitVectorAsLongArray(), rowIdx);
+                    }
+                    else {
+                        putLine(data, pos, lineEnd, filter, rowVectors, rowNumber * vectorSize, names, rowIdx);
+                    }
+                    rowNumber++;
+                }
+                pos = skipLineEnd(data, lineEnd, to);
+            }
+            return new ChunkResult(rowCount, rowVectors);
+        }
+
+    }
+
+}
@@ -23,6 +23,10 @@ package de.calamanari.pk.ohbf.bloombox;
 import java.util.Collections;
 import java.util.Map;
 
+import de.calamanari.pk.ohbf.bloombox.bbq.ExpressionMetricsSink;
+import de.calamanari.pk.ohbf.bloombox.bbq.RowBlock;
+import de.calamanari.pk.ohbf.bloombox.bbq.RowMaskCache;
+
 /**
  * A query that does nothing else than setting a defined error on any attempt to execute it.
  * <p>
@@ -59,12 +63,18 @@ public class ErrorPlaceholderQuery extends InternalQuery {
     }
 
     @Override
-    public void execute(long[] source, int startPos, Map<Long, Boolean> resultCache, BloomBoxQueryResult result) {
+    public void execute(long[] source, int startPos, Map<Long, Boolean> resultCache, ExpressionMetricsSink metricsSink, BloomBoxQueryResult result) {
+        result.setErrorMessage(errorMessage);
+    }
+
+    @Override
+    public void executeBlock(RowBlock block, RowMaskCache maskCache, BloomBoxQueryResult result) {
         result.setErrorMessage(errorMessage);
     }
 
     @Override
-    public void execute(long[] source, int startPos, DpavProbabilityFetcher probabilities, Map<Long, Boolean> resultCache, BloomBoxQueryResult result) {
+    public void execute(long[] source, int startPos, DpavProbabilityFetcher probabilities, Map<Long, Boolean> resultCache, ExpressionMetricsSink metricsSink,
+            BloomBoxQueryResult result) {
         result.setErrorMessage(errorMessage);
     }
 
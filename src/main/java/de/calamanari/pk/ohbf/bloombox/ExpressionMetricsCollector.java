@@ -0,0 +1,143 @@
+//@formatter:off
+/*
+ * ExpressionMetricsCollector
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.calamanari.pk.ohbf.bloombox.bbq.BbqExpression;
+import de.calamanari.pk.ohbf.bloombox.bbq.ExpressionMetricsSink;
+
+/**
+ * The {@link ExpressionMetricsCollector} counts for every expression node how often it was visited, answered from the result cache, actually evaluated and
+ * matched, and how many member expressions it visited during its evaluations.
+ * <p>
+ * The expressions report these figures explicitly while being matched row by row (see {@link ExpressionMetricsSink}), so the short-circuit rate of AND/OR-nodes
+ * can be derived from the collected counters.
+ * <p>
+ * Counting has some overhead, so the {@link SimpleQueryDelegate} only creates a collector if a query requests {@link BloomBoxOption#METRICS}. Each delegate
+ * (spawn) has its own collector, the counters get combined when the spawn results are added.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+class ExpressionMetricsCollector implements ExpressionMetricsSink, Serializable {
+
+    private static final long serialVersionUID = -7730928716054218347L;
+
+    /**
+     * counters per expression id
+     */
+    private final HashMap<Long, NodeCounter> counters = new HashMap<>();
+
+    @Override
+    public void recordVisit(long expressionId, boolean cacheHit) {
+        NodeCounter counter = counters.computeIfAbsent(expressionId, _ -> new NodeCounter());
+        counter.visits++;
+        if (cacheHit) {
+            counter.cacheHits++;
+        }
+    }
+
+    @Override
+    public void recordEvaluation(long expressionId, boolean result, int numberOfChildVisits) {
+        NodeCounter counter = counters.computeIfAbsent(expressionId, _ -> new NodeCounter());
+        counter.evaluations++;
+        if (result) {
+            counter.matches++;
+        }
+        counter.childVisits += numberOfChildVisits;
+    }
+
+    /**
+     * Adds the counters of the other collector (spawn) to this instance's counters
+     * 
+     * @param other collector of a spawn
+     */
+    void addCounters(ExpressionMetricsCollector other) {
+        for (Map.Entry<Long, NodeCounter> entry : other.counters.entrySet()) {
+            counters.computeIfAbsent(entry.getKey(), _ -> new NodeCounter()).add(entry.getValue());
+        }
+    }
+
+    /**
+     * Transfers the counters to the given metrics
+     * 
+     * @param expressions all expressions of the executed queries by id (to determine type and number of children)
+     * @param metrics destination
+     */
+    void transferCounters(Map<Long, BbqExpression> expressions, QueryBundleMetrics metrics) {
+        for (Map.Entry<Long, NodeCounter> entry : counters.entrySet()) {
+            BbqExpression expression = expressions.get(entry.getKey());
+            if (expression != null) {
+                NodeCounter counter = entry.getValue();
+                metrics.addExpressionMetrics(expression.getExpressionId(), expression.getClass().getSimpleName(), expression.getChildExpressions().size(),
+                        counter.visits, counter.cacheHits, counter.evaluations, counter.matches, counter.childVisits);
+            }
+        }
+    }
+
+    /**
+     * Counters of a single expression node
+     */
+    private static final class NodeCounter implements Serializable {
+
+        private static final long serialVersionUID = 6195704331851029573L;
+
+        /**
+         * number of visits
+         */
+        long visits;
+
+        /**
+         * number of visits answered from the cache
+         */
+        long cacheHits;
+
+        /**
+         * number of evaluations
+         */
+        long evaluations;
+
+        /**
+         * number of evaluations with result true
+         */
+        long matches;
+
+        /**
+         * number of member visits during evaluations
+         */
+        long childVisits;
+
+        /**
+         * @param other counters to be added
+         */
+        void add(NodeCounter other) {
+            this.visits += other.visits;
+            this.cacheHits += other.cacheHits;
+            this.evaluations += other.evaluations;
+            this.matches += other.matches;
+            this.childVisits += other.childVisits;
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+//@formatter:off
+/*
+ * ExpressionResultCache
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import de.calamanari.pk.ohbf.bloombox.bbq.BbqExpression;
+import de.calamanari.pk.ohbf.bloombox.bbq.ExpressionValueTable;
+import de.calamanari.pk.ohbf.bloombox.bbq.MemberEvaluationOrder;
+import de.calamanari.pk.ohbf.bloombox.bbq.MemberEvaluationOrderAware;
+
+/**
+ * The {@link ExpressionResultCache} is the default per-row result cache of the {@link SimpleQueryDelegate}.
+ * <p>
+ * All {@link BbqExpression}s consult the result cache before evaluating themselves, so that shared sub-expressions of the queries in a bundle get only
+ * evaluated once per row. The cache gets cleared for every row, and the number of lookups per row grows with the number of expression nodes. This is
+ * especially true for the count queries of the upscaling preparation, which count <i>every</i> node of a bundle in the same pass.
+ * <p>
+ * Compared to a {@link java.util.HashMap} this implementation is backed by an {@link ExpressionValueTable} (primitive arrays, constant time clear), the
+ * results are stored as 1 (true) resp. 0 (false). Neither lookups nor updates create any objects.
+ * <p>
+ * The cache also carries the {@link MemberEvaluationOrder} of the delegate (if any), see {@link MemberEvaluationOrderAware}.
+ * <p>
+ * Null-keys and null-values are not supported.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+final class ExpressionResultCache extends AbstractMap<Long, Boolean> implements MemberEvaluationOrderAware, Serializable {
+
+    private static final long serialVersionUID = -2781934650162483815L;
+
+    /**
+     * expression ids mapped to 1 (true) or 0 (false)
+     */
+    private final ExpressionValueTable table = new ExpressionValueTable();
+
+    /**
+     * evaluation order of the AND/OR members for the delegate, null for the canonical order
+     */
+    private transient MemberEvaluationOrder memberEvaluationOrder;
+
+    @Override
+    public Boolean get(Object key) {
+        if (key instanceof Long expressionId) {
+            int idx = table.indexOf(expressionId);
+            if (idx >= 0) {
+                return Boolean.valueOf(table.valueAt(idx) != 0L);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Long expressionId && table.contains(expressionId);
+    }
+
+    @Override
+    public Boolean put(Long key, Boolean value) {
+        int idx = table.indexOf(key);
+        Boolean res = idx >= 0 ? Boolean.valueOf(table.valueAt(idx) != 0L) : null;
+        table.put(key, value.booleanValue() ? 1L : 0L);
+        return res;
+    }
+
+    @Override
+    public Boolean computeIfAbsent(Long key, Function<? super Long, ? extends Boolean> mappingFunction) {
+        Boolean res = get(key);
+        if (res == null) {
+            res = mappingFunction.apply(key);
+            put(key, res);
+        }
+        return res;
+    }
+
+    /**
+     * Called per row, invalidates all entries in constant time
+     */
+    @Override
+    public void clear() {
+        table.clear();
+    }
+
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public MemberEvaluationOrder getMemberEvaluationOrder() {
+        return memberEvaluationOrder;
+    }
+
+    @Override
+    public void setMemberEvaluationOrder(MemberEvaluationOrder memberEvaluationOrder) {
+        this.memberEvaluationOrder = memberEvaluationOrder;
+    }
+
+    @Override
+    public Set<Map.Entry<Long, Boolean>> entrySet() {
+        Set<Map.Entry<Long, Boolean>> res = new LinkedHashSet<>();
+        for (int i = 0; i < table.capacity(); i++) {
+            if (table.isOccupied(i)) {
+                res.add(new SimpleImmutableEntry<>(table.keyAt(i), table.valueAt(i) != 0L));
+            }
+        }
+        return res;
+    }
+
+}
@@ -28,11 +28,15 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.calamanari.pk.ohbf.bloombox.bbq.RowBlock;
 import de.calamanari.pk.util.CloseUtils;
 
 /**
@@ -107,6 +111,11 @@ public class FileDataStore implements BloomBoxDataStore {
      */
     private transient BufferedOutputStream output = DUMMY_BEFORE;
 
+    /**
+     * channel for in-place row merging (positioned reads and writes), opened on demand
+     */
+    private transient volatile FileChannel mergeChannel = null;
+
     /**
      * For recovery purposes only, restores the data store from the data only (without any headers)
      * 
@@ -226,6 +235,42 @@ public class FileDataStore implements BloomBoxDataStore {
     @Override
     public void close() {
         closeOutputStream();
+        closeMergeChannel();
+    }
+
+    /**
+     * Closes the channel for row merging (if open)
+     */
+    private synchronized void closeMergeChannel() {
+        if (mergeChannel != null) {
+            CloseUtils.closeResourceCatch(mergeChannel);
+            mergeChannel = null;
+        }
+    }
+
+    /**
+     * @return channel for in-place row merging, opened on first call
+     */
+    private FileChannel getMergeChannel() {
+        FileChannel channel = mergeChannel;
+        if (channel == null) {
+            synchronized (this) {
+                if (output != null && output != DUMMY_BEFORE && output != DUMMY_AFTER_DESERIALIZATION) {
+                    throw new BloomBoxException(String.format("Cannot merge rows into '%s' before feeding has been completed.", file));
+                }
+                channel = mergeChannel;
+                if (channel == null) {
+                    try {
+                        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    }
+                    catch (IOException | RuntimeException ex) {
+                        throw new BloomBoxException(String.format("Unable to open data store file '%s' for row merging.", file), ex);
+                    }
+                    mergeChannel = channel;
+                }
+            }
+        }
+        return channel;
     }
 
     /**
@@ -269,6 +314,52 @@ public class FileDataStore implements BloomBoxDataStore {
         }
     }
 
+    /**
+     * Merges the given vector into the row in place (positioned read and write of the row's bytes). Concurrent calls for different rows are safe.
+     */
+    @Override
+    public void mergeRow(long[] rowVector, long rowIdx) {
+        if (rowIdx < 0 || rowIdx >= numberOfRows) {
+            throw new BloomBoxException(String.format("Error merging row into data store '%s', rowIdx=%d out of range [0, %d).", file, rowIdx, numberOfRows));
+        }
+        FileChannel channel = getMergeChannel();
+        long position = offset + rowIdx * vectorSize * 8L;
+        ByteBuffer buffer = ByteBuffer.allocate(vectorSize * 8);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new BloomBoxException(String.format("Error merging row into data store '%s', rowIdx=%d: unexpected end of file", file, rowIdx));
+                }
+            }
+            for (int i = 0; i < vectorSize; i++) {
+                buffer.putLong(i * 8, buffer.getLong(i * 8) | rowVector[i]);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position());
+            }
+        }
+        catch (BloomBoxException ex) {
+            throw ex;
+        }
+        catch (IOException | RuntimeException ex) {
+            throw new BloomBoxException(String.format("Error merging row into data store '%s', rowIdx=%d", file, rowIdx), ex);
+        }
+    }
+
+    @Override
+    public boolean isRowMergeCapable() {
+        return true;
+    }
+
+    /**
+     * Rows are disjoint areas of the file, and positioned reads and writes do not affect each other.
+     */
+    @Override
+    public boolean isConcurrentMergeCapable() {
+        return true;
+    }
+
     @Override
     public boolean ensureIsOpenForFeeding() {
         boolean res = false;
@@ -301,7 +392,8 @@ public class FileDataStore implements BloomBoxDataStore {
 
     @Override
     public <Q extends QueryDelegate<Q>> void dispatch(Q queryDelegate) {
-        long[] vector = new long[vectorSize];
+        long[] vector = new long[vectorSize * RowBlock.MAX_NUMBER_OF_ROWS];
+        int blockRows = 0;
         byte[] buffer = new byte[8];
         try (FileInputStream fis = new FileInputStream(file); BufferedInputStream bis = new BufferedInputStream(fis, bufferSize)) {
             if (offset > 0 && bis.skip(offset) < offset) {
@@ -314,9 +406,13 @@ public class FileDataStore implements BloomBoxDataStore {
                         throw new BloomBoxException(String.format("Error reading data store file '%s' (row %d, index %d): 8 bytes expected, found %d", file,
                                 rowIdx, i, bytesFound));
                     }
-                    vector[i] = BloomBox.bytesToLong(buffer);
+                    vector[(blockRows * vectorSize) + i] = BloomBox.bytesToLong(buffer);
+                }
+                blockRows++;
+                if (blockRows == RowBlock.MAX_NUMBER_OF_ROWS || rowIdx == numberOfRows - 1) {
+                    queryDelegate.executeBlock(vector, 0, vectorSize, blockRows);
+                    blockRows = 0;
                 }
-                queryDelegate.execute(vector, 0);
             }
         }
         catch (BloomBoxException ex) {
@@ -328,6 +424,72 @@ public class FileDataStore implements BloomBoxDataStore {
 
     }
 
+    @Override
+    public <Q extends QueryDelegate<Q>> void dispatchSample(Q queryDelegate, RowSampler sampler) {
+        long[] vector = new long[vectorSize * RowBlock.MAX_NUMBER_OF_ROWS];
+        long vectorSizeInBytes = 8L * vectorSize;
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(bufferSize, sampler.getBlockSize() * vectorSizeInBytes));
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            sampler.processBlocks(queryDelegate.getResults(), (startRowIdx, endRowIdx) -> {
+                long position = offset + startRowIdx * vectorSizeInBytes;
+                buffer.clear().flip();
+                int blockRows = 0;
+                for (long rowIdx = startRowIdx; rowIdx < endRowIdx; rowIdx++) {
+                    if (!buffer.hasRemaining()) {
+                        position = position + readBlockChunk(channel, buffer, position, (endRowIdx - rowIdx) * vectorSizeInBytes);
+                    }
+                    for (int i = 0; i < vectorSize; i++) {
+                        vector[(blockRows * vectorSize) + i] = buffer.getLong();
+                    }
+                    blockRows++;
+                    if (blockRows == RowBlock.MAX_NUMBER_OF_ROWS || rowIdx == endRowIdx - 1) {
+                        queryDelegate.executeBlock(vector, 0, vectorSize, blockRows);
+                        blockRows = 0;
+                    }
+                }
+            });
+        }
+        catch (BloomBoxException ex) {
+            throw ex;
+        }
+        catch (IOException | RuntimeException ex) {
+            throw new BloomBoxException(String.format("Error reading data store file '%s'", file), ex);
+        }
+    }
+
+    /**
+     * Fills the buffer (big-endian, the BBS-format) from the given position of the file
+     * 
+     * @param channel source
+     * @param buffer destination, the capacity is a multiple of the vector size
+     * @param position file position to start reading
+     * @param remainingBytes number of bytes left in the current block
+     * @return number of bytes read
+     */
+    private int readBlockChunk(FileChannel channel, ByteBuffer buffer, long position, long remainingBytes) {
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), remainingBytes));
+        try {
+            while (buffer.hasRemaining()) {
+                int bytesRead = channel.read(buffer, position + buffer.position());
+                if (bytesRead < 0) {
+                    throw new BloomBoxException(String.format("Error reading data store file '%s' at position %d: unexpected end of file", file,
+                            position + buffer.position()));
+                }
+            }
+        }
+        catch (IOException ex) {
+            throw new BloomBoxException(String.format("Error reading data store file '%s' at position %d", file, position), ex);
+        }
+        buffer.flip();
+        return buffer.limit();
+    }
+
+    @Override
+    public boolean isSamplingCapable() {
+        return true;
+    }
+
     @Override
     public void serializeToStream(OutputStream os) throws IOException {
         DataStoreHeader header = new FileDataStoreHeader(BloomBox.VERSION, numberOfRows, vectorSize, this.getClass().getName(), file);
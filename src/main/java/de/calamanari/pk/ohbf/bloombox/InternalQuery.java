@@ -27,6 +27,9 @@ import java.util.HashMap;
 import java.util.Map;
 
 import de.calamanari.pk.ohbf.bloombox.bbq.BloomFilterQuery;
+import de.calamanari.pk.ohbf.bloombox.bbq.ExpressionMetricsSink;
+import de.calamanari.pk.ohbf.bloombox.bbq.RowBlock;
+import de.calamanari.pk.ohbf.bloombox.bbq.RowMaskCache;
 
 /**
  * An {@link InternalQuery} represents a parsed and optimized query with sub queries ready to be executed on the store.
@@ -155,15 +158,28 @@ public class InternalQuery implements PbDpavOccurrenceAware, Serializable {
      * @param result to be updated
      */
     public void execute(long[] source, int startPos, Map<Long, Boolean> resultCache, BloomBoxQueryResult result) {
+        execute(source, startPos, resultCache, null, result);
+    }
+
+    /**
+     * Applies this query to the given long array (a single record's vector from the store)
+     * 
+     * @param source long array
+     * @param startPos start position of the vector in the source array
+     * @param resultCache we avoid duplicate work by keeping results for already executed expressions
+     * @param metricsSink receives the node-level figures (see {@link BloomBoxOption#METRICS}), null to execute without recording
+     * @param result to be updated
+     */
+    public void execute(long[] source, int startPos, Map<Long, Boolean> resultCache, ExpressionMetricsSink metricsSink, BloomBoxQueryResult result) {
 
         int numberOfSubQueries = subQueries.length;
 
-        boolean baseResult = baseQuery.execute(source, startPos, resultCache);
+        boolean baseResult = baseQuery.execute(source, startPos, resultCache, metricsSink);
 
         if (baseResult) {
             result.incrementBaseQueryCount();
             for (int i = 0; i < numberOfSubQueries; i++) {
-                if (subQueries[i].execute(source, startPos, resultCache)) {
+                if (subQueries[i].execute(source, startPos, resultCache, metricsSink)) {
                     result.incrementSubQueryCount(i);
                 }
             }
@@ -171,6 +187,31 @@ public class InternalQuery implements PbDpavOccurrenceAware, Serializable {
 
     }
 
+    /**
+     * Applies this query to a block of up to 64 records at once (bit-parallel), the sub queries only need to be AND-ed with the base query's row mask
+     * 
+     * @param block the records
+     * @param maskCache we avoid duplicate work by keeping the row masks of already executed expressions
+     * @param result to be updated
+     */
+    public void executeBlock(RowBlock block, RowMaskCache maskCache, BloomBoxQueryResult result) {
+
+        int numberOfSubQueries = subQueries.length;
+
+        long baseRowMask = baseQuery.executeBlock(block, maskCache);
+
+        if (baseRowMask != 0L) {
+            result.addToBaseQueryCount(Long.bitCount(baseRowMask));
+            for (int i = 0; i < numberOfSubQueries; i++) {
+                long subRowMask = baseRowMask & subQueries[i].executeBlock(block, maskCache);
+                if (subRowMask != 0L) {
+                    result.addToSubQueryCount(i, Long.bitCount(subRowMask));
+                }
+            }
+        }
+
+    }
+
     /**
      * Applies this query to the given long array (a single record's vector from the store) with probabilities
      * 
@@ -181,17 +222,32 @@ public class InternalQuery implements PbDpavOccurrenceAware, Serializable {
      * @param result to be updated
      */
     public void execute(long[] source, int startPos, DpavProbabilityFetcher probabilities, Map<Long, Boolean> resultCache, BloomBoxQueryResult result) {
+        execute(source, startPos, probabilities, resultCache, null, result);
+    }
+
+    /**
+     * Applies this query to the given long array (a single record's vector from the store) with probabilities
+     * 
+     * @param source long array
+     * @param startPos start position of the vector in the source array
+     * @param probabilities fetcher with probabilities for computing match probability
+     * @param resultCache we avoid duplicate work by keeping results for already executed expressions
+     * @param metricsSink receives the node-level figures (see {@link BloomBoxOption#METRICS}), null to execute without recording
+     * @param result to be updated
+     */
+    public void execute(long[] source, int startPos, DpavProbabilityFetcher probabilities, Map<Long, Boolean> resultCache, ExpressionMetricsSink metricsSink,
+            BloomBoxQueryResult result) {
 
         int numberOfSubQueries = subQueries.length;
 
-        double baseMatchProbability = baseQuery.execute(source, startPos, probabilities, resultCache);
+        double baseMatchProbability = baseQuery.execute(source, startPos, probabilities, resultCache, metricsSink);
 
         if (baseMatchProbability > 0.0) {
             result.getProbabilityResult().incrementBaseQuerySum(baseMatchProbability);
 
             for (int i = 0; i < numberOfSubQueries; i++) {
 
-                double subMatchProbability = subQueries[i].execute(source, startPos, probabilities, resultCache);
+                double subMatchProbability = subQueries[i].execute(source, startPos, probabilities, resultCache, metricsSink);
                 if (subMatchProbability > 0.0) {
                     result.getProbabilityResult().incrementSubQuerySum(i, subMatchProbability);
                 }
@@ -78,6 +78,18 @@ public class PbBloomBoxQueryResult implements Serializable {
         }
     }
 
+    /**
+     * Multiplies all sums with the given factor
+     * 
+     * @param scaleFactor factor to be applied
+     */
+    void scaleSums(double scaleFactor) {
+        baseQuerySum = baseQuerySum * scaleFactor;
+        for (int i = 0; subQuerySums != null && i < subQuerySums.length; i++) {
+            subQuerySums[i] = subQuerySums[i] * scaleFactor;
+        }
+    }
+
     /**
      * @return number of matches of the main query
      */
@@ -86,8 +86,8 @@ public class PbDataStoreFeeder extends DataStoreFeeder {
      * @return true if the row was added, false if the store was already full
      */
     public boolean addRow(List<PbDpav> pbDpavs) {
-        long[] dppVector = PbVectorCodec.createDataPointProbabilityVector(pbDpavs);
         if (moveToNextRow()) {
+            long[] dppVector = PbVectorCodec.createDataPointProbabilityVector(pbDpavs);
             bloomFilter.clear();
             for (int i = 0; i < pbDpavs.size(); i++) {
                 PbDpav pbDpav = pbDpavs.get(i);
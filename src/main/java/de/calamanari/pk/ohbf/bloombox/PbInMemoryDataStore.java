@@ -205,16 +205,62 @@ public class PbInMemoryDataStore extends DefaultDataStore implements PbDataStore
         super.dispatch(queryDelegate);
     }
 
+    @Override
+    public <Q extends QueryDelegate<Q>> void dispatchSample(Q queryDelegate, RowSampler sampler) {
+        queryDelegate.prepareLpDpavs(dpavDictionary);
+        super.dispatchSample(queryDelegate, sampler);
+    }
+
     @Override
     protected <Q extends QueryDelegate<Q>> void dispatchPartition(Q queryDelegate, int startRowIdx, int endRowIdx) {
         PbDpavProbabilityManager dppFetcher = new PbDpavProbabilityManager();
         queryDelegate.registerDpavOccurrences(dppFetcher);
+        dispatchPartition(queryDelegate, dppFetcher, startRowIdx, endRowIdx);
+    }
+
+    /**
+     * The DPAV occurrences must only be registered once per delegate, so we cannot reuse {@link #dispatchPartition(QueryDelegate, int, int)} for each block.
+     */
+    @Override
+    protected <Q extends QueryDelegate<Q>> void dispatchSampleBlocks(Q queryDelegate, RowSampler sampler) {
+        PbDpavProbabilityManager dppFetcher = new PbDpavProbabilityManager();
+        queryDelegate.registerDpavOccurrences(dppFetcher);
+        sampler.processBlocks(queryDelegate.getResults(),
+                (startRowIdx, endRowIdx) -> dispatchPartition(queryDelegate, dppFetcher, (int) startRowIdx, (int) endRowIdx));
+    }
+
+    /**
+     * Executes the delegate on the given rows with probabilities
+     * 
+     * @param <Q> delegate type
+     * @param queryDelegate the delegate
+     * @param dppFetcher probability fetcher with the delegate's DPAV occurrences registered
+     * @param startRowIdx incl.
+     * @param endRowIdx excl.
+     */
+    private <Q extends QueryDelegate<Q>> void dispatchPartition(Q queryDelegate, PbDpavProbabilityManager dppFetcher, int startRowIdx, int endRowIdx) {
         for (int rowIdx = startRowIdx; rowIdx < endRowIdx; rowIdx++) {
             dppFetcher.initialize(this.compressedProbabilities[rowIdx]);
             queryDelegate.execute(vector, rowIdx * vectorSize, dppFetcher);
         }
     }
 
+    /**
+     * Feeding updates the shared DPAV dictionary, thus it must happen sequentially.
+     */
+    @Override
+    public boolean isConcurrentFeedingCapable() {
+        return false;
+    }
+
+    /**
+     * Every row needs its probabilities, so direct feeding is not supported.
+     */
+    @Override
+    public long[] getDirectFeedingTarget() {
+        return null;
+    }
+
     @Override
     public void feedRow(long[] rowVector, long rowIdx) {
         super.feedRow(rowVector, rowIdx);
@@ -337,4 +383,9 @@ public class PbInMemoryDataStore extends DefaultDataStore implements PbDataStore
         return false;
     }
 
+    @Override
+    public boolean isConcurrentMergeCapable() {
+        return false;
+    }
+
 }
@@ -20,10 +20,20 @@
 
 package de.calamanari.pk.ohbf.bloombox;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.random.RandomGenerator;
 
 import de.calamanari.pk.ohbf.BloomFilterConfig;
+import de.calamanari.pk.ohbf.LwGenericOHBF;
 
 /**
  * Specialized store for feeding a {@link DefaultDataStore} or {@link FileDataStore} (but NOT a {@link PbDataStore}!) with probabilities.
@@ -37,6 +47,10 @@ import de.calamanari.pk.ohbf.BloomFilterConfig;
  * <p>
  * This way the estimations (results) of the bloom box will in general be less correct but easier to deal with than unpredictable deviations caused by
  * conditional probabilities.
+ * <p>
+ * By default every row gets its own random sequence ({@link SplittableRandom}) derived from a base seed and the row index (see {@link #setBaseSeed(long)}).
+ * Thus, the content of a row does not depend on the order of feeding, and {@link #addRows(List)} can feed stores that support concurrent feeding (see
+ * {@link BloomBoxDataStore#isConcurrentFeedingCapable()}) in parallel with bit-identical results for the same base seed, regardless of the number of threads.
  * 
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  *
@@ -44,9 +58,24 @@ import de.calamanari.pk.ohbf.BloomFilterConfig;
 public class PbThresholdBinaryFeeder extends DataStoreFeeder {
 
     /**
-     * Random generator, by default initialized with current time
+     * In bulk mode we only spread the work over multiple threads if every thread gets at least this number of rows: {@value}
      */
-    private Random random = new Random();
+    public static final int MIN_ROWS_PER_WORKER = 1_000;
+
+    /**
+     * Shared random generator set by the client or null to derive the random sequence per row from the {@link #baseSeed}
+     */
+    private Random random = null;
+
+    /**
+     * Seed all random sequences of the rows get derived from, by default a random value
+     */
+    private long baseSeed = new SplittableRandom().nextLong();
+
+    /**
+     * number of threads for bulk feeding
+     */
+    private int numberOfThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
 
     /**
      * @param config bloom filter configuration
@@ -70,13 +99,15 @@ public class PbThresholdBinaryFeeder extends DataStoreFeeder {
     public boolean addRow(List<PbDpav> pbDpavs) {
 
         if (moveToNextRow()) {
-            bloomFilter.clear();
-            for (PbDpav dpav : pbDpavs) {
-                if (random.nextDouble() <= dpav.getProbability()) {
-                    bloomFilter.put(dpav.getColumnId(), dpav.getColumnValue());
+            RandomGenerator rowRandom = (random != null) ? random : createRowRandom(baseSeed, currentRowIndex);
+            beginRow();
+            for (int i = 0; i < pbDpavs.size(); i++) {
+                PbDpav dpav = pbDpavs.get(i);
+                if (rowRandom.nextDouble() <= dpav.getProbability()) {
+                    putIntoRow(dpav.getColumnId(), dpav.getColumnValue());
                 }
             }
-            dataStore.feedRow(bloomFilter.getBitVectorAsLongArray(), currentRowIndex);
+            completeRow();
             return true;
         }
         else {
@@ -85,19 +116,187 @@ public class PbThresholdBinaryFeeder extends DataStoreFeeder {
     }
 
     /**
-     * @return the random instance used by this feeder
+     * Adds the given rows to the store, same as calling {@link #addRow(List)} for each row.
+     * <p>
+     * If the store supports concurrent feeding and there is no shared random generator (see {@link #setRandom(Random)}), the rows will be split into ranges
+     * fed in parallel (see {@link #setNumberOfThreads(int)}, {@link #MIN_ROWS_PER_WORKER}).
+     * 
+     * @param rows list of rows, each a list of key/value combinations (unique within a row) with attached probability
+     * @return number of rows added, less than the number of rows given if the store is full
+     */
+    public int addRows(List<? extends List<PbDpav>> rows) {
+        long firstRowIdx = currentRowIndex + 1;
+        int count = (int) Math.min(rows.size(), Math.max(0, numberOfRows - firstRowIdx));
+        int numberOfWorkers = (random != null || !dataStore.isConcurrentFeedingCapable()) ? 1 : Math.min(numberOfThreads, count / MIN_ROWS_PER_WORKER);
+        if (numberOfWorkers <= 1 || !dataStore.ensureIsOpenForFeeding()) {
+            int added = 0;
+            for (int i = 0; i < rows.size() && addRow(rows.get(i)); i++) {
+                added++;
+            }
+            return added;
+        }
+        List<Callable<Void>> workers = new ArrayList<>(numberOfWorkers);
+        int rowsPerWorker = count / numberOfWorkers;
+        for (int w = 0; w < numberOfWorkers; w++) {
+            int from = w * rowsPerWorker;
+            int to = (w == numberOfWorkers - 1) ? count : from + rowsPerWorker;
+            workers.add(() -> {
+                feedRange(rows, from, to, firstRowIdx);
+                return null;
+            });
+        }
+        executeWorkers(workers);
+        currentRowIndex = firstRowIdx + count - 1;
+        return count;
+    }
+
+    /**
+     * Feeds a range of rows into the store (concurrent feeding), uses its own bloom filter
+     * 
+     * @param rows all rows of the bulk
+     * @param from index of the first row in the list (inclusive)
+     * @param to index of the last row in the list (exclusive)
+     * @param firstRowIdx row index in the store of the first row in the list
+     */
+    private void feedRange(List<? extends List<PbDpav>> rows, int from, int to, long firstRowIdx) {
+        LwGenericOHBF filter = new LwGenericOHBF(config);
+        long[] directFeedingTarget = dataStore.getDirectFeedingTarget();
+        int vectorSize = dataStore.getVectorSize();
+        for (int i = from; i < to; i++) {
+            long rowIdx = firstRowIdx + i;
+            RandomGenerator rowRandom = createRowRandom(baseSeed, rowIdx);
+            int offset = (int) (rowIdx * vectorSize);
+            if (directFeedingTarget != null) {
+                Arrays.fill(directFeedingTarget, offset, offset + vectorSize, 0L);
+            }
+            else {
+                filter.clear();
+            }
+            List<PbDpav> pbDpavs = rows.get(i);
+            for (int j = 0; j < pbDpavs.size(); j++) {
+                PbDpav dpav = pbDpavs.get(j);
+                if (rowRandom.nextDouble() > dpav.getProbability()) {
+                    continue;
+                }
+                if (directFeedingTarget != null) {
+                    filter.putInto(directFeedingTarget, offset, dpav.getColumnId(), dpav.getColumnValue());
+                }
+                else {
+                    filter.put(dpav.getColumnId(), dpav.getColumnValue());
+                }
+            }
+            if (directFeedingTarget == null) {
+                dataStore.feedRow(filter.getBitVectorAsLongArray(), rowIdx);
+            }
+        }
+    }
+
+    /**
+     * Runs the given workers on a temporary thread pool and waits for their completion
+     * 
+     * @param workers tasks
+     */
+    private void executeWorkers(List<Callable<Void>> workers) {
+        ExecutorService executor = Executors.newFixedThreadPool(workers.size(), r -> {
+            Thread t = new Thread(r);
+            t.setName("BBX-ThresholdFeeder:@" + Integer.toHexString(t.hashCode()));
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            for (Future<Void> future : executor.invokeAll(workers)) {
+                future.get();
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BloomBoxException("Unexpected interruption during bulk feeding.", ex);
+        }
+        catch (ExecutionException ex) {
+            if (ex.getCause() instanceof BloomBoxException bbe) {
+                throw bbe;
+            }
+            throw new BloomBoxException("Error during bulk feeding.", ex.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates the random generator for the given row, the sequence only depends on the base seed and the row index
+     * 
+     * @param baseSeed seed all row sequences are derived from
+     * @param rowIdx index of the row in the store
+     * @return new generator
+     */
+    static RandomGenerator createRowRandom(long baseSeed, long rowIdx) {
+        // scramble the seed (MurmurHash3 finalizer variant also used by SplittableRandom), so that the sequences of neighboring rows do not overlap
+        long z = baseSeed + (rowIdx + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new SplittableRandom(z ^ (z >>> 31));
+    }
+
+    /**
+     * Returns the shared random generator, e.g., to seed it for reproducible results.
+     * <p>
+     * <b>Note:</b> If there is no shared generator yet (default), this method installs a new one, so that the returned instance is the one being used. From
+     * then on all rows draw from this shared sequence, the results depend on the order of feeding and {@link #addRows(List)} won't feed in parallel. Use
+     * {@link #setBaseSeed(long)} to return to the per-row sequences.
+     * 
+     * @return the shared random generator used by this feeder, never null
      */
     public Random getRandom() {
+        if (random == null) {
+            random = new Random();
+        }
         return random;
     }
 
     /**
-     * This method can be used to set a specific random before feeding to create reproducible results
+     * Sets a shared random generator for all rows, e.g., a seeded {@link Random} to create reproducible results. Because the results then depend on the order
+     * of feeding, {@link #addRows(List)} won't feed in parallel. Prefer {@link #setBaseSeed(long)}.
      * 
-     * @param random the generator used by this feeder
+     * @param random the generator used by this feeder or null to derive the random sequences per row from the base seed (default)
      */
     public void setRandom(Random random) {
         this.random = random;
     }
 
+    /**
+     * @return seed the random sequences of the rows get derived from
+     */
+    public long getBaseSeed() {
+        return baseSeed;
+    }
+
+    /**
+     * Sets the seed the random sequences of the rows get derived from to create reproducible results independent from the order of feeding and the number of
+     * threads. Any shared random generator (see {@link #setRandom(Random)}) will be removed.
+     * 
+     * @param baseSeed seed for all rows
+     */
+    public void setBaseSeed(long baseSeed) {
+        this.baseSeed = baseSeed;
+        this.random = null;
+    }
+
+    /**
+     * @return number of threads for bulk feeding, default is the number of available processors
+     */
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    /**
+     * @param numberOfThreads number of threads for bulk feeding, default is the number of available processors
+     */
+    public void setNumberOfThreads(int numberOfThreads) {
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be positive, given: " + numberOfThreads);
+        }
+        this.numberOfThreads = numberOfThreads;
+    }
+
 }
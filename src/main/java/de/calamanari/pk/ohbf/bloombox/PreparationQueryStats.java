@@ -57,6 +57,21 @@ public class PreparationQueryStats implements Serializable {
      */
     private Map<String, Long> andCorrectionQueryMap = new HashMap<>();
 
+    /**
+     * Maps expression-ids to the margins of error of the match rates, only filled if the count queries were executed in sampling mode
+     */
+    private HashMap<Long, Double> expressionLevelMarginsOfError = new HashMap<>();
+
+    /**
+     * number of rows evaluated by the count queries in sampling mode, 0 if not sampled
+     */
+    private long numberOfRowsSampled = 0;
+
+    /**
+     * confidence level of the margins of error in sampling mode
+     */
+    private double samplingConfidenceLevel = 0.0;
+
     /**
      * @return expression-ids mapped to the match counts
      */
@@ -113,10 +128,53 @@ public class PreparationQueryStats implements Serializable {
         this.andCorrectionQueryMap = andCorrectionQueryMap;
     }
 
+    /**
+     * @return expression-ids mapped to the margins of error of the match rates, only filled if the count queries were executed in sampling mode
+     */
+    public Map<Long, Double> getExpressionLevelMarginsOfError() {
+        return expressionLevelMarginsOfError;
+    }
+
+    /**
+     * @param expressionLevelMarginsOfError expression-ids mapped to the margins of error of the match rates, will be copied
+     */
+    public void setExpressionLevelMarginsOfError(Map<Long, Double> expressionLevelMarginsOfError) {
+        this.expressionLevelMarginsOfError = expressionLevelMarginsOfError == null ? new HashMap<>() : new HashMap<>(expressionLevelMarginsOfError);
+    }
+
+    /**
+     * @return number of rows evaluated by the count queries in sampling mode, 0 if not sampled
+     */
+    public long getNumberOfRowsSampled() {
+        return numberOfRowsSampled;
+    }
+
+    /**
+     * @param numberOfRowsSampled number of rows evaluated by the count queries in sampling mode
+     */
+    public void setNumberOfRowsSampled(long numberOfRowsSampled) {
+        this.numberOfRowsSampled = numberOfRowsSampled;
+    }
+
+    /**
+     * @return confidence level of the margins of error in sampling mode
+     */
+    public double getSamplingConfidenceLevel() {
+        return samplingConfidenceLevel;
+    }
+
+    /**
+     * @param samplingConfidenceLevel confidence level of the margins of error in sampling mode
+     */
+    public void setSamplingConfidenceLevel(double samplingConfidenceLevel) {
+        this.samplingConfidenceLevel = samplingConfidenceLevel;
+    }
+
     @Override
     public String toString() {
         return this.getClass().getSimpleName() + " [numberOfRows=" + numberOfRows + ", expressionLevelCounts=" + expressionLevelCounts + ", mainQueryResultMap="
-                + mainQueryResultMap + ", andCorrectionQueryMap=" + andCorrectionQueryMap + "]";
+                + mainQueryResultMap + ", andCorrectionQueryMap=" + andCorrectionQueryMap + ", expressionLevelMarginsOfError=" + expressionLevelMarginsOfError
+                + ", numberOfRowsSampled=" + numberOfRowsSampled + "]";
     }
 
 }
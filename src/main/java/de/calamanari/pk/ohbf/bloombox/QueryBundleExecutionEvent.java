@@ -0,0 +1,129 @@
+//@formatter:off
+/*
+ * QueryBundleExecutionEvent
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event emitted for every execution of a {@link QueryBundle}, so slow bundles can be found with a flight recording (no trace logging required).
+ * <p>
+ * The event duration covers the whole execution, the fields contain the most important {@link QueryBundleMetrics}.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+@Name("de.calamanari.pk.ohbf.bloombox.QueryBundleExecution")
+@Label("BloomBox Query Bundle Execution")
+@Category({ "Patterns Kompakt", "BloomBox" })
+@Description("Execution of a query bundle on a BloomBox")
+@StackTrace(false)
+class QueryBundleExecutionEvent extends Event {
+
+    /**
+     * id of the execution
+     */
+    @Label("Execution Id")
+    long executionId;
+
+    /**
+     * number of queries
+     */
+    @Label("Number of Queries")
+    int numberOfQueries;
+
+    /**
+     * preparation time
+     */
+    @Label("Preparation Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long preparationNanos;
+
+    /**
+     * scan time
+     */
+    @Label("Scan Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long scanNanos;
+
+    /**
+     * number of scans
+     */
+    @Label("Number of Scans")
+    int numberOfScans;
+
+    /**
+     * rows visited
+     */
+    @Label("Rows Scanned")
+    long numberOfRowsScanned;
+
+    /**
+     * bytes visited
+     */
+    @Label("Bytes Scanned")
+    @DataAmount
+    long numberOfBytesScanned;
+
+    /**
+     * threads
+     */
+    @Label("Number of Threads")
+    int numberOfThreads;
+
+    /**
+     * cache hits
+     */
+    @Label("Preparation Cache Hits")
+    int numberOfPreparationCacheHits;
+
+    /**
+     * error indicator
+     */
+    @Label("Error")
+    boolean error;
+
+    /**
+     * Copies the metrics into the event fields
+     * 
+     * @param metrics figures of the execution
+     * @param error true if the bundle had any error
+     */
+    void setMetrics(QueryBundleMetrics metrics, boolean error) {
+        this.executionId = metrics.getExecutionId();
+        this.numberOfQueries = metrics.getNumberOfQueries();
+        this.preparationNanos = metrics.getPreparationNanos();
+        this.scanNanos = metrics.getScanNanos();
+        this.numberOfScans = metrics.getNumberOfScans();
+        this.numberOfRowsScanned = metrics.getNumberOfRowsScanned();
+        this.numberOfBytesScanned = metrics.getNumberOfBytesScanned();
+        this.numberOfThreads = metrics.getNumberOfThreads();
+        this.numberOfPreparationCacheHits = metrics.getNumberOfPreparationCacheHits();
+        this.error = error;
+    }
+
+}
@@ -0,0 +1,618 @@
+//@formatter:off
+/*
+ * QueryBundleMetrics
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.calamanari.pk.util.TimeUtils;
+
+/**
+ * {@link QueryBundleMetrics} contain the performance figures of a single execution of a {@link QueryBundle} (see {@link QueryBundleResult#getMetrics()}).
+ * <p>
+ * Timings, scan figures and match rates are always collected. The expression-level figures (result cache hits, match and short-circuit rates per expression
+ * node) are only available if at least one query requests {@link BloomBoxOption#METRICS} because counting slows down the scan. The expression ids correspond
+ * to the ids shown in the protocol's query trees.
+ * <p>
+ * Besides being part of the result, the metrics of every bundle execution get published via JMX (see {@link BloomBoxQueryStatistics}) and as a JFR event
+ * (<code>de.calamanari.pk.ohbf.bloombox.QueryBundleExecution</code>).
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class QueryBundleMetrics implements Serializable {
+
+    private static final long serialVersionUID = -2846233452466385213L;
+
+    /**
+     * id of the execution
+     */
+    private long executionId = 0;
+
+    /**
+     * number of queries in the bundle
+     */
+    private int numberOfQueries = 0;
+
+    /**
+     * total execution time
+     */
+    private long totalNanos = 0;
+
+    /**
+     * time for preparing the queries (parsing, optimization, cache lookups)
+     */
+    private long preparationNanos = 0;
+
+    /**
+     * time for parsing the queries
+     */
+    private long parseNanos = 0;
+
+    /**
+     * time for optimizing the queries
+     */
+    private long optimizeNanos = 0;
+
+    /**
+     * number of queries taken from the {@link QueryPreparationCache}
+     */
+    private int numberOfPreparationCacheHits = 0;
+
+    /**
+     * time spent scanning the store
+     */
+    private long scanNanos = 0;
+
+    /**
+     * number of scans (upscaling requires additional scans)
+     */
+    private int numberOfScans = 0;
+
+    /**
+     * rows visited by all scans
+     */
+    private long numberOfRowsScanned = 0;
+
+    /**
+     * bytes of the store visited by all scans
+     */
+    private long numberOfBytesScanned = 0;
+
+    /**
+     * maximum number of threads of any scan
+     */
+    private int numberOfThreads = 0;
+
+    /**
+     * match rate per query name (query count divided by the population)
+     */
+    private LinkedHashMap<String, Double> queryMatchRates = new LinkedHashMap<>();
+
+    /**
+     * expression-level metrics, only available with {@link BloomBoxOption#METRICS}
+     */
+    private TreeMap<Long, ExpressionMetrics> expressionMetrics = new TreeMap<>();
+
+    /**
+     * @return id of the execution
+     */
+    public long getExecutionId() {
+        return executionId;
+    }
+
+    /**
+     * @param executionId id of the execution
+     */
+    public void setExecutionId(long executionId) {
+        this.executionId = executionId;
+    }
+
+    /**
+     * @return number of queries in the bundle
+     */
+    public int getNumberOfQueries() {
+        return numberOfQueries;
+    }
+
+    /**
+     * @param numberOfQueries number of queries in the bundle
+     */
+    public void setNumberOfQueries(int numberOfQueries) {
+        this.numberOfQueries = numberOfQueries;
+    }
+
+    /**
+     * @return total execution time of the bundle in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @param totalNanos total execution time of the bundle in nanoseconds
+     */
+    public void setTotalNanos(long totalNanos) {
+        this.totalNanos = totalNanos;
+    }
+
+    /**
+     * @return time for preparing the queries in nanoseconds (includes parsing, optimization and cache lookups)
+     */
+    public long getPreparationNanos() {
+        return preparationNanos;
+    }
+
+    /**
+     * @param preparationNanos time for preparing the queries in nanoseconds
+     */
+    public void setPreparationNanos(long preparationNanos) {
+        this.preparationNanos = preparationNanos;
+    }
+
+    /**
+     * @return time for parsing the queries in nanoseconds
+     */
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * @param parseNanos time for parsing the queries in nanoseconds
+     */
+    public void setParseNanos(long parseNanos) {
+        this.parseNanos = parseNanos;
+    }
+
+    /**
+     * @return time for optimizing the queries in nanoseconds
+     */
+    public long getOptimizeNanos() {
+        return optimizeNanos;
+    }
+
+    /**
+     * @param optimizeNanos time for optimizing the queries in nanoseconds
+     */
+    public void setOptimizeNanos(long optimizeNanos) {
+        this.optimizeNanos = optimizeNanos;
+    }
+
+    /**
+     * @return number of queries taken from the {@link QueryPreparationCache}
+     */
+    public int getNumberOfPreparationCacheHits() {
+        return numberOfPreparationCacheHits;
+    }
+
+    /**
+     * @param numberOfPreparationCacheHits number of queries taken from the {@link QueryPreparationCache}
+     */
+    public void setNumberOfPreparationCacheHits(int numberOfPreparationCacheHits) {
+        this.numberOfPreparationCacheHits = numberOfPreparationCacheHits;
+    }
+
+    /**
+     * @return time spent scanning the store in nanoseconds (all scans)
+     */
+    public long getScanNanos() {
+        return scanNanos;
+    }
+
+    /**
+     * @param scanNanos time spent scanning the store in nanoseconds (all scans)
+     */
+    public void setScanNanos(long scanNanos) {
+        this.scanNanos = scanNanos;
+    }
+
+    /**
+     * @return number of scans, upscaling requires additional scans
+     */
+    public int getNumberOfScans() {
+        return numberOfScans;
+    }
+
+    /**
+     * @param numberOfScans number of scans
+     */
+    public void setNumberOfScans(int numberOfScans) {
+        this.numberOfScans = numberOfScans;
+    }
+
+    /**
+     * @return number of rows visited by all scans
+     */
+    public long getNumberOfRowsScanned() {
+        return numberOfRowsScanned;
+    }
+
+    /**
+     * @param numberOfRowsScanned number of rows visited by all scans
+     */
+    public void setNumberOfRowsScanned(long numberOfRowsScanned) {
+        this.numberOfRowsScanned = numberOfRowsScanned;
+    }
+
+    /**
+     * @return number of bytes of the store visited by all scans
+     */
+    public long getNumberOfBytesScanned() {
+        return numberOfBytesScanned;
+    }
+
+    /**
+     * @param numberOfBytesScanned number of bytes of the store visited by all scans
+     */
+    public void setNumberOfBytesScanned(long numberOfBytesScanned) {
+        this.numberOfBytesScanned = numberOfBytesScanned;
+    }
+
+    /**
+     * @return maximum number of threads used by any scan
+     */
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    /**
+     * @param numberOfThreads maximum number of threads used by any scan
+     */
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    /**
+     * @return rows scanned per second
+     */
+    public double getRowsScannedPerSecond() {
+        return scanNanos == 0 ? 0.0 : (numberOfRowsScanned * 1_000_000_000d) / scanNanos;
+    }
+
+    /**
+     * @return match rate per query name (base query count divided by the population: number of rows or target population if scaled)
+     */
+    public Map<String, Double> getQueryMatchRates() {
+        return queryMatchRates;
+    }
+
+    /**
+     * @param queryMatchRates match rate per query name, will be copied
+     */
+    public void setQueryMatchRates(Map<String, Double> queryMatchRates) {
+        this.queryMatchRates = queryMatchRates == null ? new LinkedHashMap<>() : new LinkedHashMap<>(queryMatchRates);
+    }
+
+    /**
+     * @return expression-level metrics ordered by expression id, empty unless {@link BloomBoxOption#METRICS} was requested
+     */
+    public List<ExpressionMetrics> getExpressionMetrics() {
+        return new ArrayList<>(expressionMetrics.values());
+    }
+
+    /**
+     * @param expressionMetrics expression-level metrics
+     */
+    public void setExpressionMetrics(List<ExpressionMetrics> expressionMetrics) {
+        this.expressionMetrics = new TreeMap<>();
+        if (expressionMetrics != null) {
+            expressionMetrics.forEach(em -> this.expressionMetrics.put(em.getExpressionId(), em));
+        }
+    }
+
+    /**
+     * @return number of expression lookups answered from the per-row result cache (only with {@link BloomBoxOption#METRICS})
+     */
+    public long getResultCacheHits() {
+        return expressionMetrics.values().stream().mapToLong(ExpressionMetrics::getCacheHits).sum();
+    }
+
+    /**
+     * @return number of expression lookups in the per-row result cache (only with {@link BloomBoxOption#METRICS})
+     */
+    public long getResultCacheLookups() {
+        return expressionMetrics.values().stream().mapToLong(ExpressionMetrics::getVisits).sum();
+    }
+
+    /**
+     * Adds the figures of a single scan
+     * 
+     * @param rows number of rows scanned
+     * @param bytes number of bytes scanned
+     * @param nanos duration of the scan
+     * @param threads number of threads used
+     */
+    void addScan(long rows, long bytes, long nanos, int threads) {
+        this.numberOfScans++;
+        this.numberOfRowsScanned += rows;
+        this.numberOfBytesScanned += bytes;
+        this.scanNanos += nanos;
+        this.numberOfThreads = Math.max(this.numberOfThreads, threads);
+    }
+
+    /**
+     * @param nanos time to be added to the parse time
+     */
+    void addParseNanos(long nanos) {
+        this.parseNanos += nanos;
+    }
+
+    /**
+     * @param nanos time to be added to the optimization time
+     */
+    void addOptimizeNanos(long nanos) {
+        this.optimizeNanos += nanos;
+    }
+
+    /**
+     * Adds the counters of an expression node, the counters of the same expression (multiple scans) will be summed up
+     * 
+     * @param expressionId identifies the node
+     * @param expressionType simple class name of the expression
+     * @param numberOfChildren number of child expressions
+     * @param visits number of lookups
+     * @param cacheHits number of lookups answered from the cache
+     * @param evaluations number of evaluations
+     * @param matches number of evaluations with result true
+     * @param childVisits number of child lookups during evaluations
+     */
+    void addExpressionMetrics(long expressionId, String expressionType, int numberOfChildren, long visits, long cacheHits, long evaluations, long matches,
+            long childVisits) {
+        ExpressionMetrics em = expressionMetrics.computeIfAbsent(expressionId, _ -> {
+            ExpressionMetrics res = new ExpressionMetrics();
+            res.setExpressionId(expressionId);
+            res.setExpressionType(expressionType);
+            res.setNumberOfChildren(numberOfChildren);
+            return res;
+        });
+        em.setVisits(em.getVisits() + visits);
+        em.setCacheHits(em.getCacheHits() + cacheHits);
+        em.setEvaluations(em.getEvaluations() + evaluations);
+        em.setMatches(em.getMatches() + matches);
+        em.setChildVisits(em.getChildVisits() + childVisits);
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + " [executionId=" + executionId + ", numberOfQueries=" + numberOfQueries + ", totalSeconds="
+                + TimeUtils.formatNanosAsSeconds(totalNanos) + ", preparationSeconds=" + TimeUtils.formatNanosAsSeconds(preparationNanos) + ", parseSeconds="
+                + TimeUtils.formatNanosAsSeconds(parseNanos) + ", optimizeSeconds=" + TimeUtils.formatNanosAsSeconds(optimizeNanos)
+                + ", numberOfPreparationCacheHits=" + numberOfPreparationCacheHits + ", scanSeconds=" + TimeUtils.formatNanosAsSeconds(scanNanos)
+                + ", numberOfScans=" + numberOfScans + ", numberOfRowsScanned=" + numberOfRowsScanned + ", rowsScannedPerSecond="
+                + String.format(Locale.US, "%.1f", getRowsScannedPerSecond()) + ", numberOfBytesScanned=" + numberOfBytesScanned + ", numberOfThreads="
+                + numberOfThreads + ", queryMatchRates=" + queryMatchRates + ", expressionMetrics=" + expressionMetrics.size() + "]";
+    }
+
+    /**
+     * @return multi-line representation including the expression-level figures (slowest nodes first)
+     */
+    public String toDebugString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(this.toString());
+        expressionMetrics.values().stream().sorted(Comparator.comparingLong(ExpressionMetrics::getEvaluations).reversed()).forEach(em -> {
+            sb.append("\n    ");
+            sb.append(em);
+        });
+        return sb.toString();
+    }
+
+    /**
+     * Counters of a single expression node of the executed query trees
+     */
+    public static class ExpressionMetrics implements Serializable {
+
+        private static final long serialVersionUID = 6373316311474853346L;
+
+        /**
+         * identifies the node
+         */
+        private long expressionId;
+
+        /**
+         * simple class name of the expression
+         */
+        private String expressionType;
+
+        /**
+         * number of child expressions
+         */
+        private int numberOfChildren;
+
+        /**
+         * number of lookups
+         */
+        private long visits;
+
+        /**
+         * number of lookups answered from the cache
+         */
+        private long cacheHits;
+
+        /**
+         * number of evaluations
+         */
+        private long evaluations;
+
+        /**
+         * number of evaluations with result true
+         */
+        private long matches;
+
+        /**
+         * number of child lookups during evaluations
+         */
+        private long childVisits;
+
+        /**
+         * @return identifies the node
+         */
+        public long getExpressionId() {
+            return expressionId;
+        }
+
+        /**
+         * @param expressionId identifies the node
+         */
+        public void setExpressionId(long expressionId) {
+            this.expressionId = expressionId;
+        }
+
+        /**
+         * @return simple class name of the expression
+         */
+        public String getExpressionType() {
+            return expressionType;
+        }
+
+        /**
+         * @param expressionType simple class name of the expression
+         */
+        public void setExpressionType(String expressionType) {
+            this.expressionType = expressionType;
+        }
+
+        /**
+         * @return number of child expressions
+         */
+        public int getNumberOfChildren() {
+            return numberOfChildren;
+        }
+
+        /**
+         * @param numberOfChildren number of child expressions
+         */
+        public void setNumberOfChildren(int numberOfChildren) {
+            this.numberOfChildren = numberOfChildren;
+        }
+
+        /**
+         * @return number of lookups (by parent expressions or queries)
+         */
+        public long getVisits() {
+            return visits;
+        }
+
+        /**
+         * @param visits number of lookups
+         */
+        public void setVisits(long visits) {
+            this.visits = visits;
+        }
+
+        /**
+         * @return number of lookups answered from the per-row result cache
+         */
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        /**
+         * @param cacheHits number of lookups answered from the per-row result cache
+         */
+        public void setCacheHits(long cacheHits) {
+            this.cacheHits = cacheHits;
+        }
+
+        /**
+         * @return number of evaluations
+         */
+        public long getEvaluations() {
+            return evaluations;
+        }
+
+        /**
+         * @param evaluations number of evaluations
+         */
+        public void setEvaluations(long evaluations) {
+            this.evaluations = evaluations;
+        }
+
+        /**
+         * @return number of evaluations with result true
+         */
+        public long getMatches() {
+            return matches;
+        }
+
+        /**
+         * @param matches number of evaluations with result true
+         */
+        public void setMatches(long matches) {
+            this.matches = matches;
+        }
+
+        /**
+         * @return number of child lookups during evaluations
+         */
+        public long getChildVisits() {
+            return childVisits;
+        }
+
+        /**
+         * @param childVisits number of child lookups during evaluations
+         */
+        public void setChildVisits(long childVisits) {
+            this.childVisits = childVisits;
+        }
+
+        /**
+         * @return fraction of evaluations with result true
+         */
+        public double getMatchRate() {
+            return evaluations == 0 ? 0.0 : ((double) matches) / evaluations;
+        }
+
+        /**
+         * @return fraction of lookups answered from the per-row result cache
+         */
+        public double getCacheHitRate() {
+            return visits == 0 ? 0.0 : ((double) cacheHits) / visits;
+        }
+
+        /**
+         * For nodes with multiple children (AND/OR) this is the fraction of child evaluations saved because the result was known early.
+         * 
+         * @return short-circuit rate, 0.0 for nodes with less than two children
+         */
+        public double getShortCircuitRate() {
+            if (numberOfChildren < 2 || evaluations == 0) {
+                return 0.0;
+            }
+            return Math.max(0.0, 1.0 - (((double) childVisits) / (evaluations * numberOfChildren)));
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%s [expressionId=%d, expressionType=%s, numberOfChildren=%d, visits=%d, cacheHitRate=%.4f, evaluations=%d, matchRate=%.4f, shortCircuitRate=%.4f]",
+                    this.getClass().getSimpleName(), expressionId, expressionType, numberOfChildren, visits, getCacheHitRate(), evaluations, getMatchRate(),
+                    getShortCircuitRate());
+        }
+
+    }
+
+}
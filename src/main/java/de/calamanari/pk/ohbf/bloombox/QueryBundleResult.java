@@ -52,6 +52,11 @@ public class QueryBundleResult implements Serializable {
      */
     private String masterError = null;
 
+    /**
+     * performance figures of the execution
+     */
+    private QueryBundleMetrics metrics = null;
+
     /**
      * @return base query results, same order as queries in {@link QueryBundle}
      */
@@ -103,6 +108,20 @@ public class QueryBundleResult implements Serializable {
         this.masterError = masterError;
     }
 
+    /**
+     * @return performance figures of the execution or null if not available
+     */
+    public QueryBundleMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics performance figures of the execution
+     */
+    public void setMetrics(QueryBundleMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     @Override
     public String toString() {
         return this.getClass().getSimpleName() + " [baseQueryResults=" + baseQueryResults + ", postQueryResults=" + postQueryResults + ", masterError="
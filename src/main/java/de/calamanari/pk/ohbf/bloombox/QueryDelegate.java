@@ -64,6 +64,24 @@ public interface QueryDelegate<Q extends QueryDelegate<Q>> extends PbDpavOccurre
      */
     public void execute(long[] vector, int startPos);
 
+    /**
+     * Called by the store to trigger the execution of all the queries on a block of consecutive records (row vectors one after another, see
+     * {@link #execute(long[], int)}).
+     * <p>
+     * Delegates may evaluate the block bit-parallel (see {@link de.calamanari.pk.ohbf.bloombox.bbq.RowBlock}), the default implementation executes the
+     * records one by one.
+     * 
+     * @param vectors source
+     * @param startPos position of the first record's vector
+     * @param vectorSize number of longs per record
+     * @param numberOfRows number of records in the block, 1 .. {@value de.calamanari.pk.ohbf.bloombox.bbq.RowBlock#MAX_NUMBER_OF_ROWS}
+     */
+    default void executeBlock(long[] vectors, int startPos, int vectorSize, int numberOfRows) {
+        for (int i = 0; i < numberOfRows; i++) {
+            this.execute(vectors, startPos + (i * vectorSize));
+        }
+    }
+
     /**
      * Executes the query with probabilities
      * <p>
@@ -0,0 +1,350 @@
+//@formatter:off
+/*
+ * QueryPreparationCache
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.calamanari.pk.ohbf.bloombox.bbq.BbqExpression;
+
+/**
+ * The {@link QueryPreparationCache} keeps the outcome of the query preparation (parsing, optimization, bloom pattern hashing) for queries that have been
+ * executed before, so that a {@link BloomBoxQueryRunner} can skip these steps when the same query gets executed again.
+ * <p>
+ * Entries are identified by the query name, the query type, the <i>normalized</i> query strings of the query and its sub queries and the query options (see
+ * {@link #createCacheKey(BloomBoxQuery, Map)}). The cache is bounded, if the limit is reached the least recently used entry will be evicted.
+ * <p>
+ * <b>Important:</b> The prepared expressions depend on the configuration of the bloom box and they get adjusted to the dictionary of a probability store before
+ * execution (see {@link PbDpavDictionaryAware}). Thus, an instance must <i>not</i> be shared among runners operating on different boxes.
+ * <p>
+ * Instances are safe to be accessed by multiple threads concurrently.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class QueryPreparationCache {
+
+    /**
+     * Default maximum number of entries: {@value}
+     */
+    public static final int DEFAULT_MAX_NUMBER_OF_ENTRIES = 1_000;
+
+    /**
+     * Maximum number of prepared queries to be kept
+     */
+    private final int maxNumberOfEntries;
+
+    /**
+     * cache key mapped to the prepared query, access-ordered to evict the least recently used entry
+     */
+    private final Map<String, PreparedQuery> preparedQueryMap;
+
+    /**
+     * number of successful lookups
+     */
+    private long numberOfHits = 0;
+
+    /**
+     * number of lookups without result
+     */
+    private long numberOfMisses = 0;
+
+    /**
+     * sum of the preparation times of all cache hits
+     */
+    private long preparationNanosSaved = 0;
+
+    /**
+     * Creates a cache with the default size {@value #DEFAULT_MAX_NUMBER_OF_ENTRIES}
+     */
+    public QueryPreparationCache() {
+        this(DEFAULT_MAX_NUMBER_OF_ENTRIES);
+    }
+
+    /**
+     * @param maxNumberOfEntries maximum number of prepared queries to be kept, &gt; 0
+     */
+    public QueryPreparationCache(int maxNumberOfEntries) {
+        if (maxNumberOfEntries <= 0) {
+            throw new IllegalArgumentException(String.format("The maximum number of entries must be greater than 0, given: %d", maxNumberOfEntries));
+        }
+        this.maxNumberOfEntries = maxNumberOfEntries;
+        this.preparedQueryMap = new LinkedHashMap<>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 4528146211378934425L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedQuery> eldest) {
+                return size() > QueryPreparationCache.this.maxNumberOfEntries;
+            }
+
+        };
+    }
+
+    /**
+     * Creates the key to identify a prepared query.
+     * <p>
+     * For post queries the key additionally includes the name references known at the time of preparation, because the resulting expression depends on the
+     * queries referenced by name.
+     * 
+     * @param query the query to be prepared
+     * @param nameReferenceMap maps query and sub query names to the corresponding expression ids of the queries prepared so far
+     * @return cache key
+     */
+    public static String createCacheKey(BloomBoxQuery query, Map<String, Long> nameReferenceMap) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(query.getType());
+        sb.append("|");
+        sb.append(query.getName());
+        sb.append("|");
+        sb.append(normalizeQueryString(query.getQuery()));
+        if (query.getSubQueryMap() != null) {
+            for (Map.Entry<String, String> entry : new TreeMap<>(query.getSubQueryMap()).entrySet()) {
+                sb.append("|");
+                sb.append(entry.getKey());
+                sb.append(":");
+                sb.append(normalizeQueryString(entry.getValue()));
+            }
+        }
+        if (query.getOptions() != null) {
+            sb.append("|options=");
+            sb.append(new TreeMap<>(query.getOptions()));
+        }
+        if (query.getType() == QueryType.POST_QUERY) {
+            sb.append("|references=");
+            sb.append(new TreeMap<>(nameReferenceMap));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Normalizes the given BBQ string by trimming it and collapsing any sequence of whitespace outside quoted values into a single space.
+     * 
+     * @param queryString BBQ expression, null will be returned as empty string
+     * @return normalized query string
+     */
+    public static String normalizeQueryString(String queryString) {
+        if (queryString == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(queryString.length());
+        char quote = 0;
+        boolean pendingSpace = false;
+        String trimmed = queryString.trim();
+        for (int i = 0; i < trimmed.length(); i++) {
+            char ch = trimmed.charAt(i);
+            if (quote == 0 && Character.isWhitespace(ch)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            sb.append(ch);
+            if (ch == '\\' && quote != 0 && i + 1 < trimmed.length()) {
+                // escaped character inside quotes
+                i++;
+                sb.append(trimmed.charAt(i));
+            }
+            else if (quote == 0 && (ch == '\'' || ch == '"')) {
+                quote = ch;
+            }
+            else if (ch == quote) {
+                quote = 0;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Looks up a prepared query and updates the statistics
+     * 
+     * @param cacheKey see {@link #createCacheKey(BloomBoxQuery, Map)}
+     * @return prepared query or null if not found
+     */
+    synchronized PreparedQuery lookup(String cacheKey) {
+        PreparedQuery res = preparedQueryMap.get(cacheKey);
+        if (res == null) {
+            numberOfMisses++;
+        }
+        else {
+            numberOfHits++;
+            preparationNanosSaved = preparationNanosSaved + res.getPreparationNanos();
+        }
+        return res;
+    }
+
+    /**
+     * Adds a prepared query to the cache, potentially evicting the least recently used entry
+     * 
+     * @param cacheKey see {@link #createCacheKey(BloomBoxQuery, Map)}
+     * @param preparedQuery outcome of the preparation
+     */
+    synchronized void put(String cacheKey, PreparedQuery preparedQuery) {
+        preparedQueryMap.put(cacheKey, preparedQuery);
+    }
+
+    /**
+     * Removes all entries and resets the statistics
+     */
+    public synchronized void clear() {
+        preparedQueryMap.clear();
+        numberOfHits = 0;
+        numberOfMisses = 0;
+        preparationNanosSaved = 0;
+    }
+
+    /**
+     * @return current number of prepared queries in the cache
+     */
+    public synchronized int size() {
+        return preparedQueryMap.size();
+    }
+
+    /**
+     * @return maximum number of prepared queries to be kept
+     */
+    public int getMaxNumberOfEntries() {
+        return maxNumberOfEntries;
+    }
+
+    /**
+     * @return number of successful lookups since creation or last {@link #clear()}
+     */
+    public synchronized long getNumberOfHits() {
+        return numberOfHits;
+    }
+
+    /**
+     * @return number of lookups without result since creation or last {@link #clear()}
+     */
+    public synchronized long getNumberOfMisses() {
+        return numberOfMisses;
+    }
+
+    /**
+     * @return hit rate in percent (0.0 - 100.0), 0.0 if there was no lookup yet
+     */
+    public synchronized double getHitRatePercent() {
+        long total = numberOfHits + numberOfMisses;
+        return total == 0 ? 0.0 : (numberOfHits * 100.0) / total;
+    }
+
+    /**
+     * @return the accumulated preparation time of all queries taken from the cache instead of preparing them again
+     */
+    public synchronized long getPreparationNanosSaved() {
+        return preparationNanosSaved;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return this.getClass().getSimpleName() + " [size=" + preparedQueryMap.size() + ", maxNumberOfEntries=" + maxNumberOfEntries + ", numberOfHits="
+                + numberOfHits + ", numberOfMisses=" + numberOfMisses + ", preparationNanosSaved=" + preparationNanosSaved + "]";
+    }
+
+    /**
+     * A {@link PreparedQuery} is the cached outcome of preparing a single {@link BloomBoxQuery}.
+     */
+    static final class PreparedQuery {
+
+        /**
+         * the query ready to be executed
+         */
+        private final InternalQuery internalQuery;
+
+        /**
+         * query and sub query names mapped to the expression ids, to be registered for post query references
+         */
+        private final Map<String, Long> nameReferences;
+
+        /**
+         * expressions post queries may refer to by name (base expression and sub query expressions before combination)
+         */
+        private final List<BbqExpression> referenceableExpressions;
+
+        /**
+         * warnings picked up during preparation or empty string
+         */
+        private final String warning;
+
+        /**
+         * time it took to prepare the query
+         */
+        private final long preparationNanos;
+
+        /**
+         * @param internalQuery the query ready to be executed
+         * @param nameReferences query and sub query names mapped to the expression ids
+         * @param referenceableExpressions expressions post queries may refer to
+         * @param warning warnings picked up during preparation or empty string
+         * @param preparationNanos time it took to prepare the query
+         */
+        PreparedQuery(InternalQuery internalQuery, Map<String, Long> nameReferences, List<BbqExpression> referenceableExpressions, String warning,
+                long preparationNanos) {
+            this.internalQuery = internalQuery;
+            this.nameReferences = Collections.unmodifiableMap(new LinkedHashMap<>(nameReferences));
+            this.referenceableExpressions = List.copyOf(referenceableExpressions);
+            this.warning = warning;
+            this.preparationNanos = preparationNanos;
+        }
+
+        /**
+         * @return the query ready to be executed
+         */
+        InternalQuery getInternalQuery() {
+            return internalQuery;
+        }
+
+        /**
+         * @return query and sub query names mapped to the expression ids, in order of registration
+         */
+        Map<String, Long> getNameReferences() {
+            return nameReferences;
+        }
+
+        /**
+         * @return expressions post queries may refer to by name
+         */
+        List<BbqExpression> getReferenceableExpressions() {
+            return referenceableExpressions;
+        }
+
+        /**
+         * @return warnings picked up during preparation or empty string
+         */
+        String getWarning() {
+            return warning;
+        }
+
+        /**
+         * @return time it took to prepare the query
+         */
+        long getPreparationNanos() {
+            return preparationNanos;
+        }
+
+    }
+
+}
@@ -0,0 +1,513 @@
+//@formatter:off
+/*
+ * RowSampler
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link RowSampler} controls a query execution in sampling mode (see {@link BloomBoxOption#SAMPLING}).
+ * <p>
+ * The rows of the store are divided into blocks which get processed in a random order (seeded with the execution id, so repeated executions behave the
+ * same). After each block the sampler updates the estimated match rate of every count (main and sub queries of all queries in the delegate) and its
+ * confidence interval. The execution stops as soon as all intervals are narrow enough.
+ * <p>
+ * Because we sample blocks (clusters) rather than independent rows, the variance gets estimated from the differences among the blocks (ratio estimator for
+ * cluster sampling). This protects against overconfidence if the data was fed in a particular order. As a lower limit the sampler uses the Wilson score
+ * interval, which stays meaningful for very rare or very frequent matches. Both include the finite population correction, so the margin becomes 0 when all
+ * rows have been processed.
+ * <p>
+ * Stores supporting sampling (see {@link BloomBoxDataStore#isSamplingCapable()}) call {@link #processBlocks(List, BlockProcessor)} from one or multiple
+ * threads, each thread with its own delegate (spawn). After all spawn results have been merged, {@link #applyEstimates(List)} scales the counts to the full
+ * number of rows and attaches the {@link SampledBloomBoxQueryResult}s.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class RowSampler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RowSampler.class);
+
+    /**
+     * Confidence level of the error bounds if not specified: {@value}
+     */
+    public static final double DEFAULT_CONFIDENCE_LEVEL = 0.95;
+
+    /**
+     * Maximum half-width of the confidence interval of each match rate if not specified: {@value}
+     */
+    public static final double DEFAULT_MARGIN_OF_ERROR = 0.005;
+
+    /**
+     * Minimum number of blocks to be processed before the sampler may stop, the block-based variance estimation is unreliable on fewer blocks: {@value}
+     */
+    public static final int MIN_NUMBER_OF_BLOCKS = 32;
+
+    /**
+     * Smallest number of rows in a block: {@value}
+     */
+    private static final int MIN_BLOCK_SIZE = 256;
+
+    /**
+     * Largest number of rows in a block: {@value}
+     */
+    private static final int MAX_BLOCK_SIZE = 8192;
+
+    /**
+     * We aim for at least this number of blocks (unless the blocks would become smaller than {@link #MIN_BLOCK_SIZE}): {@value}
+     */
+    private static final int TARGET_NUMBER_OF_BLOCKS = 4096;
+
+    /**
+     * number of rows in the store
+     */
+    private final long numberOfRows;
+
+    /**
+     * number of rows in a block (the last block may be smaller)
+     */
+    private final int blockSize;
+
+    /**
+     * random permutation of the block indexes
+     */
+    private final int[] blockOrder;
+
+    /**
+     * confidence level of the error bounds
+     */
+    private final double confidenceLevel;
+
+    /**
+     * z-score for the confidence level (two-sided)
+     */
+    private final double zScore;
+
+    /**
+     * maximum half-width of the confidence interval of each match rate
+     */
+    private final double marginOfError;
+
+    /**
+     * position of the first count of each result in the count arrays, the main query is followed by the sub queries
+     */
+    private final int[] countOffsets;
+
+    /**
+     * sum of the block counts per count
+     */
+    private final double[] sumOfCounts;
+
+    /**
+     * sum of the squared block counts per count
+     */
+    private final double[] sumOfSquaredCounts;
+
+    /**
+     * sum of the products of block count and block size per count
+     */
+    private final double[] sumOfCountsTimesRows;
+
+    /**
+     * sum of the block sizes (number of rows sampled)
+     */
+    private long sumOfRows = 0;
+
+    /**
+     * sum of the squared block sizes
+     */
+    private double sumOfSquaredRows = 0.0;
+
+    /**
+     * position in {@link #blockOrder} of the next block to be processed
+     */
+    private int nextBlockPosition = 0;
+
+    /**
+     * number of blocks reported as complete
+     */
+    private int numberOfBlocksCompleted = 0;
+
+    /**
+     * true as soon as the requested precision has been reached
+     */
+    private boolean precisionReached = false;
+
+    /**
+     * Callback to process the rows of a block
+     */
+    @FunctionalInterface
+    public interface BlockProcessor {
+
+        /**
+         * @param startRowIdx first row of the block (incl.)
+         * @param endRowIdx end of the block (excl.)
+         */
+        void process(long startRowIdx, long endRowIdx);
+    }
+
+    /**
+     * @param numberOfRows number of rows in the store
+     * @param results the results of the delegate's queries (defines the counts to be watched)
+     * @param seed for the random block order
+     * @param confidenceLevel confidence level of the error bounds (0.5 .. 0.9999)
+     * @param marginOfError maximum half-width of the confidence interval of each match rate (0.0 .. 1.0)
+     */
+    public RowSampler(long numberOfRows, List<BloomBoxQueryResult> results, long seed, double confidenceLevel, double marginOfError) {
+        if (confidenceLevel < 0.5 || confidenceLevel > 0.9999) {
+            throw new IllegalArgumentException("The confidence level must be in range [0.5 .. 0.9999], given: " + confidenceLevel);
+        }
+        if (marginOfError <= 0.0 || marginOfError >= 1.0) {
+            throw new IllegalArgumentException("The margin of error must be in range (0.0 .. 1.0), given: " + marginOfError);
+        }
+        this.numberOfRows = numberOfRows;
+        this.confidenceLevel = confidenceLevel;
+        this.zScore = computeZScore(confidenceLevel);
+        this.marginOfError = marginOfError;
+        this.blockSize = Math.clamp(numberOfRows / TARGET_NUMBER_OF_BLOCKS, MIN_BLOCK_SIZE, MAX_BLOCK_SIZE);
+        int numberOfBlocks = (int) ((numberOfRows + blockSize - 1) / blockSize);
+        this.blockOrder = new int[numberOfBlocks];
+        for (int i = 0; i < numberOfBlocks; i++) {
+            blockOrder[i] = i;
+        }
+        SplittableRandom rand = new SplittableRandom(seed);
+        for (int i = numberOfBlocks - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int temp = blockOrder[i];
+            blockOrder[i] = blockOrder[j];
+            blockOrder[j] = temp;
+        }
+        this.countOffsets = new int[results.size()];
+        int numberOfCounts = 0;
+        for (int i = 0; i < results.size(); i++) {
+            countOffsets[i] = numberOfCounts;
+            numberOfCounts = numberOfCounts + 1 + getNumberOfSubQueries(results.get(i));
+        }
+        this.sumOfCounts = new double[numberOfCounts];
+        this.sumOfSquaredCounts = new double[numberOfCounts];
+        this.sumOfCountsTimesRows = new double[numberOfCounts];
+    }
+
+    /**
+     * Creates a sampler if any of the given queries requests sampling. If multiple queries request sampling, the strictest settings (highest confidence
+     * level, smallest margin of error) apply.
+     * 
+     * @param queries queries of the delegate
+     * @param results the results of the delegate's queries (same order)
+     * @param numberOfRows number of rows in the store
+     * @param seed for the random block order, usually the execution id
+     * @return sampler or null if no query requested sampling
+     * @throws BloomBoxException if a sampling option is invalid
+     */
+    public static RowSampler createIfRequested(InternalQuery[] queries, List<BloomBoxQueryResult> results, long numberOfRows, long seed) {
+        double[] settings = resolveSamplingSettings(queries);
+        if (settings == null) {
+            return null;
+        }
+        try {
+            return new RowSampler(numberOfRows, results, seed, settings[0], settings[1]);
+        }
+        catch (IllegalArgumentException ex) {
+            throw new BloomBoxException("Invalid sampling options: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Puts the effective sampling options of the given queries into the destination map, so that derived queries (e.g. the count queries for upscaling) get
+     * sampled with the same settings. If no query requests sampling, the map remains unchanged.
+     * 
+     * @param queries source queries
+     * @param destination options map to be updated
+     * @throws BloomBoxException if a sampling option is invalid
+     */
+    public static void collectSamplingOptions(InternalQuery[] queries, Map<String, String> destination) {
+        double[] settings = resolveSamplingSettings(queries);
+        if (settings != null) {
+            destination.put(BloomBoxOption.SAMPLING.optionName, "true");
+            destination.put(BloomBoxOption.SAMPLING_CONFIDENCE.optionName, String.valueOf(settings[0]));
+            destination.put(BloomBoxOption.SAMPLING_MARGIN_OF_ERROR.optionName, String.valueOf(settings[1]));
+        }
+    }
+
+    /**
+     * Determines the effective sampling settings of the given queries
+     * 
+     * @param queries source queries
+     * @return array with confidence level and margin of error or null if no query requests sampling
+     */
+    private static double[] resolveSamplingSettings(InternalQuery[] queries) {
+        double confidenceLevel = 0.0;
+        double marginOfError = Double.MAX_VALUE;
+        boolean samplingRequested = false;
+        for (InternalQuery query : queries) {
+            Map<String, String> options = query.getQueryOptions();
+            if (BloomBoxOption.SAMPLING.isEnabled(options)) {
+                samplingRequested = true;
+                confidenceLevel = Math.max(confidenceLevel, parseOption(options, BloomBoxOption.SAMPLING_CONFIDENCE, DEFAULT_CONFIDENCE_LEVEL));
+                marginOfError = Math.min(marginOfError, parseOption(options, BloomBoxOption.SAMPLING_MARGIN_OF_ERROR, DEFAULT_MARGIN_OF_ERROR));
+            }
+        }
+        return samplingRequested ? new double[] { confidenceLevel, marginOfError } : null;
+    }
+
+    /**
+     * @param options query options
+     * @param option the option to be read
+     * @param defaultValue value if not specified
+     * @return parsed value
+     */
+    private static double parseOption(Map<String, String> options, BloomBoxOption option, double defaultValue) {
+        String value = option.getValue(options);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        }
+        catch (NumberFormatException ex) {
+            throw new BloomBoxException(String.format("Invalid value for option '%s', decimal expected, given: '%s'", option.optionName, value), ex);
+        }
+    }
+
+    /**
+     * Approximates the two-sided z-score for the given confidence level (Abramowitz and Stegun 26.2.23, absolute error below 4.5E-4)
+     * 
+     * @param confidenceLevel e.g. 0.95
+     * @return z-score, e.g. 1.96
+     */
+    static double computeZScore(double confidenceLevel) {
+        double tailProbability = (1.0 - confidenceLevel) / 2.0;
+        double t = Math.sqrt(-2.0 * Math.log(tailProbability));
+        return t - (2.515517 + 0.802853 * t + 0.010328 * t * t) / (1.0 + 1.432788 * t + 0.189269 * t * t + 0.001308 * t * t * t);
+    }
+
+    /**
+     * @param result query result
+     * @return number of sub queries of the given result
+     */
+    private static int getNumberOfSubQueries(BloomBoxQueryResult result) {
+        return result.getSubQueryCounts() == null ? 0 : result.getSubQueryCounts().length;
+    }
+
+    /**
+     * Processes random blocks until all blocks have been processed or the requested precision has been reached.
+     * <p>
+     * Can be called concurrently from multiple threads, each with its own delegate (spawn) and thus its own results.
+     * 
+     * @param results the results of the calling thread's delegate, read after each block to determine the block counts
+     * @param processor callback to process the rows of a block
+     */
+    public void processBlocks(List<BloomBoxQueryResult> results, BlockProcessor processor) {
+        double[] previousCounts = new double[sumOfCounts.length];
+        double[] currentCounts = new double[sumOfCounts.length];
+        int blockIdx = nextBlockIndex();
+        while (blockIdx >= 0) {
+            long startRowIdx = (long) blockIdx * blockSize;
+            long endRowIdx = Math.min(numberOfRows, startRowIdx + blockSize);
+            processor.process(startRowIdx, endRowIdx);
+            collectCounts(results, currentCounts);
+            for (int i = 0; i < currentCounts.length; i++) {
+                double blockCount = currentCounts[i] - previousCounts[i];
+                previousCounts[i] = currentCounts[i];
+                currentCounts[i] = blockCount;
+            }
+            reportBlock(currentCounts, endRowIdx - startRowIdx);
+            blockIdx = nextBlockIndex();
+        }
+    }
+
+    /**
+     * @param results current results
+     * @param destination the current counts (or probability sums) of all results in the order of {@link #countOffsets}
+     */
+    private void collectCounts(List<BloomBoxQueryResult> results, double[] destination) {
+        for (int i = 0; i < countOffsets.length; i++) {
+            BloomBoxQueryResult result = results.get(i);
+            int idx = countOffsets[i];
+            PbBloomBoxQueryResult probabilityResult = result.getProbabilityResult();
+            if (probabilityResult != null) {
+                destination[idx] = probabilityResult.getBaseQuerySum();
+                double[] subQuerySums = probabilityResult.getSubQuerySums();
+                for (int k = 0; subQuerySums != null && k < subQuerySums.length; k++) {
+                    destination[idx + 1 + k] = subQuerySums[k];
+                }
+            }
+            else {
+                destination[idx] = result.getBaseQueryCount();
+                long[] subQueryCounts = result.getSubQueryCounts();
+                for (int k = 0; subQueryCounts != null && k < subQueryCounts.length; k++) {
+                    destination[idx + 1 + k] = subQueryCounts[k];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return index of the next block to be processed or -1 if there is nothing left to do
+     */
+    private synchronized int nextBlockIndex() {
+        if (precisionReached || nextBlockPosition >= blockOrder.length) {
+            return -1;
+        }
+        int res = blockOrder[nextBlockPosition];
+        nextBlockPosition++;
+        return res;
+    }
+
+    /**
+     * Adds the counts of a completed block and checks whether the requested precision has been reached
+     * 
+     * @param blockCounts counts of the block
+     * @param numberOfRowsInBlock block size
+     */
+    private synchronized void reportBlock(double[] blockCounts, long numberOfRowsInBlock) {
+        for (int i = 0; i < blockCounts.length; i++) {
+            double blockCount = blockCounts[i];
+            sumOfCounts[i] = sumOfCounts[i] + blockCount;
+            sumOfSquaredCounts[i] = sumOfSquaredCounts[i] + blockCount * blockCount;
+            sumOfCountsTimesRows[i] = sumOfCountsTimesRows[i] + blockCount * numberOfRowsInBlock;
+        }
+        sumOfRows = sumOfRows + numberOfRowsInBlock;
+        sumOfSquaredRows = sumOfSquaredRows + ((double) numberOfRowsInBlock) * numberOfRowsInBlock;
+        numberOfBlocksCompleted++;
+        if (numberOfBlocksCompleted >= Math.min(MIN_NUMBER_OF_BLOCKS, blockOrder.length) && numberOfBlocksCompleted < blockOrder.length) {
+            boolean allPrecise = true;
+            for (int i = 0; allPrecise && i < sumOfCounts.length; i++) {
+                allPrecise = computeMarginOfError(i) <= marginOfError;
+            }
+            precisionReached = allPrecise;
+        }
+    }
+
+    /**
+     * @param idx count index
+     * @return current half-width of the confidence interval of the match rate
+     */
+    private double computeMarginOfError(int idx) {
+        if (sumOfRows >= numberOfRows) {
+            return 0.0;
+        }
+        double n = sumOfRows;
+        double m = numberOfBlocksCompleted;
+        double fpc = 1.0 - (n / numberOfRows);
+        double matchRate = sumOfCounts[idx] / n;
+        double z2 = zScore * zScore;
+        double wilsonMargin = (zScore / (1.0 + z2 / n)) * Math.sqrt((matchRate * (1.0 - matchRate) / n) + (z2 / (4.0 * n * n))) * Math.sqrt(fpc);
+        double clusterMargin = 0.0;
+        if (m > 1) {
+            double sumOfSquaredResiduals = sumOfSquaredCounts[idx] - 2.0 * matchRate * sumOfCountsTimesRows[idx] + matchRate * matchRate * sumOfSquaredRows;
+            double averageBlockSize = n / m;
+            double variance = fpc * Math.max(0.0, sumOfSquaredResiduals) / (m * (m - 1.0) * averageBlockSize * averageBlockSize);
+            clusterMargin = zScore * Math.sqrt(variance);
+        }
+        return Math.max(wilsonMargin, clusterMargin);
+    }
+
+    /**
+     * Scales the counts (and probability sums) of the given merged results from the sample to the full number of rows and attaches the
+     * {@link SampledBloomBoxQueryResult}s. The count bounds get computed later, after any further scaling (see
+     * {@link SampledBloomBoxQueryResult#updateCountBounds(BloomBoxQueryResult, long)}).
+     * 
+     * @param results results of the main delegate after all spawn results have been merged (same order as on creation)
+     */
+    public synchronized void applyEstimates(List<BloomBoxQueryResult> results) {
+        double scaleFactor = (sumOfRows > 0 && sumOfRows < numberOfRows) ? ((double) numberOfRows) / sumOfRows : 1.0;
+        for (int i = 0; i < countOffsets.length; i++) {
+            BloomBoxQueryResult result = results.get(i);
+            int idx = countOffsets[i];
+            int numberOfSubQueries = getNumberOfSubQueries(result);
+            SampledBloomBoxQueryResult sampleResult = new SampledBloomBoxQueryResult(sumOfRows, numberOfRows, confidenceLevel, numberOfSubQueries);
+            sampleResult.setBaseQueryMatchRate(computeMatchRate(idx));
+            sampleResult.setBaseQueryMarginOfError(computeMarginOfError(idx));
+            for (int k = 0; k < numberOfSubQueries; k++) {
+                sampleResult.getSubQueryMatchRates()[k] = computeMatchRate(idx + 1 + k);
+                sampleResult.getSubQueryMarginsOfError()[k] = computeMarginOfError(idx + 1 + k);
+            }
+            result.scaleCounts(scaleFactor);
+            result.setSampleResult(sampleResult);
+        }
+        LOGGER.debug("Sampling completed: {} of {} rows ({} of {} blocks) processed, precision reached: {}", sumOfRows, numberOfRows,
+                numberOfBlocksCompleted, blockOrder.length, precisionReached);
+    }
+
+    /**
+     * @param idx count index
+     * @return estimated match rate
+     */
+    private double computeMatchRate(int idx) {
+        return sumOfRows > 0 ? sumOfCounts[idx] / sumOfRows : 0.0;
+    }
+
+    /**
+     * @return number of rows processed so far
+     */
+    public synchronized long getNumberOfRowsSampled() {
+        return sumOfRows;
+    }
+
+    /**
+     * @return true if the execution stopped early because the requested precision was reached
+     */
+    public synchronized boolean isPrecisionReached() {
+        return precisionReached;
+    }
+
+    /**
+     * @return confidence level of the error bounds
+     */
+    public double getConfidenceLevel() {
+        return confidenceLevel;
+    }
+
+    /**
+     * @return maximum half-width of the confidence interval of each match rate
+     */
+    public double getMarginOfError() {
+        return marginOfError;
+    }
+
+    /**
+     * @return number of rows in a block (the last block may be smaller)
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return total number of blocks
+     */
+    public int getNumberOfBlocks() {
+        return blockOrder.length;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "%s [numberOfRows=%d, blockSize=%d, numberOfBlocks=%d, confidenceLevel=%.4f, marginOfError=%.6f, rowsSampled=%d, "
+                + "blocksCompleted=%d, precisionReached=%s]", this.getClass().getSimpleName(), numberOfRows, blockSize, blockOrder.length, confidenceLevel,
+                marginOfError, sumOfRows, numberOfBlocksCompleted, precisionReached);
+    }
+
+}
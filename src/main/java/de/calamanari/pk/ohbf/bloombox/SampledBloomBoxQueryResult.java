@@ -0,0 +1,329 @@
+//@formatter:off
+/*
+ * SampledBloomBoxQueryResult
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The {@link SampledBloomBoxQueryResult} adds the error bounds to a {@link BloomBoxQueryResult} if the query was executed in sampling mode (see
+ * {@link BloomBoxOption#SAMPLING}), so the counts of the result are estimates.
+ * <p>
+ * The margins of error refer to the match rates (count related to the number of rows), the count bounds refer to the final (maybe scaled) counts of the
+ * result.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class SampledBloomBoxQueryResult implements Serializable {
+
+    private static final long serialVersionUID = 2648270372957186012L;
+
+    /**
+     * number of rows evaluated to compute the estimates
+     */
+    private long numberOfRowsSampled = 0;
+
+    /**
+     * number of rows in the box
+     */
+    private long numberOfRows = 0;
+
+    /**
+     * confidence level of the error bounds, e.g. 0.95
+     */
+    private double confidenceLevel = 0.0;
+
+    /**
+     * estimated match rate of the main query (count related to the number of rows)
+     */
+    private double baseQueryMatchRate = 0.0;
+
+    /**
+     * half-width of the confidence interval of the main query's match rate
+     */
+    private double baseQueryMarginOfError = 0.0;
+
+    /**
+     * estimated match rates of the sub queries (count related to the number of rows)
+     */
+    private double[] subQueryMatchRates = null;
+
+    /**
+     * half-widths of the confidence intervals of the sub queries' match rates
+     */
+    private double[] subQueryMarginsOfError = null;
+
+    /**
+     * lower bound of the main query count
+     */
+    private long baseQueryCountLowerBound = 0;
+
+    /**
+     * upper bound of the main query count
+     */
+    private long baseQueryCountUpperBound = 0;
+
+    /**
+     * lower bounds of the sub query counts
+     */
+    private long[] subQueryCountLowerBounds = null;
+
+    /**
+     * upper bounds of the sub query counts
+     */
+    private long[] subQueryCountUpperBounds = null;
+
+    public SampledBloomBoxQueryResult() {
+        // default constructor
+    }
+
+    /**
+     * @param numberOfRowsSampled number of rows evaluated to compute the estimates
+     * @param numberOfRows number of rows in the box
+     * @param confidenceLevel confidence level of the error bounds
+     * @param numberOfSubQueries number of sub queries
+     */
+    public SampledBloomBoxQueryResult(long numberOfRowsSampled, long numberOfRows, double confidenceLevel, int numberOfSubQueries) {
+        this.numberOfRowsSampled = numberOfRowsSampled;
+        this.numberOfRows = numberOfRows;
+        this.confidenceLevel = confidenceLevel;
+        this.subQueryMatchRates = new double[numberOfSubQueries];
+        this.subQueryMarginsOfError = new double[numberOfSubQueries];
+        this.subQueryCountLowerBounds = new long[numberOfSubQueries];
+        this.subQueryCountUpperBounds = new long[numberOfSubQueries];
+    }
+
+    /**
+     * Computes the count bounds from the final counts of the given result and the margins of error. This must happen after any scaling.
+     * 
+     * @param result the result with the (estimated) counts
+     * @param population the count that corresponds to a match rate of 1.0 (number of rows or the target population when scaled)
+     */
+    void updateCountBounds(BloomBoxQueryResult result, long population) {
+        baseQueryCountLowerBound = computeLowerBound(result.getBaseQueryCount(), baseQueryMatchRate, baseQueryMarginOfError);
+        baseQueryCountUpperBound = computeUpperBound(result.getBaseQueryCount(), baseQueryMatchRate, baseQueryMarginOfError, population);
+        long[] subQueryCounts = result.getSubQueryCounts();
+        if (subQueryCounts != null && subQueryMatchRates != null) {
+            int len = Math.min(subQueryCounts.length, subQueryMatchRates.length);
+            for (int i = 0; i < len; i++) {
+                subQueryCountLowerBounds[i] = computeLowerBound(subQueryCounts[i], subQueryMatchRates[i], subQueryMarginsOfError[i]);
+                subQueryCountUpperBounds[i] = computeUpperBound(subQueryCounts[i], subQueryMatchRates[i], subQueryMarginsOfError[i], population);
+            }
+        }
+    }
+
+    /**
+     * @param count final count
+     * @param matchRate estimated match rate
+     * @param marginOfError half-width of the interval around the match rate
+     * @return lower bound of the count, relative to the count as the rate bound relates to the rate
+     */
+    private static long computeLowerBound(long count, double matchRate, double marginOfError) {
+        if (matchRate <= 0.0) {
+            return 0;
+        }
+        return Math.min(count, (long) Math.floor(count * Math.max(0.0, matchRate - marginOfError) / matchRate));
+    }
+
+    /**
+     * @param count final count
+     * @param matchRate estimated match rate
+     * @param marginOfError half-width of the interval around the match rate
+     * @param population maximum count
+     * @return upper bound of the count, relative to the count as the rate bound relates to the rate
+     */
+    private static long computeUpperBound(long count, double matchRate, double marginOfError, long population) {
+        long res = 0;
+        if (matchRate <= 0.0) {
+            res = (long) Math.ceil(marginOfError * population);
+        }
+        else {
+            res = (long) Math.ceil(count * Math.min(1.0, matchRate + marginOfError) / matchRate);
+        }
+        return Math.max(count, Math.min(res, population));
+    }
+
+    /**
+     * @return number of rows evaluated to compute the estimates
+     */
+    public long getNumberOfRowsSampled() {
+        return numberOfRowsSampled;
+    }
+
+    /**
+     * @param numberOfRowsSampled number of rows evaluated to compute the estimates
+     */
+    public void setNumberOfRowsSampled(long numberOfRowsSampled) {
+        this.numberOfRowsSampled = numberOfRowsSampled;
+    }
+
+    /**
+     * @return number of rows in the box
+     */
+    public long getNumberOfRows() {
+        return numberOfRows;
+    }
+
+    /**
+     * @param numberOfRows number of rows in the box
+     */
+    public void setNumberOfRows(long numberOfRows) {
+        this.numberOfRows = numberOfRows;
+    }
+
+    /**
+     * @return confidence level of the error bounds, e.g. 0.95
+     */
+    public double getConfidenceLevel() {
+        return confidenceLevel;
+    }
+
+    /**
+     * @param confidenceLevel confidence level of the error bounds, e.g. 0.95
+     */
+    public void setConfidenceLevel(double confidenceLevel) {
+        this.confidenceLevel = confidenceLevel;
+    }
+
+    /**
+     * @return estimated match rate of the main query (count related to the number of rows)
+     */
+    public double getBaseQueryMatchRate() {
+        return baseQueryMatchRate;
+    }
+
+    /**
+     * @param baseQueryMatchRate estimated match rate of the main query (count related to the number of rows)
+     */
+    public void setBaseQueryMatchRate(double baseQueryMatchRate) {
+        this.baseQueryMatchRate = baseQueryMatchRate;
+    }
+
+    /**
+     * @return half-width of the confidence interval of the main query's match rate
+     */
+    public double getBaseQueryMarginOfError() {
+        return baseQueryMarginOfError;
+    }
+
+    /**
+     * @param baseQueryMarginOfError half-width of the confidence interval of the main query's match rate
+     */
+    public void setBaseQueryMarginOfError(double baseQueryMarginOfError) {
+        this.baseQueryMarginOfError = baseQueryMarginOfError;
+    }
+
+    /**
+     * @return estimated match rates of the sub queries (count related to the number of rows)
+     */
+    public double[] getSubQueryMatchRates() {
+        return subQueryMatchRates;
+    }
+
+    /**
+     * @param subQueryMatchRates estimated match rates of the sub queries (count related to the number of rows)
+     */
+    public void setSubQueryMatchRates(double[] subQueryMatchRates) {
+        this.subQueryMatchRates = subQueryMatchRates;
+    }
+
+    /**
+     * @return half-widths of the confidence intervals of the sub queries' match rates
+     */
+    public double[] getSubQueryMarginsOfError() {
+        return subQueryMarginsOfError;
+    }
+
+    /**
+     * @param subQueryMarginsOfError half-widths of the confidence intervals of the sub queries' match rates
+     */
+    public void setSubQueryMarginsOfError(double[] subQueryMarginsOfError) {
+        this.subQueryMarginsOfError = subQueryMarginsOfError;
+    }
+
+    /**
+     * @return lower bound of the main query count
+     */
+    public long getBaseQueryCountLowerBound() {
+        return baseQueryCountLowerBound;
+    }
+
+    /**
+     * @param baseQueryCountLowerBound lower bound of the main query count
+     */
+    public void setBaseQueryCountLowerBound(long baseQueryCountLowerBound) {
+        this.baseQueryCountLowerBound = baseQueryCountLowerBound;
+    }
+
+    /**
+     * @return upper bound of the main query count
+     */
+    public long getBaseQueryCountUpperBound() {
+        return baseQueryCountUpperBound;
+    }
+
+    /**
+     * @param baseQueryCountUpperBound upper bound of the main query count
+     */
+    public void setBaseQueryCountUpperBound(long baseQueryCountUpperBound) {
+        this.baseQueryCountUpperBound = baseQueryCountUpperBound;
+    }
+
+    /**
+     * @return lower bounds of the sub query counts
+     */
+    public long[] getSubQueryCountLowerBounds() {
+        return subQueryCountLowerBounds;
+    }
+
+    /**
+     * @param subQueryCountLowerBounds lower bounds of the sub query counts
+     */
+    public void setSubQueryCountLowerBounds(long[] subQueryCountLowerBounds) {
+        this.subQueryCountLowerBounds = subQueryCountLowerBounds;
+    }
+
+    /**
+     * @return upper bounds of the sub query counts
+     */
+    public long[] getSubQueryCountUpperBounds() {
+        return subQueryCountUpperBounds;
+    }
+
+    /**
+     * @param subQueryCountUpperBounds upper bounds of the sub query counts
+     */
+    public void setSubQueryCountUpperBounds(long[] subQueryCountUpperBounds) {
+        this.subQueryCountUpperBounds = subQueryCountUpperBounds;
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + " [numberOfRowsSampled=" + numberOfRowsSampled + ", numberOfRows=" + numberOfRows + ", confidenceLevel="
+                + confidenceLevel + ", baseQueryMatchRate=" + baseQueryMatchRate + ", baseQueryMarginOfError=" + baseQueryMarginOfError
+                + ", baseQueryCountLowerBound=" + baseQueryCountLowerBound + ", baseQueryCountUpperBound=" + baseQueryCountUpperBound
+                + ", subQueryMatchRates=" + Arrays.toString(subQueryMatchRates) + ", subQueryMarginsOfError=" + Arrays.toString(subQueryMarginsOfError)
+                + ", subQueryCountLowerBounds=" + Arrays.toString(subQueryCountLowerBounds) + ", subQueryCountUpperBounds="
+                + Arrays.toString(subQueryCountUpperBounds) + "]";
+    }
+
+}
@@ -0,0 +1,147 @@
+//@formatter:off
+/*
+ * ShardStreamFilter
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.io.ObjectInputFilter;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link ShardStreamFilter} restricts the objects a {@link BloomBoxShardServer} resp. a {@link ShardedDataStore} accepts from the other side of a shard
+ * connection.
+ * <p>
+ * Java deserialization of arbitrary classes from a socket means remote code execution as soon as there is any suitable gadget on the classpath. Thus, only the
+ * classes of the shard protocol are allowed: the command strings, the headers, the query delegate with its prepared queries and expressions (package
+ * <code>bbq</code>), the result caches and results, the error response and a few JDK value types and collections they are composed of. Additionally, the depth of the
+ * object graph, the length of arrays and the number of references are limited. Any other class gets rejected, which lets the stream fail.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+final class ShardStreamFilter implements ObjectInputFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardStreamFilter.class);
+
+    /**
+     * the filter instance to be set on every object input stream of a shard connection
+     */
+    static final ShardStreamFilter INSTANCE = new ShardStreamFilter();
+
+    /**
+     * maximum depth of the object graph (expressions are trees)
+     */
+    static final long MAX_DEPTH = 500;
+
+    /**
+     * maximum length of any array (result counts, expression members, cache tables)
+     */
+    static final long MAX_ARRAY_LENGTH = 1 << 20;
+
+    /**
+     * maximum number of object references in a single request or response
+     */
+    static final long MAX_REFERENCES = 1_000_000;
+
+    /**
+     * package of the query expressions, all classes in this package are allowed
+     */
+    private static final String EXPRESSION_PACKAGE_NAME = "de.calamanari.pk.ohbf.bloombox.bbq";
+
+    /**
+     * names of the allowed classes (besides the expression classes)
+     */
+    // @formatter:off
+    private static final Set<String> ALLOWED_CLASS_NAMES = Set.of(
+            BloomBoxHeader.class.getName(),
+            DataStoreHeader.class.getName(),
+            SimpleQueryDelegate.class.getName(),
+            InternalQuery.class.getName(),
+            ErrorPlaceholderQuery.class.getName(),
+            ExpressionResultCache.class.getName(),
+            ExpressionMetricsCollector.class.getName(),
+            ExpressionMetricsCollector.class.getName() + "$NodeCounter",
+            BloomBoxQueryResult.class.getName(),
+            PbBloomBoxQueryResult.class.getName(),
+            Dpav.class.getName(),
+            PbDpav.class.getName(),
+            BloomBoxException.class.getName(),
+            RuntimeException.class.getName(),
+            Exception.class.getName(),
+            Throwable.class.getName(),
+            StackTraceElement.class.getName(),
+            String.class.getName(),
+            Boolean.class.getName(),
+            Integer.class.getName(),
+            Long.class.getName(),
+            Double.class.getName(),
+            Number.class.getName(),
+            Enum.class.getName(),
+            Object.class.getName(),
+            "java.util.Date",
+            "java.util.ArrayList",
+            "java.util.HashMap",
+            "java.util.LinkedHashMap",
+            "java.util.TreeMap",
+            "java.util.Map$Entry",
+            "java.util.CollSer",
+            "java.util.ImmutableCollections$List12",
+            "java.util.ImmutableCollections$ListN",
+            "java.util.ImmutableCollections$Map1",
+            "java.util.ImmutableCollections$MapN",
+            "java.util.Collections$EmptyList",
+            "java.util.Collections$UnmodifiableList",
+            "java.util.Collections$UnmodifiableRandomAccessList",
+            "java.util.Collections$UnmodifiableCollection",
+            "java.util.Collections$UnmodifiableMap");
+    // @formatter:on
+
+    /**
+     * singleton
+     */
+    private ShardStreamFilter() {
+        // no instances
+    }
+
+    @Override
+    public Status checkInput(FilterInfo filterInfo) {
+        if (filterInfo.depth() > MAX_DEPTH || filterInfo.arrayLength() > MAX_ARRAY_LENGTH || filterInfo.references() > MAX_REFERENCES) {
+            LOGGER.warn("Rejected shard stream content exceeding the limits (depth={}, arrayLength={}, references={}).", filterInfo.depth(),
+                    filterInfo.arrayLength(), filterInfo.references());
+            return Status.REJECTED;
+        }
+        Class<?> serialClass = filterInfo.serialClass();
+        if (serialClass == null) {
+            return Status.UNDECIDED;
+        }
+        while (serialClass.isArray()) {
+            serialClass = serialClass.getComponentType();
+        }
+        if (serialClass.isPrimitive() || ALLOWED_CLASS_NAMES.contains(serialClass.getName())
+                || EXPRESSION_PACKAGE_NAME.equals(serialClass.getPackageName())) {
+            return Status.ALLOWED;
+        }
+        LOGGER.warn("Rejected class {} in shard stream.", serialClass.getName());
+        return Status.REJECTED;
+    }
+
+}
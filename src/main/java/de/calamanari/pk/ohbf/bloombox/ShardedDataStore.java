@@ -0,0 +1,506 @@
+//@formatter:off
+/*
+ * ShardedDataStore
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.calamanari.pk.ohbf.BloomFilterConfig;
+import de.calamanari.pk.util.CloseUtils;
+
+/**
+ * The {@link ShardedDataStore} is a read-only store that does not hold any data itself. The rows are partitioned into shards (bloom boxes with the same
+ * configuration), each served by a {@link BloomBoxShardServer}, typically in a separate process or on a separate machine.
+ * <p>
+ * Dispatching a query delegate means <i>scatter-gather</i>: the store creates a spawn of the delegate per shard and sends it (serialized) to all shard servers
+ * in parallel. Every shard server executes the spawn against its local store and returns the shard's counts. The spawns get merged into the original delegate
+ * in shard order (see {@link QueryDelegate#addSpawnResults(QueryDelegate)}), exactly like the partitions of a parallel execution within a
+ * {@link DefaultDataStore}.
+ * <p>
+ * Consequently, any {@link BloomBoxQueryRunner} on top of this store (see {@link #createBloomBox(List)}) works as usual, and upscaling gets applied centrally
+ * to the merged counts. This store cannot sample, a query requesting sampling will be executed as a full scan across all shards.
+ * <p>
+ * The shard connections are opened lazily and kept open until {@link #close()}. The responses of the shards get filtered like the requests on the server side
+ * (see {@link ShardStreamFilter}).
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class ShardedDataStore implements BloomBoxDataStore {
+
+    private static final long serialVersionUID = -3310637264738216180L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardedDataStore.class);
+
+    /**
+     * thread-pool for talking to the shards, shared by all sharded stores, the threads are mainly waiting for the shard servers
+     */
+    private static ExecutorService executorService = null;
+
+    /**
+     * shard server addresses (<code>host:port</code>), order matters
+     */
+    private final ArrayList<String> shardAddresses;
+
+    /**
+     * number of rows per shard (same order as the addresses)
+     */
+    private final long[] shardNumberOfRows;
+
+    /**
+     * filter configuration common to all shards
+     */
+    private final BloomFilterConfig config;
+
+    /**
+     * total number of rows (sum of all shards)
+     */
+    private final long numberOfRows;
+
+    /**
+     * number of longs representing a vector
+     */
+    private final int vectorSize;
+
+    /**
+     * connections to the shard servers (same order as the addresses)
+     */
+    private final transient ShardConnection[] connections;
+
+    /**
+     * Part of the {@link BloomBoxDataStore} contract, a method to restore a previously serialized store from a stream.
+     * 
+     * @param is source stream (ignored, the store only consists of the header)
+     * @param header {@link ShardedDataStoreHeader}
+     * @param envSettings global settings
+     * @return restored data store (connected to the shards)
+     */
+    @SuppressWarnings("java:S1172")
+    public static BloomBoxDataStore restore(InputStream is, DataStoreHeader header, Map<String, String> envSettings) {
+        try {
+            ShardedDataStore res = new ShardedDataStore(((ShardedDataStoreHeader) header).getShardAddresses());
+            if (res.getNumberOfRows() != header.getNumberOfRows() || res.getVectorSize() != header.getVectorSize()) {
+                LOGGER.warn("Shards have changed since serialization, expected: {}, found: {}", header, res);
+            }
+            return res;
+        }
+        catch (BloomBoxException ex) {
+            throw ex;
+        }
+        catch (RuntimeException ex) {
+            throw new BloomBoxException(String.format("Error restoring data store %s.", header), ex);
+        }
+    }
+
+    /**
+     * Connects to the given shard servers and creates a (sealed) bloom box on top of them
+     * 
+     * @param shardAddresses shard server addresses (<code>host:port</code>)
+     * @return box for querying all shards as one
+     */
+    public static BloomBox createBloomBox(List<String> shardAddresses) {
+        ShardedDataStore dataStore = new ShardedDataStore(shardAddresses);
+        return new BloomBox(dataStore.config, dataStore);
+    }
+
+    /**
+     * Connects to the given shard servers and verifies that all shards have the same configuration
+     * 
+     * @param shardAddresses shard server addresses (<code>host:port</code>), NOT NULL, NOT EMPTY
+     */
+    public ShardedDataStore(List<String> shardAddresses) {
+        if (shardAddresses == null || shardAddresses.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard address required, given: " + shardAddresses);
+        }
+        this.shardAddresses = new ArrayList<>(shardAddresses);
+        this.connections = new ShardConnection[shardAddresses.size()];
+        this.shardNumberOfRows = new long[shardAddresses.size()];
+        BloomFilterConfig commonConfig = null;
+        int commonVectorSize = -1;
+        long totalNumberOfRows = 0;
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = new ShardConnection(this.shardAddresses.get(i));
+            Object[] headers = connections[i].requestHeaders();
+            BloomBoxHeader bloomBoxHeader = (BloomBoxHeader) headers[0];
+            DataStoreHeader dataStoreHeader = (DataStoreHeader) headers[1];
+            BloomFilterConfig shardConfig = BloomFilterConfig.createUnchecked(bloomBoxHeader.getRequiredNumberOfBitsM(),
+                    bloomBoxHeader.getNumberOfInsertedElementsN(), bloomBoxHeader.getFalsePositiveRateEpsilon(), bloomBoxHeader.getNumberOfHashesK());
+            if (commonConfig == null) {
+                commonConfig = shardConfig;
+                commonVectorSize = dataStoreHeader.getVectorSize();
+            }
+            else if (!commonConfig.equals(shardConfig) || commonVectorSize != dataStoreHeader.getVectorSize()) {
+                closeConnections(connections);
+                throw new BloomBoxException(String.format("Incompatible shard %s: expected %s with vectorSize=%d, found %s with vectorSize=%d.",
+                        connections[i].address, commonConfig, commonVectorSize, shardConfig, dataStoreHeader.getVectorSize()));
+            }
+            shardNumberOfRows[i] = dataStoreHeader.getNumberOfRows();
+            totalNumberOfRows = totalNumberOfRows + dataStoreHeader.getNumberOfRows();
+        }
+        this.config = commonConfig;
+        this.vectorSize = commonVectorSize;
+        this.numberOfRows = totalNumberOfRows;
+        LOGGER.debug("Connected to {} shards with {} rows: {}", connections.length, numberOfRows, this.shardAddresses);
+    }
+
+    /**
+     * @return filter configuration common to all shards
+     */
+    public BloomFilterConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return shard server addresses (<code>host:port</code>)
+     */
+    public List<String> getShardAddresses() {
+        return Collections.unmodifiableList(shardAddresses);
+    }
+
+    /**
+     * @param shardIdx position of the shard
+     * @return number of rows in the given shard
+     */
+    public long getShardNumberOfRows(int shardIdx) {
+        return shardNumberOfRows[shardIdx];
+    }
+
+    @Override
+    public long getNumberOfRows() {
+        return numberOfRows;
+    }
+
+    @Override
+    public int getVectorSize() {
+        return vectorSize;
+    }
+
+    @Override
+    @SuppressWarnings("resource")
+    public <Q extends QueryDelegate<Q>> void dispatch(Q queryDelegate) {
+        LOGGER.debug("Dispatching query delegate {} to {} shards ...", queryDelegate, connections.length);
+        List<ShardJob<Q>> shardJobs = new ArrayList<>(connections.length);
+        CountDownLatch completionLatch = new CountDownLatch(connections.length);
+        ExecutorService executorServiceRef = getExecutorService();
+        for (ShardConnection connection : connections) {
+            ShardJob<Q> job = new ShardJob<>(queryDelegate, connection, completionLatch);
+            shardJobs.add(job);
+            executorServiceRef.execute(job);
+        }
+        try {
+            completionLatch.await();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BloomBoxException("Unexpected interruption processing query delegate " + queryDelegate.toString(), ex);
+        }
+        shardJobs.stream().forEach(job -> job.transferSpawnResults(queryDelegate));
+        LOGGER.debug("Execution of query delegate {} on {} shards completed.", queryDelegate, connections.length);
+    }
+
+    @Override
+    public boolean ensureIsOpenForFeeding() {
+        return false;
+    }
+
+    @Override
+    public void notifyFeedingComplete() {
+        // nothing to do
+    }
+
+    @Override
+    public void feedRow(long[] rowVector, long rowIdx) {
+        throw new UnsupportedOperationException(this.getClass().getSimpleName() + " is read-only, feed the shards individually.");
+    }
+
+    /**
+     * Closes the connections to the shard servers (the servers keep running)
+     */
+    @Override
+    public void close() {
+        closeConnections(connections);
+    }
+
+    /**
+     * @param connections connections to be closed, null-elements are ignored
+     */
+    private static void closeConnections(ShardConnection[] connections) {
+        for (ShardConnection connection : connections) {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the header only (shard addresses), the data remains on the shards.
+     */
+    @Override
+    public void serializeToStream(OutputStream os) throws IOException {
+        DataStoreHeader header = new ShardedDataStoreHeader(BloomBox.VERSION, numberOfRows, vectorSize, this.getClass().getName(), shardAddresses);
+        try {
+            HeaderUtil.writeDataStoreHeader(os, header);
+        }
+        catch (IOException | RuntimeException ex) {
+            throw new BloomBoxException(String.format("Error writing sharded data store to stream (%s).", header), ex);
+        }
+    }
+
+    /**
+     * @return the executor service to be used for talking to the shards
+     */
+    private static synchronized ExecutorService getExecutorService() {
+        if (executorService == null) {
+            // Using daemon threads is a lazy habit, so we don't have to worry about shutdown
+            executorService = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r);
+                t.setName("BBX-Shard-Client:@" + Integer.toHexString(t.hashCode()));
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return executorService;
+    }
+
+    /**
+     * @return de-serialized store
+     */
+    Object readResolve() {
+        // reconnect, the connections are transient
+        return new ShardedDataStore(shardAddresses);
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + " [numberOfRows=" + numberOfRows + ", vectorSize=" + vectorSize + ", shardAddresses=" + shardAddresses + "]";
+    }
+
+    /**
+     * Persistent connection to a single shard server, requests on the same connection are serialized.
+     */
+    private static final class ShardConnection {
+
+        /**
+         * server address (<code>host:port</code>)
+         */
+        private final String address;
+
+        /**
+         * host name of the shard server
+         */
+        private final String host;
+
+        /**
+         * port of the shard server
+         */
+        private final int port;
+
+        /**
+         * socket, null if not connected
+         */
+        private Socket socket;
+
+        /**
+         * request stream
+         */
+        private ObjectOutputStream oos;
+
+        /**
+         * response stream
+         */
+        private ObjectInputStream ois;
+
+        /**
+         * @param address <code>host:port</code>
+         */
+        ShardConnection(String address) {
+            int colonIdx = address == null ? -1 : address.lastIndexOf(':');
+            if (colonIdx < 1 || colonIdx == address.length() - 1) {
+                throw new IllegalArgumentException("Shard address must be of the form host:port, given: " + address);
+            }
+            this.address = address;
+            this.host = address.substring(0, colonIdx);
+            try {
+                this.port = Integer.parseInt(address.substring(colonIdx + 1));
+            }
+            catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Shard address must be of the form host:port, given: " + address, ex);
+            }
+        }
+
+        /**
+         * @return array with {@link BloomBoxHeader} and {@link DataStoreHeader} of the shard
+         */
+        synchronized Object[] requestHeaders() {
+            try {
+                ensureConnected();
+                oos.writeObject(BloomBoxShardServer.CMD_HEADER);
+                oos.flush();
+                oos.reset();
+                return new Object[] { ois.readObject(), ois.readObject() };
+            }
+            catch (IOException | ClassNotFoundException | RuntimeException ex) {
+                close();
+                throw new BloomBoxException(String.format("Error requesting headers from shard %s.", address), ex);
+            }
+        }
+
+        /**
+         * Sends the given delegate to the shard and waits for the shard's result
+         * 
+         * @param <Q> delegate type
+         * @param queryDelegate delegate to be executed (spawn)
+         * @return delegate with the shard's counts
+         */
+        @SuppressWarnings("unchecked")
+        synchronized <Q extends QueryDelegate<Q>> Q execute(Q queryDelegate) {
+            Object response = null;
+            try {
+                ensureConnected();
+                oos.writeObject(queryDelegate);
+                oos.flush();
+                oos.reset();
+                response = ois.readObject();
+            }
+            catch (IOException | ClassNotFoundException | RuntimeException ex) {
+                close();
+                throw new BloomBoxException(String.format("Error executing query delegate %s on shard %s.", queryDelegate, address), ex);
+            }
+            if (response instanceof RuntimeException ex) {
+                throw new BloomBoxException(String.format("Shard %s reported an error executing query delegate %s.", address, queryDelegate), ex);
+            }
+            return (Q) response;
+        }
+
+        /**
+         * Opens the connection if not yet connected
+         * 
+         * @throws IOException on connection error
+         */
+        private void ensureConnected() throws IOException {
+            if (socket == null) {
+                socket = new Socket(host, port);
+                socket.setTcpNoDelay(true);
+                oos = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                oos.flush();
+                ois = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+                ois.setObjectInputFilter(ShardStreamFilter.INSTANCE);
+            }
+        }
+
+        /**
+         * Closes the connection (if open)
+         */
+        synchronized void close() {
+            CloseUtils.closeResourceCatch(oos, ois, socket);
+            socket = null;
+            oos = null;
+            ois = null;
+        }
+
+    }
+
+    /**
+     * Encapsulates the execution of a spawn on a single shard
+     *
+     * @param <Q> the concrete delegate type
+     */
+    private static class ShardJob<Q extends QueryDelegate<Q>> implements Runnable {
+
+        /**
+         * the spawned delegate sent to the shard
+         */
+        private final Q queryDelegate;
+
+        /**
+         * shard to execute the delegate
+         */
+        private final ShardConnection connection;
+
+        /**
+         * latch to wait for completion of all jobs of a query
+         */
+        private final CountDownLatch completionLatch;
+
+        /**
+         * delegate returned by the shard
+         */
+        private Q shardResult = null;
+
+        /**
+         * hard execution error, if any
+         */
+        private RuntimeException error = null;
+
+        /**
+         * @param queryDelegate delegate (to be spawned)
+         * @param connection shard to execute the delegate
+         * @param completionLatch latch to wait for completion of all jobs of a query
+         */
+        ShardJob(Q queryDelegate, ShardConnection connection, CountDownLatch completionLatch) {
+            this.queryDelegate = queryDelegate.createSpawn();
+            this.connection = connection;
+            this.completionLatch = completionLatch;
+        }
+
+        @Override
+        public void run() {
+            try {
+                shardResult = connection.execute(queryDelegate);
+            }
+            catch (RuntimeException ex) {
+                this.error = ex;
+            }
+            finally {
+                this.completionLatch.countDown();
+            }
+        }
+
+        /**
+         * Merges the shard's results into the given original delegate
+         * 
+         * @param queryDelegate the original delegate (destination)
+         */
+        void transferSpawnResults(Q queryDelegate) {
+            if (error != null) {
+                throw error;
+            }
+            queryDelegate.addSpawnResults(shardResult);
+        }
+
+    }
+
+}
@@ -0,0 +1,76 @@
+//@formatter:off
+/*
+ * ShardedDataStoreHeader
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.ohbf.bloombox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link ShardedDataStoreHeader} adds the addresses of the shard servers to the {@link DataStoreHeader}.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class ShardedDataStoreHeader extends DataStoreHeader {
+
+    private static final long serialVersionUID = 2395512760813290573L;
+
+    /**
+     * shard server addresses (<code>host:port</code>), order matters
+     */
+    private ArrayList<String> shardAddresses = new ArrayList<>();
+
+    public ShardedDataStoreHeader() {
+        // default constructor
+    }
+
+    /**
+     * @param version box version, see {@link BloomBox#VERSION}
+     * @param numberOfRows Capacity of the store (number of records, sum of all shards)
+     * @param vectorSize size of a single bloom filter vector counted in longs
+     * @param dataStoreClass fully qualified name of the implementation class of the store
+     * @param shardAddresses addresses of the shard servers (<code>host:port</code>)
+     */
+    public ShardedDataStoreHeader(String version, long numberOfRows, int vectorSize, String dataStoreClass, List<String> shardAddresses) {
+        super(version, numberOfRows, vectorSize, dataStoreClass);
+        this.shardAddresses = new ArrayList<>(shardAddresses);
+    }
+
+    /**
+     * @return shard server addresses (<code>host:port</code>)
+     */
+    public List<String> getShardAddresses() {
+        return shardAddresses;
+    }
+
+    /**
+     * @param shardAddresses shard server addresses (<code>host:port</code>)
+     */
+    public void setShardAddresses(List<String> shardAddresses) {
+        this.shardAddresses = new ArrayList<>(shardAddresses);
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + " [version=" + this.getVersion() + ", numberOfRows=" + this.getNumberOfRows() + ", vectorSize="
+                + this.getVectorSize() + ", dataStoreClass=" + this.getDataStoreClass() + ", shardAddresses=" + shardAddresses + "]";
+    }
+
+}
@@ -27,12 +27,25 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.calamanari.pk.ohbf.bloombox.bbq.BbqExpression;
+import de.calamanari.pk.ohbf.bloombox.bbq.BinaryMatchExpression;
+import de.calamanari.pk.ohbf.bloombox.bbq.BitSlicedRowBlock;
+import de.calamanari.pk.ohbf.bloombox.bbq.RowBlock;
+import de.calamanari.pk.ohbf.bloombox.bbq.RowMajorRowBlock;
+import de.calamanari.pk.ohbf.bloombox.bbq.RowMaskCache;
+import de.calamanari.pk.ohbf.bloombox.bbq.SelectivityTracker;
+
 /**
  * A {@link SimpleQueryDelegate} decouples both the {@link BloomBoxQueryRunner} and the {@link BloomBoxDataStore} from the details of the query execution and
  * the state.
  * <p>
  * <b>Note:</b> On the same delegate calls to {@link #execute(long[], int)} and {@link #execute(long[], int, DpavProbabilityFetcher)} must not be mixed, because
  * this leads to erratic result counts.
+ * <p>
+ * Blocks of records ({@link #executeBlock(long[], int, int, int)}) are evaluated bit-parallel: every expression yields a mask for up to 64 records, so
+ * AND/OR/NOT are single bitwise operations and sub query counts only need to be AND-ed with the base query's mask. With many distinct bloom filter patterns
+ * in the bundle the block gets transposed first ({@link BitSlicedRowBlock}), so that each pattern match costs a few operations for all rows of the block.
+ * Only if any query requests {@link BloomBoxOption#METRICS} (per-row node statistics) the records of a block are processed one by one.
  * 
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  *
@@ -43,10 +56,40 @@ public class SimpleQueryDelegate implements QueryDelegate<SimpleQueryDelegate> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SimpleQueryDelegate.class);
 
+    /**
+     * minimum number of distinct bloom filter patterns (match expressions) in the bundle to transpose blocks into bit-sliced layout before matching
+     */
+    static final int BIT_SLICING_MIN_NUMBER_OF_PATTERNS = 4;
+
     /**
      * temporary results while processing several expressions on a single record, the key is the expression-id, the value is the boolean match result
      */
-    private final Map<Long, Boolean> resultCache = new HashMap<>();
+    private final Map<Long, Boolean> resultCache;
+
+    /**
+     * counts the node-level figures while matching row by row, null unless any query requests {@link BloomBoxOption#METRICS}
+     */
+    private final ExpressionMetricsCollector metricsCollector;
+
+    /**
+     * temporary row masks while processing several expressions on a block of records, null if block execution is disabled
+     */
+    private final transient RowMaskCache maskCache;
+
+    /**
+     * re-used view on the current block of records (row-major) or null
+     */
+    private final transient RowMajorRowBlock rowMajorBlock;
+
+    /**
+     * re-used transposed view on the current block of records or null if there are too few patterns to justify the transposition
+     */
+    private final transient BitSlicedRowBlock bitSlicedBlock;
+
+    /**
+     * adapts the evaluation order of AND/OR members to the observed match rates, null if there is nothing to reorder or metrics are requested
+     */
+    private transient SelectivityTracker selectivityTracker;
 
     /**
      * a flag per query that tells whether it is broken, this way a we can avoid executing an erratic query multiple times
@@ -63,8 +106,14 @@ public class SimpleQueryDelegate implements QueryDelegate<SimpleQueryDelegate> {
      */
     private final List<BloomBoxQueryResult> results;
 
+    /**
+     * number of spawns created from this delegate (parallel execution)
+     */
+    private int numberOfSpawns = 0;
+
     @Override
     public SimpleQueryDelegate createSpawn() {
+        numberOfSpawns++;
         return new SimpleQueryDelegate(queries, this.results.stream().map(BloomBoxQueryResult::createSpawn).toList(), true);
     }
 
@@ -75,6 +124,9 @@ public class SimpleQueryDelegate implements QueryDelegate<SimpleQueryDelegate> {
             BloomBoxQueryResult result = results.get(i);
             result.addResultData(spawnResults.get(i));
         }
+        if (metricsCollector != null && spawn.metricsCollector != null) {
+            metricsCollector.addCounters(spawn.metricsCollector);
+        }
     }
 
     /**
@@ -86,6 +138,19 @@ public class SimpleQueryDelegate implements QueryDelegate<SimpleQueryDelegate> {
         this.queries = queries;
         this.queryInErrorFlags = new boolean[queries.length];
         this.results = results;
+        boolean metricsRequested = Arrays.stream(queries).map(InternalQuery::getQueryOptions).anyMatch(BloomBoxOption.METRICS::isEnabled);
+        ExpressionResultCache expressionResultCache = new ExpressionResultCache();
+        this.resultCache = expressionResultCache;
+        this.metricsCollector = metricsRequested ? new ExpressionMetricsCollector() : null;
+        this.maskCache = metricsRequested ? null : new RowMaskCache();
+        this.rowMajorBlock = metricsRequested ? null : new RowMajorRowBlock();
+        this.bitSlicedBlock = metricsRequested || countDistinctPatterns(queries) < BIT_SLICING_MIN_NUMBER_OF_PATTERNS ? null : new BitSlicedRowBlock();
+        this.selectivityTracker = metricsRequested ? null : SelectivityTracker.create(collectExpressions(queries).values());
+        if (selectivityTracker != null) {
+            // the order belongs to this delegate, the (shared) expressions remain untouched
+            expressionResultCache.setMemberEvaluationOrder(selectivityTracker.getMemberEvaluationOrder());
+            maskCache.setMemberEvaluationOrder(selectivityTracker.getMemberEvaluationOrder());
+        }
         if (!quiet) {
             logQueriesToProtocolIfRequired();
         }
@@ -105,7 +170,7 @@ public class SimpleQueryDelegate implements QueryDelegate<SimpleQueryDelegate> {
         for (int i = 0; i < queries.length; i++) {
             try {
                 if (!queryInErrorFlags[i]) {
-                    queries[i].execute(vector, startPos, resultCache, results.get(i));
+                    queries[i].execute(vector, startPos, resultCache, metricsCollector, results.get(i));
                 }
             }
             catch (RuntimeException ex) {
@@ -116,6 +181,104 @@ public class SimpleQueryDelegate implements QueryDelegate<SimpleQueryDelegate> {
                         String.format("Unable to execute query '%s' (%s)%ncause: %s", queries[i].getName(), queries[i].getBaseQuery().getSourceQuery(), msg)));
             }
         }
+        if (selectivityTracker != null) {
+            trackRowSelectivity(vector, startPos);
+        }
+    }
+
+    /**
+     * @param queries all queries of the bundle
+     * @return number of distinct bloom filter patterns to be matched per row
+     */
+    private static int countDistinctPatterns(InternalQuery[] queries) {
+        return (int) collectExpressions(queries).values().stream().filter(BinaryMatchExpression.class::isInstance).count();
+    }
+
+    /**
+     * @param queries all queries of the bundle
+     * @return all distinct expressions and sub-expressions of the queries and their sub queries, key is the expression-id
+     */
+    private static Map<Long, BbqExpression> collectExpressions(InternalQuery[] queries) {
+        Map<Long, BbqExpression> expressions = new HashMap<>();
+        for (InternalQuery query : queries) {
+            if (!(query instanceof ErrorPlaceholderQuery)) {
+                query.getBaseQuery().getExpression().collectUniqueDepthFirst(expressions);
+                Arrays.stream(query.subQueries).forEach(subQuery -> subQuery.getExpression().collectUniqueDepthFirst(expressions));
+            }
+        }
+        return expressions;
+    }
+
+    @Override
+    public void executeBlock(long[] vectors, int startPos, int vectorSize, int numberOfRows) {
+        if (maskCache == null) {
+            QueryDelegate.super.executeBlock(vectors, startPos, vectorSize, numberOfRows);
+            return;
+        }
+        RowBlock block = null;
+        if (bitSlicedBlock != null) {
+            bitSlicedBlock.loadRowMajor(vectors, startPos, vectorSize, numberOfRows);
+            block = bitSlicedBlock;
+        }
+        else {
+            rowMajorBlock.reset(vectors, startPos, vectorSize, numberOfRows);
+            block = rowMajorBlock;
+        }
+        maskCache.clear();
+        for (int i = 0; i < queries.length; i++) {
+            try {
+                if (!queryInErrorFlags[i]) {
+                    queries[i].executeBlock(block, maskCache, results.get(i));
+                }
+            }
+            catch (RuntimeException ex) {
+                queryInErrorFlags[i] = true;
+                String msg = BbxMessage.ERR_COMMON.format(ex);
+                LOGGER.error("Unable to execute query {}: {}", queries[i], msg, ex);
+                results.get(i).setErrorMessage(BbxMessage.ERR_QUERY_EXECUTION.format(
+                        String.format("Unable to execute query '%s' (%s)%ncause: %s", queries[i].getName(), queries[i].getBaseQuery().getSourceQuery(), msg)));
+            }
+        }
+        if (selectivityTracker != null) {
+            trackBlockSelectivity(block);
+        }
+    }
+
+    /**
+     * Passes the row to the {@link #selectivityTracker}, an error disables the reordering for the rest of the scan but does not affect any query.
+     * 
+     * @param vector data
+     * @param startPos start position of the row in the data
+     */
+    private void trackRowSelectivity(long[] vector, int startPos) {
+        try {
+            selectivityTracker.afterRow(vector, startPos, resultCache);
+        }
+        catch (RuntimeException ex) {
+            disableSelectivityTracking(ex);
+        }
+    }
+
+    /**
+     * Passes the block to the {@link #selectivityTracker}, an error disables the reordering for the rest of the scan but does not affect any query.
+     * 
+     * @param block current block
+     */
+    private void trackBlockSelectivity(RowBlock block) {
+        try {
+            selectivityTracker.afterBlock(block, maskCache);
+        }
+        catch (RuntimeException ex) {
+            disableSelectivityTracking(ex);
+        }
+    }
+
+    /**
+     * @param ex problem that occurred during tracking
+     */
+    private void disableSelectivityTracking(RuntimeException ex) {
+        LOGGER.warn("Selectivity tracking disabled after error: {}", BbxMessage.ERR_COMMON.format(ex), ex);
+        selectivityTracker = null;
     }
 
     @Override
@@ -125,7 +288,7 @@ public class SimpleQueryDelegate implements QueryDelegate<SimpleQueryDelegate> {
         for (int i = 0; i < queries.length; i++) {
             try {
                 if (!queryInErrorFlags[i]) {
-                    queries[i].execute(vector, startPos, probabilities, resultCache, results.get(i));
+                    queries[i].execute(vector, startPos, probabilities, resultCache, metricsCollector, results.get(i));
                 }
             }
             catch (RuntimeException ex) {
@@ -136,6 +299,9 @@ public class SimpleQueryDelegate implements QueryDelegate<SimpleQueryDelegate> {
                         String.format("Unable to execute query '%s' (%s)%ncause: %s", queries[i].getName(), queries[i].getBaseQuery().getSourceQuery(), msg)));
             }
         }
+        if (selectivityTracker != null) {
+            trackRowSelectivity(vector, startPos);
+        }
     }
 
     /**
@@ -152,6 +318,24 @@ public class SimpleQueryDelegate implements QueryDelegate<SimpleQueryDelegate> {
         return resultCache;
     }
 
+    /**
+     * @return number of threads that executed this delegate or its spawns
+     */
+    public int getNumberOfThreads() {
+        return Math.max(1, numberOfSpawns);
+    }
+
+    /**
+     * Transfers the expression-level counters (only available if any query requested {@link BloomBoxOption#METRICS}) to the given metrics
+     * 
+     * @param metrics destination
+     */
+    public void transferExpressionMetrics(QueryBundleMetrics metrics) {
+        if (metricsCollector != null) {
+            metricsCollector.transferCounters(collectExpressions(queries), metrics);
+        }
+    }
+
     @Override
     public boolean[] getQueryInErrorFlags() {
         return queryInErrorFlags;
@@ -74,6 +74,42 @@ public class AndExpression implements BbqExpression {
         return res;
     }
 
+    @Override
+    @SuppressWarnings({ "java:S3824" })
+    public boolean match(long[] source, int startPos, Map<Long, Boolean> resultCache, ExpressionMetricsSink metricsSink) {
+        Boolean res = resultCache.get(expressionId);
+        metricsSink.recordVisit(expressionId, res != null);
+        if (res == null) {
+            res = false;
+            int numberOfChildVisits = 0;
+            // always the canonical order, so the node statistics do not depend on any reordering
+            for (BbqExpression expression : expressions) {
+                numberOfChildVisits++;
+                res = expression.match(source, startPos, resultCache, metricsSink);
+                if (!res) {
+                    break;
+                }
+            }
+            metricsSink.recordEvaluation(expressionId, res, numberOfChildVisits);
+            resultCache.put(expressionId, res);
+        }
+        return res;
+    }
+
+    @Override
+    public long matchBlock(RowBlock block, RowMaskCache maskCache) {
+        if (maskCache.contains(expressionId)) {
+            return maskCache.get(expressionId);
+        }
+        long res = expressions.length == 0 ? 0L : block.getRowMask();
+        BbqExpression[] members = MemberEvaluationOrder.resolve(maskCache, expressionId, expressions);
+        for (int i = 0; i < members.length && res != 0L; i++) {
+            res = res & members[i].matchBlock(block, maskCache);
+        }
+        maskCache.put(expressionId, res);
+        return res;
+    }
+
     @Override
     public double computeMatchProbability(long rootExpressionId, DpavProbabilityFetcher probabilities) {
 
@@ -97,7 +133,7 @@ public class AndExpression implements BbqExpression {
      */
     private boolean lazyMatch(long[] source, int startPos, Map<Long, Boolean> resultCache) {
         boolean res = false;
-        for (BbqExpression expression : expressions) {
+        for (BbqExpression expression : MemberEvaluationOrder.resolve(resultCache, expressionId, expressions)) {
             res = expression.match(source, startPos, resultCache);
             if (!res) {
                 break;
@@ -75,6 +75,11 @@ public enum BbqBooleanLiteral implements BbqExpression {
         return booleanValue;
     }
 
+    @Override
+    public long matchBlock(RowBlock block, RowMaskCache maskCache) {
+        return booleanValue ? block.getRowMask() : 0L;
+    }
+
     @Override
     public double computeMatchProbability(long rootExpressionId, DpavProbabilityFetcher probabilities) {
         return booleanValue ? 1.0 : 0.0;
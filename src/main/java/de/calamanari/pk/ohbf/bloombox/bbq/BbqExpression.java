@@ -50,6 +50,39 @@ public interface BbqExpression extends Serializable {
      */
     public boolean match(long[] source, int startPos, Map<Long, Boolean> resultCache);
 
+    /**
+     * Bit-parallel variant of {@link #match(long[], int, Map)}, evaluates this expression for all rows of the given block at once.
+     * 
+     * @param block up to 64 rows to match the expression against
+     * @param maskCache to avoid repetitive matching of the same block
+     * @return row mask, bit <code>i</code> is set if row <code>i</code> of the block matched
+     */
+    public long matchBlock(RowBlock block, RowMaskCache maskCache);
+
+    /**
+     * Variant of {@link #match(long[], int, Map)} that reports the visit and the evaluation of this expression and all visited members to the given sink.
+     * <p>
+     * The default implementation is suitable for expressions without members, composite expressions must override this method to pass the sink to their
+     * members.
+     * 
+     * @param source vector to match the expression against
+     * @param startPos position in the source to start
+     * @param resultCache to avoid repetitive matching to the same content
+     * @param metricsSink receives the node-level figures
+     * @return true if the content matched, otherwise false
+     */
+    @SuppressWarnings({ "java:S3824" })
+    public default boolean match(long[] source, int startPos, Map<Long, Boolean> resultCache, ExpressionMetricsSink metricsSink) {
+        long expressionId = getExpressionId();
+        Boolean res = resultCache.get(expressionId);
+        metricsSink.recordVisit(expressionId, res != null);
+        if (res == null) {
+            res = match(source, startPos, resultCache);
+            metricsSink.recordEvaluation(expressionId, res, 0);
+        }
+        return res;
+    }
+
     /**
      * Computes the probability of a {@link #match(long[], int, Map)}
      * <p>
@@ -73,7 +73,31 @@ public class BinaryMatchExpression implements BbqExpression, PbDpavDictionaryAwa
     public BinaryMatchExpression(String argName, String argValue, long[] pattern) {
         this.dpav = new Dpav(argName, argValue);
         this.pattern = Arrays.copyOf(pattern, pattern.length);
-        this.expressionId = ExpressionIdUtil.createExpressionId("BinaryMatch" + this.getDpav().getDpavId(), this.pattern);
+        this.expressionId = createExpressionId(this.dpav, this.pattern);
+    }
+
+    /**
+     * Creates an expression from a pre-computed pattern without copying it, see {@link BloomPatternCache}
+     * 
+     * @param dpav key/value pair
+     * @param pattern bloom filter vector to match against the box, must not be modified afterwards
+     * @param expressionId id created by {@link #createExpressionId(Dpav, long[])} for the given DPAV and pattern
+     */
+    BinaryMatchExpression(Dpav dpav, long[] pattern, long expressionId) {
+        this.dpav = dpav;
+        this.pattern = pattern;
+        this.expressionId = expressionId;
+    }
+
+    /**
+     * Computes the id of a match expression
+     * 
+     * @param dpav key/value pair
+     * @param pattern bloom filter vector to match against the box
+     * @return expression id
+     */
+    static long createExpressionId(Dpav dpav, long[] pattern) {
+        return ExpressionIdUtil.createExpressionId("BinaryMatch" + dpav.getDpavId(), pattern);
     }
 
     /**
@@ -115,6 +139,16 @@ public class BinaryMatchExpression implements BbqExpression, PbDpavDictionaryAwa
                 _ -> SimpleFixedLengthBitVector.compareAND(source, startPos, this.pattern, 0, this.pattern.length));
     }
 
+    @Override
+    public long matchBlock(RowBlock block, RowMaskCache maskCache) {
+        if (maskCache.contains(expressionId)) {
+            return maskCache.get(expressionId);
+        }
+        long res = block.matchPattern(this.pattern);
+        maskCache.put(expressionId, res);
+        return res;
+    }
+
     @Override
     public double computeMatchProbability(long rootExpressionId, DpavProbabilityFetcher probabilities) {
         return probabilities.fetchDpavProbability(rootExpressionId, this.lpDpavId);
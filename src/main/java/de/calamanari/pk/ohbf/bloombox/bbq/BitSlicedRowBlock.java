@@ -0,0 +1,146 @@
+//@formatter:off
+/*
+ * BitSlicedRowBlock
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox.bbq;
+
+/**
+ * The {@link BitSlicedRowBlock} is a {@link RowBlock} in <i>bit-sliced</i> (column-major) layout: for every bit of the row vectors there is one long that tells
+ * which of the up to 64 rows have this bit set. Matching a pattern is then just AND-ing the slices of the pattern bits, independent from the number of rows.
+ * <p>
+ * The slices can either be provided directly (stores with a bit-sliced layout, see {@link #reset(long[], int, int, int)}) or they can be created from row
+ * vectors ({@link #loadRowMajor(long[], int, int, int)}). Transposing a block costs a few operations per vector bit, so this only pays off if many patterns
+ * get matched against the same block.
+ * <p>
+ * The instance is mutable and meant to be re-used for all blocks of a scan. It is not safe for concurrent use.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public final class BitSlicedRowBlock implements RowBlock {
+
+    /**
+     * the slices, for the bit <code>b</code> of the vector long <code>w</code> the slice is at <code>startPos + w * 64 + b</code>
+     */
+    private long[] slices;
+
+    /**
+     * position of the first slice
+     */
+    private int startPos;
+
+    /**
+     * number of longs per row vector
+     */
+    private int vectorSize;
+
+    /**
+     * number of rows in the current block
+     */
+    private int numberOfRows;
+
+    /**
+     * buffer for transposing row vectors, see {@link #loadRowMajor(long[], int, int, int)}
+     */
+    private long[] transposeBuffer = new long[0];
+
+    /**
+     * Points this block to the given slices (bit-sliced layout)
+     * 
+     * @param slices array with <code>vectorSize * 64</code> slices starting at startPos, bit <code>i</code> of a slice belongs to row <code>i</code>
+     * @param startPos position of the first slice
+     * @param vectorSize number of longs per row vector
+     * @param numberOfRows 1 .. {@value RowBlock#MAX_NUMBER_OF_ROWS}
+     */
+    public void reset(long[] slices, int startPos, int vectorSize, int numberOfRows) {
+        if (numberOfRows < 1 || numberOfRows > MAX_NUMBER_OF_ROWS) {
+            throw new IllegalArgumentException(String.format("numberOfRows must be in range [1..%d], given: %d", MAX_NUMBER_OF_ROWS, numberOfRows));
+        }
+        this.slices = slices;
+        this.startPos = startPos;
+        this.vectorSize = vectorSize;
+        this.numberOfRows = numberOfRows;
+    }
+
+    /**
+     * Creates the slices from consecutive row vectors (row-major layout of the data stores)
+     * 
+     * @param source array with the row vectors
+     * @param sourcePos position of the first row vector in the source
+     * @param vectorSize number of longs per row vector
+     * @param numberOfRows 1 .. {@value RowBlock#MAX_NUMBER_OF_ROWS}
+     */
+    public void loadRowMajor(long[] source, int sourcePos, int vectorSize, int numberOfRows) {
+        int requiredSize = vectorSize * MAX_NUMBER_OF_ROWS;
+        if (transposeBuffer.length != requiredSize) {
+            transposeBuffer = new long[requiredSize];
+        }
+        reset(transposeBuffer, 0, vectorSize, numberOfRows);
+        for (int w = 0; w < vectorSize; w++) {
+            int offset = w * MAX_NUMBER_OF_ROWS;
+            int pos = sourcePos + w;
+            for (int i = 0; i < numberOfRows; i++) {
+                transposeBuffer[offset + i] = source[pos];
+                pos = pos + vectorSize;
+            }
+            for (int i = numberOfRows; i < MAX_NUMBER_OF_ROWS; i++) {
+                transposeBuffer[offset + i] = 0L;
+            }
+            transpose64(transposeBuffer, offset);
+        }
+    }
+
+    /**
+     * Transposes the 64x64 bit matrix in place (bit <code>c</code> of <code>matrix[offset + r]</code> becomes bit <code>r</code> of
+     * <code>matrix[offset + c]</code>) by recursively swapping the off-diagonal blocks.
+     * 
+     * @param matrix 64 longs starting at offset
+     * @param offset position of the first row
+     */
+    static void transpose64(long[] matrix, int offset) {
+        long m = 0x00000000FFFFFFFFL;
+        for (int j = 32; j != 0; j = j >>> 1, m = m ^ (m << j)) {
+            for (int k = 0; k < MAX_NUMBER_OF_ROWS; k = ((k | j) + 1) & ~j) {
+                long t = ((matrix[offset + k] >>> j) ^ matrix[offset + (k | j)]) & m;
+                matrix[offset + k] = matrix[offset + k] ^ (t << j);
+                matrix[offset + (k | j)] = matrix[offset + (k | j)] ^ t;
+            }
+        }
+    }
+
+    @Override
+    public int getNumberOfRows() {
+        return numberOfRows;
+    }
+
+    @Override
+    public long matchPattern(long[] pattern) {
+        long res = getRowMask();
+        for (int w = 0; w < vectorSize && res != 0L; w++) {
+            long bits = pattern[w];
+            int offset = startPos + w * MAX_NUMBER_OF_ROWS;
+            while (bits != 0L && res != 0L) {
+                res = res & slices[offset + Long.numberOfTrailingZeros(bits)];
+                bits = bits & (bits - 1);
+            }
+        }
+        return res;
+    }
+
+}
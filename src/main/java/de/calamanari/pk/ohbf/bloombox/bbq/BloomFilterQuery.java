@@ -83,6 +83,33 @@ public class BloomFilterQuery implements PbDpavOccurrenceAware, Serializable {
         return res;
     }
 
+    /**
+     * Executes the query and reports the node-level figures to the given sink
+     * 
+     * @param source bloom filter vector
+     * @param startPos start position of the vector
+     * @param resultCache binary result cache
+     * @param metricsSink receives the figures, null to execute without recording (see {@link #execute(long[], int, Map)})
+     * @return true if the item matches, otherwise false
+     */
+    public boolean execute(long[] source, int startPos, Map<Long, Boolean> resultCache, ExpressionMetricsSink metricsSink) {
+        if (metricsSink == null) {
+            return execute(source, startPos, resultCache);
+        }
+        return expression.match(source, startPos, resultCache, metricsSink);
+    }
+
+    /**
+     * Executes the query on a block of rows (bit-parallel)
+     * 
+     * @param block up to 64 rows
+     * @param maskCache row mask cache of the current block
+     * @return row mask, bit <code>i</code> is set if row <code>i</code> of the block matches
+     */
+    public long executeBlock(RowBlock block, RowMaskCache maskCache) {
+        return expression.matchBlock(block, maskCache);
+    }
+
     /**
      * Executes the query and takes into account the contained probability
      * 
@@ -93,8 +120,23 @@ public class BloomFilterQuery implements PbDpavOccurrenceAware, Serializable {
      * @return probability of the match
      */
     public double execute(long[] source, int startPos, DpavProbabilityFetcher probabilities, Map<Long, Boolean> resultCache) {
+        return execute(source, startPos, probabilities, resultCache, null);
+    }
+
+    /**
+     * Executes the query and takes into account the contained probability
+     * 
+     * @param source bloom filter vector
+     * @param startPos start position of the vector
+     * @param probabilities fetcher with the DPAV probabilities
+     * @param resultCache binary result cache
+     * @param metricsSink receives the node-level figures, null to execute without recording
+     * @return probability of the match
+     */
+    public double execute(long[] source, int startPos, DpavProbabilityFetcher probabilities, Map<Long, Boolean> resultCache,
+            ExpressionMetricsSink metricsSink) {
         double res = 0.0;
-        if (this.execute(source, startPos, resultCache)) {
+        if (this.execute(source, startPos, resultCache, metricsSink)) {
             res = expression.computeMatchProbability(expression.getExpressionId(), probabilities);
         }
         return res;
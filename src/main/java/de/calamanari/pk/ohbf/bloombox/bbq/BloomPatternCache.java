@@ -0,0 +1,414 @@
+//@formatter:off
+/*
+ * BloomPatternCache
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox.bbq;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.calamanari.pk.ohbf.BloomFilterConfig;
+import de.calamanari.pk.ohbf.LwGenericOHBF;
+import de.calamanari.pk.ohbf.bloombox.Dpav;
+
+/**
+ * The {@link BloomPatternCache} keeps the bloom filter patterns of DPAVs (key/value combinations like <code>color=blue</code>) together with the resulting
+ * expression ids, so that the preparation of a {@link BinaryMatchExpression} for a DPAV seen before does not need to compute the pattern hash and the
+ * expression id again. This especially speeds up the preparation of large <code>IN</code>-lists and MINMAX-expressions as well as repeatedly executed queries
+ * that are not covered by a query preparation cache (e.g., dashboards with varying combinations of the same values).
+ * <p>
+ * A pattern depends on the configuration of the bloom filter, thus there is one shared instance per {@link BloomFilterConfig}, see
+ * {@link #getSharedInstance(BloomFilterConfig)}. The registry of shared instances only keeps the {@link #MAX_NUMBER_OF_SHARED_INSTANCES} most recently used
+ * configurations, so a long-running process working with many differently configured boxes does not accumulate caches. Entries are keyed by column name and
+ * value, so that a cache hit does not even require computing the {@link Dpav#getDpavId()}. The cache can be pre-loaded with the known values of a column (see
+ * {@link #preload(String, Collection)}).
+ * <p>
+ * The cache is bounded and keeps its patterns in two generations of up to half the maximum number of entries each: new patterns go to the current
+ * generation, and once it is full it replaces the previous generation, which gets dropped. A pattern found in the previous generation gets moved to the
+ * current one, so frequently used patterns survive while stale ones eventually disappear. This approximates an LRU-eviction without any bookkeeping on
+ * cache hits.
+ * <p>
+ * Instances are safe to be accessed by multiple threads concurrently.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class BloomPatternCache {
+
+    /**
+     * Default maximum number of entries per configuration: {@value}
+     */
+    public static final int DEFAULT_MAX_NUMBER_OF_ENTRIES = 50_000;
+
+    /**
+     * Maximum number of configurations with a shared instance, the least recently used one will be dropped: {@value}
+     */
+    public static final int MAX_NUMBER_OF_SHARED_INSTANCES = 8;
+
+    /**
+     * one cache per bloom filter configuration, access-ordered, guarded by itself
+     */
+    private static final Map<BloomFilterConfig, BloomPatternCache> SHARED_INSTANCES = new SharedInstanceRegistry();
+
+    /**
+     * the instance returned last, avoids synchronizing on the registry if all queries run against the same kind of box
+     */
+    private static volatile BloomPatternCache lastSharedInstance;
+
+    /**
+     * configuration of the bloom filter the patterns are computed for
+     */
+    private final BloomFilterConfig config;
+
+    /**
+     * generation new patterns are added to
+     */
+    private volatile Generation currentGeneration = new Generation();
+
+    /**
+     * generation that will be dropped when the current one is full
+     */
+    private volatile Generation previousGeneration = new Generation();
+
+    /**
+     * Maximum number of patterns to be kept
+     */
+    private volatile int maxNumberOfEntries = DEFAULT_MAX_NUMBER_OF_ENTRIES;
+
+    /**
+     * number of successful lookups
+     */
+    private final LongAdder numberOfHits = new LongAdder();
+
+    /**
+     * number of lookups without result
+     */
+    private final LongAdder numberOfMisses = new LongAdder();
+
+    /**
+     * Returns the cache for the given configuration, creates it on first access
+     * 
+     * @param config bloom filter configuration of the box
+     * @return shared cache instance
+     */
+    public static BloomPatternCache getSharedInstance(BloomFilterConfig config) {
+        if (config == null) {
+            throw new IllegalArgumentException("The bloom filter configuration must not be null.");
+        }
+        BloomPatternCache instance = lastSharedInstance;
+        if (instance == null || !instance.config.equals(config)) {
+            synchronized (SHARED_INSTANCES) {
+                instance = SHARED_INSTANCES.computeIfAbsent(config, BloomPatternCache::new);
+                lastSharedInstance = instance;
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param config bloom filter configuration the patterns are computed for
+     */
+    private BloomPatternCache(BloomFilterConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Creates a match expression for the given DPAV, either from a cached pattern or by computing the pattern with the given bloom filter (cache miss).
+     * 
+     * @param argName name of the "column"
+     * @param argValue value to match
+     * @param bloomFilter filter (configured like this cache) to be used to compute the pattern on cache miss, will be cleared
+     * @return new match expression
+     */
+    public BinaryMatchExpression createBinaryMatchExpression(String argName, String argValue, LwGenericOHBF bloomFilter) {
+        BloomPattern bloomPattern = lookup(argName, argValue);
+        if (bloomPattern == null) {
+            numberOfMisses.increment();
+            bloomPattern = computeAndCache(new Dpav(argName, argValue), bloomFilter);
+        }
+        else {
+            numberOfHits.increment();
+        }
+        return new BinaryMatchExpression(bloomPattern.dpav, bloomPattern.pattern, bloomPattern.expressionId);
+    }
+
+    /**
+     * Looks up the pattern in both generations, a pattern found in the previous generation will be moved to the current one.
+     * 
+     * @param argName name of the "column"
+     * @param argValue column value
+     * @return cached pattern or null if not found
+     */
+    private BloomPattern lookup(String argName, String argValue) {
+        if (argName == null || argValue == null) {
+            return null;
+        }
+        BloomPattern bloomPattern = currentGeneration.get(argName, argValue);
+        if (bloomPattern == null) {
+            Generation previous = previousGeneration;
+            bloomPattern = previous.get(argName, argValue);
+            if (bloomPattern != null) {
+                previous.remove(bloomPattern);
+                bloomPattern = cache(bloomPattern);
+            }
+        }
+        return bloomPattern;
+    }
+
+    /**
+     * Computes the pattern and the expression id for the given DPAV and caches it.
+     * 
+     * @param dpav key/value pair
+     * @param bloomFilter filter to compute the pattern, will be cleared
+     * @return pattern
+     */
+    private BloomPattern computeAndCache(Dpav dpav, LwGenericOHBF bloomFilter) {
+        if (!config.equals(bloomFilter.getConfig())) {
+            throw new IllegalArgumentException(
+                    String.format("Bloom filter configuration mismatch, expected: %s, given: %s", this.config, bloomFilter.getConfig()));
+        }
+        bloomFilter.clear();
+        bloomFilter.put(dpav.getColumnId(), dpav.getColumnValue());
+        long[] pattern = bloomFilter.getBitVectorAsLongArray().clone();
+        return cache(new BloomPattern(dpav, pattern, BinaryMatchExpression.createExpressionId(dpav, pattern)));
+    }
+
+    /**
+     * Adds the pattern to the current generation, replaces the previous generation if the current one is full.
+     * 
+     * @param bloomPattern pattern to be cached
+     * @return the given pattern or an equal one cached concurrently
+     */
+    private BloomPattern cache(BloomPattern bloomPattern) {
+        int maxEntries = maxNumberOfEntries;
+        if (maxEntries == 0 || bloomPattern.dpav.getColumnId() == null || bloomPattern.dpav.getColumnValue() == null) {
+            return bloomPattern;
+        }
+        Generation current = currentGeneration;
+        if (current.numberOfEntries.get() >= Math.max(1, maxEntries / 2)) {
+            current = rotate(current);
+        }
+        return current.putIfAbsent(bloomPattern);
+    }
+
+    /**
+     * Makes the given full generation the previous one and starts a new current generation, unless another thread did this already.
+     * 
+     * @param fullGeneration the generation found to be full
+     * @return current generation
+     */
+    private synchronized Generation rotate(Generation fullGeneration) {
+        if (currentGeneration == fullGeneration) {
+            previousGeneration = fullGeneration;
+            currentGeneration = new Generation();
+        }
+        return currentGeneration;
+    }
+
+    /**
+     * Computes and caches the patterns for the given values of a column in advance (e.g., all known values of a column)
+     * 
+     * @param argName name of the "column"
+     * @param argValues known values of the column
+     */
+    public void preload(String argName, Collection<String> argValues) {
+        LwGenericOHBF bloomFilter = new LwGenericOHBF(config);
+        for (String argValue : argValues) {
+            if (lookup(argName, argValue) == null) {
+                computeAndCache(new Dpav(argName, argValue), bloomFilter);
+            }
+        }
+    }
+
+    /**
+     * Computes and caches the patterns for the given column domain in advance
+     * 
+     * @param columnDomain column names mapped to the known values of the corresponding column
+     */
+    public void preload(Map<String, ? extends Collection<String>> columnDomain) {
+        for (Map.Entry<String, ? extends Collection<String>> entry : columnDomain.entrySet()) {
+            preload(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Removes all cached patterns (the statistics remain unchanged)
+     */
+    public synchronized void clear() {
+        previousGeneration = new Generation();
+        currentGeneration = new Generation();
+    }
+
+    /**
+     * @return configuration of the bloom filter the patterns are computed for
+     */
+    public BloomFilterConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return current number of cached patterns
+     */
+    public int getNumberOfEntries() {
+        return currentGeneration.numberOfEntries.get() + previousGeneration.numberOfEntries.get();
+    }
+
+    /**
+     * @return maximum number of patterns to be kept
+     */
+    public int getMaxNumberOfEntries() {
+        return maxNumberOfEntries;
+    }
+
+    /**
+     * Sets the maximum number of patterns to be kept, if the new limit is lower, the surplus patterns will be dropped with the next generations
+     * 
+     * @param maxNumberOfEntries maximum number of patterns to be kept, &gt;= 0 (0 disables caching)
+     */
+    public void setMaxNumberOfEntries(int maxNumberOfEntries) {
+        if (maxNumberOfEntries < 0) {
+            throw new IllegalArgumentException(String.format("The maximum number of entries must not be negative, given: %d", maxNumberOfEntries));
+        }
+        this.maxNumberOfEntries = maxNumberOfEntries;
+    }
+
+    /**
+     * @return number of successful lookups
+     */
+    public long getNumberOfHits() {
+        return numberOfHits.sum();
+    }
+
+    /**
+     * @return number of lookups without result
+     */
+    public long getNumberOfMisses() {
+        return numberOfMisses.sum();
+    }
+
+    /**
+     * Set of patterns cached together, column name mapped to the column values mapped to the patterns
+     */
+    private static final class Generation {
+
+        /**
+         * column name mapped to the column values mapped to the patterns
+         */
+        final Map<String, Map<String, BloomPattern>> patternMap = new ConcurrentHashMap<>();
+
+        /**
+         * number of patterns in this generation
+         */
+        final AtomicInteger numberOfEntries = new AtomicInteger();
+
+        /**
+         * @param argName name of the "column"
+         * @param argValue column value
+         * @return pattern or null if not found
+         */
+        BloomPattern get(String argName, String argValue) {
+            Map<String, BloomPattern> valueMap = patternMap.get(argName);
+            return (valueMap == null) ? null : valueMap.get(argValue);
+        }
+
+        /**
+         * @param bloomPattern pattern to be added
+         * @return the given pattern or the one already present for the same DPAV
+         */
+        BloomPattern putIfAbsent(BloomPattern bloomPattern) {
+            BloomPattern cachedPattern = patternMap.computeIfAbsent(bloomPattern.dpav.getColumnId(), _ -> new ConcurrentHashMap<>())
+                    .putIfAbsent(bloomPattern.dpav.getColumnValue(), bloomPattern);
+            if (cachedPattern == null) {
+                numberOfEntries.incrementAndGet();
+                return bloomPattern;
+            }
+            return cachedPattern;
+        }
+
+        /**
+         * @param bloomPattern pattern to be removed (if still present)
+         */
+        void remove(BloomPattern bloomPattern) {
+            Map<String, BloomPattern> valueMap = patternMap.get(bloomPattern.dpav.getColumnId());
+            if (valueMap != null && valueMap.remove(bloomPattern.dpav.getColumnValue(), bloomPattern)) {
+                numberOfEntries.decrementAndGet();
+            }
+        }
+
+    }
+
+    /**
+     * Access-ordered map that drops the least recently used cache once there are more than {@link BloomPatternCache#MAX_NUMBER_OF_SHARED_INSTANCES}
+     */
+    private static final class SharedInstanceRegistry extends LinkedHashMap<BloomFilterConfig, BloomPatternCache> {
+
+        private static final long serialVersionUID = 3806183525829311564L;
+
+        /**
+         * Creates an empty access-ordered registry
+         */
+        SharedInstanceRegistry() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BloomFilterConfig, BloomPatternCache> eldest) {
+            return size() > MAX_NUMBER_OF_SHARED_INSTANCES;
+        }
+
+    }
+
+    /**
+     * Pattern of a DPAV with the corresponding expression id, all immutable
+     */
+    private static final class BloomPattern {
+
+        /**
+         * key/value pair
+         */
+        final Dpav dpav;
+
+        /**
+         * bloom filter vector to match against the box, must not be modified
+         */
+        final long[] pattern;
+
+        /**
+         * id of the {@link BinaryMatchExpression} for this pattern
+         */
+        final long expressionId;
+
+        /**
+         * @param dpav key/value pair
+         * @param pattern bloom filter vector to match against the box
+         * @param expressionId id of the {@link BinaryMatchExpression} for this pattern
+         */
+        BloomPattern(Dpav dpav, long[] pattern, long expressionId) {
+            this.dpav = dpav;
+            this.pattern = pattern;
+            this.expressionId = expressionId;
+        }
+
+    }
+
+}
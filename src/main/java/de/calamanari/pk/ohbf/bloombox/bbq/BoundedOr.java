@@ -32,12 +32,13 @@ import de.calamanari.pk.ohbf.bloombox.BloomBoxException;
  * BUILDER for creating a <i>constrained or-expression</i>, optionally limiting the minimum and maximum number of matching expressions in a given condition
  * list.
  * <p>
- * <b>Note:</b> This implementation does not introduce any new BBQ element, instead, the bounds will be implemented by combining boolean conditions
- * (AND/OR).<br>
- * As a consequence the resulting expressions can get VERY large and complex. However, the advantage of this approach is that the language remains simple, so
- * that mapping to other languages (like SQL) is possible without special requirements to these languages. The downside is high expression complexity. <br>
- * As an alternative, bounds could be be implemented by simply evaluating all conditions within the braces and counting the matches, which would require an
- * entirely new {@link BbqExpression} and it would break compatibility to many languages which do not offer any feature like that.
+ * By default ({@link #build()}) the bounds will be implemented by an {@link IntermediateMinMaxExpression} that counts the matching conditions (see
+ * {@link MinMaxExpression}), so the size of the resulting expression grows linearly with the number of conditions. Trivial cases (all conditions required,
+ * any condition sufficient) still result in a plain AND resp. OR.
+ * <p>
+ * Alternatively, {@link #buildExpanded()} implements the bounds by combining boolean conditions (AND/OR) without introducing any new element. This way
+ * mapping to other languages (like SQL) is possible without special requirements to these languages. The downside is that the resulting expressions can get
+ * VERY large and complex (combinatorial growth).
  * 
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  *
@@ -103,6 +104,39 @@ public class BoundedOr {
      * @throws InvalidBoundsException if the any of the bounds or there combination is incorrect
      */
     public IntermediateExpression build() {
+        IntermediateExpression res = buildTrivial();
+        if (res == null) {
+            IntermediateMinMaxExpression expression = new IntermediateMinMaxExpression(lowerBound, upperBound);
+            expression.getSubExpressionList().addAll(expressions);
+            res = expression;
+        }
+        return res;
+    }
+
+    /**
+     * Creates the result expression from this builder composed of regular boolean conditions (AND/OR) only.
+     * 
+     * @return expression taking into account the available expressions as well as lower and upper bounds
+     * @throws InvalidBoundsException if the any of the bounds or there combination is incorrect
+     */
+    public IntermediateExpression buildExpanded() {
+        IntermediateExpression res = buildTrivial();
+        if (res == null && upperBound <= 0) {
+            res = createCombinedOrOfAndGroups(expressions, lowerBound);
+        }
+        else if (res == null) {
+            res = buildWithUpperBound();
+        }
+        return res;
+    }
+
+    /**
+     * Validates the bounds and creates the result expression for the trivial cases that do not require any counting
+     * 
+     * @return expression or null if the bounds require counting
+     * @throws InvalidBoundsException if the any of the bounds or there combination is incorrect
+     */
+    private IntermediateExpression buildTrivial() {
         if (upperBound > 0 && upperBound < lowerBound) {
             throw new InvalidBoundsException(
                     String.format("Expected: upperBound <= 0 (not specified) or upperBound >= lowerBound, found: %d < %d", upperBound, lowerBound));
@@ -130,12 +164,6 @@ public class BoundedOr {
         else if (expressions.size() == 1) {
             res = expressions.get(0);
         }
-        else if (upperBound <= 0) {
-            res = createCombinedOrOfAndGroups(expressions, lowerBound);
-        }
-        else {
-            res = buildWithUpperBound();
-        }
         return res;
     }
 
@@ -0,0 +1,54 @@
+//@formatter:off
+/*
+ * ExpressionMetricsSink
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox.bbq;
+
+import java.util.Map;
+
+/**
+ * An {@link ExpressionMetricsSink} receives node-level figures while expressions are being matched row by row, see
+ * {@link BbqExpression#match(long[], int, Map, ExpressionMetricsSink)}.
+ * <p>
+ * Every call to the match method of an expression reports exactly one visit. If the result was not already known from the result cache, the expression gets
+ * evaluated and additionally reports the evaluation result along with the number of member expressions it visited until the result was clear (short-circuit).
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public interface ExpressionMetricsSink {
+
+    /**
+     * Reports the visit of an expression
+     * 
+     * @param expressionId visited expression
+     * @param cacheHit true if the result was already in the result cache
+     */
+    public void recordVisit(long expressionId, boolean cacheHit);
+
+    /**
+     * Reports the evaluation of an expression (not answered from the cache)
+     * 
+     * @param expressionId evaluated expression
+     * @param result match result
+     * @param numberOfChildVisits number of member expressions visited during the evaluation
+     */
+    public void recordEvaluation(long expressionId, boolean result, int numberOfChildVisits);
+
+}
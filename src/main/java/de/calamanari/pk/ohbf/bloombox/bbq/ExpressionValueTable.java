@@ -0,0 +1,202 @@
+//@formatter:off
+/*
+ * ExpressionValueTable
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox.bbq;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The {@link ExpressionValueTable} maps expression ids to primitive long values. It is the common storage of the result caches consulted while evaluating
+ * the queries of a bundle, the per-row result cache (boolean results) and the per-block {@link RowMaskCache} (row masks). Both get cleared for every row resp.
+ * block, and the number of lookups grows with the number of expression nodes.
+ * <p>
+ * Keys and values are kept in primitive arrays (open addressing, linear probing). {@link #clear()} takes constant time by incrementing a generation counter
+ * instead of wiping the table, a slot is only occupied if its stamp equals the current generation. Neither lookups nor updates create any objects.
+ * <p>
+ * Instances are mutable and meant to be re-used. They are not safe for concurrent use.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class ExpressionValueTable implements Serializable {
+
+    private static final long serialVersionUID = 6230817736215934521L;
+
+    /**
+     * initial number of slots (power of two)
+     */
+    private static final int INITIAL_CAPACITY = 32;
+
+    /**
+     * expression ids
+     */
+    private long[] keys = new long[INITIAL_CAPACITY];
+
+    /**
+     * values associated with the expression ids
+     */
+    private long[] values = new long[INITIAL_CAPACITY];
+
+    /**
+     * a slot is only occupied if its stamp equals the current generation
+     */
+    private int[] stamps = new int[INITIAL_CAPACITY];
+
+    /**
+     * current generation, incremented on {@link #clear()}
+     */
+    private int generation = 1;
+
+    /**
+     * number of entries in the current generation
+     */
+    private int size = 0;
+
+    /**
+     * @param expressionId key
+     * @return slot index of the key or the free slot where it belongs
+     */
+    private int findSlot(long expressionId) {
+        int mask = keys.length - 1;
+        int idx = (int) ((expressionId * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (stamps[idx] == generation && keys[idx] != expressionId) {
+            idx = (idx + 1) & mask;
+        }
+        return idx;
+    }
+
+    /**
+     * @param expressionId key
+     * @return slot index of the given expression or -1 if unknown, see {@link #valueAt(int)}
+     */
+    public int indexOf(long expressionId) {
+        int idx = findSlot(expressionId);
+        return stamps[idx] == generation ? idx : -1;
+    }
+
+    /**
+     * @param index slot index
+     * @return true if the slot is occupied in the current generation
+     */
+    public boolean isOccupied(int index) {
+        return stamps[index] == generation;
+    }
+
+    /**
+     * @param index slot index of an occupied slot
+     * @return expression id stored in the slot
+     */
+    public long keyAt(int index) {
+        return keys[index];
+    }
+
+    /**
+     * @param index slot index of an occupied slot
+     * @return value stored in the slot
+     */
+    public long valueAt(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return number of slots, upper bound (exclusive) of the slot indices
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @param expressionId key
+     * @return true if a value of the given expression is known for the current generation
+     */
+    public boolean contains(long expressionId) {
+        return stamps[findSlot(expressionId)] == generation;
+    }
+
+    /**
+     * @param expressionId key
+     * @return value of the given expression, 0 if unknown (see {@link #contains(long)})
+     */
+    public long get(long expressionId) {
+        int idx = findSlot(expressionId);
+        return stamps[idx] == generation ? values[idx] : 0L;
+    }
+
+    /**
+     * @param expressionId key
+     * @param value value of the expression for the current generation
+     */
+    public void put(long expressionId, long value) {
+        int idx = findSlot(expressionId);
+        if (stamps[idx] != generation) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+                idx = findSlot(expressionId);
+            }
+            stamps[idx] = generation;
+            keys[idx] = expressionId;
+            size++;
+        }
+        values[idx] = value;
+    }
+
+    /**
+     * Doubles the table size and re-inserts the entries of the current generation
+     */
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        int[] oldStamps = stamps;
+        int oldGeneration = generation;
+        keys = new long[oldKeys.length * 2];
+        values = new long[oldKeys.length * 2];
+        stamps = new int[oldKeys.length * 2];
+        generation = 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldStamps[i] == oldGeneration) {
+                int idx = findSlot(oldKeys[i]);
+                stamps[idx] = generation;
+                keys[idx] = oldKeys[i];
+                values[idx] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Invalidates all entries in constant time
+     */
+    public void clear() {
+        size = 0;
+        generation++;
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * @return number of entries in the current generation
+     */
+    public int size() {
+        return size;
+    }
+
+}
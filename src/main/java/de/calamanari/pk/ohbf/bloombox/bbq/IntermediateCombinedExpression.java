@@ -44,7 +44,21 @@ public abstract class IntermediateCombinedExpression implements IntermediateExpr
     /**
      * Type of this expression
      */
-    private IntermediateExpressionType type = IntermediateExpressionType.BRACES;
+    private IntermediateExpressionType type;
+
+    /**
+     * Creates a new expression of type {@link IntermediateExpressionType#BRACES}
+     */
+    protected IntermediateCombinedExpression() {
+        this(IntermediateExpressionType.BRACES);
+    }
+
+    /**
+     * @param type expression type
+     */
+    protected IntermediateCombinedExpression(IntermediateExpressionType type) {
+        this.type = type;
+    }
 
     /**
      * @return member expressions
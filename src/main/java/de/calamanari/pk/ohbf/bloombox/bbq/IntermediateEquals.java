@@ -55,9 +55,8 @@ public class IntermediateEquals implements IntermediateExpression {
 
     @Override
     public BbqExpression createBbqEquivalent(LwGenericOHBF bloomFilter, Map<Long, BbqExpression> expressionCache) {
-        bloomFilter.clear();
-        bloomFilter.put(argName, argValue);
-        BinaryMatchExpression expression = new BinaryMatchExpression(argName, argValue, bloomFilter.getBitVectorAsLongArray());
+        BinaryMatchExpression expression = BloomPatternCache.getSharedInstance(bloomFilter.getConfig()).createBinaryMatchExpression(argName, argValue,
+                bloomFilter);
         BbqExpression cachedExpression = expressionCache.putIfAbsent(expression.getExpressionId(), expression);
         return (cachedExpression != null) ? cachedExpression : expression;
     }
@@ -234,7 +234,15 @@ public class IntermediateExpressionBuilder extends BbqBaseListener {
         DataCollector currentCollector = stack.pop();
 
         IntermediateNotExpression expression = new IntermediateNotExpression();
-        expression.getSubExpressionList().addAll(currentCollector.childExpressions);
+        if (currentCollector.childExpressions.size() > 1) {
+            // the negation applies to the combined expression, like for the root
+            IntermediateBraces braces = new IntermediateBraces();
+            braces.getSubExpressionList().addAll(currentCollector.childExpressions);
+            expression.getSubExpressionList().add(braces);
+        }
+        else {
+            expression.getSubExpressionList().addAll(currentCollector.childExpressions);
+        }
         stack.peek().childExpressions.add(expression);
     }
 
@@ -23,6 +23,7 @@ package de.calamanari.pk.ohbf.bloombox.bbq;
 import static de.calamanari.pk.util.LambdaSupportLoggerProxy.defer;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.TreeMap;
 import java.util.function.Function;
@@ -93,7 +94,12 @@ public class IntermediateExpressionOptimizer {
         if (!expression.getType().isSimple()) {
             List<IntermediateExpression> subExpressions = ((IntermediateCombinedExpression) expression).getSubExpressionList();
             subExpressions.forEach(this::removeAllBraces);
-            removeBraceExpressions(subExpressions, expression.getType());
+            if (expression.getType() == IntermediateExpressionType.MINMAX || expression.getType() == IntermediateExpressionType.NOT) {
+                convertMemberBraces(subExpressions);
+            }
+            else {
+                removeBraceExpressions(subExpressions, expression.getType());
+            }
         }
         LOGGER.trace("removeAllBraces AFTER: \n{}", defer(() -> formatExpressionAsTree(expression)));
     }
@@ -134,6 +140,21 @@ public class IntermediateExpressionOptimizer {
         }
     }
 
+    /**
+     * The members of a MINMAX-expression are counted individually and a NOT-expression negates its member as a whole, so any braces must be converted into a
+     * single expression per member rather than being dissolved into the parent.
+     * 
+     * @param subExpressions members of a MINMAX-expression or the member of a NOT-expression
+     */
+    private void convertMemberBraces(List<IntermediateExpression> subExpressions) {
+        for (int i = 0; i < subExpressions.size(); i++) {
+            IntermediateExpression candidate = subExpressions.get(i);
+            if (candidate.getType() == IntermediateExpressionType.BRACES) {
+                subExpressions.set(i, convertRootBraces(candidate));
+            }
+        }
+    }
+
     /**
      * Determines if all the expression in the list have the same given filter type
      * 
@@ -162,7 +183,7 @@ public class IntermediateExpressionOptimizer {
         if (!expression.getType().isSimple()) {
             List<IntermediateExpression> subExpressions = ((IntermediateCombinedExpression) expression).getSubExpressionList();
             subExpressions.forEach(this::consolidateCombinedExpressions);
-            if (expression.getType() != IntermediateExpressionType.NOT) {
+            if (expression.getType() != IntermediateExpressionType.NOT && expression.getType() != IntermediateExpressionType.MINMAX) {
                 consolidateSubExpressionsOfSameType(subExpressions, expression.getType());
             }
         }
@@ -265,7 +286,8 @@ public class IntermediateExpressionOptimizer {
                 }
             }
         }
-        if (expression.getType() != IntermediateExpressionType.NOT && !expression.getType().isSimple()) {
+        if (expression.getType() != IntermediateExpressionType.NOT && expression.getType() != IntermediateExpressionType.MINMAX
+                && !expression.getType().isSimple()) {
             IntermediateCombinedExpression casted = (IntermediateCombinedExpression) expression;
             if (casted.getSubExpressionList().size() == 1) {
                 expression = casted.getSubExpressionList().get(0);
@@ -367,6 +389,12 @@ public class IntermediateExpressionOptimizer {
                 subExpressions.addAll(subtractions);
             }
         }
+        else if (expression.getType() == IntermediateExpressionType.MINMAX) {
+            // each member counts, so we must not remove duplicates
+            List<IntermediateExpression> subExpressions = ((IntermediateCombinedExpression) expression).getSubExpressionList();
+            subExpressions.forEach(this::sortAndDedup);
+            subExpressions.sort(Comparator.comparing(IntermediateExpression::toString));
+        }
         else if (!expression.getType().isSimple()) {
             List<IntermediateExpression> subExpressions = ((IntermediateCombinedExpression) expression).getSubExpressionList();
             subExpressions.forEach(this::sortAndDedup);
@@ -58,6 +58,11 @@ public enum IntermediateExpressionType {
      */
     OR(false, false),
 
+    /**
+     * condition that yields true if the number of member expressions which yield true is within the given bounds
+     */
+    MINMAX(false, false),
+
     /**
      * logical OR between two referenced query result
      */
@@ -0,0 +1,141 @@
+//@formatter:off
+/*
+ * IntermediateMinMaxExpression
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox.bbq;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * An {@link IntermediateMinMaxExpression} is the equivalent of <code>MINMAX(A, B, C, ... ; lowerBound ; upperBound)</code> resp. a bounded
+ * <code>(NOT) IN</code>. It yields true if the number of matching member expressions is within the bounds, see {@link MinMaxExpression}.
+ * <p>
+ * <b>Note:</b> Other than AND and OR the members of this expression must not be deduplicated, because each member counts.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class IntermediateMinMaxExpression extends IntermediateCombinedExpression {
+
+    /**
+     * minimum number of member expressions that must hold true, 0 means no lower bound
+     */
+    private final int lowerBound;
+
+    /**
+     * maximum number of member expressions allowed to hold true, 0 means no upper bound
+     */
+    private final int upperBound;
+
+    /**
+     * @param lowerBound minimum number of member expressions that must hold true, &lt;= 0 means no lower bound
+     * @param upperBound maximum number of member expressions allowed to hold true, &lt;= 0 means no upper bound
+     */
+    public IntermediateMinMaxExpression(int lowerBound, int upperBound) {
+        super(IntermediateExpressionType.MINMAX);
+        this.lowerBound = Math.max(lowerBound, 0);
+        this.upperBound = Math.max(upperBound, 0);
+    }
+
+    /**
+     * @return minimum number of member expressions that must hold true, 0 means no lower bound
+     */
+    public int getLowerBound() {
+        return lowerBound;
+    }
+
+    /**
+     * @return maximum number of member expressions allowed to hold true, 0 means no upper bound
+     */
+    public int getUpperBound() {
+        return upperBound;
+    }
+
+    @Override
+    protected BbqExpression createNewCombinedBbqExpression(List<BbqExpression> expressions) {
+        BbqExpression res = null;
+        if (this.yieldsAlwaysFalse()) {
+            res = BbqBooleanLiteral.FALSE;
+        }
+        else if (this.yieldsAlwaysTrue()) {
+            res = BbqBooleanLiteral.TRUE;
+        }
+        else {
+            res = new MinMaxExpression(expressions, lowerBound, upperBound);
+        }
+        return res;
+    }
+
+    @Override
+    protected IntermediateCombinedExpression createNewInstance() {
+        return new IntermediateMinMaxExpression(lowerBound, upperBound);
+    }
+
+    @Override
+    public boolean yieldsAlwaysFalse() {
+        int numberOfAlwaysTrue = (int) getSubExpressionList().stream().filter(IntermediateExpression::yieldsAlwaysTrue).count();
+        int numberOfPotentiallyTrue = (int) getSubExpressionList().stream().filter(e -> !e.yieldsAlwaysFalse()).count();
+        return getSubExpressionList().isEmpty() || (upperBound > 0 && numberOfAlwaysTrue > upperBound) || numberOfPotentiallyTrue < lowerBound;
+    }
+
+    @Override
+    public boolean yieldsAlwaysTrue() {
+        int numberOfAlwaysTrue = (int) getSubExpressionList().stream().filter(IntermediateExpression::yieldsAlwaysTrue).count();
+        int numberOfPotentiallyTrue = (int) getSubExpressionList().stream().filter(e -> !e.yieldsAlwaysFalse()).count();
+        return !getSubExpressionList().isEmpty() && numberOfAlwaysTrue >= lowerBound && (upperBound == 0 || numberOfPotentiallyTrue <= upperBound);
+    }
+
+    @Override
+    protected String getJoinOperator() {
+        return ",";
+    }
+
+    @Override
+    public String toString() {
+        return "MINMAX( " + getSubExpressionList().stream().map(IntermediateExpression::toString).collect(Collectors.joining(" , ")) + " ; " + lowerBound
+                + " ; " + upperBound + " )";
+    }
+
+    @Override
+    public void appendAsTree(StringBuilder sb, int level, String prefix) {
+        this.appendIndent(sb, level);
+        sb.append(prefix);
+        sb.append("MINMAX ( ");
+        if (getSubExpressionList().isEmpty()) {
+            sb.append(")");
+        }
+        else {
+            sb.append("\n");
+
+            getSubExpressionList().get(0).appendAsTree(sb, level + 1, "");
+            getSubExpressionList().stream().skip(1).forEach(expression -> expression.appendAsTree(sb, level + 1, ", "));
+            sb.append("\n");
+            this.appendIndent(sb, level);
+            sb.append("; ");
+            sb.append(lowerBound);
+            sb.append(" ; ");
+            sb.append(upperBound);
+            sb.append(" )");
+        }
+        appendTrueFalseWarning(sb, level);
+        sb.append("\n");
+    }
+
+}
@@ -56,9 +56,8 @@ public class IntermediateNotEquals implements IntermediateExpression {
 
     @Override
     public BbqExpression createBbqEquivalent(LwGenericOHBF bloomFilter, Map<Long, BbqExpression> expressionCache) {
-        bloomFilter.clear();
-        bloomFilter.put(argName, argValue);
-        BinaryMatchExpression expression = new BinaryMatchExpression(argName, argValue, bloomFilter.getBitVectorAsLongArray());
+        BinaryMatchExpression expression = BloomPatternCache.getSharedInstance(bloomFilter.getConfig()).createBinaryMatchExpression(argName, argValue,
+                bloomFilter);
         BbqExpression cachedExpression = expressionCache.putIfAbsent(expression.getExpressionId(), expression);
         BbqExpression positiveExpression = (cachedExpression != null) ? cachedExpression : expression;
         NegationExpression negationExpression = new NegationExpression(positiveExpression);
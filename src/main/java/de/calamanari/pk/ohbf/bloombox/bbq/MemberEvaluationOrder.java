@@ -0,0 +1,100 @@
+//@formatter:off
+/*
+ * MemberEvaluationOrder
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.ohbf.bloombox.bbq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The {@link MemberEvaluationOrder} keeps the order the members of {@link AndExpression}s and {@link OrExpression}s get evaluated in (short-circuit) for a
+ * single execution. It is owned and updated by a {@link SelectivityTracker} and reaches the expressions through the result caches (see
+ * {@link MemberEvaluationOrderAware}). Expressions without an entry (or evaluated without such a cache) use their canonical order.
+ * <p>
+ * The expression ids get mapped to the orders via an {@link ExpressionValueTable}, so a lookup does not create any objects.
+ * <p>
+ * Instances are mutable and not safe for concurrent use.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public final class MemberEvaluationOrder {
+
+    /**
+     * maps the expression id to the index of its order in {@link #orders}
+     */
+    private final ExpressionValueTable orderIndexTable = new ExpressionValueTable();
+
+    /**
+     * the members of each reordered expression in evaluation order
+     */
+    private final List<BbqExpression[]> orders = new ArrayList<>();
+
+    /**
+     * @param expressionId id of the AND/OR expression
+     * @param canonicalMembers members in their canonical order
+     * @return members in evaluation order, the canonical members if the expression has not been reordered
+     */
+    public BbqExpression[] getMembers(long expressionId, BbqExpression[] canonicalMembers) {
+        int idx = orderIndexTable.indexOf(expressionId);
+        return idx < 0 ? canonicalMembers : orders.get((int) orderIndexTable.valueAt(idx));
+    }
+
+    /**
+     * @param expression AND/OR expression
+     * @return copy of the members of the given expression in evaluation order
+     */
+    public List<BbqExpression> getMembersInEvaluationOrder(BbqExpression expression) {
+        int idx = orderIndexTable.indexOf(expression.getExpressionId());
+        return idx < 0 ? expression.getChildExpressions() : new ArrayList<>(Arrays.asList(orders.get((int) orderIndexTable.valueAt(idx))));
+    }
+
+    /**
+     * @param expressionId id of the AND/OR expression
+     * @param members members in the new evaluation order
+     */
+    void setMembers(long expressionId, BbqExpression[] members) {
+        int idx = orderIndexTable.indexOf(expressionId);
+        if (idx < 0) {
+            orderIndexTable.put(expressionId, orders.size());
+            orders.add(members);
+        }
+        else {
+            orders.set((int) orderIndexTable.valueAt(idx), members);
+        }
+    }
+
+    /**
+     * @param cache result cache passed to the match call
+     * @param expressionId id of the AND/OR expression
+     * @param canonicalMembers members in their canonical order
+     * @return members in the evaluation order of the cache's execution, the canonical members if there is none
+     */
+    static BbqExpression[] resolve(Object cache, long expressionId, BbqExpression[] canonicalMembers) {
+        if (cache instanceof MemberEvaluationOrderAware aware) {
+            MemberEvaluationOrder order = aware.getMemberEvaluationOrder();
+            if (order != null) {
+                return order.getMembers(expressionId, canonicalMembers);
+            }
+        }
+        return canonicalMembers;
+    }
+
+}
@@ -0,0 +1,42 @@
+//@formatter:off
+/*
+ * MemberEvaluationOrderAware
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.ohbf.bloombox.bbq;
+
+/**
+ * Result caches implementing this interface carry the {@link MemberEvaluationOrder} of the execution they belong to into the match calls of the
+ * {@link AndExpression}s and {@link OrExpression}s. This way every execution (resp. every delegate of a parallel scan) has its own order while the expressions
+ * remain immutable and can be shared.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public interface MemberEvaluationOrderAware {
+
+    /**
+     * @return order to be applied or null to evaluate the members in their canonical order
+     */
+    public MemberEvaluationOrder getMemberEvaluationOrder();
+
+    /**
+     * @param memberEvaluationOrder order to be applied or null to evaluate the members in their canonical order
+     */
+    public void setMemberEvaluationOrder(MemberEvaluationOrder memberEvaluationOrder);
+
+}
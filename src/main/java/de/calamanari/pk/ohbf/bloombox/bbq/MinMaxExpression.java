@@ -0,0 +1,277 @@
+//@formatter:off
+/*
+ * MinMaxExpression
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox.bbq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import de.calamanari.pk.ohbf.bloombox.DpavProbabilityFetcher;
+
+/**
+ * A {@link MinMaxExpression} counts the matching member expressions and yields true if the count is within the bounds, so it is the native equivalent of
+ * <code>MINMAX(A, B, C, ... ; lowerBound ; upperBound)</code> resp. a bounded <code>(NOT) IN</code>.
+ * <p>
+ * Other than the translation of the bounds into regular boolean expressions (see {@link BoundedOr#buildExpanded()}), the size and the evaluation time of this
+ * expression grow linearly with the number of members. The evaluation stops as soon as the result is known (lower bound reached without upper bound, upper
+ * bound exceeded or lower bound no longer reachable).
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public class MinMaxExpression implements BbqExpression {
+
+    private static final long serialVersionUID = -2327006387511094311L;
+
+    /**
+     * list of expressions to be counted
+     */
+    private final BbqExpression[] expressions;
+
+    /**
+     * minimum number of {@link #expressions} that must hold true, 0 means no lower bound
+     */
+    private final int lowerBound;
+
+    /**
+     * maximum number of {@link #expressions} allowed to hold true, 0 means no upper bound
+     */
+    private final int upperBound;
+
+    /**
+     * unique id of this expression
+     */
+    private final long expressionId;
+
+    /**
+     * @param expressions list of expressions to be counted
+     * @param lowerBound minimum number of expressions that must hold true, &lt;= 0 means no lower bound
+     * @param upperBound maximum number of expressions allowed to hold true, &lt;= 0 or &gt;= number of expressions means no upper bound
+     */
+    public MinMaxExpression(List<BbqExpression> expressions, int lowerBound, int upperBound) {
+        this.expressions = expressions.toArray(new BbqExpression[expressions.size()]);
+        this.lowerBound = Math.max(lowerBound, 0);
+        this.upperBound = (upperBound <= 0 || upperBound >= this.expressions.length) ? 0 : upperBound;
+        if (this.upperBound > 0 && this.upperBound < this.lowerBound) {
+            throw new IllegalArgumentException(String.format("Expected: upperBound >= lowerBound, found: %d < %d", this.upperBound, this.lowerBound));
+        }
+        long[] subIds = expressions.stream().map(BbqExpression::getExpressionId).mapToLong(v -> v).toArray();
+        this.expressionId = ExpressionIdUtil.createExpressionId("MINMAX" + this.lowerBound + ";" + this.upperBound, subIds);
+    }
+
+    /**
+     * @return minimum number of member expressions that must hold true, 0 means no lower bound
+     */
+    public int getLowerBound() {
+        return lowerBound;
+    }
+
+    /**
+     * @return maximum number of member expressions allowed to hold true, 0 means no upper bound
+     */
+    public int getUpperBound() {
+        return upperBound;
+    }
+
+    /**
+     * Counting beyond this level is not required to decide the result
+     * 
+     * @return upper bound + 1 or the lower bound if there is no upper bound
+     */
+    private int getCountLimit() {
+        return upperBound > 0 ? upperBound + 1 : lowerBound;
+    }
+
+    @Override
+    @SuppressWarnings({ "java:S3824" })
+    public boolean match(long[] source, int startPos, Map<Long, Boolean> resultCache) {
+        Boolean res = resultCache.get(expressionId);
+        if (res == null) {
+            res = lazyMatch(source, startPos, resultCache);
+            resultCache.put(expressionId, res);
+        }
+        return res;
+    }
+
+    @Override
+    @SuppressWarnings({ "java:S3824" })
+    public boolean match(long[] source, int startPos, Map<Long, Boolean> resultCache, ExpressionMetricsSink metricsSink) {
+        Boolean res = resultCache.get(expressionId);
+        metricsSink.recordVisit(expressionId, res != null);
+        if (res == null) {
+            int countLimit = getCountLimit();
+            int count = 0;
+            int numberOfChildVisits = 0;
+            for (int i = 0; i < expressions.length && count < countLimit; i++) {
+                numberOfChildVisits++;
+                if (expressions[i].match(source, startPos, resultCache, metricsSink)) {
+                    count++;
+                }
+                else if (count + (expressions.length - i - 1) < lowerBound) {
+                    break;
+                }
+            }
+            res = count >= lowerBound && (upperBound == 0 || count <= upperBound);
+            metricsSink.recordEvaluation(expressionId, res, numberOfChildVisits);
+            resultCache.put(expressionId, res);
+        }
+        return res;
+    }
+
+    /**
+     * Counts the matching expressions and returns as soon as the result is known
+     * 
+     * @param source content to match
+     * @param startPos positition in the content to start
+     * @param resultCache cache for checking if the result is already known
+     * @return true if the number of matching member-expressions is within the bounds, otherwise false
+     */
+    private boolean lazyMatch(long[] source, int startPos, Map<Long, Boolean> resultCache) {
+        int countLimit = getCountLimit();
+        int count = 0;
+        for (int i = 0; i < expressions.length && count < countLimit; i++) {
+            if (expressions[i].match(source, startPos, resultCache)) {
+                count++;
+            }
+            else if (count + (expressions.length - i - 1) < lowerBound) {
+                // lower bound no longer reachable
+                break;
+            }
+        }
+        return count >= lowerBound && (upperBound == 0 || count <= upperBound);
+    }
+
+    @Override
+    public long matchBlock(RowBlock block, RowMaskCache maskCache) {
+        if (maskCache.contains(expressionId)) {
+            return maskCache.get(expressionId);
+        }
+        long rowMask = block.getRowMask();
+        int countLimit = getCountLimit();
+
+        // atLeast[j] has bit i set if at least j members matched row i so far
+        long[] atLeast = new long[countLimit + 1];
+        atLeast[0] = rowMask;
+        long decided = (atLeast[countLimit] | unreachableMask(atLeast, expressions.length)) & rowMask;
+        for (int i = 0; i < expressions.length && decided != rowMask; i++) {
+            long matches = expressions[i].matchBlock(block, maskCache);
+            for (int j = Math.min(countLimit, i + 1); j > 0; j--) {
+                atLeast[j] = atLeast[j] | (atLeast[j - 1] & matches);
+            }
+            decided = (atLeast[countLimit] | unreachableMask(atLeast, expressions.length - i - 1)) & rowMask;
+        }
+        long res = atLeast[lowerBound];
+        if (upperBound > 0) {
+            res = res & ~atLeast[countLimit];
+        }
+        res = res & rowMask;
+        maskCache.put(expressionId, res);
+        return res;
+    }
+
+    /**
+     * @param atLeast current counters
+     * @param remaining number of member expressions not evaluated yet
+     * @return mask with the rows that cannot reach the lower bound anymore
+     */
+    private long unreachableMask(long[] atLeast, int remaining) {
+        return remaining < lowerBound ? ~atLeast[lowerBound - remaining] : 0L;
+    }
+
+    @Override
+    public double computeMatchProbability(long rootExpressionId, DpavProbabilityFetcher probabilities) {
+
+        // Poisson binomial distribution of the number of matching members (independent probabilities),
+        // distribution[j] = P(count == j), the last element collects P(count >= countLimit)
+
+        int countLimit = getCountLimit();
+        if (countLimit == 0) {
+            return 1.0;
+        }
+        double[] distribution = new double[countLimit + 1];
+        distribution[0] = 1.0;
+        for (BbqExpression expression : expressions) {
+            double probability = expression.computeMatchProbability(rootExpressionId, probabilities);
+            distribution[countLimit] = distribution[countLimit] + distribution[countLimit - 1] * probability;
+            for (int j = countLimit - 1; j > 0; j--) {
+                distribution[j] = distribution[j] * (1.0d - probability) + distribution[j - 1] * probability;
+            }
+            distribution[0] = distribution[0] * (1.0d - probability);
+        }
+        int maxCount = (upperBound > 0) ? upperBound : countLimit;
+        double res = 0.0;
+        for (int j = lowerBound; j <= maxCount; j++) {
+            res = res + distribution[j];
+        }
+        return Math.min(res, 1.0);
+    }
+
+    @Override
+    public long getExpressionId() {
+        return this.expressionId;
+    }
+
+    @Override
+    public String toString() {
+        return MinMaxExpression.class.getSimpleName() + "(" + this.expressionId + " := " + Arrays.toString(this.expressions) + ";" + lowerBound + ";"
+                + upperBound + ")";
+    }
+
+    @Override
+    public void appendAsTree(StringBuilder sb, int level, String prefix) {
+        this.appendIndent(sb, level);
+        sb.append(prefix);
+        sb.append("MINMAX(");
+        if (expressions.length == 0) {
+            sb.append(")");
+        }
+        else {
+            sb.append("\n");
+            expressions[0].appendAsTree(sb, level + 1, "");
+            Arrays.stream(expressions).skip(1).forEach(expression -> expression.appendAsTree(sb, level + 1, ", "));
+            sb.append("\n");
+            this.appendIndent(sb, level);
+            sb.append(";");
+            sb.append(lowerBound);
+            sb.append(";");
+            sb.append(upperBound);
+            sb.append(")");
+        }
+        this.appendArrow(sb, level);
+        sb.append(expressionId);
+        sb.append(" ");
+        sb.append(this.getClass().getSimpleName());
+        sb.append("\n");
+    }
+
+    @Override
+    public List<BbqExpression> getChildExpressions() {
+        return this.expressions.length > 0 ? new ArrayList<>(Arrays.asList(expressions)) : Collections.emptyList();
+    }
+
+    @Override
+    public int computeComplexity() {
+        return Arrays.stream(this.expressions).mapToInt(BbqExpression::computeComplexity).sum() + expressions.length;
+    }
+
+}
@@ -67,6 +67,29 @@ public class NegationExpression implements BbqExpression {
         return res;
     }
 
+    @Override
+    @SuppressWarnings({ "java:S3824" })
+    public boolean match(long[] source, int startPos, Map<Long, Boolean> resultCache, ExpressionMetricsSink metricsSink) {
+        Boolean res = resultCache.get(expressionId);
+        metricsSink.recordVisit(expressionId, res != null);
+        if (res == null) {
+            res = !delegateExpression.match(source, startPos, resultCache, metricsSink);
+            metricsSink.recordEvaluation(expressionId, res, 1);
+            resultCache.put(expressionId, res);
+        }
+        return res;
+    }
+
+    @Override
+    public long matchBlock(RowBlock block, RowMaskCache maskCache) {
+        if (maskCache.contains(expressionId)) {
+            return maskCache.get(expressionId);
+        }
+        long res = ~delegateExpression.matchBlock(block, maskCache) & block.getRowMask();
+        maskCache.put(expressionId, res);
+        return res;
+    }
+
     @Override
     public double computeMatchProbability(long rootExpressionId, DpavProbabilityFetcher probabilities) {
         return 1.0d - delegateExpression.computeMatchProbability(rootExpressionId, probabilities);
@@ -68,6 +68,43 @@ public class OrExpression implements BbqExpression {
         return res;
     }
 
+    @Override
+    @SuppressWarnings({ "java:S3824" })
+    public boolean match(long[] source, int startPos, Map<Long, Boolean> resultCache, ExpressionMetricsSink metricsSink) {
+        Boolean res = resultCache.get(expressionId);
+        metricsSink.recordVisit(expressionId, res != null);
+        if (res == null) {
+            res = false;
+            int numberOfChildVisits = 0;
+            // always the canonical order, so the node statistics do not depend on any reordering
+            for (BbqExpression expression : expressions) {
+                numberOfChildVisits++;
+                res = expression.match(source, startPos, resultCache, metricsSink);
+                if (res) {
+                    break;
+                }
+            }
+            metricsSink.recordEvaluation(expressionId, res, numberOfChildVisits);
+            resultCache.put(expressionId, res);
+        }
+        return res;
+    }
+
+    @Override
+    public long matchBlock(RowBlock block, RowMaskCache maskCache) {
+        if (maskCache.contains(expressionId)) {
+            return maskCache.get(expressionId);
+        }
+        long rowMask = block.getRowMask();
+        long res = 0L;
+        BbqExpression[] members = MemberEvaluationOrder.resolve(maskCache, expressionId, expressions);
+        for (int i = 0; i < members.length && res != rowMask; i++) {
+            res = res | members[i].matchBlock(block, maskCache);
+        }
+        maskCache.put(expressionId, res);
+        return res;
+    }
+
     @Override
     public double computeMatchProbability(long rootExpressionId, DpavProbabilityFetcher probabilities) {
 
@@ -91,7 +128,7 @@ public class OrExpression implements BbqExpression {
      */
     private boolean lazyMatch(long[] source, int startPos, Map<Long, Boolean> resultCache) {
         boolean res = false;
-        for (BbqExpression expression : expressions) {
+        for (BbqExpression expression : MemberEvaluationOrder.resolve(resultCache, expressionId, expressions)) {
             res = expression.match(source, startPos, resultCache);
             if (res) {
                 break;
@@ -0,0 +1,71 @@
+//@formatter:off
+/*
+ * RowBlock
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox.bbq;
+
+/**
+ * A {@link RowBlock} provides up to {@value #MAX_NUMBER_OF_ROWS} consecutive rows of a data store for the <i>bit-parallel</i> evaluation of
+ * {@link BbqExpression}s, see {@link BbqExpression#matchBlock(RowBlock, RowMaskCache)}.
+ * <p>
+ * The results are <i>row masks</i>: bit <code>i</code> of a mask corresponds to row <code>i</code> of the block. This way AND/OR/NOT become single bitwise
+ * operations, and counting is {@link Long#bitCount(long)}.
+ * <p>
+ * How the rows are laid out is up to the implementation, see {@link RowMajorRowBlock} (one vector after another as stored in the box) and
+ * {@link BitSlicedRowBlock} (one mask per vector bit).
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public interface RowBlock {
+
+    /**
+     * maximum number of rows in a block (bits of a long)
+     */
+    public static final int MAX_NUMBER_OF_ROWS = 64;
+
+    /**
+     * @return number of rows in this block, 1 .. {@value #MAX_NUMBER_OF_ROWS}
+     */
+    public int getNumberOfRows();
+
+    /**
+     * @return mask with a bit set for each row of this block (the lowest {@link #getNumberOfRows()} bits)
+     */
+    default long getRowMask() {
+        return createRowMask(getNumberOfRows());
+    }
+
+    /**
+     * Computes which rows of the block contain all the bits of the given pattern (bloom filter match)
+     * 
+     * @param pattern bloom filter vector to match against the rows, same length as the row vectors
+     * @return row mask, bit <code>i</code> is set if row <code>i</code> matches the pattern
+     */
+    public long matchPattern(long[] pattern);
+
+    /**
+     * @param numberOfRows 0 .. {@value #MAX_NUMBER_OF_ROWS}
+     * @return mask with the lowest numberOfRows bits set
+     */
+    public static long createRowMask(int numberOfRows) {
+        return numberOfRows >= MAX_NUMBER_OF_ROWS ? -1L : ((1L << numberOfRows) - 1L);
+    }
+
+}
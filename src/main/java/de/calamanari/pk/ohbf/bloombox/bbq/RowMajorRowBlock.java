@@ -0,0 +1,91 @@
+//@formatter:off
+/*
+ * RowMajorRowBlock
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox.bbq;
+
+import de.calamanari.pk.util.SimpleFixedLengthBitVector;
+
+/**
+ * The {@link RowMajorRowBlock} is a {@link RowBlock} view on consecutive row vectors in a long array (the layout of the data stores).
+ * <p>
+ * The instance is mutable and meant to be re-used for all blocks of a scan, see {@link #reset(long[], int, int, int)}. It is not safe for concurrent use.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public final class RowMajorRowBlock implements RowBlock {
+
+    /**
+     * source array with the row vectors
+     */
+    private long[] source;
+
+    /**
+     * position of the first row vector in the source
+     */
+    private int startPos;
+
+    /**
+     * number of longs per row vector
+     */
+    private int vectorSize;
+
+    /**
+     * number of rows in the current block
+     */
+    private int numberOfRows;
+
+    /**
+     * Points this block to the next rows
+     * 
+     * @param source array with the row vectors
+     * @param startPos position of the first row vector in the source
+     * @param vectorSize number of longs per row vector
+     * @param numberOfRows 1 .. {@value RowBlock#MAX_NUMBER_OF_ROWS}
+     */
+    public void reset(long[] source, int startPos, int vectorSize, int numberOfRows) {
+        if (numberOfRows < 1 || numberOfRows > MAX_NUMBER_OF_ROWS) {
+            throw new IllegalArgumentException(String.format("numberOfRows must be in range [1..%d], given: %d", MAX_NUMBER_OF_ROWS, numberOfRows));
+        }
+        this.source = source;
+        this.startPos = startPos;
+        this.vectorSize = vectorSize;
+        this.numberOfRows = numberOfRows;
+    }
+
+    @Override
+    public int getNumberOfRows() {
+        return numberOfRows;
+    }
+
+    @Override
+    public long matchPattern(long[] pattern) {
+        long res = 0L;
+        int pos = startPos;
+        for (int i = 0; i < numberOfRows; i++) {
+            if (SimpleFixedLengthBitVector.compareAND(source, pos, pattern, 0, vectorSize)) {
+                res = res | (1L << i);
+            }
+            pos = pos + vectorSize;
+        }
+        return res;
+    }
+
+}
@@ -0,0 +1,55 @@
+//@formatter:off
+/*
+ * RowMaskCache
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox.bbq;
+
+/**
+ * The {@link RowMaskCache} is the block-level counterpart of the per-row result cache: while evaluating a {@link RowBlock} it maps expression ids to the
+ * already computed row masks, so that shared sub-expressions of the queries in a bundle get only evaluated once per block.
+ * <p>
+ * The table logic is inherited from {@link ExpressionValueTable}, {@link #clear()} gets called per block and takes constant time.
+ * <p>
+ * The cache also carries the {@link MemberEvaluationOrder} of the scan (if any), see {@link MemberEvaluationOrderAware}.
+ * <p>
+ * The instance is mutable and meant to be re-used for all blocks of a scan. It is not safe for concurrent use.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public final class RowMaskCache extends ExpressionValueTable implements MemberEvaluationOrderAware {
+
+    private static final long serialVersionUID = -4420983176632894587L;
+
+    /**
+     * evaluation order of the AND/OR members for this scan, null for the canonical order
+     */
+    private transient MemberEvaluationOrder memberEvaluationOrder;
+
+    @Override
+    public MemberEvaluationOrder getMemberEvaluationOrder() {
+        return memberEvaluationOrder;
+    }
+
+    @Override
+    public void setMemberEvaluationOrder(MemberEvaluationOrder memberEvaluationOrder) {
+        this.memberEvaluationOrder = memberEvaluationOrder;
+    }
+
+}
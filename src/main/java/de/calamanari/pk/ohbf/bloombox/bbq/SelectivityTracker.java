@@ -0,0 +1,271 @@
+//@formatter:off
+/*
+ * SelectivityTracker
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.pk.ohbf.bloombox.bbq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link SelectivityTracker} observes the match rates of the members of {@link AndExpression}s and {@link OrExpression}s during a scan and reorders
+ * their evaluation (see {@link #getMemberEvaluationOrder()}), so that the short-circuit kicks in as early as possible:
+ * <ul>
+ * <li>AND: members ascending by <code>cost / (1 - matchRate)</code>, the cheap members that rarely match come first.</li>
+ * <li>OR: members ascending by <code>cost / matchRate</code>, the cheap members that often match come first.</li>
+ * </ul>
+ * The cost of a member is its {@link BbqExpression#computeComplexity()}.
+ * <p>
+ * Observation happens on the first {@value #OBSERVATION_ROWS} rows of every window of {@value #OBSERVATION_INTERVAL_ROWS} rows: all members get evaluated
+ * (no short-circuit), afterwards the members get reordered if any rate differs by more than {@value #REORDER_THRESHOLD} from the rates the current order
+ * is based on. This way the order adapts if the data is not evenly distributed (e.g. clustered by feeding order).
+ * <p>
+ * The order of evaluation has no influence on any result or expression id, only on the number of evaluations. The tracker owns the
+ * {@link MemberEvaluationOrder}, the expressions remain untouched. Only executions with a result cache that carries this order (see
+ * {@link MemberEvaluationOrderAware}) are affected, so expressions shared across executions or concurrent requests do not influence each other. The tracker
+ * is not safe for concurrent use, every delegate of a parallel scan needs its own.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+public final class SelectivityTracker {
+
+    /**
+     * number of rows to be observed before deciding about the evaluation order
+     */
+    public static final int OBSERVATION_ROWS = 1_024;
+
+    /**
+     * every window of this number of rows starts with an observation phase of {@link #OBSERVATION_ROWS}
+     */
+    public static final int OBSERVATION_INTERVAL_ROWS = 65_536;
+
+    /**
+     * minimum absolute change of an observed match rate to trigger a reordering
+     */
+    public static final double REORDER_THRESHOLD = 0.05;
+
+    /**
+     * lower bound for the divisors of the ordering keys
+     */
+    private static final double MIN_DIVISOR = 0.000001;
+
+    /**
+     * AND/OR expressions with at least two members
+     */
+    private final BbqExpression[] combinedExpressions;
+
+    /**
+     * members of each of the {@link #combinedExpressions} in canonical order
+     */
+    private final BbqExpression[][] canonicalMembers;
+
+    /**
+     * the evaluation order maintained by this tracker
+     */
+    private final MemberEvaluationOrder memberEvaluationOrder = new MemberEvaluationOrder();
+
+    /**
+     * distinct members of all the combined expressions
+     */
+    private final BbqExpression[] members;
+
+    /**
+     * cost (complexity) of each member
+     */
+    private final double[] costs;
+
+    /**
+     * maps the expression id of a member to its index in {@link #members}
+     */
+    private final Map<Long, Integer> memberIndexMap;
+
+    /**
+     * number of matches per member in the current observation
+     */
+    private final long[] matchCounts;
+
+    /**
+     * the match rates the current evaluation order is based on, initially NaN
+     */
+    private final double[] appliedMatchRates;
+
+    /**
+     * number of rows processed so far
+     */
+    private long numberOfRowsProcessed = 0;
+
+    /**
+     * number of rows of the current observation
+     */
+    private int numberOfRowsObserved = 0;
+
+    /**
+     * number of times the members have been reordered
+     */
+    private int numberOfReorderings = 0;
+
+    /**
+     * @param combinedExpressions AND/OR expressions with at least two members
+     */
+    private SelectivityTracker(List<BbqExpression> combinedExpressions) {
+        this.combinedExpressions = combinedExpressions.toArray(new BbqExpression[combinedExpressions.size()]);
+        this.canonicalMembers = combinedExpressions.stream().map(expression -> expression.getChildExpressions().toArray(new BbqExpression[0]))
+                .toArray(BbqExpression[][]::new);
+        this.memberIndexMap = new HashMap<>();
+        List<BbqExpression> memberList = new ArrayList<>();
+        for (BbqExpression expression : combinedExpressions) {
+            for (BbqExpression member : expression.getChildExpressions()) {
+                if (!memberIndexMap.containsKey(member.getExpressionId())) {
+                    memberIndexMap.put(member.getExpressionId(), memberList.size());
+                    memberList.add(member);
+                }
+            }
+        }
+        this.members = memberList.toArray(new BbqExpression[memberList.size()]);
+        this.costs = memberList.stream().mapToDouble(BbqExpression::computeComplexity).map(cost -> Math.max(cost, 1.0)).toArray();
+        this.matchCounts = new long[members.length];
+        this.appliedMatchRates = new double[members.length];
+        Arrays.fill(appliedMatchRates, Double.NaN);
+    }
+
+    /**
+     * @param expressions all distinct expressions (including all sub-expressions) to be executed
+     * @return tracker or null if there is nothing to be reordered
+     */
+    public static SelectivityTracker create(Collection<BbqExpression> expressions) {
+        List<BbqExpression> combinedExpressions = expressions.stream()
+                .filter(expression -> (expression instanceof AndExpression || expression instanceof OrExpression)
+                        && expression.getChildExpressions().size() > 1)
+                .toList();
+        return combinedExpressions.isEmpty() ? null : new SelectivityTracker(combinedExpressions);
+    }
+
+    /**
+     * @return true if the next rows are part of an observation phase
+     */
+    private boolean isObserving() {
+        return numberOfRowsObserved > 0 || (numberOfRowsProcessed % OBSERVATION_INTERVAL_ROWS) < OBSERVATION_ROWS;
+    }
+
+    /**
+     * To be called after the queries have been executed on the given block (mask cache still filled).
+     * 
+     * @param block current block
+     * @param maskCache cache with the row masks computed so far for this block
+     */
+    public void afterBlock(RowBlock block, RowMaskCache maskCache) {
+        if (isObserving()) {
+            for (int i = 0; i < members.length; i++) {
+                matchCounts[i] += Long.bitCount(members[i].matchBlock(block, maskCache));
+            }
+            completeObservation(block.getNumberOfRows());
+        }
+        numberOfRowsProcessed += block.getNumberOfRows();
+    }
+
+    /**
+     * To be called after the queries have been executed on the given row (result cache still filled).
+     * 
+     * @param source content to match
+     * @param startPos position in the content to start
+     * @param resultCache cache with the results computed so far for this row
+     */
+    public void afterRow(long[] source, int startPos, Map<Long, Boolean> resultCache) {
+        if (isObserving()) {
+            for (int i = 0; i < members.length; i++) {
+                if (members[i].match(source, startPos, resultCache)) {
+                    matchCounts[i]++;
+                }
+            }
+            completeObservation(1);
+        }
+        numberOfRowsProcessed++;
+    }
+
+    /**
+     * Reorders the members if the observation is complete and the rates have changed
+     * 
+     * @param numberOfRows rows just observed
+     */
+    private void completeObservation(int numberOfRows) {
+        numberOfRowsObserved += numberOfRows;
+        if (numberOfRowsObserved >= OBSERVATION_ROWS) {
+            double[] matchRates = new double[members.length];
+            boolean changed = false;
+            for (int i = 0; i < members.length; i++) {
+                matchRates[i] = (double) matchCounts[i] / numberOfRowsObserved;
+                changed = changed || Double.isNaN(appliedMatchRates[i]) || Math.abs(matchRates[i] - appliedMatchRates[i]) > REORDER_THRESHOLD;
+            }
+            if (changed) {
+                reorder(matchRates);
+                System.arraycopy(matchRates, 0, appliedMatchRates, 0, matchRates.length);
+            }
+            Arrays.fill(matchCounts, 0L);
+            numberOfRowsObserved = 0;
+        }
+    }
+
+    /**
+     * @param matchRates observed match rate per member
+     */
+    private void reorder(double[] matchRates) {
+        Comparator<BbqExpression> andOrder = Comparator.comparingDouble(member -> {
+            int idx = memberIndexMap.get(member.getExpressionId());
+            return costs[idx] / Math.max(1.0 - matchRates[idx], MIN_DIVISOR);
+        });
+        Comparator<BbqExpression> orOrder = Comparator.comparingDouble(member -> {
+            int idx = memberIndexMap.get(member.getExpressionId());
+            return costs[idx] / Math.max(matchRates[idx], MIN_DIVISOR);
+        });
+        for (int i = 0; i < combinedExpressions.length; i++) {
+            BbqExpression[] members = Arrays.copyOf(canonicalMembers[i], canonicalMembers[i].length);
+            Arrays.sort(members, combinedExpressions[i] instanceof AndExpression ? andOrder : orOrder);
+            memberEvaluationOrder.setMembers(combinedExpressions[i].getExpressionId(), members);
+        }
+        numberOfReorderings++;
+    }
+
+    /**
+     * @return the evaluation order maintained by this tracker, to be passed to the result caches of the execution (see {@link MemberEvaluationOrderAware})
+     */
+    public MemberEvaluationOrder getMemberEvaluationOrder() {
+        return memberEvaluationOrder;
+    }
+
+    /**
+     * @return number of times the members have been reordered so far
+     */
+    public int getNumberOfReorderings() {
+        return numberOfReorderings;
+    }
+
+    /**
+     * @return number of rows processed so far
+     */
+    public long getNumberOfRowsProcessed() {
+        return numberOfRowsProcessed;
+    }
+
+}
@@ -110,7 +110,7 @@ public abstract class AbstractThreadedSocketServer extends AbstractConsoleServer
     @Override
     protected void prepare() {
         try {
-            serverSocket = new ServerSocket(serverPort);
+            serverSocket = createServerSocket(serverPort);
         }
         catch (IOException | RuntimeException ex) {
             throw new SocketPreparationException(ex);
@@ -164,6 +164,18 @@ public abstract class AbstractThreadedSocketServer extends AbstractConsoleServer
      */
     protected abstract void handleSocketCommunication(Socket socket) throws SocketCommunicationException;
 
+    /**
+     * Creates the server socket during {@link #prepare()}.<br>
+     * The default implementation listens on all local addresses, subclasses may override this method to bind to a particular address.
+     * 
+     * @param port listening port
+     * @return bound server socket
+     * @throws IOException if the socket cannot be created
+     */
+    protected ServerSocket createServerSocket(int port) throws IOException {
+        return new ServerSocket(port);
+    }
+
     /**
      * Method returning a default port.<br>
      * Subclasses return here a standard port for this server.
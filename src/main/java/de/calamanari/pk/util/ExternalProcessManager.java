@@ -59,9 +59,9 @@ public final class ExternalProcessManager {
     private static final long MIN_SHUTDOWN_WAIT_TIME_MILLIS = 500;
 
     /**
-     * map with managed processes, one per class
+     * map with managed processes, by default one per class (the key is the class name), see {@link #startExternal(String, Class, List, Logger, String...)}
      */
-    private final Map<Class<?>, Process> externalServerProcesses = new HashMap<>();
+    private final Map<String, Process> externalServerProcesses = new HashMap<>();
 
     /**
      * no public constructor, no subclassing
@@ -87,30 +87,54 @@ public final class ExternalProcessManager {
      * @param commandLineArgs optional arguments
      * @throws ExternalProcessManagementException on any error during start
      */
-    @SuppressWarnings("resource")
     public synchronized void startExternal(Class<?> mainClass, Logger logger, String... commandLineArgs) throws ExternalProcessManagementException {
 
         if (mainClass == null) {
             throw new ExternalProcessManagementException(
                     String.format("Argument 'mainClass' must not be null (mainClass=null, commandLineArgs=%s).", Arrays.toString(commandLineArgs)));
         }
+        startExternal(mainClass.getName(), mainClass, null, logger, commandLineArgs);
+    }
+
+    /**
+     * Starts an external instance identified by the given key, this way multiple instances of the same main class can be managed (e.g. worker processes).
+     * 
+     * @param processKey identifies the process, see {@link #stopExternal(String, String, long)} NOT NULL
+     * @param mainClass class to be executed (must provide main(arg[])-method NOT NULL
+     * @param jvmArgs optional arguments for the java VM (e.g. heap settings), may be null
+     * @param logger target for redirecting process console output NOT NULL
+     * @param commandLineArgs optional arguments
+     * @throws ExternalProcessManagementException on any error during start
+     */
+    @SuppressWarnings("resource")
+    public synchronized void startExternal(String processKey, Class<?> mainClass, List<String> jvmArgs, Logger logger, String... commandLineArgs)
+            throws ExternalProcessManagementException {
+
+        if (mainClass == null || processKey == null) {
+            throw new ExternalProcessManagementException(String.format(
+                    "Arguments 'processKey' and 'mainClass' must not be null (processKey=%s, mainClass=%s, commandLineArgs=%s).", processKey,
+                    mainClass == null ? null : mainClass.getName(), Arrays.toString(commandLineArgs)));
+        }
 
         if (logger == null) {
             throw new ExternalProcessManagementException(String.format("Argument 'logger' must not be null (mainClass=%s, commandLineArgs=%s).",
                     mainClass.getName(), Arrays.toString(commandLineArgs)));
         }
 
-        Process externalServerProcess = externalServerProcesses.get(mainClass);
+        Process externalServerProcess = externalServerProcesses.get(processKey);
 
         if (externalServerProcess != null) {
-            throw new ExternalProcessManagementException(
-                    String.format("Instance is already running! (mainClass=%s, commandLineArgs=%s)", mainClass.getName(), Arrays.toString(commandLineArgs)));
+            throw new ExternalProcessManagementException(String.format("Instance is already running! (processKey=%s, mainClass=%s, commandLineArgs=%s)",
+                    processKey, mainClass.getName(), Arrays.toString(commandLineArgs)));
         }
 
         try {
             List<String> args = new ArrayList<>();
 
             args.add(JAVA_COMMAND);
+            if (jvmArgs != null) {
+                args.addAll(jvmArgs);
+            }
             args.add("-classpath");
             args.add(System.getProperties().getProperty("java.class.path", null));
             args.add(mainClass.getName());
@@ -121,7 +145,7 @@ public final class ExternalProcessManager {
             externalServerProcess = pb.start();
             (new ExternalConsoleHandlerThread(mainClass.getSimpleName() + " Console", externalServerProcess.getInputStream(), logger, Level.INFO)).start();
             (new ExternalConsoleHandlerThread(mainClass.getSimpleName() + " Console", externalServerProcess.getErrorStream(), logger, Level.INFO)).start();
-            externalServerProcesses.put(mainClass, externalServerProcess);
+            externalServerProcesses.put(processKey, externalServerProcess);
         }
         catch (IOException | RuntimeException ex) {
             throw new ExternalProcessManagementException(
@@ -146,22 +170,40 @@ public final class ExternalProcessManager {
         if (mainClass == null) {
             throw new ExternalProcessManagementException(String.format("Argument 'mainClass' must not be null (mainClass=null, stopCommand=%s).", stopCommand));
         }
+        return stopExternal(mainClass.getName(), stopCommand, maxWaitTimeMillis);
+    }
+
+    /**
+     * Stops the running external instance identified by the given key (see {@link #startExternal(String, Class, List, Logger, String...)}), details see
+     * {@link #stopExternal(Class, String, long)}.
+     * 
+     * @param processKey identifies the process
+     * @param stopCommand quit command to send via process' input stream, if null/empty force termination
+     * @param maxWaitTimeMillis maximum wait time in milliseconds, after this time the process will be killed
+     * @return exit code or Integer.MIN_VALUE to indicate abnormal/forced termination
+     * @throws ExternalProcessManagementException on any error while trying to stop
+     */
+    public synchronized int stopExternal(String processKey, String stopCommand, long maxWaitTimeMillis) throws ExternalProcessManagementException {
+
+        if (processKey == null) {
+            throw new ExternalProcessManagementException(String.format("Argument 'processKey' must not be null (processKey=null, stopCommand=%s).", stopCommand));
+        }
 
         try {
-            Process externalServerProcess = externalServerProcesses.remove(mainClass);
+            Process externalServerProcess = externalServerProcesses.remove(processKey);
             int res = Integer.MIN_VALUE;
             if (externalServerProcess != null) {
-                res = shutdownExternalProcess(externalServerProcess, mainClass, stopCommand, maxWaitTimeMillis, res);
+                res = shutdownExternalProcess(externalServerProcess, processKey, stopCommand, maxWaitTimeMillis, res);
             }
             return res;
         }
         catch (RuntimeException ex) {
             throw new ExternalProcessManagementException(
-                    String.format("Error stopping external process (mainClass=%s, stopCommand=%s).", mainClass.getName(), stopCommand), ex);
+                    String.format("Error stopping external process (processKey=%s, stopCommand=%s).", processKey, stopCommand), ex);
         }
     }
 
-    private int shutdownExternalProcess(Process externalServerProcess, Class<?> mainClass, String stopCommand, long maxWaitTimeMillis, int res) {
+    private int shutdownExternalProcess(Process externalServerProcess, String processKey, String stopCommand, long maxWaitTimeMillis, int res) {
         int waitAttempts = 0;
         int maxWaitAttempts = (int) (maxWaitTimeMillis / MIN_SHUTDOWN_WAIT_TIME_MILLIS);
         if (maxWaitAttempts <= 0) {
@@ -187,7 +229,7 @@ public final class ExternalProcessManager {
         if (stopCommand == null || !stopCommand.trim().isEmpty() || waitAttempts >= maxWaitAttempts) {
             externalServerProcess.destroy();
             if (waitAttempts >= maxWaitAttempts) {
-                LOGGER.warn("Forcibly terminated external process {}.", mainClass.getSimpleName());
+                LOGGER.warn("Forcibly terminated external process {}.", processKey);
             }
         }
         return res;
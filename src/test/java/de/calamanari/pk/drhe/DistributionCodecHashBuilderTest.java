@@ -20,9 +20,17 @@
 package de.calamanari.pk.drhe;
 
 import static de.calamanari.pk.drhe.util.BitUtils.binStr;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
@@ -127,4 +135,100 @@ public class DistributionCodecHashBuilderTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    void testBulkUpdatesEqualElementWiseUpdates() {
+
+        Random rand = new Random(3317);
+        byte[] data = new byte[100];
+        rand.nextBytes(data);
+        long[] values = new long[] { rand.nextLong(), Long.MIN_VALUE, -1L, 0L, rand.nextLong(), rand.nextLong(), 1L, rand.nextLong(), rand.nextLong() };
+
+        // the bytes fed upfront shift the bulk input against the internal 16-byte blocks
+        for (int numberOfPrefixBytes = 0; numberOfPrefixBytes <= 17; numberOfPrefixBytes++) {
+            for (int length = 0; length <= 70; length++) {
+                DistributionCodecHashBuilder expected = createBuilderWithPrefix(numberOfPrefixBytes);
+                for (int i = 0; i < length; i++) {
+                    expected.update(data[5 + i]);
+                }
+                long expectedHash = expected.getHashValue();
+
+                DistributionCodecHashBuilder builder = createBuilderWithPrefix(numberOfPrefixBytes);
+                builder.update(data, 5, length);
+                assertEquals(expectedHash, builder.getHashValue());
+
+                builder = createBuilderWithPrefix(numberOfPrefixBytes);
+                builder.update(Arrays.copyOfRange(data, 5, 5 + length));
+                assertEquals(expectedHash, builder.getHashValue());
+
+                for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+                    for (boolean direct : new boolean[] { false, true }) {
+                        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(data.length) : ByteBuffer.allocate(data.length);
+                        buffer.put(data).order(order).position(5).limit(5 + length);
+                        builder = createBuilderWithPrefix(numberOfPrefixBytes);
+                        builder.update(buffer);
+                        assertEquals(5 + length, buffer.position());
+                        assertEquals(expectedHash, builder.getHashValue(), "prefix=" + numberOfPrefixBytes + ", length=" + length + ", " + order);
+                    }
+                }
+            }
+
+            for (int length = 0; length <= values.length; length++) {
+                DistributionCodecHashBuilder expected = createBuilderWithPrefix(numberOfPrefixBytes);
+                for (int i = 0; i < length; i++) {
+                    expected.update(values[i]);
+                }
+                DistributionCodecHashBuilder builder = createBuilderWithPrefix(numberOfPrefixBytes);
+                builder.update(Arrays.copyOf(values, length));
+                assertEquals(expected.getHashValue(), builder.getHashValue(), "prefix=" + numberOfPrefixBytes + ", length=" + length);
+            }
+        }
+
+    }
+
+    @Test
+    void testTreeHashIndependentOfThreads() throws Exception {
+
+        byte[] data = new byte[10_007];
+        new Random(9901).nextBytes(data);
+
+        long expected = DistributionCodecHashBuilder.treeHash(ByteBuffer.wrap(data), 64);
+        assertEquals(expected, DistributionCodecHashBuilder.treeHash(ByteBuffer.wrap(data), 64));
+        assertNotEquals(expected, DistributionCodecHashBuilder.treeHash(ByteBuffer.wrap(data), 128));
+        assertNotEquals(expected, DistributionCodecHashBuilder.hash(data));
+
+        for (int parallelism : new int[] { 1, 2, 7 }) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                assertEquals(expected, pool.submit(() -> DistributionCodecHashBuilder.treeHash(ByteBuffer.wrap(data), 64)).get().longValue());
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+
+        // only the remaining bytes count, not the buffer's type, byte order or the bytes before the position
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length + 3).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[] { 1, 2, 3 }).put(data).position(3);
+        assertEquals(expected, DistributionCodecHashBuilder.treeHash(buffer, 64));
+        assertEquals(3, buffer.position());
+
+        assertEquals(DistributionCodecHashBuilder.treeHash(ByteBuffer.wrap(data), DistributionCodecHashBuilder.DEFAULT_TREE_LEAF_SIZE),
+                DistributionCodecHashBuilder.treeHash(data));
+        assertNotEquals(DistributionCodecHashBuilder.treeHash(new byte[0]), DistributionCodecHashBuilder.treeHash(new byte[1]));
+        assertThrows(IllegalArgumentException.class, () -> DistributionCodecHashBuilder.treeHash(ByteBuffer.wrap(data), 15));
+
+    }
+
+    /**
+     * @param numberOfPrefixBytes number of bytes fed to the new builder upfront
+     * @return builder
+     */
+    private static DistributionCodecHashBuilder createBuilderWithPrefix(int numberOfPrefixBytes) {
+        DistributionCodecHashBuilder builder = new DistributionCodecHashBuilder();
+        for (int i = 0; i < numberOfPrefixBytes; i++) {
+            builder.update((byte) (i * 31 + 7));
+        }
+        return builder;
+    }
+
+}
@@ -20,16 +20,26 @@
 package de.calamanari.pk.drhe;
 
 import static de.calamanari.pk.drhe.util.BitUtils.binStr;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.calamanari.pk.drhe.util.GenStats;
+import de.calamanari.pk.drhe.util.XoRotUtils;
 
 @SuppressWarnings("java:S5786")
 public class DistributionCodecTest {
@@ -329,4 +339,175 @@ public class DistributionCodecTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    void testBulkLongCodec() {
+
+        Random rand = new Random(6637);
+        for (int size : new int[] { 0, 1, 7, XoRotUtils.BULK_BLOCK_SIZE, 3 * XoRotUtils.BULK_BLOCK_SIZE + 5, 2 * DistributionCodec.PARALLEL_SLICE_SIZE + 7 }) {
+            long[] values = new long[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = (i % 5 == 0) ? (Long.MIN_VALUE + i) : rand.nextLong();
+            }
+            long[] expected = new long[size];
+            for (int i = 0; i < size; i++) {
+                expected[i] = DistributionCodec.encode(values[i]);
+            }
+
+            long[] bulk = values.clone();
+            DistributionCodec.encode(bulk);
+            assertArrayEquals(expected, bulk);
+            DistributionCodec.decode(bulk);
+            assertArrayEquals(values, bulk);
+
+            long[] parallel = values.clone();
+            DistributionCodec.encodeParallel(parallel);
+            assertArrayEquals(expected, parallel);
+            DistributionCodec.decodeParallel(parallel);
+            assertArrayEquals(values, parallel);
+
+            if (size > 2) {
+                long[] range = values.clone();
+                DistributionCodec.encode(range, 1, size - 1);
+                for (int i = 0; i < size; i++) {
+                    assertEquals((i > 0 && i < size - 1) ? expected[i] : values[i], range[i]);
+                }
+                DistributionCodec.decode(range, 1, size - 1);
+                assertArrayEquals(values, range);
+            }
+
+            for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+                for (boolean direct : new boolean[] { false, true }) {
+                    // non-zero position, so the values are not aligned
+                    int position = 3;
+                    ByteBuffer buffer = (direct ? ByteBuffer.allocateDirect(position + size * Long.BYTES + 2)
+                            : ByteBuffer.allocate(position + size * Long.BYTES + 2)).order(order);
+                    buffer.position(position);
+                    buffer.limit(position + size * Long.BYTES);
+                    for (int i = 0; i < size; i++) {
+                        buffer.putLong(position + i * Long.BYTES, values[i]);
+                    }
+                    DistributionCodec.encodeLongs(buffer);
+                    assertEquals(position, buffer.position());
+                    assertEquals(position + size * Long.BYTES, buffer.limit());
+                    for (int i = 0; i < size; i++) {
+                        assertEquals(expected[i], buffer.getLong(position + i * Long.BYTES));
+                    }
+                    assertEquals(0, buffer.get(0));
+                    assertEquals(0, buffer.duplicate().clear().get(buffer.capacity() - 1));
+                    DistributionCodec.decodeLongs(buffer);
+                    for (int i = 0; i < size; i++) {
+                        assertEquals(values[i], buffer.getLong(position + i * Long.BYTES));
+                    }
+                }
+
+                try (Arena arena = Arena.ofConfined()) {
+                    MemorySegment segment = arena.allocate(size * Long.BYTES + 3L).asSlice(3);
+                    ValueLayout.OfLong layout = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(order);
+                    for (int i = 0; i < size; i++) {
+                        segment.set(layout, (long) i * Long.BYTES, values[i]);
+                    }
+                    DistributionCodec.encodeLongs(segment, order);
+                    for (int i = 0; i < size; i++) {
+                        assertEquals(expected[i], segment.get(layout, (long) i * Long.BYTES));
+                    }
+                    DistributionCodec.decodeLongs(segment, order);
+                    for (int i = 0; i < size; i++) {
+                        assertEquals(values[i], segment.get(layout, (long) i * Long.BYTES));
+                    }
+                }
+            }
+        }
+
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> DistributionCodec.encode(new long[5], 3, 2));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> DistributionCodec.decode(new long[5], 0, 6));
+        assertThrows(IllegalArgumentException.class, () -> DistributionCodec.encodeLongs(ByteBuffer.allocate(12)));
+        assertThrows(IllegalArgumentException.class, () -> DistributionCodec.decodeLongs(MemorySegment.ofArray(new byte[12]), ByteOrder.BIG_ENDIAN));
+
+    }
+
+    @Test
+    void testBulkIntCodec() {
+
+        Random rand = new Random(8821);
+        for (int size : new int[] { 0, 1, 7, XoRotUtils.BULK_BLOCK_SIZE, 3 * XoRotUtils.BULK_BLOCK_SIZE + 5, 2 * DistributionCodec.PARALLEL_SLICE_SIZE + 7 }) {
+            int[] values = new int[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = (i % 5 == 0) ? (Integer.MIN_VALUE + i) : rand.nextInt();
+            }
+            int[] expected = new int[size];
+            for (int i = 0; i < size; i++) {
+                expected[i] = DistributionCodec.encode(values[i]);
+            }
+
+            int[] bulk = values.clone();
+            DistributionCodec.encode(bulk);
+            assertArrayEquals(expected, bulk);
+            DistributionCodec.decode(bulk);
+            assertArrayEquals(values, bulk);
+
+            int[] parallel = values.clone();
+            DistributionCodec.encodeParallel(parallel);
+            assertArrayEquals(expected, parallel);
+            DistributionCodec.decodeParallel(parallel);
+            assertArrayEquals(values, parallel);
+
+            if (size > 2) {
+                int[] range = values.clone();
+                DistributionCodec.encode(range, 1, size - 1);
+                for (int i = 0; i < size; i++) {
+                    assertEquals((i > 0 && i < size - 1) ? expected[i] : values[i], range[i]);
+                }
+                DistributionCodec.decode(range, 1, size - 1);
+                assertArrayEquals(values, range);
+            }
+
+            for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+                for (boolean direct : new boolean[] { false, true }) {
+                    // non-zero position, so the values are not aligned
+                    int position = 3;
+                    ByteBuffer buffer = (direct ? ByteBuffer.allocateDirect(position + size * Integer.BYTES + 2)
+                            : ByteBuffer.allocate(position + size * Integer.BYTES + 2)).order(order);
+                    buffer.position(position);
+                    buffer.limit(position + size * Integer.BYTES);
+                    for (int i = 0; i < size; i++) {
+                        buffer.putInt(position + i * Integer.BYTES, values[i]);
+                    }
+                    DistributionCodec.encodeInts(buffer);
+                    assertEquals(position, buffer.position());
+                    assertEquals(position + size * Integer.BYTES, buffer.limit());
+                    for (int i = 0; i < size; i++) {
+                        assertEquals(expected[i], buffer.getInt(position + i * Integer.BYTES));
+                    }
+                    assertEquals(0, buffer.get(0));
+                    assertEquals(0, buffer.duplicate().clear().get(buffer.capacity() - 1));
+                    DistributionCodec.decodeInts(buffer);
+                    for (int i = 0; i < size; i++) {
+                        assertEquals(values[i], buffer.getInt(position + i * Integer.BYTES));
+                    }
+                }
+
+                try (Arena arena = Arena.ofConfined()) {
+                    MemorySegment segment = arena.allocate(size * Integer.BYTES + 3L).asSlice(3);
+                    ValueLayout.OfInt layout = ValueLayout.JAVA_INT_UNALIGNED.withOrder(order);
+                    for (int i = 0; i < size; i++) {
+                        segment.set(layout, (long) i * Integer.BYTES, values[i]);
+                    }
+                    DistributionCodec.encodeInts(segment, order);
+                    for (int i = 0; i < size; i++) {
+                        assertEquals(expected[i], segment.get(layout, (long) i * Integer.BYTES));
+                    }
+                    DistributionCodec.decodeInts(segment, order);
+                    for (int i = 0; i < size; i++) {
+                        assertEquals(values[i], segment.get(layout, (long) i * Integer.BYTES));
+                    }
+                }
+            }
+        }
+
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> DistributionCodec.encode(new int[5], -1, 2));
+        assertThrows(IllegalArgumentException.class, () -> DistributionCodec.decodeInts(ByteBuffer.allocate(6)));
+        assertThrows(IllegalArgumentException.class, () -> DistributionCodec.encodeInts(MemorySegment.ofArray(new byte[6]), ByteOrder.LITTLE_ENDIAN));
+
+    }
+
+}
@@ -0,0 +1,257 @@
+//@formatter:off
+/*
+ * SecureDistributionStreamCodecTest
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.drhe;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.calamanari.pk.drhe.SecureDistributionCodec.DecodingException;
+
+/**
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+@SuppressWarnings("java:S5786")
+public class SecureDistributionStreamCodecTest {
+
+    /**
+     * small frame size to get many frames from little data
+     */
+    private static final int FRAME_SIZE = 64;
+
+    /**
+     * bytes before the first frame
+     */
+    private static final int STREAM_HEADER_LENGTH = 16;
+
+    /**
+     * bytes of an encoded full frame including its header
+     */
+    private static final int ENCODED_FRAME_LENGTH = FRAME_SIZE + 8;
+
+    private static final String PASSWORD = "Test";
+
+    private static final int[] SIZES = new int[] { 0, 1, 7, FRAME_SIZE - 1, FRAME_SIZE, FRAME_SIZE + 1, 2 * FRAME_SIZE, 5 * FRAME_SIZE, 7 * FRAME_SIZE + 13 };
+
+    private static final int[] THREAD_COUNTS = new int[] { 1, 2, 5 };
+
+    @Test
+    void testStreamRoundTrip() throws IOException {
+
+        for (int size : SIZES) {
+            byte[] content = createContent(size);
+            for (int numberOfThreads : THREAD_COUNTS) {
+                byte[] encoded = encodeStream(content, numberOfThreads);
+                assertEquals(STREAM_HEADER_LENGTH + encodedLengthOfFrames(size), encoded.length);
+                for (int decodingThreads : THREAD_COUNTS) {
+                    assertArrayEquals(content, decodeStream(encoded, PASSWORD, decodingThreads), "size=" + size + ", threads=" + numberOfThreads);
+                }
+            }
+        }
+
+        // default frame size and number of threads
+        byte[] content = createContent(SecureDistributionStreamCodec.DEFAULT_FRAME_SIZE + 3);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        assertEquals(content.length, SecureDistributionStreamCodec.encode(new ByteArrayInputStream(content), encoded, PASSWORD));
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        assertEquals(content.length, SecureDistributionStreamCodec.decode(new ByteArrayInputStream(encoded.toByteArray()), decoded, PASSWORD));
+        assertArrayEquals(content, decoded.toByteArray());
+
+    }
+
+    @Test
+    void testChannelRoundTrip() throws IOException {
+
+        Path source = Files.createTempFile(SecureDistributionStreamCodecTest.class.getSimpleName(), ".src");
+        Path encoded = Files.createTempFile(SecureDistributionStreamCodecTest.class.getSimpleName(), ".enc");
+        Path decoded = Files.createTempFile(SecureDistributionStreamCodecTest.class.getSimpleName(), ".dec");
+        try {
+            for (int size : SIZES) {
+                byte[] content = createContent(size);
+                // the data starts behind a prefix to check that the channel positions are respected
+                byte[] prefix = new byte[] { 1, 2, 3 };
+                Files.write(source, concat(prefix, content));
+                for (int numberOfThreads : THREAD_COUNTS) {
+                    try (FileChannel src = FileChannel.open(source, StandardOpenOption.READ);
+                            FileChannel dest = FileChannel.open(encoded, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        src.position(prefix.length);
+                        dest.write(ByteBuffer.wrap(prefix));
+                        assertEquals(size, SecureDistributionStreamCodec.encode(src, dest, PASSWORD, FRAME_SIZE, numberOfThreads));
+                        assertEquals(prefix.length + size, src.position());
+                        assertEquals(prefix.length + STREAM_HEADER_LENGTH + encodedLengthOfFrames(size), dest.position());
+                    }
+                    byte[] encodedBytes = Arrays.copyOfRange(Files.readAllBytes(encoded), prefix.length, (int) Files.size(encoded));
+
+                    // channel and stream variants are compatible
+                    assertArrayEquals(content, decodeStream(encodedBytes, PASSWORD, numberOfThreads));
+                    assertArrayEquals(content, decodeChannel(encoded, prefix.length, decoded, numberOfThreads));
+                    Files.write(encoded, concat(prefix, encodeStream(content, numberOfThreads)));
+                    assertArrayEquals(content, decodeChannel(encoded, prefix.length, decoded, numberOfThreads), "size=" + size + ", threads=" + numberOfThreads);
+                }
+            }
+        }
+        finally {
+            Files.delete(source);
+            Files.delete(encoded);
+            Files.delete(decoded);
+        }
+
+    }
+
+    @Test
+    void testWrongPassword() throws IOException {
+
+        byte[] encoded = encodeStream(createContent(3 * FRAME_SIZE + 5), 2);
+        assertThrows(DecodingException.class, () -> decodeStream(encoded, "test", 2));
+
+        Path encodedFile = Files.createTempFile(SecureDistributionStreamCodecTest.class.getSimpleName(), ".enc");
+        Path decodedFile = Files.createTempFile(SecureDistributionStreamCodecTest.class.getSimpleName(), ".dec");
+        try {
+            Files.write(encodedFile, encoded);
+            try (FileChannel src = FileChannel.open(encodedFile, StandardOpenOption.READ);
+                    FileChannel dest = FileChannel.open(decodedFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                assertThrows(DecodingException.class, () -> SecureDistributionStreamCodec.decode(src, dest, "Test ", 2));
+            }
+        }
+        finally {
+            Files.delete(encodedFile);
+            Files.delete(decodedFile);
+        }
+
+    }
+
+    @Test
+    void testCorruptedInput() throws IOException {
+
+        Path encodedFile = Files.createTempFile(SecureDistributionStreamCodecTest.class.getSimpleName(), ".enc");
+        Path decodedFile = Files.createTempFile(SecureDistributionStreamCodecTest.class.getSimpleName(), ".dec");
+        try {
+            for (int size : new int[] { 3 * FRAME_SIZE, 3 * FRAME_SIZE + 5 }) {
+                byte[] encoded = encodeStream(createContent(size), 2);
+                int lastFrameStart = STREAM_HEADER_LENGTH + 3 * ENCODED_FRAME_LENGTH;
+
+                byte[] missingLastFrame = Arrays.copyOf(encoded, lastFrameStart);
+                byte[] missingLastBytes = Arrays.copyOf(encoded, encoded.length - 3);
+                byte[] headerOnly = Arrays.copyOf(encoded, STREAM_HEADER_LENGTH);
+                byte[] incompleteHeader = Arrays.copyOf(encoded, STREAM_HEADER_LENGTH - 1);
+
+                byte[] swappedFrames = encoded.clone();
+                System.arraycopy(encoded, STREAM_HEADER_LENGTH, swappedFrames, STREAM_HEADER_LENGTH + ENCODED_FRAME_LENGTH, ENCODED_FRAME_LENGTH);
+                System.arraycopy(encoded, STREAM_HEADER_LENGTH + ENCODED_FRAME_LENGTH, swappedFrames, STREAM_HEADER_LENGTH, ENCODED_FRAME_LENGTH);
+
+                byte[] lastFrameFirst = concat(Arrays.copyOf(encoded, STREAM_HEADER_LENGTH), Arrays.copyOfRange(encoded, lastFrameStart, encoded.length),
+                        Arrays.copyOfRange(encoded, STREAM_HEADER_LENGTH, lastFrameStart));
+
+                byte[] duplicatedFrame = concat(Arrays.copyOf(encoded, lastFrameStart),
+                        Arrays.copyOfRange(encoded, lastFrameStart - ENCODED_FRAME_LENGTH, lastFrameStart), Arrays.copyOfRange(encoded, lastFrameStart, encoded.length));
+
+                for (byte[] corrupted : new byte[][] { missingLastFrame, missingLastBytes, headerOnly, incompleteHeader, swappedFrames, lastFrameFirst,
+                        duplicatedFrame }) {
+                    for (int numberOfThreads : THREAD_COUNTS) {
+                        assertThrows(DecodingException.class, () -> decodeStream(corrupted, PASSWORD, numberOfThreads));
+                        Files.write(encodedFile, corrupted);
+                        assertThrows(DecodingException.class, () -> decodeChannel(encodedFile, 0, decodedFile, numberOfThreads));
+                    }
+                }
+            }
+        }
+        finally {
+            Files.delete(encodedFile);
+            Files.delete(decodedFile);
+        }
+
+    }
+
+    @Test
+    void testInvalidArguments() {
+
+        ByteArrayInputStream input = new ByteArrayInputStream(new byte[10]);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertThrows(IllegalArgumentException.class, () -> SecureDistributionStreamCodec.encode(input, output, PASSWORD, 12, 1));
+        assertThrows(IllegalArgumentException.class, () -> SecureDistributionStreamCodec.encode(input, output, PASSWORD, 0, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> SecureDistributionStreamCodec.encode(input, output, PASSWORD, SecureDistributionStreamCodec.MAX_FRAME_SIZE + 8, 1));
+        assertThrows(IllegalArgumentException.class, () -> SecureDistributionStreamCodec.encode(input, output, PASSWORD, FRAME_SIZE, 0));
+
+    }
+
+    /**
+     * @param size content length
+     * @return total length of the encoded frames (without stream header)
+     */
+    private static int encodedLengthOfFrames(int size) {
+        int lastFrameLength = size % FRAME_SIZE;
+        return (size / FRAME_SIZE) * ENCODED_FRAME_LENGTH + 8 + ((lastFrameLength + 7) & ~7);
+    }
+
+    private static byte[] createContent(int size) {
+        byte[] res = new byte[size];
+        new Random(size).nextBytes(res);
+        return res;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            bos.writeBytes(part);
+        }
+        return bos.toByteArray();
+    }
+
+    private static byte[] encodeStream(byte[] content, int numberOfThreads) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        assertEquals(content.length, SecureDistributionStreamCodec.encode(new ByteArrayInputStream(content), bos, PASSWORD, FRAME_SIZE, numberOfThreads));
+        return bos.toByteArray();
+    }
+
+    private static byte[] decodeStream(byte[] encoded, String password, int numberOfThreads) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        long size = SecureDistributionStreamCodec.decode(new ByteArrayInputStream(encoded), bos, password, numberOfThreads);
+        assertEquals(bos.size(), size);
+        return bos.toByteArray();
+    }
+
+    private static byte[] decodeChannel(Path encoded, long start, Path decoded, int numberOfThreads) throws IOException {
+        try (FileChannel src = FileChannel.open(encoded, StandardOpenOption.READ);
+                FileChannel dest = FileChannel.open(decoded, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            src.position(start);
+            long size = SecureDistributionStreamCodec.decode(src, dest, PASSWORD, numberOfThreads);
+            assertEquals(src.size(), src.position());
+            assertEquals(size, dest.position());
+        }
+        return Files.readAllBytes(decoded);
+    }
+
+}
@@ -24,6 +24,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.math.BigInteger;
 import java.util.Random;
+import java.util.function.LongUnaryOperator;
 
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
@@ -283,6 +284,75 @@ public class GenStatsTest {
 
     }
 
+    @Test
+    void testMerge() {
+
+        Random rand = new Random(7733521);
+
+        for (boolean ignoreSignTransition : new boolean[] { false, true }) {
+            for (int run = 0; run < 100; run++) {
+                int numberOfValues = rand.nextInt(2000);
+                long[] src = new long[numberOfValues];
+                long[] dest = new long[numberOfValues];
+                for (int i = 0; i < numberOfValues; i++) {
+                    src[i] = (run % 2 == 0) ? rand.nextLong() : rand.nextInt(100) - 50;
+                    dest[i] = (run % 2 == 0) ? rand.nextLong() : rand.nextInt(100) - 50;
+                }
+
+                GenStats expected = new GenStats(ignoreSignTransition);
+                for (int i = 0; i < numberOfValues; i++) {
+                    expected.consume(src[i], dest[i]);
+                }
+
+                // split into partitions of random size (incl. empty ones) and combine them in order
+                GenStats merged = new GenStats(ignoreSignTransition);
+                int from = 0;
+                while (from < numberOfValues || rand.nextBoolean()) {
+                    int to = Math.min(numberOfValues, from + rand.nextInt(100));
+                    GenStats partition = new GenStats(ignoreSignTransition);
+                    for (int i = from; i < to; i++) {
+                        partition.consume(src[i], dest[i]);
+                    }
+                    merged.merge(partition);
+                    from = to;
+                }
+                assertStatsEqual(expected, merged);
+            }
+        }
+    }
+
+    @Test
+    void testCollect() {
+
+        long numberOfValues = GenStatsCollector.SLICE_SIZE * 2 + 1000;
+
+        LongUnaryOperator sourceValueAt = idx -> Long.MIN_VALUE + (idx << 40);
+        LongUnaryOperator function = src -> Long.rotateLeft(src, 23) ^ 0x5DEECE66DL;
+
+        GenStats expected = new GenStats(true);
+        for (long idx = 0; idx < numberOfValues; idx++) {
+            long src = sourceValueAt.applyAsLong(idx);
+            expected.consume(src, function.applyAsLong(src));
+        }
+
+        assertStatsEqual(expected, GenStatsCollector.collect(numberOfValues, sourceValueAt, function, true));
+
+        assertEquals(0, GenStatsCollector.collect(0, sourceValueAt, function, true).getCount());
+
+    }
+
+    private void assertStatsEqual(GenStats expected, GenStats actual) {
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getSelfMappedCount(), actual.getSelfMappedCount());
+        assertEquals(expected.getMinSrcDist(), actual.getMinSrcDist());
+        assertEquals(expected.getMaxSrcDist(), actual.getMaxSrcDist());
+        assertEquals(expected.getAvgSrcDist(), actual.getAvgSrcDist());
+        assertEquals(expected.getMinSucDist(), actual.getMinSucDist());
+        assertEquals(expected.getMaxSucDist(), actual.getMaxSucDist());
+        assertEquals(expected.getAvgSucDist(), actual.getAvgSucDist());
+        assertEquals(expected.toString(), actual.toString());
+    }
+
     private void testCompareDist64(long value1, long value2, boolean value2OF) {
         assertEquals(compareAlt(value1, value2OF ? value2 * -1 : value2), GenStats.compareDist64(value1, value2, value2OF));
     }
@@ -383,6 +383,58 @@ public class MuhaiGeneratorTest {
 
     }
 
+    @Test
+    void testBatchKeysEqualSingleKeys() {
+
+        Object[] samples = new Object[] { null, "", "abc", "\u00e4\u00f6\u00fc\u20ac", "a\u0000b", "\u0000", Long.MIN_VALUE, Long.MAX_VALUE, 0L, -1,
+                Integer.MIN_VALUE, (short) -7, Short.MAX_VALUE, (byte) 0, new byte[0], new byte[] { 0, 1, 0 }, 3.14d, -0.0d, 'c', Boolean.TRUE };
+
+        int numberOfRows = 2 * MuhaiGenerator.PARALLEL_SLICE_SIZE + 17;
+        Object[] column1 = new Object[numberOfRows];
+        Object[] column2 = new Object[numberOfRows];
+        Object[] column3 = new Object[numberOfRows];
+        for (int i = 0; i < numberOfRows; i++) {
+            column1[i] = samples[i % samples.length];
+            column2[i] = samples[(i * 7 + 3) % samples.length];
+            column3[i] = samples[(i / samples.length) % samples.length];
+        }
+
+        LongPrefix prefix = LongPrefix.fromBinaryString("101");
+
+        // the sub-class does not take the fast path for Strings and integral numbers
+        MuhaiGenerator subClassGenerator = new MuhaiGenerator(prefix, "pepper") {
+            private static final long serialVersionUID = 6046370283516040251L;
+        };
+
+        for (MuhaiGenerator generator : new MuhaiGenerator[] { new MuhaiGenerator(prefix, "pepper"), subClassGenerator, new MuhaiGenerator(LongPrefix.NONE) }) {
+            long[] expected = new long[numberOfRows];
+            for (int i = 0; i < numberOfRows; i++) {
+                expected[i] = generator.createKey(column1[i], column2[i], column3[i]);
+            }
+
+            long[] keys = new long[numberOfRows];
+            generator.createKeys(keys, column1, column2, column3);
+            assertArrayEquals(expected, keys);
+
+            long[] parallelKeys = new long[numberOfRows];
+            generator.createKeysParallel(parallelKeys, column1, column2, column3);
+            assertArrayEquals(expected, parallelKeys);
+
+            long[] rangeKeys = new long[numberOfRows];
+            generator.createKeys(5, 1_000, rangeKeys, column1, column2, column3);
+            for (int i = 0; i < numberOfRows; i++) {
+                assertEquals((i >= 5 && i < 1_000) ? expected[i] : 0L, rangeKeys[i]);
+            }
+
+            long[] singleColumnKeys = new long[numberOfRows];
+            generator.createKeys(singleColumnKeys, column1);
+            for (int i = 0; i < numberOfRows; i++) {
+                assertEquals(generator.createKey(column1[i]), singleColumnKeys[i]);
+            }
+        }
+
+    }
+
     private void assertBitsTakenFromTheLeftWithPrefix(LongPrefix prefix, String fixedHashBitString) {
         MuhaiGenerator generator = createMuhaiGeneratorWithMockDigestAndFixedHashResult(prefix, createFixedHashResult(fixedHashBitString));
         String keyAsBinaryString = MuhaiUtils.toPaddedBinaryString(generator.createKey("dummy"));
@@ -20,12 +20,22 @@
 package de.calamanari.pk.muhai.collider;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.SplittableRandom;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -60,6 +70,27 @@ public class KeyCollisionTest {
 
     private static File tempDirectory;
 
+    /**
+     * Number of keys generated by the tests comparing the processing modes
+     */
+    private static final int NUMBER_OF_MODE_TEST_KEYS = 40_000;
+
+    /**
+     * Deterministic keys with many collisions in a small keyspace (14 bits), rotated so that the highest bits are set
+     */
+    private static final SplittableKeySupplier DENSE_KEYS = SplittableKeySupplier
+            .ofPositionFunction(pos -> Long.rotateRight(new SplittableRandom(pos).nextLong() & 0x3FFF, 4));
+
+    /**
+     * Deterministic random 64-bit keys with a few collisions, including keys with the highest bit set and -1 (max unsigned)
+     */
+    private static final SplittableKeySupplier SPARSE_KEYS = SplittableKeySupplier.ofPositionFunction(pos -> {
+        if (pos % 997 == 0) {
+            return -1L;
+        }
+        return (pos % 101 == 0) ? (Long.MIN_VALUE | (pos / 1010)) : new SplittableRandom(pos).nextLong();
+    });
+
     @BeforeAll
     static void beforeAllTests() {
         try {
@@ -174,6 +205,94 @@ public class KeyCollisionTest {
 
     }
 
+    @Test
+    void testCountingKeyCollisionCodecs() throws Exception {
+
+        List<AnonymousCountingKeyCollision> collisions = List.of(new AnonymousCountingKeyCollision(1L, 2L),
+                new AnonymousCountingKeyCollision(Long.MAX_VALUE, 3L), new AnonymousCountingKeyCollision(Long.MIN_VALUE, 2L),
+                new AnonymousCountingKeyCollision(-1L, -1L), new AnonymousCountingKeyCollision(17L, 25L, 3L));
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            for (AnonymousCountingKeyCollision collision : collisions) {
+                String line = AnonymousCountingKeyCollision.LINE_CODEC.itemToString(collision);
+                assertEquals(Long.toUnsignedString(collision.getFirstCollisionPosition()) + "#"
+                        + Long.toUnsignedString(collision.getNumberOfKeyOccurrences()), line);
+                AnonymousCountingKeyCollision decoded = AnonymousCountingKeyCollision.LINE_CODEC.stringToItem(line);
+                assertEquals(collision, decoded);
+                assertEquals(collision.getFirstCollisionPosition(), decoded.getFirstCollisionPosition());
+                assertEquals(collision.getNumberOfKeyOccurrences(), decoded.getNumberOfKeyOccurrences());
+                AnonymousCountingKeyCollision.BINARY_CODEC.writeItem(collision, out);
+            }
+        }
+        assertEquals(collisions.size() * AnonymousCountingKeyCollision.BINARY_CODEC.getRecordLength(), bos.size());
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+            for (AnonymousCountingKeyCollision collision : collisions) {
+                assertEquals(collision, AnonymousCountingKeyCollision.BINARY_CODEC.readItem(in));
+            }
+        }
+
+        for (String corruptedLine : new String[] { null, "", "#5", "5#", "x#3", "0#2", "5#1", "5#3#4", "-1#3" }) {
+            assertThrows(ItemConversionException.class, () -> AnonymousCountingKeyCollision.LINE_CODEC.stringToItem(corruptedLine));
+        }
+        assertThrows(ItemConversionException.class, () -> AnonymousCountingKeyCollision.LINE_CODEC.itemToString(null));
+
+    }
+
+    @Test
+    void testSummaryIndependentOfProcessingMode() throws Exception {
+
+        // dense keys produce far more pre-filter candidates than keys in memory, so the pre-filter mode falls back to processing all keys
+        assertSameSummaryInAllModes(DENSE_KEYS, 16_384);
+
+        // sparse keys produce only a few candidates, so the pre-filter mode only processes the candidates
+        assertSameSummaryInAllModes(SPARSE_KEYS, Long.MAX_VALUE);
+
+    }
+
+    @Test
+    void testSortBufferEqualsCollectionsSort() {
+
+        SplittableRandom rand = new SplittableRandom(4711);
+        for (int size : new int[] { 0, 1, 2, 47, 48, 49, 1_000, 70_000, KeyAtPosSortBuffer.PARALLEL_SORT_THRESHOLD + 5_000 }) {
+            for (boolean allowParallel : new boolean[] { false, true }) {
+                KeyAtPosSortBuffer buffer = new KeyAtPosSortBuffer(16);
+                List<KeyAtPos> expected = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    // mix of duplicates, small values and values with the highest bit set in key and position
+                    long key = -1L;
+                    if (i % 4 == 0) {
+                        key = rand.nextLong();
+                    }
+                    else if (i % 4 == 1) {
+                        key = rand.nextLong(8);
+                    }
+                    else if (i % 4 == 2) {
+                        key = Long.MIN_VALUE | rand.nextLong(8);
+                    }
+                    long pos = (i % 3 == 0) ? rand.nextLong() : rand.nextLong(4);
+                    buffer.add(key, pos);
+                    expected.add(new KeyAtPos(key, pos));
+                }
+                Collections.sort(expected);
+                buffer.sort(allowParallel);
+                assertEquals(expected, buffer, "size=" + size + ", allowParallel=" + allowParallel);
+            }
+        }
+
+        KeyAtPosSortBuffer buffer = new KeyAtPosSortBuffer(4);
+        List<KeyAtPos> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            KeyAtPos item = new KeyAtPos(rand.nextLong(), rand.nextLong());
+            buffer.add(item);
+            expected.add(item);
+        }
+        Collections.sort(expected);
+        buffer.sort(null);
+        assertEquals(expected, buffer);
+
+    }
+
     @Test
     @Disabled("takes a while, shows that 16 bits are definitely not enough for MUHAIs")
     void testWith16BitsKeyspace() throws Exception {
@@ -250,6 +369,66 @@ public class KeyCollisionTest {
 
     }
 
+    /**
+     * Processes the keys in all modes with all chunk file formats and collection policies, using many small chunks, and expects the same summary
+     * 
+     * @param keySupplier deterministic keys
+     * @param sizeOfKeyspace size of the keyspace
+     * @throws Exception on any error
+     */
+    private void assertSameSummaryInAllModes(SplittableKeySupplier keySupplier, long sizeOfKeyspace) throws Exception {
+        List<KeyCollisionCollectionPolicy<?>> policies = List.of(KeyCollisionCollectionPolicies.COUNT_POSITIONS,
+                KeyCollisionCollectionPolicies.COUNT_POSITIONS_AND_DISCARD_KEYS, KeyCollisionCollectionPolicies.TRACK_POSITIONS,
+                KeyCollisionCollectionPolicies.TRACK_POSITIONS_AND_DISCARD_KEYS);
+        // counting and tracking policies legitimately differ in the collision stats, so the reference is per policy
+        String[] expected = new String[policies.size()];
+        for (ChunkFileFormat chunkFileFormat : ChunkFileFormat.values()) {
+            for (int policyIdx = 0; policyIdx < policies.size(); policyIdx++) {
+                for (String mode : List.of("sequential", "parallel-1", "parallel-3", "read-ahead", "pre-filter")) {
+                    KeyCollisionSummary summary = processInMode(keySupplier, sizeOfKeyspace, chunkFileFormat, policies.get(policyIdx), mode);
+                    if (expected[policyIdx] == null) {
+                        assertTrue(summary.getNumberOfCollidedKeys() > 1);
+                        assertTrue(summary.getNumberOfCollisions() > summary.getNumberOfCollidedKeys());
+                        expected[policyIdx] = formatSummary(summary);
+                    }
+                    else {
+                        assertEquals(expected[policyIdx], formatSummary(summary), chunkFileFormat + ", policy #" + policyIdx + ", " + mode);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param <K> collision type
+     * @param keySupplier deterministic keys
+     * @param sizeOfKeyspace size of the keyspace
+     * @param chunkFileFormat format of the chunk files
+     * @param policy collision collection policy
+     * @param mode processing mode
+     * @return summary
+     * @throws IOException on any error
+     */
+    private static <K extends KeyCollision<K>> KeyCollisionSummary processInMode(SplittableKeySupplier keySupplier, long sizeOfKeyspace,
+            ChunkFileFormat chunkFileFormat, KeyCollisionCollectionPolicy<K> policy, String mode) throws IOException {
+        KeyCollisionProcessor<K> proc = new KeyCollisionProcessor<>(tempDirectory, 1_000, 3_000, policy, false, chunkFileFormat);
+        switch (mode) {
+        case "sequential":
+            return proc.process(keySupplier.createKeySupplier(0), NUMBER_OF_MODE_TEST_KEYS, sizeOfKeyspace);
+        case "parallel-1":
+            return proc.process(keySupplier, NUMBER_OF_MODE_TEST_KEYS, sizeOfKeyspace, 1);
+        case "parallel-3":
+            return proc.process(keySupplier, NUMBER_OF_MODE_TEST_KEYS, sizeOfKeyspace, 3);
+        case "read-ahead":
+            proc.setChunkReadAheadEnabled(true);
+            return proc.process(keySupplier, NUMBER_OF_MODE_TEST_KEYS, sizeOfKeyspace, 2);
+        case "pre-filter":
+            return proc.processWithPreFilter(keySupplier, NUMBER_OF_MODE_TEST_KEYS, sizeOfKeyspace, 2);
+        default:
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
     private String formatSummary(KeyCollisionSummary summary) throws Exception {
 
         ObjectMapper mapper = createObjectMapper();
@@ -19,6 +19,7 @@
 //@formatter:on
 package de.calamanari.pk.ohbf;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -136,6 +137,42 @@ public class LwGenericOHBFTest {
 
     }
 
+    @Test
+    void testPutIntoEqualsPut() {
+
+        Object[][] keys = new Object[][] { { "Bla" }, { "a", "v1" }, { "b", 17 }, { "c", 17L }, { "d", null }, { "e", "" }, { "f", new byte[] { 1, 2, 3 } },
+                { "g", 3.14d }, { "h", "\u00e4\u00f6\u00fc" }, { Long.MIN_VALUE } };
+
+        for (BloomFilterConfig config : new BloomFilterConfig[] { new BloomFilterConfig(5, 0.1d), new BloomFilterConfig(100, 0.0001d),
+                new BloomFilterConfig(1_000, 0.00001d) }) {
+            LwGenericOHBF bloom = new LwGenericOHBF(config);
+            int vectorSize = bloom.getBitVectorAsLongArray().length;
+            int numberOfRows = 7;
+            long[] target = new long[vectorSize * numberOfRows + 3];
+            long[] expected = new long[target.length];
+            for (int row = 0; row < numberOfRows; row++) {
+                bloom.clear();
+                int offset = 3 + row * vectorSize;
+                for (int k = row; k < keys.length; k++) {
+                    bloom.put(keys[k]);
+                }
+                System.arraycopy(bloom.getBitVectorAsLongArray(), 0, expected, offset, vectorSize);
+
+                long usedBefore = bloom.getNumberOfBitsUsed();
+                long[] vectorBefore = bloom.getBitVectorAsLongArray().clone();
+                for (int k = row; k < keys.length; k++) {
+                    bloom.putInto(target, offset, keys[k]);
+                }
+                // the filter itself must not change
+                assertEquals(usedBefore, bloom.getNumberOfBitsUsed());
+                assertArrayEquals(vectorBefore, bloom.getBitVectorAsLongArray());
+            }
+            // no bits outside the row slots, rows do not interfere
+            assertArrayEquals(expected, target);
+        }
+
+    }
+
     @Test
     @Disabled("Long-running test")
     void testAscendingSetups() {
@@ -20,29 +20,69 @@
 
 package de.calamanari.pk.ohbf.bloombox;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 import java.util.function.Predicate;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.awaitility.Awaitility;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+
 import de.calamanari.pk.ohbf.BloomFilterConfig;
 import de.calamanari.pk.ohbf.LwGenericOHBF;
+import de.calamanari.pk.ohbf.bloombox.bbq.AndExpression;
+import de.calamanari.pk.ohbf.bloombox.bbq.BbqExpression;
+import de.calamanari.pk.ohbf.bloombox.bbq.BitSlicedRowBlock;
+import de.calamanari.pk.ohbf.bloombox.bbq.IntermediateEquals;
+import de.calamanari.pk.ohbf.bloombox.bbq.OrExpression;
+import de.calamanari.pk.ohbf.bloombox.bbq.RowBlock;
+import de.calamanari.pk.ohbf.bloombox.bbq.RowMajorRowBlock;
+import de.calamanari.pk.ohbf.bloombox.bbq.RowMaskCache;
+import de.calamanari.pk.ohbf.bloombox.bbq.SelectivityTracker;
 import de.calamanari.pk.ohbf.bloombox.demo.BloomBoxDemoController;
 import de.calamanari.pk.ohbf.bloombox.demo.BloomBoxDemoView;
 import de.calamanari.pk.util.SimpleFixedLengthBitVector;
@@ -59,6 +99,33 @@ public class BloomBoxTest {
 
     private static final String OTHER = "other";
 
+    /**
+     * Columns of the small generated box used by the non-disabled tests
+     */
+    private static final String[] TEST_BOX_COLUMNS = { "a", "b", "c", "d", "e" };
+
+    /**
+     * Seed to create the content of the small generated test box
+     */
+    private static final long TEST_BOX_SEED = 3843745L;
+
+    /**
+     * EasyScript with base queries, sub queries and post queries to be executed on the small generated test box
+     */
+    // @formatter:off
+    private static final String TEST_BUNDLE_SCRIPT = """
+            q1: a=v0 AND b=v1 AND c=v2
+                s1: d=v1
+                s2: d=v2 OR c=v1
+            q2: d=v1 OR (a=v1 AND c!=v3)
+            q3: e NOT IN (v1, v2, v5) AND (b=v2 OR d IN (v3, v4, v7))
+                s1: a!=v0
+            q4: ${q1} INTERSECT ${q2}
+            q5: ${q2} MINUS ${q1}
+            q6: ${q1} UNION ${q3}
+            """;
+    // @formatter:on
+
     private Random rand = null;
 
     private int numberOfColumns = 0;
@@ -640,6 +707,985 @@ public class BloomBoxTest {
 
     }
 
+    @Test
+    void testPreparationCacheResultsEqualColdPreparation() {
+
+        BloomBox box = createTestBox(10_000, null);
+
+        List<Long> expectedCounts = collectCounts(new BloomBoxQueryRunner(box).execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT)));
+
+        int numberOfQueries = QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT).getBaseQueries().size()
+                + QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT).getPostQueries().size();
+
+        BloomBoxQueryRunner runner = new BloomBoxQueryRunner(box);
+        QueryPreparationCache cache = new QueryPreparationCache();
+        runner.setPreparationCache(cache);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(expectedCounts, collectCounts(runner.execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT))));
+        }
+        assertEquals(numberOfQueries, cache.getNumberOfMisses());
+        assertEquals(2L * numberOfQueries, cache.getNumberOfHits());
+
+        // whitespace differences must not matter
+        assertEquals(expectedCounts, collectCounts(runner.execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT.replace(" AND ", "  AND\t")))));
+        assertEquals(3L * numberOfQueries, cache.getNumberOfHits());
+
+        // pre-warmed cache
+        runner = new BloomBoxQueryRunner(box);
+        cache = new QueryPreparationCache();
+        runner.setPreparationCache(cache);
+        runner.prewarmPreparationCache(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT));
+        assertEquals(numberOfQueries, cache.size());
+        assertEquals(expectedCounts, collectCounts(runner.execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT))));
+        assertEquals(numberOfQueries, cache.getNumberOfHits());
+
+        // tiny cache with permanent eviction
+        runner = new BloomBoxQueryRunner(box);
+        runner.setPreparationCache(new QueryPreparationCache(2));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(expectedCounts, collectCounts(runner.execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT))));
+        }
+
+    }
+
+    @Test
+    void testDelimitedFileFeederParallelEqualsSequential() throws Exception {
+
+        int numberOfRows = 20_000;
+
+        File csvFile = File.createTempFile("BloomBoxTest", ".csv");
+        File bbsFileSequential = File.createTempFile("BloomBoxTest", ".bbs");
+        File bbsFileParallel = File.createTempFile("BloomBoxTest", ".bbs");
+
+        try {
+            SplittableRandom random = new SplittableRandom(TEST_BOX_SEED);
+            StringBuilder sb = new StringBuilder(String.join(";", TEST_BOX_COLUMNS));
+            sb.append("\r\n");
+            for (int i = 0; i < numberOfRows; i++) {
+                Object[] values = createTestBoxRowValues(random);
+                for (int j = 0; j < values.length; j++) {
+                    if (j > 0) {
+                        sb.append(';');
+                    }
+                    sb.append((i + j) % 7 == 0 ? "\"" + values[j] + "\"" : values[j]);
+                }
+                sb.append(i % 3 == 0 ? "\r\n" : "\n");
+                if (i % 1_000 == 0) {
+                    sb.append("\n");
+                }
+            }
+            Files.writeString(csvFile.toPath(), sb.toString());
+
+            long[] expectedVectors = createTestBox(numberOfRows, null).getDataStore().getDirectFeedingTarget();
+            List<Long> expectedCounts = collectCounts(new BloomBoxQueryRunner(createTestBox(numberOfRows, null)).execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT)));
+
+            assertArrayEquals(expectedVectors, feedDelimitedFile(csvFile, numberOfRows, 1, DelimitedFileFeeder.DEFAULT_CHUNK_SIZE, null).getDataStore()
+                    .getDirectFeedingTarget());
+            assertArrayEquals(expectedVectors, feedDelimitedFile(csvFile, numberOfRows, 4, 1_000, null).getDataStore().getDirectFeedingTarget());
+
+            BloomBox boxSequential = feedDelimitedFile(csvFile, numberOfRows, 1, DelimitedFileFeeder.DEFAULT_CHUNK_SIZE,
+                    (vectorSize, rows) -> new FileDataStore(vectorSize, rows, bbsFileSequential, 0));
+            BloomBox boxParallel = feedDelimitedFile(csvFile, numberOfRows, 4, 1_000,
+                    (vectorSize, rows) -> new FileDataStore(vectorSize, rows, bbsFileParallel, 0));
+
+            assertEquals(expectedCounts, collectCounts(new BloomBoxQueryRunner(boxSequential).execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT))));
+            assertEquals(expectedCounts, collectCounts(new BloomBoxQueryRunner(boxParallel).execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT))));
+
+            boxSequential.close();
+            boxParallel.close();
+            assertEquals(-1L, Files.mismatch(bbsFileSequential.toPath(), bbsFileParallel.toPath()));
+        }
+        finally {
+            Files.delete(csvFile.toPath());
+            Files.delete(bbsFileSequential.toPath());
+            Files.delete(bbsFileParallel.toPath());
+        }
+
+    }
+
+    @Test
+    void testQueryMetrics() throws Exception {
+
+        int numberOfRows = 10_000;
+
+        BloomBox box = createTestBox(numberOfRows, null);
+        BloomBoxQueryRunner runner = new BloomBoxQueryRunner(box);
+
+        QueryBundleResult plainResult = runner.execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT));
+        QueryBundleResult metricsResult = runner.execute(QueryBundle.fromEasyScript(addOptionToScript(TEST_BUNDLE_SCRIPT, "metrics")));
+
+        assertEquals(collectCounts(plainResult), collectCounts(metricsResult));
+        assertTrue(plainResult.getMetrics().getExpressionMetrics().isEmpty());
+
+        List<QueryBundleMetrics.ExpressionMetrics> expressionMetrics = metricsResult.getMetrics().getExpressionMetrics();
+        assertFalse(expressionMetrics.isEmpty());
+        for (QueryBundleMetrics.ExpressionMetrics em : expressionMetrics) {
+            assertEquals(em.getVisits(), em.getCacheHits() + em.getEvaluations());
+            assertTrue(em.getMatches() <= em.getEvaluations());
+            if (em.getNumberOfChildren() == 0) {
+                assertEquals(0, em.getChildVisits());
+            }
+            else {
+                assertTrue(em.getChildVisits() >= em.getEvaluations());
+                assertTrue(em.getChildVisits() <= em.getEvaluations() * em.getNumberOfChildren());
+            }
+        }
+
+        // the counters of parallel executions get combined
+        QueryBundleResult parallelMetricsResult = runner
+                .execute(QueryBundle.fromEasyScript(addOptionToScript(addOptionToScript(TEST_BUNDLE_SCRIPT, "metrics"), "parallel")));
+        assertEquals(collectCounts(plainResult), collectCounts(parallelMetricsResult));
+        assertEquals(expressionMetrics.stream().map(BloomBoxTest::formatExpressionMetrics).toList(),
+                parallelMetricsResult.getMetrics().getExpressionMetrics().stream().map(BloomBoxTest::formatExpressionMetrics).toList());
+
+        // single AND: every row visits the first member, only the rows matching the first member visit the second one
+        QueryBundleResult andResult = runner.execute(QueryBundle.fromEasyScript("q: a=v0 AND b=v1\n    -metrics\n"));
+        long count = andResult.getBaseQueryResults().get(0).getBaseQueryCount();
+        QueryBundleMetrics.ExpressionMetrics andMetrics = andResult.getMetrics().getExpressionMetrics().stream()
+                .filter(em -> em.getExpressionType().equals("AndExpression")).findFirst().orElseThrow();
+        assertEquals(numberOfRows, andMetrics.getVisits());
+        assertEquals(numberOfRows, andMetrics.getEvaluations());
+        assertEquals(count, andMetrics.getMatches());
+        List<QueryBundleMetrics.ExpressionMetrics> memberMetrics = andResult.getMetrics().getExpressionMetrics().stream()
+                .filter(em -> em.getNumberOfChildren() == 0).sorted(Comparator.comparingLong(QueryBundleMetrics.ExpressionMetrics::getVisits).reversed())
+                .toList();
+        assertEquals(2, memberMetrics.size());
+        assertEquals(numberOfRows, memberMetrics.get(0).getVisits());
+        assertEquals(memberMetrics.get(0).getMatches(), memberMetrics.get(1).getVisits());
+        assertEquals(count, memberMetrics.get(1).getMatches());
+        assertEquals(andMetrics.getChildVisits(), memberMetrics.get(0).getVisits() + memberMetrics.get(1).getVisits());
+
+        // statistics are scoped per runner
+        assertEquals(4, runner.getStatistics().getNumberOfBundlesExecuted());
+        BloomBoxQueryRunner otherRunner = new BloomBoxQueryRunner(box);
+        otherRunner.execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT));
+        assertEquals(1, otherRunner.getStatistics().getNumberOfBundlesExecuted());
+        assertEquals(4, runner.getStatistics().getNumberOfBundlesExecuted());
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(BloomBoxQueryStatistics.OBJECT_NAME_PREFIX + ObjectName.quote("BloomBoxTest"));
+        assertTrue(runner.getStatistics().registerMBean("BloomBoxTest"));
+        assertFalse(otherRunner.getStatistics().registerMBean("BloomBoxTest"));
+        assertEquals(4L, mBeanServer.getAttribute(objectName, "NumberOfBundlesExecuted"));
+        runner.getStatistics().unregisterMBean();
+        assertFalse(mBeanServer.isRegistered(objectName));
+
+    }
+
+    @Test
+    void testSamplingStopsEarlyWithinMargin() {
+
+        int numberOfRows = 500_000;
+        double marginOfError = 0.01;
+
+        BloomBox box = createTestBox(numberOfRows, null);
+        BloomBoxQueryRunner runner = new BloomBoxQueryRunner(box);
+
+        QueryBundleResult exactResult = runner.execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT));
+        List<BloomBoxQueryResult> exactResults = new ArrayList<>(exactResult.getBaseQueryResults());
+        exactResults.addAll(exactResult.getPostQueryResults());
+
+        String script = addOptionToScript(addOptionToScript(addOptionToScript(TEST_BUNDLE_SCRIPT, "sampling"), "samplingConfidence=0.999"),
+                "samplingMarginOfError=" + marginOfError);
+
+        // the execution id determines the random block order
+        for (long executionId = 1; executionId <= 3; executionId++) {
+            QueryBundle bundle = QueryBundle.fromEasyScript(script);
+            bundle.setExecutionId(executionId);
+            QueryBundleResult sampledResult = runner.execute(bundle);
+            assertFalse(sampledResult.checkIfAnyError());
+            assertTrue(sampledResult.getMetrics().getNumberOfRowsScanned() < numberOfRows / 4);
+
+            List<BloomBoxQueryResult> sampledResults = new ArrayList<>(sampledResult.getBaseQueryResults());
+            sampledResults.addAll(sampledResult.getPostQueryResults());
+            for (int i = 0; i < exactResults.size(); i++) {
+                BloomBoxQueryResult exact = exactResults.get(i);
+                BloomBoxQueryResult sampled = sampledResults.get(i);
+                SampledBloomBoxQueryResult sampleResult = sampled.getSampleResult();
+                LOGGER.debug("{}: exact={}, sampled={}", exact.getName(), exact.getBaseQueryCount(), sampleResult);
+                assertTrue(sampleResult.getNumberOfRowsSampled() < numberOfRows);
+                assertTrue(sampleResult.getBaseQueryMarginOfError() <= marginOfError);
+                assertTrue(Math.abs(sampled.getBaseQueryCount() - exact.getBaseQueryCount()) <= marginOfError * numberOfRows);
+                assertTrue(exact.getBaseQueryCount() >= sampleResult.getBaseQueryCountLowerBound());
+                assertTrue(exact.getBaseQueryCount() <= sampleResult.getBaseQueryCountUpperBound());
+                for (int j = 0; j < exact.getSubQueryCounts().length; j++) {
+                    assertTrue(sampleResult.getSubQueryMarginsOfError()[j] <= marginOfError);
+                    assertTrue(Math.abs(sampled.getSubQueryCounts()[j] - exact.getSubQueryCounts()[j]) <= marginOfError * numberOfRows);
+                    assertTrue(exact.getSubQueryCounts()[j] >= sampleResult.getSubQueryCountLowerBounds()[j]);
+                    assertTrue(exact.getSubQueryCounts()[j] <= sampleResult.getSubQueryCountUpperBounds()[j]);
+                }
+            }
+        }
+
+    }
+
+    @Test
+    void testRowBlocksMatchRowWise() {
+
+        SplittableRandom random = new SplittableRandom(TEST_BOX_SEED);
+        int vectorSize = 3;
+        int startPos = 5;
+        long[] source = new long[startPos + vectorSize * RowBlock.MAX_NUMBER_OF_ROWS];
+        for (int i = 0; i < source.length; i++) {
+            source[i] = random.nextLong();
+        }
+
+        BitSlicedRowBlock bitSlicedBlock = new BitSlicedRowBlock();
+        RowMajorRowBlock rowMajorBlock = new RowMajorRowBlock();
+        for (int numberOfRows : new int[] { 1, 7, 63, 64 }) {
+            bitSlicedBlock.loadRowMajor(source, startPos, vectorSize, numberOfRows);
+            rowMajorBlock.reset(source, startPos, vectorSize, numberOfRows);
+            assertEquals(numberOfRows, bitSlicedBlock.getNumberOfRows());
+            for (int k = 0; k < 1_000; k++) {
+                long[] pattern = new long[vectorSize];
+                if (k % 3 == 0) {
+                    // exact row vector, matches at least this row
+                    int offset = startPos + vectorSize * random.nextInt(numberOfRows);
+                    System.arraycopy(source, offset, pattern, 0, vectorSize);
+                }
+                else {
+                    for (int w = 0; w < vectorSize; w++) {
+                        pattern[w] = random.nextLong() & random.nextLong() & random.nextLong() & random.nextLong();
+                    }
+                }
+                long expectedMask = 0L;
+                for (int row = 0; row < numberOfRows; row++) {
+                    boolean match = true;
+                    for (int w = 0; w < vectorSize; w++) {
+                        long rowWord = source[startPos + row * vectorSize + w];
+                        match = match && (rowWord & pattern[w]) == pattern[w];
+                    }
+                    expectedMask = match ? (expectedMask | (1L << row)) : expectedMask;
+                }
+                assertEquals(expectedMask, rowMajorBlock.matchPattern(pattern));
+                assertEquals(expectedMask, bitSlicedBlock.matchPattern(pattern));
+            }
+        }
+
+        RowMaskCache maskCache = new RowMaskCache();
+        for (int generation = 0; generation < 3; generation++) {
+            maskCache.clear();
+            for (long expressionId = 1; expressionId <= 100; expressionId++) {
+                assertFalse(maskCache.contains(expressionId * 0x1000_0000_0000L));
+                maskCache.put(expressionId * 0x1000_0000_0000L, expressionId + generation);
+            }
+            assertEquals(100, maskCache.size());
+            for (long expressionId = 1; expressionId <= 100; expressionId++) {
+                assertTrue(maskCache.contains(expressionId * 0x1000_0000_0000L));
+                assertEquals(expressionId + generation, maskCache.get(expressionId * 0x1000_0000_0000L));
+            }
+        }
+
+    }
+
+    @Test
+    void testBlockEvaluationEqualsRowWise() throws Exception {
+
+        int numberOfRows = 100_003;
+
+        File bbsFile = File.createTempFile("BloomBoxTest", ".bbs");
+
+        try {
+            BloomBox defaultBox = createTestBox(numberOfRows, null);
+            BloomBox fileBox = createTestBox(numberOfRows, (vectorSize, rows) -> new FileDataStore(vectorSize, rows, bbsFile, 0));
+
+            UpScalingConfig upScalingConfig = new UpScalingConfig();
+            upScalingConfig.setTargetPopulationSize(1_000_000);
+            upScalingConfig.setBaseScalingFactor(1_000_000.0 / numberOfRows);
+            AttributeScalingConfig attributeScalingConfig = new AttributeScalingConfig();
+            attributeScalingConfig.setScalingFactor(upScalingConfig.getBaseScalingFactor());
+            attributeScalingConfig.setValueScalingFactors(Map.of("v0", upScalingConfig.getBaseScalingFactor() * 1.2));
+            upScalingConfig.setAttributeScalingFactors(Map.of("a", attributeScalingConfig));
+
+            for (BloomBox box : List.of(defaultBox, fileBox)) {
+                BloomBoxQueryRunner runner = new BloomBoxQueryRunner(box);
+
+                // metrics collection forces the row-wise path
+                List<Long> rowWiseCounts = collectCounts(runner.execute(QueryBundle.fromEasyScript(addOptionToScript(TEST_BUNDLE_SCRIPT, "metrics"))));
+                assertEquals(rowWiseCounts, collectCounts(runner.execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT))));
+                assertEquals(rowWiseCounts, collectCounts(runner.execute(QueryBundle.fromEasyScript(addOptionToScript(TEST_BUNDLE_SCRIPT, "parallel")))));
+
+                QueryBundle rowWiseUpScaled = QueryBundle.fromEasyScript(addOptionToScript(TEST_BUNDLE_SCRIPT, "metrics"));
+                rowWiseUpScaled.setUpScalingConfig(upScalingConfig);
+                QueryBundle blockUpScaled = QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT);
+                blockUpScaled.setUpScalingConfig(upScalingConfig);
+                assertEquals(collectCounts(runner.execute(rowWiseUpScaled)), collectCounts(runner.execute(blockUpScaled)));
+            }
+
+            fileBox.close();
+        }
+        finally {
+            Files.delete(bbsFile.toPath());
+        }
+
+    }
+
+    @Test
+    void testMinMaxEqualsExpandedOr() {
+
+        BloomBox box = createTestBox(20_011, null);
+        BloomBoxQueryRunner runner = new BloomBoxQueryRunner(box);
+
+        List<String> members = List.of("a=v0", "b=v1", "a=v0", "c IN (v1, v2)", "(d=v3 OR e=v1)", "(a!=v2 AND (c=v0 OR d IN (v1, v2)))");
+        List<String> nestedMembers = List.of("e=v2", "(b=v0 OR c=v4)", "MINMAX(a=v1, b=v2, (c=v3 AND d!=v0); 1; 2)", "d NOT IN (v1, v5)");
+        int[][] bounds = { { 1, 0 }, { 2, 0 }, { 2, 3 }, { 3, 3 }, { 0, 2 }, { 6, 0 }, { 0, 1 } };
+
+        StringBuilder minMaxScript = new StringBuilder();
+        StringBuilder expandedScript = new StringBuilder();
+        int queryNumber = 0;
+        for (List<String> memberList : List.of(members, nestedMembers)) {
+            for (int[] bound : bounds) {
+                if (bound[0] > memberList.size()) {
+                    continue;
+                }
+                queryNumber++;
+                minMaxScript.append(String.format("q%d: MINMAX(%s; %d; %d)%n", queryNumber, String.join(", ", memberList), bound[0], bound[1]));
+                expandedScript.append(String.format("q%d: %s%n", queryNumber, expandMinMax(memberList, bound[0], bound[1])));
+            }
+        }
+        queryNumber++;
+        minMaxScript.append(String.format("q%d: d IN (v1, v2, v3; 1; 1) AND e NOT IN (v0, v1, v2; 2)%n", queryNumber));
+        expandedScript.append(String.format("q%d: %s AND %s%n", queryNumber, expandMinMax(List.of("d=v1", "d=v2", "d=v3"), 1, 1),
+                expandMinMax(List.of("e!=v0", "e!=v1", "e!=v2"), 2, 0)));
+
+        List<Long> expected = collectCounts(runner.execute(QueryBundle.fromEasyScript(expandedScript.toString())));
+        assertTrue(expected.stream().anyMatch(count -> count > 0));
+        assertEquals(expected, collectCounts(runner.execute(QueryBundle.fromEasyScript(minMaxScript.toString()))));
+
+        // metrics collection forces the row-wise path
+        assertEquals(expected, collectCounts(runner.execute(QueryBundle.fromEasyScript(addOptionToScript(minMaxScript.toString(), "metrics")))));
+
+    }
+
+    @Test
+    void testSelectivityReorderingKeepsCounts() {
+
+        // the match rates flip with every observation window, so the tracker must reorder repeatedly
+        int numberOfRows = 4 * SelectivityTracker.OBSERVATION_INTERVAL_ROWS + 17;
+        BloomBox box = createFlippingRatesBox(numberOfRows);
+
+        // @formatter:off
+        String script = """
+                q1: a=v0 AND b=v1 AND c=v2
+                q2: a=v0 OR b=v1 OR c=v2 OR d=v1
+                q3: (a=v0 OR b=v1) AND (c!=v2 OR d IN (v1, v2)) AND NOT (e=v1 OR a=v1)
+                    s1: b=v0
+                q4: MINMAX(a=v0, b=v1 AND c=v0, c=v2 OR d=v3; 2)
+                q5: ${q1} UNION ${q3}
+                """;
+        // @formatter:on
+
+        BloomBoxQueryRunner runner = new BloomBoxQueryRunner(box);
+        // metrics collection disables the tracker
+        List<Long> expectedCounts = collectCounts(runner.execute(QueryBundle.fromEasyScript(addOptionToScript(script, "metrics"))));
+        assertEquals(expectedCounts, collectCounts(runner.execute(QueryBundle.fromEasyScript(script))));
+        assertEquals(expectedCounts, collectCounts(runner.execute(QueryBundle.fromEasyScript(addOptionToScript(script, "parallel")))));
+
+        // track a nested expression row by row and compare every single result to the plain evaluation of its leaves
+        LwGenericOHBF bloomFilter = new LwGenericOHBF(box.getConfig());
+        Map<Long, BbqExpression> expressionCache = new HashMap<>();
+        BbqExpression a0 = new IntermediateEquals("a", "v0").createBbqEquivalent(bloomFilter, expressionCache);
+        BbqExpression b1 = new IntermediateEquals("b", "v1").createBbqEquivalent(bloomFilter, expressionCache);
+        BbqExpression c2 = new IntermediateEquals("c", "v2").createBbqEquivalent(bloomFilter, expressionCache);
+        BbqExpression d1 = new IntermediateEquals("d", "v1").createBbqEquivalent(bloomFilter, expressionCache);
+        OrExpression or = new OrExpression(List.of(a0, b1, d1));
+        AndExpression and = new AndExpression(List.of(a0, b1, c2));
+        OrExpression root = new OrExpression(List.of(and, new AndExpression(List.of(or, c2))));
+        List<BbqExpression> initialOrder = or.getChildExpressions();
+
+        SelectivityTracker tracker = SelectivityTracker.create(List.of(a0, b1, c2, d1, or, and, root, root.getChildExpressions().get(1)));
+        long[] vectors = box.getDataStore().getDirectFeedingTarget();
+        int vectorSize = box.getDataStore().getVectorSize();
+        ExpressionResultCache resultCache = new ExpressionResultCache();
+        resultCache.setMemberEvaluationOrder(tracker.getMemberEvaluationOrder());
+        boolean orderChanged = false;
+        for (int i = 0; i < numberOfRows; i++) {
+            int startPos = i * vectorSize;
+            boolean a = a0.match(vectors, startPos, new HashMap<>());
+            boolean b = b1.match(vectors, startPos, new HashMap<>());
+            boolean c = c2.match(vectors, startPos, new HashMap<>());
+            boolean d = d1.match(vectors, startPos, new HashMap<>());
+            resultCache.clear();
+            assertEquals((a && b && c) || ((a || b || d) && c), root.match(vectors, startPos, resultCache));
+            assertEquals(a && b && c, and.match(vectors, startPos, resultCache));
+            assertEquals(a || b || d, or.match(vectors, startPos, resultCache));
+            tracker.afterRow(vectors, startPos, resultCache);
+            orderChanged = orderChanged || !initialOrder.equals(tracker.getMemberEvaluationOrder().getMembersInEvaluationOrder(or));
+        }
+        assertTrue(tracker.getNumberOfReorderings() > 2);
+        assertTrue(orderChanged);
+        assertEquals(numberOfRows, tracker.getNumberOfRowsProcessed());
+
+        // the order belongs to the tracker, the shared expressions keep their canonical order
+        assertEquals(initialOrder, or.getChildExpressions());
+
+    }
+
+    @Test
+    void testMetricsIndependentOfPreviousReordering() {
+
+        int numberOfRows = 2 * SelectivityTracker.OBSERVATION_INTERVAL_ROWS + 17;
+        BloomBox box = createFlippingRatesBox(numberOfRows);
+
+        // @formatter:off
+        String script = """
+                q1: a=v0 AND b=v1 AND c=v2
+                q2: a=v0 OR b=v1 OR d=v1
+                q3: (a=v0 OR b=v1) AND (c!=v2 OR d IN (v1, v2))
+                """;
+        // @formatter:on
+
+        // q1 and q2 come from the cache, q3 requests the metrics for the whole bundle
+        String metricsScript = script.replace("q3: (a=v0 OR b=v1) AND (c!=v2 OR d IN (v1, v2))\n",
+                "q3: (a=v0 OR b=v1) AND (c!=v2 OR d IN (v1, v2))\n    -metrics\n");
+
+        QueryBundleResult coldResult = new BloomBoxQueryRunner(box).execute(QueryBundle.fromEasyScript(metricsScript));
+        List<String> expectedMetrics = coldResult.getMetrics().getExpressionMetrics().stream().map(BloomBoxTest::formatExpressionMetrics).toList();
+        assertFalse(expectedMetrics.isEmpty());
+
+        BloomBoxQueryRunner runner = new BloomBoxQueryRunner(box);
+        runner.setPreparationCache(new QueryPreparationCache());
+        for (int i = 0; i < 2; i++) {
+            // reordering executions, row-wise and block-wise, sequential and parallel
+            assertEquals(collectCounts(coldResult).subList(0, 2), collectCounts(runner.execute(QueryBundle.fromEasyScript(script))).subList(0, 2));
+            runner.execute(QueryBundle.fromEasyScript(addOptionToScript(script, "parallel")));
+
+            QueryBundleResult metricsResult = runner.execute(QueryBundle.fromEasyScript(metricsScript));
+            assertTrue(metricsResult.getMetrics().getNumberOfPreparationCacheHits() > 0);
+            assertEquals(collectCounts(coldResult), collectCounts(metricsResult));
+            assertEquals(expectedMetrics, metricsResult.getMetrics().getExpressionMetrics().stream().map(BloomBoxTest::formatExpressionMetrics).toList());
+        }
+
+    }
+
+    /**
+     * Creates a box where the match rates of <code>a=v0</code> and <code>b=v1</code> flip with every observation window of the {@link SelectivityTracker}
+     * 
+     * @param numberOfRows number of rows
+     * @return box
+     */
+    private static BloomBox createFlippingRatesBox(int numberOfRows) {
+        // @formatter:off
+        BloomBox box = BloomBox.forNumberOfRows(numberOfRows)
+                               .withNumberOfColumns(TEST_BOX_COLUMNS.length)
+                               .withFalsePositiveRateEpsilon(0.00001)
+                               .build();
+        // @formatter:on
+        DataStoreFeeder feeder = box.getFeeder();
+        SplittableRandom random = new SplittableRandom(TEST_BOX_SEED);
+        for (int i = 0; i < numberOfRows; i++) {
+            Object[] values = createTestBoxRowValues(random);
+            boolean evenWindow = (i / SelectivityTracker.OBSERVATION_INTERVAL_ROWS) % 2 == 0;
+            values[0] = (random.nextDouble() < (evenWindow ? 0.9 : 0.1)) ? "v0" : "v1";
+            values[1] = (random.nextDouble() < (evenWindow ? 0.1 : 0.9)) ? "v1" : "v0";
+            feeder.addRow(TEST_BOX_COLUMNS, values);
+        }
+        feeder.close();
+        return box;
+    }
+
+    @Test
+    void testShardedBoxEqualsSingleBox() throws Exception {
+
+        int numberOfRows = 30_000;
+        int numberOfShards = 3;
+        int firstPort = 15731;
+
+        BloomBox singleBox = createTestBox(numberOfRows, null);
+        List<Long> expectedCounts = collectCounts(new BloomBoxQueryRunner(singleBox).execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT)));
+
+        List<File> bbxFiles = new ArrayList<>();
+        List<BloomBoxShardServer> servers = new ArrayList<>();
+        List<String> shardAddresses = new ArrayList<>();
+        try {
+            SplittableRandom random = new SplittableRandom(TEST_BOX_SEED);
+            for (int shardIdx = 0; shardIdx < numberOfShards; shardIdx++) {
+                // @formatter:off
+                BloomBox shardBox = BloomBox.forNumberOfRows(numberOfRows / numberOfShards)
+                                            .withNumberOfColumns(TEST_BOX_COLUMNS.length)
+                                            .withFalsePositiveRateEpsilon(0.00001)
+                                            .build();
+                // @formatter:on
+                for (int i = 0; i < numberOfRows / numberOfShards; i++) {
+                    shardBox.getFeeder().addRow(TEST_BOX_COLUMNS, createTestBoxRowValues(random));
+                }
+                shardBox.getFeeder().close();
+                File bbxFile = File.createTempFile("BloomBoxTest", ".bbx");
+                bbxFiles.add(bbxFile);
+                shardBox.saveToFile(bbxFile);
+                servers.add(BloomBoxShardServer.startInProcess(firstPort + shardIdx, bbxFile));
+                shardAddresses.add(InetAddress.getLoopbackAddress().getHostAddress() + ":" + (firstPort + shardIdx));
+            }
+
+            BloomBox shardedBox = ShardedDataStore.createBloomBox(shardAddresses);
+            assertEquals(numberOfRows, shardedBox.getDataStore().getNumberOfRows());
+            BloomBoxQueryRunner runner = new BloomBoxQueryRunner(shardedBox);
+            assertEquals(expectedCounts, collectCounts(runner.execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT))));
+            assertEquals(expectedCounts, collectCounts(runner.execute(QueryBundle.fromEasyScript(addOptionToScript(TEST_BUNDLE_SCRIPT, "metrics")))));
+
+            // the server only accepts the classes of the shard protocol and closes the connection otherwise
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), firstPort)) {
+                ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
+                oos.writeObject(new HashSet<>(List.of("foreign")));
+                oos.flush();
+                ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
+                assertThrows(EOFException.class, ois::readObject);
+            }
+
+            // still working
+            assertEquals(expectedCounts, collectCounts(runner.execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT))));
+            shardedBox.close();
+        }
+        finally {
+            servers.forEach(BloomBoxShardServer::stop);
+            for (File bbxFile : bbxFiles) {
+                Files.delete(bbxFile.toPath());
+            }
+        }
+
+    }
+
+    @Test
+    void testShardStreamFilter() throws Exception {
+
+        assertEquals("header", deserializeFiltered(serialize(BloomBoxShardServer.CMD_HEADER)));
+        assertArrayEquals(new long[1_000], (long[]) deserializeFiltered(serialize(new long[1_000])));
+
+        byte[] foreignClass = serialize(new HashSet<>(List.of("foreign")));
+        assertThrows(InvalidClassException.class, () -> deserializeFiltered(foreignClass));
+
+        byte[] hugeArray = serialize(new long[(int) ShardStreamFilter.MAX_ARRAY_LENGTH + 1]);
+        assertThrows(InvalidClassException.class, () -> deserializeFiltered(hugeArray));
+
+        Object[] deepGraph = new Object[1];
+        Object[] current = deepGraph;
+        for (int i = 0; i < ShardStreamFilter.MAX_DEPTH + 1; i++) {
+            Object[] next = new Object[1];
+            current[0] = next;
+            current = next;
+        }
+        byte[] deepGraphBytes = serialize(deepGraph);
+        assertThrows(InvalidClassException.class, () -> deserializeFiltered(deepGraphBytes));
+
+    }
+
+    @Test
+    void testQueryServer() throws Exception {
+
+        int port = 15741;
+
+        BloomBox box = createTestBox(10_000, null);
+        List<Long> expectedCounts = collectCounts(new BloomBoxQueryRunner(box).execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT)));
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.setPropertyNamingStrategy(new PropertyNamingStrategies.SnakeCaseStrategy());
+        // results contain derived figures (e.g. rows scanned per second) without setters
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        String jsonBundle = objectMapper.writeValueAsString(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT));
+
+        File bbxFile = File.createTempFile("BloomBoxTest", ".bbx");
+        box.saveToFile(bbxFile);
+        BloomBoxQueryServer server = BloomBoxQueryServer.startInProcess(port, 2, "main=" + bbxFile.getAbsolutePath(), "other=" + bbxFile.getAbsolutePath());
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+
+            // all requests pipelined, the responses must come in request order
+            for (int i = 0; i < 5; i++) {
+                bw.write("script\n" + TEST_BUNDLE_SCRIPT + ".\n");
+            }
+            bw.write("list\n");
+            // unknown commands have no body, the following request must not be swallowed
+            bw.write("foo\n");
+            bw.write("SCRIPT\n" + TEST_BUNDLE_SCRIPT + ".\n");
+            bw.write("script nobox\n" + TEST_BUNDLE_SCRIPT + ".\n");
+            bw.write("json other\n" + jsonBundle + "\n.\n");
+            bw.write("json\n{broken\n.\n");
+            bw.write("script\n" + "q1: a=v0\n".repeat(BloomBoxQueryServer.MAX_REQUEST_BODY_LENGTH / 9 + 1) + ".\n");
+            bw.write("script main\n" + TEST_BUNDLE_SCRIPT + ".\n");
+            bw.write("exit\n");
+            bw.flush();
+
+            for (int i = 0; i < 5; i++) {
+                assertEquals(expectedCounts, collectCounts(objectMapper.readValue(br.readLine(), QueryBundleResult.class)));
+            }
+            assertEquals(List.of("main", "other"), objectMapper.readValue(br.readLine(), List.class));
+            assertTrue(objectMapper.readValue(br.readLine(), QueryBundleResult.class).getMasterError().contains("Unknown command 'foo'"));
+            assertEquals(expectedCounts, collectCounts(objectMapper.readValue(br.readLine(), QueryBundleResult.class)));
+            assertTrue(objectMapper.readValue(br.readLine(), QueryBundleResult.class).getMasterError().contains("Unknown box 'nobox'"));
+            assertEquals(expectedCounts, collectCounts(objectMapper.readValue(br.readLine(), QueryBundleResult.class)));
+            assertTrue(objectMapper.readValue(br.readLine(), QueryBundleResult.class).checkIfAnyError());
+            assertTrue(objectMapper.readValue(br.readLine(), QueryBundleResult.class).getMasterError().contains("too large"));
+            assertEquals(expectedCounts, collectCounts(objectMapper.readValue(br.readLine(), QueryBundleResult.class)));
+            assertEquals(null, br.readLine());
+        }
+        finally {
+            server.stop();
+            Files.delete(bbxFile.toPath());
+        }
+
+    }
+
+    @Test
+    void testDataStoreEnhancerEqualsRowByRow() throws Exception {
+
+        int numberOfRows = 5_000;
+        String[] columnIds = { "f", "g" };
+        String enhancedScript = TEST_BUNDLE_SCRIPT + "q7: f=w1 AND (a=v0 OR g!=w2)\n    s1: g=w0\n";
+
+        SplittableRandom random = new SplittableRandom(TEST_BOX_SEED + 1);
+        Object[][] columnValues = new Object[numberOfRows][];
+        for (int i = 0; i < numberOfRows; i++) {
+            columnValues[i] = new Object[] { "w" + random.nextInt(3), "w" + random.nextInt(4) };
+        }
+
+        long[] originalVectors = createTestBox(numberOfRows, null).getDataStore().getDirectFeedingTarget();
+
+        // reference: row by row
+        BloomBox referenceBox = createTestBox(numberOfRows, null);
+        DataStoreEnhancer referenceEnhancer = new DataStoreEnhancer(referenceBox);
+        for (int i = 0; i < numberOfRows; i++) {
+            assertTrue(referenceEnhancer.enhanceRow(columnIds, columnValues[i]));
+        }
+        assertFalse(referenceEnhancer.enhanceRow(columnIds, columnValues[0]));
+        long[] expectedVectors = referenceBox.getDataStore().getDirectFeedingTarget();
+        List<Long> expectedCounts = collectCounts(new BloomBoxQueryRunner(referenceBox).execute(QueryBundle.fromEasyScript(enhancedScript)));
+        for (int i = 0; i < expectedVectors.length; i++) {
+            // enhancement must keep the existing bits
+            assertEquals(originalVectors[i], expectedVectors[i] & originalVectors[i]);
+        }
+        assertFalse(Arrays.equals(originalVectors, expectedVectors));
+
+        // list variant (used to overwrite the row instead of merging)
+        BloomBox listBox = createTestBox(numberOfRows, null);
+        DataStoreEnhancer listEnhancer = new DataStoreEnhancer(listBox);
+        for (int i = 0; i < numberOfRows; i++) {
+            listEnhancer.enhanceRow(List.of(columnIds), List.of(columnValues[i]));
+        }
+        assertArrayEquals(expectedVectors, listBox.getDataStore().getDirectFeedingTarget());
+
+        // bulk in shuffled order, some rows twice
+        List<Integer> permutation = new ArrayList<>();
+        for (int i = 0; i < numberOfRows; i++) {
+            permutation.add(i);
+        }
+        Collections.shuffle(permutation, new Random(TEST_BOX_SEED));
+        permutation.addAll(permutation.subList(0, 100));
+        long[] rowIndexes = new long[permutation.size()];
+        Object[][] shuffledValues = new Object[permutation.size()][];
+        for (int i = 0; i < rowIndexes.length; i++) {
+            rowIndexes[i] = permutation.get(i);
+            shuffledValues[i] = columnValues[permutation.get(i)];
+        }
+
+        File referenceFile = File.createTempFile("BloomBoxTest", ".bbs");
+        File bbsFile = File.createTempFile("BloomBoxTest", ".bbs");
+        File bbxFile = File.createTempFile("BloomBoxTest", ".bbx");
+        try {
+            FileDataStore referenceStore = new FileDataStore(referenceBox.getDataStore().getVectorSize(), numberOfRows, referenceFile, 0);
+            referenceStore.ensureIsOpenForFeeding();
+            int vectorSize = referenceStore.getVectorSize();
+            for (int i = 0; i < numberOfRows; i++) {
+                referenceStore.feedRow(Arrays.copyOfRange(expectedVectors, i * vectorSize, (i + 1) * vectorSize), i);
+            }
+            referenceStore.notifyFeedingComplete();
+
+            for (int numberOfThreads : new int[] { 1, 4 }) {
+                BloomBox bulkBox = createTestBox(numberOfRows, null);
+                DataStoreEnhancer bulkEnhancer = new DataStoreEnhancer(bulkBox);
+                bulkEnhancer.setNumberOfThreads(numberOfThreads);
+                assertEquals(rowIndexes.length, bulkEnhancer.enhanceRows(rowIndexes, columnIds, shuffledValues));
+                assertArrayEquals(expectedVectors, bulkBox.getDataStore().getDirectFeedingTarget());
+
+                // in-place merge into the file
+                BloomBox fileBox = createTestBox(numberOfRows, (vs, rows) -> new FileDataStore(vs, rows, bbsFile, 0));
+                DataStoreEnhancer fileEnhancer = new DataStoreEnhancer(fileBox);
+                fileEnhancer.setNumberOfThreads(numberOfThreads);
+                fileEnhancer.enhanceRows(rowIndexes, columnIds, shuffledValues);
+                fileBox.close();
+                assertEquals(-1L, Files.mismatch(referenceFile.toPath(), bbsFile.toPath()));
+                assertEquals(expectedCounts, collectCounts(new BloomBoxQueryRunner(fileBox).execute(QueryBundle.fromEasyScript(enhancedScript))));
+            }
+
+            // restored box, the rows start at the header offset
+            BloomBox fileBox = createTestBox(numberOfRows, (vs, rows) -> new FileDataStore(vs, rows, bbsFile, 0));
+            fileBox.saveToFile(bbxFile);
+            fileBox.close();
+            BloomBox restoredBox = BloomBox.loadFromFile(bbxFile, null);
+            DataStoreEnhancer restoredEnhancer = new DataStoreEnhancer(restoredBox);
+            restoredEnhancer.setNumberOfThreads(4);
+            restoredEnhancer.enhanceRows(rowIndexes, columnIds, shuffledValues);
+            restoredBox.close();
+            restoredBox = BloomBox.loadFromFile(bbxFile, null);
+            assertEquals(expectedCounts, collectCounts(new BloomBoxQueryRunner(restoredBox).execute(QueryBundle.fromEasyScript(enhancedScript))));
+            restoredBox.close();
+        }
+        finally {
+            Files.delete(referenceFile.toPath());
+            Files.delete(bbsFile.toPath());
+            Files.delete(bbxFile.toPath());
+        }
+
+    }
+
+    @Test
+    void testThresholdFeederBulkEqualsRowByRow() throws Exception {
+
+        int numberOfRows = 10_007;
+
+        SplittableRandom random = new SplittableRandom(TEST_BOX_SEED);
+        List<List<PbDpav>> rows = new ArrayList<>(numberOfRows);
+        for (int i = 0; i < numberOfRows; i++) {
+            Object[] values = createTestBoxRowValues(random);
+            List<PbDpav> row = new ArrayList<>(TEST_BOX_COLUMNS.length);
+            for (int j = 0; j < TEST_BOX_COLUMNS.length; j++) {
+                row.add(new PbDpav(TEST_BOX_COLUMNS[j], String.valueOf(values[j]), random.nextDouble()));
+            }
+            rows.add(row);
+        }
+
+        long[] expectedVectors = createThresholdFedBox(rows, 0, null).getDataStore().getDirectFeedingTarget();
+        List<Long> expectedCounts = collectCounts(
+                new BloomBoxQueryRunner(createThresholdFedBox(rows, 0, null)).execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT)));
+        assertTrue(expectedCounts.stream().anyMatch(count -> count > 0));
+
+        File referenceFile = File.createTempFile("BloomBoxTest", ".bbs");
+        File bbsFile = File.createTempFile("BloomBoxTest", ".bbs");
+        try {
+            createThresholdFedBox(rows, 0, (vs, rowCount) -> new FileDataStore(vs, rowCount, referenceFile, 0)).close();
+            for (int numberOfThreads : new int[] { 1, 3, 4 }) {
+                assertArrayEquals(expectedVectors, createThresholdFedBox(rows, numberOfThreads, null).getDataStore().getDirectFeedingTarget());
+
+                BloomBox fileBox = createThresholdFedBox(rows, numberOfThreads, (vs, rowCount) -> new FileDataStore(vs, rowCount, bbsFile, 0));
+                fileBox.close();
+                assertEquals(-1L, Files.mismatch(referenceFile.toPath(), bbsFile.toPath()));
+                assertEquals(expectedCounts, collectCounts(new BloomBoxQueryRunner(fileBox).execute(QueryBundle.fromEasyScript(TEST_BUNDLE_SCRIPT))));
+            }
+        }
+        finally {
+            Files.delete(referenceFile.toPath());
+            Files.delete(bbsFile.toPath());
+        }
+
+        // a seeded shared generator still works, either installed or obtained from the feeder
+        long[] sharedVectors = null;
+        for (int variant = 0; variant < 2; variant++) {
+            // @formatter:off
+            BloomBox box = BloomBox.forNumberOfRows(numberOfRows)
+                                   .withNumberOfColumns(TEST_BOX_COLUMNS.length)
+                                   .withFalsePositiveRateEpsilon(0.00001)
+                                   .withFeeder((config, store) -> new PbThresholdBinaryFeeder(config, store, false))
+                                   .build();
+            // @formatter:on
+            PbThresholdBinaryFeeder feeder = (PbThresholdBinaryFeeder) box.getFeeder();
+            if (variant == 0) {
+                feeder.setRandom(new Random(TEST_BOX_SEED));
+            }
+            else {
+                feeder.getRandom().setSeed(TEST_BOX_SEED);
+            }
+            assertEquals(numberOfRows, feeder.addRows(rows));
+            feeder.close();
+            if (sharedVectors == null) {
+                sharedVectors = box.getDataStore().getDirectFeedingTarget();
+            }
+            else {
+                assertArrayEquals(sharedVectors, box.getDataStore().getDirectFeedingTarget());
+            }
+        }
+
+    }
+
+    /**
+     * Creates a small box with the columns {@link #TEST_BOX_COLUMNS} and reproducible content
+     * 
+     * @param numberOfRows row count
+     * @param storeCreatorFunction optional store to be used instead of the default one, may be null
+     * @return filled box
+     */
+    private static BloomBox createTestBox(int numberOfRows, BiFunction<Integer, Long, BloomBoxDataStore> storeCreatorFunction) {
+        // @formatter:off
+        BloomBox.Builder builder = BloomBox.forNumberOfRows(numberOfRows)
+                                           .withNumberOfColumns(TEST_BOX_COLUMNS.length)
+                                           .withFalsePositiveRateEpsilon(0.00001);
+        // @formatter:on
+        if (storeCreatorFunction != null) {
+            builder = builder.withDataStore(storeCreatorFunction);
+        }
+        BloomBox box = builder.build();
+        DataStoreFeeder feeder = box.getFeeder();
+        SplittableRandom random = new SplittableRandom(TEST_BOX_SEED);
+        for (int i = 0; i < numberOfRows; i++) {
+            feeder.addRow(TEST_BOX_COLUMNS, createTestBoxRowValues(random));
+        }
+        feeder.close();
+        return box;
+    }
+
+    /**
+     * Feeds the given rows into a new box using a {@link PbThresholdBinaryFeeder} with the base seed {@link #TEST_BOX_SEED}
+     * 
+     * @param rows rows with probabilities
+     * @param numberOfThreads 0 to feed row by row, otherwise the number of threads for bulk feeding
+     * @param storeCreatorFunction optional store to be used instead of the default one, may be null
+     * @return filled box
+     */
+    private static BloomBox createThresholdFedBox(List<List<PbDpav>> rows, int numberOfThreads,
+            BiFunction<Integer, Long, BloomBoxDataStore> storeCreatorFunction) {
+        // @formatter:off
+        BloomBox.Builder builder = BloomBox.forNumberOfRows(rows.size())
+                                           .withNumberOfColumns(TEST_BOX_COLUMNS.length)
+                                           .withFalsePositiveRateEpsilon(0.00001)
+                                           .withFeeder((config, store) -> new PbThresholdBinaryFeeder(config, store, false));
+        // @formatter:on
+        if (storeCreatorFunction != null) {
+            builder = builder.withDataStore(storeCreatorFunction);
+        }
+        BloomBox box = builder.build();
+        PbThresholdBinaryFeeder feeder = (PbThresholdBinaryFeeder) box.getFeeder();
+        feeder.setBaseSeed(TEST_BOX_SEED);
+        if (numberOfThreads == 0) {
+            rows.forEach(row -> assertTrue(feeder.addRow(row)));
+        }
+        else {
+            feeder.setNumberOfThreads(numberOfThreads);
+            // uneven chunks, the last call exceeds the capacity
+            int split = rows.size() / 3;
+            assertEquals(split, feeder.addRows(rows.subList(0, split)));
+            assertEquals(rows.size() - split, feeder.addRows(rows.subList(split, rows.size())));
+            assertEquals(0, feeder.addRows(rows));
+        }
+        feeder.close();
+        return box;
+    }
+
+    /**
+     * Feeds the given delimited file into a new box with the columns {@link #TEST_BOX_COLUMNS}
+     * 
+     * @param file source
+     * @param numberOfRows row count
+     * @param numberOfThreads parser threads
+     * @param chunkSize size of the chunks to be processed by the workers
+     * @param storeCreatorFunction optional store to be used instead of the default one, may be null
+     * @return filled box
+     */
+    private static BloomBox feedDelimitedFile(File file, int numberOfRows, int numberOfThreads, int chunkSize,
+            BiFunction<Integer, Long, BloomBoxDataStore> storeCreatorFunction) {
+        // @formatter:off
+        BloomBox.Builder builder = BloomBox.forNumberOfRows(numberOfRows)
+                                           .withNumberOfColumns(TEST_BOX_COLUMNS.length)
+                                           .withFalsePositiveRateEpsilon(0.00001)
+                                           .withFeeder(DelimitedFileFeeder::new);
+        // @formatter:on
+        if (storeCreatorFunction != null) {
+            builder = builder.withDataStore(storeCreatorFunction);
+        }
+        BloomBox box = builder.build();
+        DelimitedFileFeeder feeder = (DelimitedFileFeeder) box.getFeeder();
+        feeder.setNumberOfThreads(numberOfThreads);
+        feeder.setChunkSize(chunkSize);
+        assertEquals(numberOfRows, feeder.feed(file).getNumberOfRowsFed());
+        feeder.close();
+        return box;
+    }
+
+    /**
+     * @param random source
+     * @return values of a single row of the test box, see {@link #TEST_BOX_COLUMNS}
+     */
+    private static Object[] createTestBoxRowValues(SplittableRandom random) {
+        return new Object[] { "v" + random.nextInt(4), "v" + random.nextInt(3), "v" + random.nextInt(5), "v" + random.nextInt(10), "v" + random.nextInt(7) };
+    }
+
+    /**
+     * Creates the plain boolean equivalent of a MINMAX-expression by listing all member combinations with a count within the bounds
+     * 
+     * @param members member expressions
+     * @param lowerBound minimum number of members that must hold true, 0 means no lower bound
+     * @param upperBound maximum number of members allowed to hold true, 0 means no upper bound
+     * @return OR of all allowed combinations
+     */
+    private static String expandMinMax(List<String> members, int lowerBound, int upperBound) {
+        List<String> combinations = new ArrayList<>();
+        for (int mask = 0; mask < (1 << members.size()); mask++) {
+            int count = Integer.bitCount(mask);
+            if (count >= lowerBound && (upperBound == 0 || count <= upperBound)) {
+                List<String> conditions = new ArrayList<>();
+                for (int i = 0; i < members.size(); i++) {
+                    conditions.add(((mask & (1 << i)) != 0) ? "(" + members.get(i) + ")" : "NOT (" + members.get(i) + ")");
+                }
+                combinations.add("(" + String.join(" AND ", conditions) + ")");
+            }
+        }
+        return "(" + String.join(" OR ", combinations) + ")";
+    }
+
+    /**
+     * @param object to be serialized
+     * @return serialized object
+     * @throws IOException on serialization error
+     */
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(object);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * @param bytes serialized object
+     * @return object read with the filter of the shard connections
+     * @throws IOException on error, especially if the filter rejects the content
+     * @throws ClassNotFoundException if the class is unknown
+     */
+    private static Object deserializeFiltered(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            ois.setObjectInputFilter(ShardStreamFilter.INSTANCE);
+            return ois.readObject();
+        }
+    }
+
+    /**
+     * @param script EasyScript
+     * @param option query option to be added to every base and post query of the script
+     * @return script with the option
+     */
+    private static String addOptionToScript(String script, String option) {
+        return script.replaceAll("(?m)^(\\w+: .*)$", "$1\n    -" + option);
+    }
+
+    /**
+     * @param em expression metrics
+     * @return all figures as a string for comparison
+     */
+    private static String formatExpressionMetrics(QueryBundleMetrics.ExpressionMetrics em) {
+        return em.getExpressionId() + ":" + em.getExpressionType() + ":" + em.getVisits() + "/" + em.getCacheHits() + "/" + em.getEvaluations() + "/"
+                + em.getMatches() + "/" + em.getChildVisits();
+    }
+
+    /**
+     * @param bundleResult result of a bundle execution without any errors
+     * @return all base query counts and sub query counts of all base and post queries in order of appearance
+     */
+    private static List<Long> collectCounts(QueryBundleResult bundleResult) {
+        List<BloomBoxQueryResult> allResults = new ArrayList<>(bundleResult.getBaseQueryResults());
+        allResults.addAll(bundleResult.getPostQueryResults());
+        List<Long> res = new ArrayList<>();
+        for (BloomBoxQueryResult result : allResults) {
+            assertFalse(result.checkIfError(), result.getName() + ": " + result.getErrorMessage());
+            res.add(result.getBaseQueryCount());
+            if (result.getSubQueryCounts() != null) {
+                for (long subQueryCount : result.getSubQueryCounts()) {
+                    res.add(subQueryCount);
+                }
+            }
+        }
+        return res;
+    }
+
     /**
      * Creates a single generated row following the given instructions
      * 
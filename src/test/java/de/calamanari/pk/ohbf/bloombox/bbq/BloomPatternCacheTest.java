@@ -0,0 +1,186 @@
+//@formatter:off
+/*
+ * BloomPatternCacheTest
+ * Code-Beispiel zum Buch Patterns Kompakt, Verlag Springer Vieweg
+ * Copyright 2014 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+package de.calamanari.pk.ohbf.bloombox.bbq;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import de.calamanari.pk.ohbf.BloomFilterConfig;
+import de.calamanari.pk.ohbf.LwGenericOHBF;
+
+/**
+ * Test coverage for the {@link BloomPatternCache}
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ *
+ */
+class BloomPatternCacheTest {
+
+    @Test
+    void testCacheHitEqualsColdComputation() {
+
+        BloomFilterConfig config = new BloomFilterConfig(17, 0.0001d);
+        BloomPatternCache cache = BloomPatternCache.getSharedInstance(config);
+        LwGenericOHBF bloomFilter = new LwGenericOHBF(config);
+
+        List<String> values = createValues(500);
+        cache.preload("b", values.subList(0, 100));
+
+        for (int round = 0; round < 2; round++) {
+            for (String column : new String[] { "a", "b" }) {
+                for (String value : values) {
+                    assertSameAsColdComputation(config, column, value, cache.createBinaryMatchExpression(column, value, bloomFilter));
+                }
+            }
+        }
+        assertEquals(1_000, cache.getNumberOfEntries());
+        assertEquals(100 + 1_000, cache.getNumberOfHits());
+        assertEquals(900, cache.getNumberOfMisses());
+
+        LwGenericOHBF otherFilter = new LwGenericOHBF(new BloomFilterConfig(18, 0.0001d));
+        assertThrows(IllegalArgumentException.class, () -> cache.createBinaryMatchExpression("c", "v1", otherFilter));
+
+    }
+
+    @Test
+    void testEviction() {
+
+        BloomFilterConfig config = new BloomFilterConfig(19, 0.0001d);
+        BloomPatternCache cache = BloomPatternCache.getSharedInstance(config);
+        cache.setMaxNumberOfEntries(10);
+        LwGenericOHBF bloomFilter = new LwGenericOHBF(config);
+
+        List<String> values = createValues(1_000);
+
+        cache.createBinaryMatchExpression("a", "hot", bloomFilter);
+        long hits = 0;
+        for (String value : values) {
+            assertSameAsColdComputation(config, "a", value, cache.createBinaryMatchExpression("a", value, bloomFilter));
+            assertTrue(cache.getNumberOfEntries() <= 10);
+            assertSameAsColdComputation(config, "a", "hot", cache.createBinaryMatchExpression("a", "hot", bloomFilter));
+            hits++;
+            assertEquals(hits, cache.getNumberOfHits());
+        }
+
+        // stale patterns got evicted, recently used ones are still cached
+        cache.createBinaryMatchExpression("a", values.get(0), bloomFilter);
+        assertEquals(hits, cache.getNumberOfHits());
+        cache.createBinaryMatchExpression("a", values.get(values.size() - 1), bloomFilter);
+        assertEquals(hits + 1, cache.getNumberOfHits());
+
+        cache.setMaxNumberOfEntries(0);
+        cache.clear();
+        for (String value : values) {
+            assertSameAsColdComputation(config, "a", value, cache.createBinaryMatchExpression("a", value, bloomFilter));
+        }
+        assertEquals(0, cache.getNumberOfEntries());
+        assertEquals(hits + 1, cache.getNumberOfHits());
+
+    }
+
+    @Test
+    void testSharedInstanceRegistryIsBounded() {
+
+        BloomFilterConfig config = new BloomFilterConfig(23, 0.0001d);
+        BloomPatternCache cache = BloomPatternCache.getSharedInstance(config);
+        assertSame(cache, BloomPatternCache.getSharedInstance(new BloomFilterConfig(23, 0.0001d)));
+
+        for (int i = 0; i < BloomPatternCache.MAX_NUMBER_OF_SHARED_INSTANCES - 1; i++) {
+            BloomPatternCache.getSharedInstance(new BloomFilterConfig(1_000 + i, 0.0001d));
+            assertSame(cache, BloomPatternCache.getSharedInstance(config));
+        }
+        for (int i = 0; i < BloomPatternCache.MAX_NUMBER_OF_SHARED_INSTANCES; i++) {
+            BloomPatternCache.getSharedInstance(new BloomFilterConfig(2_000 + i, 0.0001d));
+        }
+        assertNotSame(cache, BloomPatternCache.getSharedInstance(config));
+
+        assertThrows(IllegalArgumentException.class, () -> BloomPatternCache.getSharedInstance(null));
+
+    }
+
+    /**
+     * Compares the given expression to one created from a freshly computed pattern
+     * 
+     * @param config bloom filter configuration
+     * @param argName column name
+     * @param argValue column value
+     * @param expression expression created by the cache
+     */
+    private static void assertSameAsColdComputation(BloomFilterConfig config, String argName, String argValue, BinaryMatchExpression expression) {
+        LwGenericOHBF bloomFilter = new LwGenericOHBF(config);
+        bloomFilter.put(argName, argValue);
+        long[] pattern = bloomFilter.getBitVectorAsLongArray();
+        BinaryMatchExpression expected = new BinaryMatchExpression(argName, argValue, pattern);
+
+        assertEquals(expected.getArgName(), expression.getArgName());
+        assertEquals(expected.getArgValue(), expression.getArgValue());
+        assertEquals(expected.getDpav().getDpavId(), expression.getDpav().getDpavId());
+        assertEquals(expected.getExpressionId(), expression.getExpressionId());
+
+        // the expression id covers the pattern, verify the bits anyway
+        assertArrayEquals(pattern, extractPattern(expression, pattern.length));
+    }
+
+    /**
+     * Reconstructs the pattern of an expression bit by bit: a bit belongs to the pattern if the expression no longer matches a vector without this bit
+     * 
+     * @param expression match expression
+     * @param length pattern length
+     * @return pattern
+     */
+    private static long[] extractPattern(BinaryMatchExpression expression, int length) {
+        long[] res = new long[length];
+        long[] source = new long[length];
+        Arrays.fill(source, -1L);
+        for (int i = 0; i < length * Long.SIZE; i++) {
+            long mask = 1L << (i % Long.SIZE);
+            source[i / Long.SIZE] &= ~mask;
+            if (!expression.match(source, 0, new HashMap<>())) {
+                res[i / Long.SIZE] |= mask;
+            }
+            source[i / Long.SIZE] |= mask;
+        }
+        return res;
+    }
+
+    /**
+     * @param numberOfValues number of distinct values
+     * @return test values
+     */
+    private static List<String> createValues(int numberOfValues) {
+        List<String> res = new ArrayList<>(numberOfValues);
+        for (int i = 0; i < numberOfValues; i++) {
+            res.add("v" + i);
+        }
+        return res;
+    }
+
+}